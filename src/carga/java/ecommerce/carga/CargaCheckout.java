@@ -0,0 +1,143 @@
+package ecommerce.carga;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import ecommerce.CompraApplication;
+
+/**
+ * Teste de carga do checkout: sobe {@link CompraApplication} em porta livre,
+ * com H2 em memória, estoque e pagamento simulados e os dados de
+ * {@link SementeCarga}, aplica cada taxa de {@code carga.taxas} com
+ * {@link GeradorCarga} e grava o {@link RelatorioCarga}.
+ *
+ * Opções (argumentos {@code --nome=valor} ou variáveis de ambiente):
+ * {@code carga.taxas} (req/s, separadas por vírgula), {@code carga.aquecimento},
+ * {@code carga.duracao} (por taxa), {@code carga.caminho} ({@code /finalizar}
+ * ou {@code /finalizar/async}), {@code carga.tempo-limite},
+ * {@code carga.maximo-em-voo}, {@code carga.relatorio} e {@code carga.versao},
+ * além das de {@link SementeCarga}. Qualquer propriedade da aplicação também
+ * pode ser passada, por exemplo
+ * {@code --ecommerce.pagamento.simulado.latencia.media=20ms}.
+ */
+public final class CargaCheckout {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CargaCheckout.class);
+
+    /**
+     * Ajustes da aplicação para a carga, acima do application.properties e
+     * abaixo dos argumentos e das variáveis de ambiente: o saldo do estoque
+     * simulado não pode acabar no meio da medição.
+     */
+    private static final Map<String, Object> PROPRIEDADES_CARGA = Map.of(
+            "server.port", "0",
+            "spring.main.banner-mode", "off",
+            "spring.datasource.url", "jdbc:h2:mem:carga;DB_CLOSE_DELAY=-1",
+            "ecommerce.estoque.simulado.quantidade-inicial", "1000000000000",
+            "ecommerce.pedidos.livro.diretorio", "${java.io.tmpdir}/ecommerce-carga-pedidos",
+            "ecommerce.pagamento.compensacao.diretorio", "${java.io.tmpdir}/ecommerce-carga-compensacoes");
+
+    /** Propriedades da aplicação que mudam o resultado e vão para o relatório. */
+    private static final List<String> PROPRIEDADES_RELATADAS = List.of(
+            "ecommerce.compra.threads-virtuais",
+            "ecommerce.estoque.simulado.reservas",
+            "ecommerce.estoque.agrupamento.janela",
+            "ecommerce.estoque.hedge.habilitado",
+            "ecommerce.pagamento.simulado.latencia.distribuicao",
+            "ecommerce.pagamento.simulado.latencia.media",
+            "ecommerce.pagamento.simulado.taxa-recusa-percentual",
+            "ecommerce.pagamento.simulado.taxa-falha-percentual");
+
+    private CargaCheckout() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        SpringApplication aplicacao = new SpringApplication(CompraApplication.class);
+        aplicacao.addInitializers(contexto -> {
+            adicionarPropriedades(contexto.getEnvironment());
+            ((GenericApplicationContext) contexto).registerBean(SementeCarga.class);
+        });
+
+        Instant inicio = Instant.now();
+        try (ConfigurableApplicationContext contexto = aplicacao.run(args)) {
+            ConfigurableEnvironment ambiente = contexto.getEnvironment();
+            List<Double> taxas = taxas(ambiente.getProperty("carga.taxas", "50,100,200"));
+            Duration aquecimento = duracao(ambiente.getProperty("carga.aquecimento", "10s"));
+            Duration duracao = duracao(ambiente.getProperty("carga.duracao", "30s"));
+            Duration tempoLimite = duracao(ambiente.getProperty("carga.tempo-limite", "30s"));
+            int maximoEmVoo = ambiente.getProperty("carga.maximo-em-voo", Integer.class, 10_000);
+            String caminho = ambiente.getProperty("carga.caminho", "/finalizar");
+            Path relatorio = Path.of(ambiente.getProperty("carga.relatorio", "target/carga"));
+            String versao = ambiente.getProperty("carga.versao", "local");
+
+            int porta = ((WebServerApplicationContext) contexto).getWebServer().getPort();
+            GeradorCarga gerador = new GeradorCarga(URI.create("http://localhost:" + porta + caminho),
+                    contexto.getBean(SementeCarga.class).getPedidos(), tempoLimite, maximoEmVoo);
+
+            List<ResultadoEstagio> estagios = new ArrayList<>();
+            for (double taxa : taxas) {
+                LOG.info("Carga de {} req/s em {}: {} de aquecimento e {} medidos", taxa, caminho, aquecimento,
+                        duracao);
+                ResultadoEstagio estagio = gerador.executar(taxa, aquecimento, duracao);
+                LOG.info("{} req/s: vazão {} compras/s, {} erros, p50 {} ms, p99 {} ms, p99,9 {} ms", taxa,
+                        String.format("%.1f", estagio.getVazao()), estagio.getTotalErros(),
+                        estagio.getLatencia().getP50(), estagio.getLatencia().getP99(),
+                        estagio.getLatencia().getP999());
+                estagios.add(estagio);
+            }
+
+            Map<String, Object> parametros = new LinkedHashMap<>();
+            parametros.put("caminho", caminho);
+            parametros.put("taxas", taxas);
+            parametros.put("aquecimento", aquecimento.toString());
+            parametros.put("duracao", duracao.toString());
+            parametros.put("tempoLimite", tempoLimite.toString());
+            parametros.put("maximoEmVoo", maximoEmVoo);
+            parametros.put("carrinhos", contexto.getBean(SementeCarga.class).getPedidos().size());
+            for (String nome : PROPRIEDADES_RELATADAS) {
+                parametros.put(nome, ambiente.getProperty(nome));
+            }
+            Path arquivo = new RelatorioCarga(versao, inicio, parametros, estagios).gravar(relatorio);
+            LOG.info("Relatório da carga em {}", arquivo.toAbsolutePath());
+        }
+    }
+
+    private static void adicionarPropriedades(ConfigurableEnvironment ambiente) {
+        ambiente.getPropertySources().addAfter(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME,
+                new MapPropertySource("carga", PROPRIEDADES_CARGA));
+    }
+
+    private static List<Double> taxas(String texto) {
+        List<Double> taxas = new ArrayList<>();
+        for (String taxa : texto.split(",")) {
+            if (!taxa.isBlank()) {
+                taxas.add(Double.parseDouble(taxa.trim()));
+            }
+        }
+        if (taxas.isEmpty()) {
+            throw new IllegalArgumentException("carga.taxas sem nenhuma taxa.");
+        }
+        return taxas;
+    }
+
+    private static Duration duracao(String texto) {
+        return DurationStyle.detectAndParse(texto.trim());
+    }
+}
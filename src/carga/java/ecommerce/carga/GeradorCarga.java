@@ -0,0 +1,194 @@
+package ecommerce.carga;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Carga em modelo aberto sobre o checkout: a requisição i está prevista para
+ * {@code inicio + i / taxa}, independentemente de as anteriores terem
+ * respondido. Um gerador que só envia a próxima quando a anterior volta deixa
+ * de enviar justamente enquanto o servidor está lento e esconde a fila que
+ * usuários reais formariam (omissão coordenada); aqui o envio é assíncrono e
+ * a latência é medida a partir do instante previsto, de modo que um atraso do
+ * próprio gerador também aparece nos percentis.
+ *
+ * As requisições em voo são limitadas a {@code maximoEmVoo} para não esgotar
+ * a memória do gerador; as previstas além do limite não são enviadas e contam
+ * como erro {@value #DESCARTADA}.
+ */
+public class GeradorCarga {
+
+    static final String DESCARTADA = "descartada pelo gerador (limite em voo)";
+
+    private static final int TAMANHO_MAXIMO_MENSAGEM = 80;
+
+    private final HttpClient cliente;
+    private final URI endereco;
+    private final List<long[]> pedidos;
+    private final Duration tempoLimite;
+    private final int maximoEmVoo;
+    private final ObjectMapper json = new ObjectMapper();
+
+    public GeradorCarga(URI endereco, List<long[]> pedidos, Duration tempoLimite, int maximoEmVoo) {
+        if (pedidos.isEmpty()) {
+            throw new IllegalArgumentException("Nenhum carrinho para comprar.");
+        }
+        this.cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(tempoLimite)
+                .build();
+        this.endereco = endereco;
+        this.pedidos = pedidos;
+        this.tempoLimite = tempoLimite;
+        this.maximoEmVoo = maximoEmVoo;
+    }
+
+    /**
+     * Aplica {@code taxa} requisições por segundo durante
+     * {@code aquecimento + duracao} e espera as que ficaram em voo.
+     */
+    public ResultadoEstagio executar(double taxa, Duration aquecimento, Duration duracao)
+            throws InterruptedException {
+        if (!(taxa > 0)) {
+            throw new IllegalArgumentException("A taxa deve ser positiva.");
+        }
+        Medicao medicao = new Medicao();
+        Semaphore emVoo = new Semaphore(maximoEmVoo);
+        double intervaloNanos = TimeUnit.SECONDS.toNanos(1) / taxa;
+        long inicio = System.nanoTime();
+        long inicioMedicao = inicio + aquecimento.toNanos();
+        long fim = inicioMedicao + duracao.toNanos();
+
+        for (long i = 0;; i++) {
+            long previsto = inicio + (long) (i * intervaloNanos);
+            if (previsto >= fim) {
+                break;
+            }
+            esperarAte(previsto);
+            boolean medida = previsto >= inicioMedicao;
+            if (medida) {
+                medicao.previstas.increment();
+            }
+            if (!emVoo.tryAcquire()) {
+                if (medida) {
+                    medicao.erro(DESCARTADA);
+                }
+                continue;
+            }
+            long envio = System.nanoTime();
+            cliente.sendAsync(requisicao(i), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((resposta, erro) -> {
+                        long chegada = System.nanoTime();
+                        try {
+                            if (medida) {
+                                medicao.registrar(previsto, envio, chegada, resposta, erro);
+                            }
+                        } finally {
+                            // Só depois de registrar: o estágio termina quando todas as licenças voltam
+                            emVoo.release();
+                        }
+                    });
+        }
+        // O tempo limite das requisições garante que todas as licenças voltam
+        if (!emVoo.tryAcquire(maximoEmVoo, tempoLimite.toMillis() + 5_000, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Requisições ainda em voo após o tempo limite.");
+        }
+        emVoo.release(maximoEmVoo);
+        return medicao.resultado(taxa, duracao.toNanos() / 1e9);
+    }
+
+    private HttpRequest requisicao(long sequencia) {
+        long[] pedido = pedidos.get((int) (sequencia % pedidos.size()));
+        URI uri = URI.create(endereco + "?carrinhoId=" + pedido[0] + "&clienteId=" + pedido[1]);
+        return HttpRequest.newBuilder(uri)
+                .timeout(tempoLimite)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private static void esperarAte(long instante) {
+        long restante;
+        while ((restante = instante - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(restante);
+        }
+    }
+
+    private String motivo(HttpResponse<String> resposta, Throwable erro) {
+        if (erro != null) {
+            Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+            if (causa instanceof HttpTimeoutException) {
+                return "tempo limite do cliente";
+            }
+            return causa.getClass().getSimpleName();
+        }
+        String mensagem = null;
+        try {
+            JsonNode corpo = json.readTree(resposta.body());
+            if (resposta.statusCode() == 200 && corpo.path("sucesso").asBoolean(false)) {
+                return null;
+            }
+            mensagem = corpo.path("mensagem").asText(null);
+        } catch (IOException e) {
+            // Corpo que não é JSON: o motivo fica só com o status
+        }
+        if (mensagem == null || mensagem.isBlank()) {
+            return "HTTP " + resposta.statusCode();
+        }
+        if (mensagem.length() > TAMANHO_MAXIMO_MENSAGEM) {
+            mensagem = mensagem.substring(0, TAMANHO_MAXIMO_MENSAGEM) + "...";
+        }
+        return "HTTP " + resposta.statusCode() + ": " + mensagem;
+    }
+
+    /** Contadores de uma taxa; alimentados pelas threads do cliente HTTP. */
+    private final class Medicao {
+        // Microssegundos, com o tamanho ajustado conforme os valores chegam
+        private final Histogram latencia = new ConcurrentHistogram(3);
+        private final Histogram servico = new ConcurrentHistogram(3);
+        private final LongAdder previstas = new LongAdder();
+        private final LongAdder sucessos = new LongAdder();
+        private final Map<String, LongAdder> erros = new ConcurrentHashMap<>();
+
+        void registrar(long previsto, long envio, long chegada, HttpResponse<String> resposta, Throwable erro) {
+            latencia.recordValue(TimeUnit.NANOSECONDS.toMicros(chegada - previsto));
+            servico.recordValue(TimeUnit.NANOSECONDS.toMicros(chegada - envio));
+            String motivo = motivo(resposta, erro);
+            if (motivo == null) {
+                sucessos.increment();
+            } else {
+                erro(motivo);
+            }
+        }
+
+        void erro(String motivo) {
+            erros.computeIfAbsent(motivo, m -> new LongAdder()).increment();
+        }
+
+        ResultadoEstagio resultado(double taxa, double duracaoSegundos) {
+            Map<String, Long> totais = new HashMap<>();
+            erros.forEach((motivo, total) -> totais.put(motivo, total.sum()));
+            return new ResultadoEstagio(taxa, duracaoSegundos, previstas.sum(), sucessos.sum(), latencia, servico,
+                    totais);
+        }
+    }
+}
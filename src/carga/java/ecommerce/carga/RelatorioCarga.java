@@ -0,0 +1,176 @@
+package ecommerce.carga;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Relatório de uma execução da carga, em {@code carga-<versao>.json} (para
+ * comparar versões por script) e {@code carga-<versao>.html} (tabela e
+ * gráfico dos percentis corrigidos de cada taxa).
+ */
+public class RelatorioCarga {
+
+    private static final String[] PERCENTIS = { "p50", "p90", "p99", "p99,9" };
+    private static final String[] CORES = { "#1f77b4", "#ff7f0e", "#2ca02c", "#d62728", "#9467bd", "#8c564b" };
+
+    private final String versao;
+    private final Instant inicio;
+    private final Map<String, Object> parametros;
+    private final List<ResultadoEstagio> estagios;
+
+    public RelatorioCarga(String versao, Instant inicio, Map<String, Object> parametros,
+            List<ResultadoEstagio> estagios) {
+        this.versao = versao;
+        this.inicio = inicio;
+        this.parametros = parametros;
+        this.estagios = estagios;
+    }
+
+    /** Grava os dois arquivos no diretório e devolve o caminho do JSON. */
+    public Path gravar(Path diretorio) throws IOException {
+        Files.createDirectories(diretorio);
+        Path arquivoJson = diretorio.resolve("carga-" + versao + ".json");
+        Map<String, Object> conteudo = new LinkedHashMap<>();
+        conteudo.put("versao", versao);
+        conteudo.put("inicio", inicio.toString());
+        conteudo.put("java", Runtime.version().toString());
+        conteudo.put("processadores", Runtime.getRuntime().availableProcessors());
+        conteudo.put("parametros", parametros);
+        conteudo.put("estagios", estagios);
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(arquivoJson.toFile(), conteudo);
+        Files.writeString(diretorio.resolve("carga-" + versao + ".html"), html(), StandardCharsets.UTF_8);
+        return arquivoJson;
+    }
+
+    String html() {
+        StringBuilder html = new StringBuilder(8_192);
+        html.append("<!DOCTYPE html>\n<html lang=\"pt-BR\">\n<head>\n<meta charset=\"utf-8\">\n")
+                .append("<title>Carga do checkout ").append(escapar(versao)).append("</title>\n")
+                .append("<style>body{font-family:sans-serif;margin:2em}table{border-collapse:collapse;margin:1em 0}")
+                .append("th,td{border:1px solid #ccc;padding:4px 8px;text-align:right}")
+                .append("th:first-child,td:first-child{text-align:left}</style>\n</head>\n<body>\n")
+                .append("<h1>Carga do checkout &mdash; ").append(escapar(versao)).append("</h1>\n")
+                .append("<p>Início: ").append(inicio).append(" &middot; Java ").append(Runtime.version())
+                .append(" &middot; ").append(Runtime.getRuntime().availableProcessors())
+                .append(" processadores</p>\n");
+
+        html.append("<table>\n<tr><th>Parâmetro</th><th>Valor</th></tr>\n");
+        parametros.forEach((nome, valor) -> html.append("<tr><td>").append(escapar(nome)).append("</td><td>")
+                .append(escapar(String.valueOf(valor))).append("</td></tr>\n"));
+        html.append("</table>\n");
+
+        html.append("<h2>Latência (ms)</h2>\n<p>Corrigida: desde o instante previsto no cronograma. ")
+                .append("Serviço: desde o envio efetivo.</p>\n<table>\n<tr><th>Taxa alvo (req/s)</th>")
+                .append("<th>Previstas</th><th>Vazão (compras/s)</th><th>Erros</th>")
+                .append("<th>p50</th><th>p90</th><th>p99</th><th>p99,9</th><th>Máxima</th>")
+                .append("<th>p50 serviço</th><th>p99 serviço</th><th>p99,9 serviço</th></tr>\n");
+        for (ResultadoEstagio estagio : estagios) {
+            ResultadoEstagio.Percentis latencia = estagio.getLatencia();
+            ResultadoEstagio.Percentis servico = estagio.getServico();
+            html.append("<tr><td>").append(numero(estagio.getTaxaAlvo())).append("</td><td>")
+                    .append(estagio.getPrevistas()).append("</td><td>").append(numero(estagio.getVazao()))
+                    .append("</td><td>").append(estagio.getTotalErros()).append("</td>");
+            celulas(html, latencia.getP50(), latencia.getP90(), latencia.getP99(), latencia.getP999(),
+                    latencia.getMaxima(), servico.getP50(), servico.getP99(), servico.getP999());
+            html.append("</tr>\n");
+        }
+        html.append("</table>\n");
+
+        html.append("<h2>Percentis corrigidos por taxa</h2>\n");
+        grafico(html);
+
+        html.append("<h2>Erros</h2>\n<table>\n")
+                .append("<tr><th>Taxa alvo (req/s)</th><th>Motivo</th><th>Quantidade</th></tr>\n");
+        for (ResultadoEstagio estagio : estagios) {
+            String taxa = numero(estagio.getTaxaAlvo());
+            estagio.getErros().forEach((motivo, total) -> html.append("<tr><td>").append(taxa).append("</td><td>")
+                    .append(escapar(motivo)).append("</td><td>").append(total).append("</td></tr>\n"));
+        }
+        return html.append("</table>\n</body>\n</html>\n").toString();
+    }
+
+    /** Linhas dos percentis de cada taxa, com o eixo da latência em escala logarítmica. */
+    private void grafico(StringBuilder html) {
+        int largura = 640;
+        int altura = 320;
+        int margem = 50;
+        double minimo = Double.MAX_VALUE;
+        double maximo = 0.0;
+        for (ResultadoEstagio estagio : estagios) {
+            for (double valor : valores(estagio)) {
+                minimo = Math.min(minimo, Math.max(valor, 0.01));
+                maximo = Math.max(maximo, valor);
+            }
+        }
+        if (estagios.isEmpty() || maximo <= 0.0) {
+            return;
+        }
+        double logMinimo = Math.floor(Math.log10(minimo));
+        double logMaximo = Math.max(Math.ceil(Math.log10(maximo)), logMinimo + 1);
+
+        html.append("<svg width=\"").append(largura).append("\" height=\"").append(altura)
+                .append("\" xmlns=\"http://www.w3.org/2000/svg\" font-size=\"11\">\n");
+        for (double potencia = logMinimo; potencia <= logMaximo; potencia++) {
+            double y = y(potencia, logMinimo, logMaximo, altura, margem);
+            html.append("<line x1=\"").append(margem).append("\" x2=\"").append(largura - margem).append("\" y1=\"")
+                    .append(numero(y)).append("\" y2=\"").append(numero(y)).append("\" stroke=\"#ddd\"/>")
+                    .append("<text x=\"").append(margem - 4).append("\" y=\"").append(numero(y + 4))
+                    .append("\" text-anchor=\"end\">").append(numero(Math.pow(10, potencia))).append(" ms</text>\n");
+        }
+        for (int p = 0; p < PERCENTIS.length; p++) {
+            html.append("<text x=\"").append(numero(x(p, largura, margem))).append("\" y=\"")
+                    .append(altura - margem + 16).append("\" text-anchor=\"middle\">").append(PERCENTIS[p])
+                    .append("</text>\n");
+        }
+        for (int e = 0; e < estagios.size(); e++) {
+            double[] valores = valores(estagios.get(e));
+            String cor = CORES[e % CORES.length];
+            html.append("<polyline fill=\"none\" stroke=\"").append(cor).append("\" stroke-width=\"2\" points=\"");
+            for (int p = 0; p < valores.length; p++) {
+                double y = y(Math.log10(Math.max(valores[p], 0.01)), logMinimo, logMaximo, altura, margem);
+                html.append(numero(x(p, largura, margem))).append(',').append(numero(y)).append(' ');
+            }
+            html.append("\"/>\n<text x=\"").append(largura - margem + 4).append("\" y=\"").append(margem + 14 * e)
+                    .append("\" fill=\"").append(cor).append("\">").append(numero(estagios.get(e).getTaxaAlvo()))
+                    .append(" req/s</text>\n");
+        }
+        html.append("</svg>\n");
+    }
+
+    private static double[] valores(ResultadoEstagio estagio) {
+        ResultadoEstagio.Percentis latencia = estagio.getLatencia();
+        return new double[] { latencia.getP50(), latencia.getP90(), latencia.getP99(), latencia.getP999() };
+    }
+
+    private static double x(int indice, int largura, int margem) {
+        return margem + (largura - 3.0 * margem) * indice / (PERCENTIS.length - 1);
+    }
+
+    private static double y(double log, double logMinimo, double logMaximo, int altura, int margem) {
+        return altura - margem - (altura - 2.0 * margem) * (log - logMinimo) / (logMaximo - logMinimo);
+    }
+
+    private static void celulas(StringBuilder html, double... valores) {
+        for (double valor : valores) {
+            html.append("<td>").append(numero(valor)).append("</td>");
+        }
+    }
+
+    private static String numero(double valor) {
+        return valor == Math.rint(valor) && Math.abs(valor) < 1e15 ? Long.toString((long) valor)
+                : String.format(Locale.ROOT, "%.2f", valor);
+    }
+
+    private static String escapar(String texto) {
+        return texto.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,127 @@
+package ecommerce.carga;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Resultado de uma taxa de chegada, só com as requisições previstas depois do
+ * aquecimento. {@code latencia} conta a partir do instante previsto no
+ * cronograma (corrigida para omissão coordenada); {@code servico} conta a
+ * partir do envio efetivo e mostra o que um gerador de modelo fechado teria
+ * medido.
+ */
+public class ResultadoEstagio {
+
+    private final double taxaAlvo;
+    private final double duracaoSegundos;
+    private final long previstas;
+    private final long sucessos;
+    private final Percentis latencia;
+    private final Percentis servico;
+    private final Map<String, Long> erros;
+
+    public ResultadoEstagio(double taxaAlvo, double duracaoSegundos, long previstas, long sucessos,
+            Histogram latencia, Histogram servico, Map<String, Long> erros) {
+        this.taxaAlvo = taxaAlvo;
+        this.duracaoSegundos = duracaoSegundos;
+        this.previstas = previstas;
+        this.sucessos = sucessos;
+        this.latencia = new Percentis(latencia);
+        this.servico = new Percentis(servico);
+        this.erros = new TreeMap<>(erros);
+    }
+
+    public double getTaxaAlvo() {
+        return taxaAlvo;
+    }
+
+    public double getDuracaoSegundos() {
+        return duracaoSegundos;
+    }
+
+    public long getPrevistas() {
+        return previstas;
+    }
+
+    public long getSucessos() {
+        return sucessos;
+    }
+
+    /** Compras concluídas com sucesso por segundo da janela medida. */
+    public double getVazao() {
+        return sucessos / duracaoSegundos;
+    }
+
+    public long getTotalErros() {
+        return erros.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public Percentis getLatencia() {
+        return latencia;
+    }
+
+    public Percentis getServico() {
+        return servico;
+    }
+
+    /** Quantidade de erros por motivo, como status HTTP e mensagem ou exceção do cliente. */
+    public Map<String, Long> getErros() {
+        return erros;
+    }
+
+    /** Percentis em milissegundos de um histograma em microssegundos. */
+    public static class Percentis {
+
+        private final long amostras;
+        private final double media;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+        private final double maxima;
+
+        Percentis(Histogram histograma) {
+            this.amostras = histograma.getTotalCount();
+            this.media = amostras == 0 ? 0.0 : histograma.getMean() / 1_000.0;
+            this.p50 = ms(histograma, 50.0);
+            this.p90 = ms(histograma, 90.0);
+            this.p99 = ms(histograma, 99.0);
+            this.p999 = ms(histograma, 99.9);
+            this.maxima = histograma.getMaxValue() / 1_000.0;
+        }
+
+        private static double ms(Histogram histograma, double percentil) {
+            return histograma.getValueAtPercentile(percentil) / 1_000.0;
+        }
+
+        public long getAmostras() {
+            return amostras;
+        }
+
+        public double getMedia() {
+            return media;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getP999() {
+            return p999;
+        }
+
+        public double getMaxima() {
+            return maxima;
+        }
+    }
+}
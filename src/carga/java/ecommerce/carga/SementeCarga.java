@@ -0,0 +1,138 @@
+package ecommerce.carga;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.Regiao;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.ProdutoRepository;
+
+/**
+ * Grava no banco os clientes, produtos e carrinhos usados pela carga:
+ * {@code carga.clientes}, {@code carga.produtos} e {@code carga.carrinhos},
+ * cada carrinho com {@code carga.itens-por-carrinho} produtos distintos. Os
+ * dados saem de um {@link Random} com {@code carga.semente}, para que duas
+ * execuções com os mesmos parâmetros comprem os mesmos carrinhos.
+ *
+ * Roda antes do {@code ApplicationReadyEvent}, para que o estoque simulado e o
+ * catálogo off-heap já carreguem os produtos gravados aqui.
+ */
+public class SementeCarga implements ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SementeCarga.class);
+    private static final int TAMANHO_LOTE = 1_000;
+
+    private final ClienteRepository clienteRepository;
+    private final ProdutoRepository produtoRepository;
+    private final CarrinhoDeComprasRepository carrinhoRepository;
+    private final Environment ambiente;
+
+    private volatile List<long[]> pedidos = List.of();
+
+    public SementeCarga(ClienteRepository clienteRepository, ProdutoRepository produtoRepository,
+            CarrinhoDeComprasRepository carrinhoRepository, Environment ambiente) {
+        this.clienteRepository = clienteRepository;
+        this.produtoRepository = produtoRepository;
+        this.carrinhoRepository = carrinhoRepository;
+        this.ambiente = ambiente;
+    }
+
+    @Override
+    public void run(ApplicationArguments argumentos) {
+        int totalClientes = ambiente.getProperty("carga.clientes", Integer.class, 1_000);
+        int totalProdutos = ambiente.getProperty("carga.produtos", Integer.class, 1_000);
+        int totalCarrinhos = ambiente.getProperty("carga.carrinhos", Integer.class, 10_000);
+        int itensPorCarrinho = ambiente.getProperty("carga.itens-por-carrinho", Integer.class, 5);
+        if (itensPorCarrinho > totalProdutos) {
+            throw new IllegalArgumentException("carga.itens-por-carrinho maior que carga.produtos.");
+        }
+        Random aleatorio = new Random(ambiente.getProperty("carga.semente", Long.class, 42L));
+
+        List<Cliente> clientes = gravarClientes(totalClientes, aleatorio);
+        List<Produto> produtos = gravarProdutos(totalProdutos, aleatorio);
+        pedidos = gravarCarrinhos(totalCarrinhos, itensPorCarrinho, clientes, produtos, aleatorio);
+        LOG.info("Semente da carga: {} clientes, {} produtos, {} carrinhos com {} itens", clientes.size(),
+                produtos.size(), pedidos.size(), itensPorCarrinho);
+    }
+
+    /** Pares {carrinhoId, clienteId} dos carrinhos gravados. */
+    public List<long[]> getPedidos() {
+        return pedidos;
+    }
+
+    private List<Cliente> gravarClientes(int total, Random aleatorio) {
+        Regiao[] regioes = Regiao.values();
+        TipoCliente[] tipos = TipoCliente.values();
+        List<Cliente> clientes = new ArrayList<>(total);
+        List<Cliente> lote = new ArrayList<>(TAMANHO_LOTE);
+        for (int i = 1; i <= total; i++) {
+            lote.add(new Cliente(null, "Cliente " + i, regioes[aleatorio.nextInt(regioes.length)],
+                    tipos[aleatorio.nextInt(tipos.length)]));
+            if (lote.size() == TAMANHO_LOTE || i == total) {
+                clientes.addAll(clienteRepository.saveAll(lote));
+                lote.clear();
+            }
+        }
+        return clientes;
+    }
+
+    private List<Produto> gravarProdutos(int total, Random aleatorio) {
+        TipoProduto[] tipos = TipoProduto.values();
+        List<Produto> produtos = new ArrayList<>(total);
+        List<Produto> lote = new ArrayList<>(TAMANHO_LOTE);
+        for (int i = 1; i <= total; i++) {
+            lote.add(new Produto(null, "Produto " + i, "Carga", decimal(5, 500, 2, aleatorio),
+                    decimal(0.1, 10, 3, aleatorio), decimal(5, 80, 1, aleatorio), decimal(5, 60, 1, aleatorio),
+                    decimal(2, 40, 1, aleatorio), aleatorio.nextInt(10) == 0, tipos[aleatorio.nextInt(tipos.length)]));
+            if (lote.size() == TAMANHO_LOTE || i == total) {
+                produtos.addAll(produtoRepository.saveAll(lote));
+                lote.clear();
+            }
+        }
+        return produtos;
+    }
+
+    private List<long[]> gravarCarrinhos(int total, int itensPorCarrinho, List<Cliente> clientes,
+            List<Produto> produtos, Random aleatorio) {
+        List<Produto> embaralhados = new ArrayList<>(produtos);
+        List<long[]> gravados = new ArrayList<>(total);
+        List<CarrinhoDeCompras> lote = new ArrayList<>(TAMANHO_LOTE);
+        for (int i = 1; i <= total; i++) {
+            Collections.shuffle(embaralhados, aleatorio);
+            List<ItemCompra> itens = new ArrayList<>(itensPorCarrinho);
+            for (int j = 0; j < itensPorCarrinho; j++) {
+                itens.add(new ItemCompra(null, embaralhados.get(j), 1L + aleatorio.nextInt(3)));
+            }
+            lote.add(new CarrinhoDeCompras(null, clientes.get(aleatorio.nextInt(clientes.size())), itens, null));
+            if (lote.size() == TAMANHO_LOTE || i == total) {
+                for (CarrinhoDeCompras carrinho : carrinhoRepository.saveAll(lote)) {
+                    gravados.add(new long[] { carrinho.getId(), carrinho.getCliente().getId() });
+                }
+                lote.clear();
+            }
+        }
+        return gravados;
+    }
+
+    private static BigDecimal decimal(double minimo, double maximo, int casas, Random aleatorio) {
+        return BigDecimal.valueOf(minimo + (maximo - minimo) * aleatorio.nextDouble()).setScale(casas,
+                RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,77 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.ClienteService;
+import ecommerce.service.CompraService;
+import ecommerce.service.preco.CalculadoraCustoTotal;
+import ecommerce.service.preco.RegrasPreco;
+import ecommerce.service.preco.TabelaPrecos;
+
+/**
+ * Custo de precificação por formato de carrinho. {@code calcularCustoTotal}
+ * mede o caminho do serviço (cache de cotações e agregados do carrinho);
+ * {@code calcularPercorrendoItens} mede o núcleo de ponto fixo sobre a lista
+ * de itens, como numa primeira cotação.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalcularCustoTotalBenchmark {
+
+    @Param({ "1", "10", "100", "10000" })
+    public int itens;
+
+    @Param({ "0.0", "0.5", "1.0" })
+    public double fracaoFragil;
+
+    @Param({ "NENHUM", "DEZ_POR_CENTO", "VINTE_POR_CENTO" })
+    public CarrinhosBenchmark.FaixaDesconto faixaDesconto;
+
+    @Param({ "A", "B", "C", "D" })
+    public CarrinhosBenchmark.FaixaFrete faixaFrete;
+
+    private CompraService compraService;
+    private TabelaPrecos tabela;
+    private CarrinhoDeCompras carrinho;
+
+    @Setup
+    public void preparar() {
+        compraService = new CompraService(Mockito.mock(CarrinhoDeComprasService.class),
+                Mockito.mock(ClienteService.class), Mockito.mock(IEstoqueExternal.class),
+                Mockito.mock(IPagamentoExternal.class));
+        tabela = RegrasPreco.doClasspath().atual();
+        carrinho = CarrinhosBenchmark.criar(1L, null, itens, fracaoFragil, faixaDesconto, faixaFrete);
+    }
+
+    @Benchmark
+    public BigDecimal calcularCustoTotal() {
+        return compraService.calcularCustoTotal(carrinho);
+    }
+
+    @Benchmark
+    public BigDecimal calcularPercorrendoItens() {
+        return CalculadoraCustoTotal.calcular(tabela, carrinho.getItens());
+    }
+}
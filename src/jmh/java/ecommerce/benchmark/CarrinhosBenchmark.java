@@ -0,0 +1,63 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Monta carrinhos com formato controlado para os benchmarks: quantidade de
+ * itens, fração de itens frágeis e faixas de desconto e de frete atingidas
+ * pelo carrinho inteiro.
+ */
+public final class CarrinhosBenchmark {
+
+    /** Subtotal alvo de cada faixa de desconto das regras padrão. */
+    public enum FaixaDesconto {
+        NENHUM("300.00"), DEZ_POR_CENTO("700.00"), VINTE_POR_CENTO("1500.00");
+
+        final BigDecimal subtotal;
+
+        FaixaDesconto(String subtotal) {
+            this.subtotal = new BigDecimal(subtotal);
+        }
+    }
+
+    /** Peso total alvo (kg) de cada faixa de frete das regras padrão. */
+    public enum FaixaFrete {
+        A("3"), B("8"), C("30"), D("80");
+
+        final BigDecimal peso;
+
+        FaixaFrete(String peso) {
+            this.peso = new BigDecimal(peso);
+        }
+    }
+
+    private CarrinhosBenchmark() {
+    }
+
+    public static CarrinhoDeCompras criar(long carrinhoId, Cliente cliente, int itens, double fracaoFragil,
+            FaixaDesconto desconto, FaixaFrete frete) {
+        BigDecimal quantidade = BigDecimal.valueOf(itens);
+        BigDecimal preco = desconto.subtotal.divide(quantidade, 4, RoundingMode.HALF_UP);
+        BigDecimal peso = frete.peso.divide(quantidade, 3, RoundingMode.HALF_UP);
+        int frageis = (int) Math.round(itens * fracaoFragil);
+
+        List<ItemCompra> lista = new ArrayList<>(itens);
+        for (int i = 0; i < itens; i++) {
+            long produtoId = i + 1L;
+            Produto produto = new Produto(produtoId, "Produto " + produtoId, "Benchmark", preco, peso,
+                    new BigDecimal("10.0"), new BigDecimal("10.0"), new BigDecimal("10.0"), i < frageis,
+                    TipoProduto.ELETRONICO);
+            lista.add(new ItemCompra(produtoId, produto, 1L));
+        }
+        return new CarrinhoDeCompras(carrinhoId, cliente, lista, null);
+    }
+}
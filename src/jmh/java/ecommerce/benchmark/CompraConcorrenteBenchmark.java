@@ -0,0 +1,172 @@
+package ecommerce.benchmark;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.config.ExecutoresConfig;
+import ecommerce.config.ThreadsVirtuais;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.fake.FakeEstoqueExternal;
+import ecommerce.fake.FakePagamentoExternal;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.ClienteService;
+import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import ecommerce.service.compensacao.CompensadorPagamento;
+import ecommerce.service.pedidos.RegistradorPedidos;
+import ecommerce.service.preco.CacheCotacoes;
+import ecommerce.service.preco.RegrasPreco;
+
+/**
+ * Tempo para concluir {@code concorrencia} checkouts simultâneos com estoque e
+ * pagamento lentos ({@code latenciaMs} por chamada). Vazão = concorrência /
+ * tempo da operação.
+ *
+ * PLATAFORMA reproduz o padrão atual: requisições em um pool de 200 threads
+ * (o máximo padrão do Tomcat) e estágios no pool limitado de
+ * {@link ExecutoresConfig}. VIRTUAL usa uma thread virtual por requisição e
+ * por estágio e só roda em JDK com threads virtuais; nos demais a combinação
+ * falha no setup em vez de medir o modo de plataforma com outro nome.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompraConcorrenteBenchmark {
+
+    private static final Long CARRINHO_ID = 1L;
+    private static final Long CLIENTE_ID = 1L;
+    private static final int THREADS_TOMCAT = 200;
+
+    public enum ModoExecucao { PLATAFORMA, VIRTUAL }
+
+    @Param({ "1000", "10000", "50000" })
+    public int concorrencia;
+
+    @Param({ "PLATAFORMA", "VIRTUAL" })
+    public ModoExecucao modo;
+
+    @Param({ "20" })
+    public long latenciaMs;
+
+    private ExecutorService requisicoes;
+    private ExecutorService estagios;
+    private CompraService compraService;
+
+    @Setup
+    public void preparar() {
+        if (modo == ModoExecucao.VIRTUAL) {
+            requisicoes = ThreadsVirtuais.novoExecutorPorTarefa().orElseThrow(
+                    () -> new IllegalStateException("JDK " + Runtime.version() + " sem threads virtuais."));
+            estagios = ThreadsVirtuais.novoExecutorPorTarefa().orElseThrow();
+        } else {
+            requisicoes = Executors.newFixedThreadPool(THREADS_TOMCAT);
+            estagios = ExecutoresConfig.criarExecutorEstagios(16, 256);
+        }
+
+        Cliente cliente = new Cliente(CLIENTE_ID, "Cliente Benchmark", null, null);
+        CarrinhoDeCompras carrinho = CarrinhosBenchmark.criar(CARRINHO_ID, cliente, 10, 0.5,
+                CarrinhosBenchmark.FaixaDesconto.DEZ_POR_CENTO, CarrinhosBenchmark.FaixaFrete.B);
+        CarrinhoDeComprasService carrinhoService = new CarrinhoDeComprasService(null) {
+            @Override
+            public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Cliente c) {
+                return carrinho;
+            }
+        };
+        ClienteService clienteService = new ClienteService(null) {
+            @Override
+            public Cliente buscarPorId(Long id) {
+                return cliente;
+            }
+        };
+        IPagamentoExternal pagamento = pagamentoLento();
+        compraService = new CompraService(carrinhoService, clienteService, estoqueLento(), pagamento,
+                RegrasPreco.doClasspath(), new CacheCotacoes(1_000L), estagios, Duration.ofSeconds(30),
+                CompensadorPagamento.sincrono(pagamento), RegistradorPedidos.nenhum(), MetricasCompra.nenhuma());
+        // Agregados do carrinho compartilhado calculados antes das threads concorrentes
+        compraService.calcularCustoTotal(carrinho);
+    }
+
+    @TearDown
+    public void encerrar() {
+        requisicoes.shutdownNow();
+        estagios.shutdownNow();
+    }
+
+    @Benchmark
+    public void finalizarCompras() {
+        CompletableFuture<?>[] compras = new CompletableFuture<?>[concorrencia];
+        for (int i = 0; i < concorrencia; i++) {
+            compras[i] = CompletableFuture.supplyAsync(() -> compraService.finalizarCompra(CARRINHO_ID, CLIENTE_ID),
+                    requisicoes);
+        }
+        CompletableFuture.allOf(compras).join();
+    }
+
+    private IEstoqueExternal estoqueLento() {
+        FakeEstoqueExternal estoque = new FakeEstoqueExternal();
+        return new IEstoqueExternal() {
+            @Override
+            public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+                esperar();
+                return estoque.darBaixa(produtosIds, produtosQuantidades);
+            }
+
+            @Override
+            public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+                esperar();
+                return estoque.verificarDisponibilidade(produtosIds, produtosQuantidades);
+            }
+        };
+    }
+
+    private IPagamentoExternal pagamentoLento() {
+        FakePagamentoExternal pagamento = new FakePagamentoExternal();
+        return new IPagamentoExternal() {
+            @Override
+            public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+                esperar();
+                return pagamento.autorizarPagamento(clienteId, custoTotal);
+            }
+
+            @Override
+            public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+                esperar();
+                pagamento.cancelarPagamento(clienteId, pagamentoTransacaoId);
+            }
+        };
+    }
+
+    private void esperar() {
+        try {
+            Thread.sleep(latenciaMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
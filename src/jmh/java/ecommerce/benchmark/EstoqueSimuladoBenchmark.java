@@ -0,0 +1,69 @@
+package ecommerce.benchmark;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ecommerce.external.fake.EstoqueSimulado;
+
+/**
+ * Baixas por segundo no estoque simulado com 8 threads disputando os mesmos
+ * {@code produtosQuentes} produtos; cada baixa leva 3 deles. O saldo é grande
+ * o bastante para nunca acabar durante a medição.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class EstoqueSimuladoBenchmark {
+
+    @Param({ "3", "100" })
+    public int produtosQuentes;
+
+    private EstoqueSimulado estoque;
+    private List<List<Long>> pedidos;
+    private final List<Long> quantidades = List.of(1L, 2L, 1L);
+
+    @Setup
+    public void preparar() {
+        estoque = new EstoqueSimulado(null, 0L, 1, false, Duration.ofSeconds(1), null, Clock.systemUTC());
+        for (long id = 1; id <= produtosQuentes; id++) {
+            estoque.definir(id, Long.MAX_VALUE / 2);
+        }
+        pedidos = new ArrayList<>();
+        for (long i = 0; i < 1024; i++) {
+            pedidos.add(List.of(1 + i % produtosQuentes, 1 + (i + 1) % produtosQuentes,
+                    1 + (i + 2) % produtosQuentes));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Sequencia {
+        int proximo;
+    }
+
+    @Benchmark
+    public void darBaixa(Sequencia sequencia, Blackhole buraco) {
+        List<Long> ids = pedidos.get(sequencia.proximo++ & 1023);
+        buraco.consume(estoque.darBaixa(ids, quantidades));
+    }
+}
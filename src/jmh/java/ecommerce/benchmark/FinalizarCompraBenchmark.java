@@ -0,0 +1,78 @@
+package ecommerce.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.fake.FakeCarrinhoDeComprasService;
+import ecommerce.fake.FakeClienteService;
+import ecommerce.fake.FakeEstoqueExternal;
+import ecommerce.fake.FakePagamentoExternal;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.ClienteService;
+import ecommerce.service.CompraService;
+
+/**
+ * Checkout completo com serviços externos em processo ({@link FakeEstoqueExternal}
+ * e {@link FakePagamentoExternal}), isolando o custo do próprio
+ * {@code finalizarCompra} do custo de rede.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FinalizarCompraBenchmark {
+
+    private static final Long CARRINHO_ID = 1L;
+    private static final Long CLIENTE_ID = 1L;
+
+    @Param({ "1", "10", "100", "10000" })
+    public int itens;
+
+    private CompraService compraService;
+
+    @Setup
+    public void preparar() {
+        FakeClienteService clientes = new FakeClienteService();
+        FakeCarrinhoDeComprasService carrinhos = new FakeCarrinhoDeComprasService();
+        Cliente cliente = new Cliente(CLIENTE_ID, "Cliente Benchmark", null, null);
+        clientes.salvar(cliente);
+        carrinhos.salvar(CarrinhosBenchmark.criar(CARRINHO_ID, cliente, itens, 0.5,
+                CarrinhosBenchmark.FaixaDesconto.DEZ_POR_CENTO, CarrinhosBenchmark.FaixaFrete.B));
+
+        CarrinhoDeComprasService carrinhoService = new CarrinhoDeComprasService(null) {
+            @Override
+            public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Cliente c) {
+                return carrinhos.buscarPorCarrinhoIdEClienteId(carrinhoId, c);
+            }
+        };
+        ClienteService clienteService = new ClienteService(null) {
+            @Override
+            public Cliente buscarPorId(Long id) {
+                return clientes.buscarPorId(id);
+            }
+        };
+        compraService = new CompraService(carrinhoService, clienteService, new FakeEstoqueExternal(),
+                new FakePagamentoExternal());
+    }
+
+    @Benchmark
+    public CompraDTO finalizarCompra() {
+        return compraService.finalizarCompra(CARRINHO_ID, CLIENTE_ID);
+    }
+}
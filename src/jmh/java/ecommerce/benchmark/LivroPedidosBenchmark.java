@@ -0,0 +1,71 @@
+package ecommerce.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.service.pedidos.LivroPedidos;
+import ecommerce.service.pedidos.PedidoFinalizado;
+
+/**
+ * Acréscimos por segundo ao livro de pedidos com 8 threads, pedidos de 5
+ * itens e segmentos de 64 MB. A sincronização em grupo roda a cada 2 ms na
+ * sua própria thread; as threads medidas só acrescentam.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LivroPedidosBenchmark {
+
+    private static final PedidoFinalizado PEDIDO = new PedidoFinalizado(1L, 1L, 12345L, new BigDecimal("249.90"),
+            List.of(1L, 2L, 3L, 4L, 5L), List.of(1L, 2L, 1L, 3L, 1L));
+
+    @Param({ "64" })
+    public int tamanhoSegmentoMb;
+
+    private Path diretorio;
+    private LivroPedidos livro;
+
+    @Setup
+    public void preparar() throws IOException {
+        diretorio = Files.createTempDirectory("livro-pedidos-benchmark");
+        livro = new LivroPedidos(diretorio, tamanhoSegmentoMb << 20, Duration.ofMillis(2), false);
+    }
+
+    @TearDown
+    public void encerrar() throws IOException {
+        livro.close();
+        try (Stream<Path> arquivos = Files.walk(diretorio)) {
+            arquivos.sorted(Comparator.reverseOrder()).forEach(arquivo -> arquivo.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void registrar() {
+        livro.registrar(PEDIDO);
+    }
+}
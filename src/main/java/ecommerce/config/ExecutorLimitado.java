@@ -0,0 +1,55 @@
+package ecommerce.config;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limita o número de tarefas em andamento de um executor sem fila própria,
+ * como o de threads virtuais. Acima do limite a tarefa é recusada com
+ * {@link RejectedExecutionException}, o mesmo sinal de um pool com fila cheia.
+ */
+public final class ExecutorLimitado implements Executor
+{
+	private final ExecutorService executor;
+	private final Semaphore vagas;
+
+	public ExecutorLimitado(ExecutorService executor, int limite)
+	{
+		this.executor = executor;
+		this.vagas = new Semaphore(limite);
+	}
+
+	@Override
+	public void execute(Runnable tarefa)
+	{
+		if (!vagas.tryAcquire())
+		{
+			throw new RejectedExecutionException("Limite de tarefas em andamento atingido.");
+		}
+		try
+		{
+			executor.execute(() -> {
+				try
+				{
+					tarefa.run();
+				}
+				finally
+				{
+					vagas.release();
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			vagas.release();
+			throw e;
+		}
+	}
+
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+}
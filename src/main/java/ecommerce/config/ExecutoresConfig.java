@@ -0,0 +1,147 @@
+package ecommerce.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Executores dedicados do fluxo de compra, separados do pool comum para que
+ * chamadas bloqueantes aos serviços externos não disputem threads com o
+ * restante da aplicação.
+ *
+ * Com {@code ecommerce.compra.threads-virtuais=true} e um JDK com threads
+ * virtuais, as requisições do Tomcat, a compra assíncrona e os estágios da
+ * compra passam a rodar em uma thread virtual por tarefa; a compra assíncrona
+ * mantém o limite de tarefas em andamento (threads + fila) por
+ * {@link ExecutorLimitado}. Em JDKs sem suporte valem os pools de plataforma.
+ */
+@Configuration
+public class ExecutoresConfig
+{
+	public static final String EXECUTOR_ESTAGIOS_COMPRA = "executorEstagiosCompra";
+	public static final String EXECUTOR_COMPRA_ASSINCRONA = "executorCompraAssincrona";
+	public static final String POOL_PRECIFICACAO_LOTE = "poolPrecificacaoLote";
+
+	private static final Logger LOG = LoggerFactory.getLogger(ExecutoresConfig.class);
+
+	private final boolean threadsVirtuais;
+
+	public ExecutoresConfig(@Value("${ecommerce.compra.threads-virtuais:false}") boolean threadsVirtuais)
+	{
+		if (threadsVirtuais && !ThreadsVirtuais.suportadas())
+		{
+			LOG.warn("Threads virtuais pedidas, mas o JDK {} não as suporta; usando threads de plataforma.",
+					Runtime.version());
+		}
+		this.threadsVirtuais = threadsVirtuais && ThreadsVirtuais.suportadas();
+	}
+
+	@Bean(name = EXECUTOR_ESTAGIOS_COMPRA, destroyMethod = "shutdown")
+	public ExecutorService executorEstagiosCompra(
+			@Value("${ecommerce.compra.estagios.threads:16}") int threads,
+			@Value("${ecommerce.compra.estagios.fila:256}") int fila)
+	{
+		if (threadsVirtuais)
+		{
+			return ThreadsVirtuais.novoExecutorPorTarefa().orElseThrow();
+		}
+		return criarExecutorEstagios(threads, fila);
+	}
+
+	/**
+	 * Executor do endpoint assíncrono de compra. Recusa tarefas quando a fila
+	 * enche, para que o excesso de carga vire resposta 503 em vez de prender a
+	 * thread do servlet.
+	 */
+	@Bean(name = EXECUTOR_COMPRA_ASSINCRONA, destroyMethod = "shutdown")
+	public Executor executorCompraAssincrona(
+			@Value("${ecommerce.compra.assincrona.threads:64}") int threads,
+			@Value("${ecommerce.compra.assincrona.fila:1000}") int fila)
+	{
+		if (threadsVirtuais)
+		{
+			return new ExecutorLimitado(ThreadsVirtuais.novoExecutorPorTarefa().orElseThrow(), threads + fila);
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(fila), fabricaDeThreads("compra-assincrona-"),
+				new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Pool fork-join da precificação em lote, compartilhado entre as chamadas
+	 * e separado do pool comum. Com paralelismo 0, deixa um núcleo livre para
+	 * o tráfego de checkout que roda em paralelo com o lote.
+	 */
+	@Bean(name = POOL_PRECIFICACAO_LOTE, destroyMethod = "shutdown")
+	public ForkJoinPool poolPrecificacaoLote(@Value("${ecommerce.compra.lote.paralelismo:0}") int paralelismo)
+	{
+		return criarPoolPrecificacaoLote(paralelismo);
+	}
+
+	/** Troca o pool de requisições do Tomcat por uma thread virtual por requisição. */
+	@Bean
+	@ConditionalOnProperty(name = "ecommerce.compra.threads-virtuais", havingValue = "true")
+	public TomcatProtocolHandlerCustomizer<?> threadsVirtuaisNoTomcat()
+	{
+		return protocolo -> {
+			if (threadsVirtuais)
+			{
+				protocolo.setExecutor(ThreadsVirtuais.novoExecutorPorTarefa().orElseThrow());
+			}
+		};
+	}
+
+	/**
+	 * Pool fixo com fila limitada. Quando a fila enche, a tarefa roda na thread
+	 * que a submeteu: a compra perde a sobreposição, mas não falha.
+	 */
+	public static ExecutorService criarExecutorEstagios(int threads, int fila)
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(fila), fabricaDeThreads("compra-estagio-"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	public static ForkJoinPool criarPoolPrecificacaoLote(int paralelismo)
+	{
+		if (paralelismo < 0)
+		{
+			throw new IllegalArgumentException("Paralelismo do lote não pode ser negativo.");
+		}
+		int threads = paralelismo > 0 ? paralelismo : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		AtomicInteger contador = new AtomicInteger();
+		return new ForkJoinPool(threads, pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("precificacao-lote-" + contador.incrementAndGet());
+			return thread;
+		}, null, false);
+	}
+
+	static ThreadFactory fabricaDeThreads(String prefixo)
+	{
+		AtomicInteger contador = new AtomicInteger();
+		return tarefa -> {
+			Thread thread = new Thread(tarefa, prefixo + contador.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,53 @@
+package ecommerce.config;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import ecommerce.rastreamento.ColetorSpans;
+import ecommerce.rastreamento.ExportadorSpans;
+import ecommerce.rastreamento.ExportadorSpansArquivo;
+import ecommerce.rastreamento.Rastreador;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Rastreamento distribuído da compra, sem coletor externo: os spans
+ * amostrados vão para um arquivo local ({@code exportador=arquivo}) ou ficam
+ * em memória ({@code exportador=memoria}). Com taxa de amostragem zero, limiar
+ * da cauda zero e sem amostragem por erro, o rastreamento fica desligado.
+ */
+@Configuration
+public class RastreamentoConfig
+{
+	@Bean
+	public ExportadorSpans exportadorSpans(
+			@Value("${ecommerce.rastreamento.exportador:arquivo}") String exportador,
+			@Value("${ecommerce.rastreamento.arquivo:${java.io.tmpdir}/ecommerce-spans.jsonl}") String arquivo,
+			@Value("${ecommerce.rastreamento.capacidade:10000}") int capacidade,
+			@Value("${ecommerce.rastreamento.intervalo-gravacao:1s}") Duration intervaloGravacao,
+			MeterRegistry registro)
+	{
+		switch (exportador)
+		{
+			case "arquivo":
+				return new ExportadorSpansArquivo(Paths.get(arquivo), capacidade, intervaloGravacao, registro);
+			case "memoria":
+				return new ColetorSpans(capacidade);
+			default:
+				throw new IllegalArgumentException("Exportador de spans desconhecido: " + exportador);
+		}
+	}
+
+	@Bean
+	public Rastreador rastreador(ExportadorSpans exportadorSpans,
+			@Value("${ecommerce.rastreamento.taxa-amostragem:0.01}") double taxaAmostragem,
+			@Value("${ecommerce.rastreamento.cauda.limiar:500ms}") Duration limiarCauda,
+			@Value("${ecommerce.rastreamento.cauda.erros:true}") boolean caudaErros,
+			MeterRegistry registro)
+	{
+		return new Rastreador(taxaAmostragem, limiarCauda, caudaErros, exportadorSpans, registro);
+	}
+}
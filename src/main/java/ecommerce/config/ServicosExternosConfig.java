@@ -0,0 +1,125 @@
+package ecommerce.config;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import ecommerce.external.EstoqueAgrupado;
+import ecommerce.external.EstoqueComHedge;
+import ecommerce.external.EstoqueRastreado;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.PagamentoRastreado;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import ecommerce.external.resiliencia.ConfiguracaoProtecao;
+import ecommerce.external.resiliencia.EstoqueProtegido;
+import ecommerce.external.resiliencia.PagamentoProtegido;
+import ecommerce.external.resiliencia.ProtecaoBackend;
+import ecommerce.rastreamento.Rastreador;
+import ecommerce.service.compensacao.CompensadorPagamento;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Monta os clientes de estoque e pagamento usados pela compra: o cliente
+ * envolvido pelos decoradores habilitados. Os beans são {@link Primary} para
+ * que quem injeta a interface receba a pilha completa e não o cliente cru.
+ *
+ * No estoque, a ordem é agrupamento, hedge e proteção: a chamada combinada
+ * é a que pode ganhar uma reserva, e cada cópia ocupa uma vaga e conta no
+ * disjuntor. Os parâmetros de cada proteção vêm de
+ * {@code ecommerce.externos.<backend>.*}. O span de cada chamada envolve o
+ * cliente cru, abaixo de todos os decoradores.
+ */
+@Configuration
+public class ServicosExternosConfig
+{
+	private final Environment ambiente;
+	private final MeterRegistry registro;
+	private final Rastreador rastreador;
+
+	public ServicosExternosConfig(Environment ambiente, MeterRegistry registro, Rastreador rastreador)
+	{
+		this.ambiente = ambiente;
+		this.registro = registro;
+		this.rastreador = rastreador;
+	}
+
+	@Bean
+	public ProtecaoBackend protecaoEstoque()
+	{
+		return new ProtecaoBackend("estoque", configuracao("estoque"), Clock.systemUTC(), registro);
+	}
+
+	@Bean
+	public ProtecaoBackend protecaoPagamento()
+	{
+		return new ProtecaoBackend(PagamentoProtegido.BACKEND, configuracao(PagamentoProtegido.BACKEND),
+				Clock.systemUTC(), registro);
+	}
+
+	/** Threads das chamadas de verificação com hedge; a concorrência é limitada pela proteção. */
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService executorHedgeEstoque()
+	{
+		return Executors.newCachedThreadPool(ExecutoresConfig.fabricaDeThreads("estoque-hedge-"));
+	}
+
+	@Bean
+	@Primary
+	public IEstoqueExternal estoqueExternal(EstoqueSimulado estoque,
+			@Value("${ecommerce.estoque.agrupamento.janela:0ms}") Duration janela,
+			@Value("${ecommerce.estoque.agrupamento.tamanho-maximo:64}") int tamanhoMaximo,
+			@Value("${ecommerce.estoque.hedge.habilitado:false}") boolean hedge,
+			@Value("${ecommerce.estoque.hedge.percentil:95}") int percentil,
+			@Value("${ecommerce.estoque.hedge.orcamento-percentual:5}") int orcamentoPercentual,
+			@Value("${ecommerce.estoque.hedge.amostras-minimas:100}") int amostrasMinimas)
+	{
+		IEstoqueExternal cliente = new EstoqueProtegido(new EstoqueRastreado(estoque, rastreador), protecaoEstoque());
+		if (hedge)
+		{
+			cliente = new EstoqueComHedge(cliente, executorHedgeEstoque(), percentil, orcamentoPercentual,
+					amostrasMinimas, registro);
+		}
+		if (!janela.isZero())
+		{
+			cliente = new EstoqueAgrupado(cliente, janela, tamanhoMaximo, registro);
+		}
+		return cliente;
+	}
+
+	/**
+	 * Autorizações que chegam depois do tempo limite são canceladas pelo
+	 * {@link CompensadorPagamento}, obtido só no uso: a outbox depende deste
+	 * mesmo bean para executar os cancelamentos.
+	 */
+	@Bean
+	@Primary
+	public IPagamentoExternal pagamentoExternal(PagamentoSimulado pagamento,
+			ObjectProvider<CompensadorPagamento> compensador)
+	{
+		return new PagamentoProtegido(new PagamentoRastreado(pagamento, rastreador), protecaoPagamento(),
+				(clienteId, transacaoId) -> compensador.getObject().cancelar(clienteId, transacaoId));
+	}
+
+	private ConfiguracaoProtecao configuracao(String backend)
+	{
+		String prefixo = "ecommerce.externos." + backend + ".";
+		return new ConfiguracaoProtecao(
+				ambiente.getProperty(prefixo + "limite-concorrencia", Integer.class, 64),
+				ambiente.getProperty(prefixo + "tempo-limite", Duration.class, Duration.ofSeconds(2)),
+				ambiente.getProperty(prefixo + "janela-chamadas", Integer.class, 50),
+				ambiente.getProperty(prefixo + "minimo-chamadas", Integer.class, 20),
+				ambiente.getProperty(prefixo + "taxa-falha-percentual", Integer.class, 50),
+				ambiente.getProperty(prefixo + "espera-aberto", Duration.class, Duration.ofSeconds(10)),
+				ambiente.getProperty(prefixo + "sondas-semiaberto", Integer.class, 3));
+	}
+}
@@ -0,0 +1,61 @@
+package ecommerce.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Acesso a threads virtuais sem exigir o JDK 21 na compilação: o executor é
+ * obtido por reflexão e, em JDKs mais antigos, {@link #novoExecutorPorTarefa()}
+ * devolve vazio para que o chamador use threads de plataforma.
+ *
+ * O suporte é decidido criando (e encerrando) um executor na carga da classe,
+ * e não só pela existência do método: nos JDKs 19 e 20 ele existe, mas sem
+ * {@code --enable-preview} falha ao ser chamado.
+ */
+public final class ThreadsVirtuais
+{
+	private static final Method NOVO_EXECUTOR = localizar();
+
+	private ThreadsVirtuais()
+	{
+	}
+
+	public static boolean suportadas()
+	{
+		return NOVO_EXECUTOR != null;
+	}
+
+	/** Executor que cria uma thread virtual por tarefa, se o JDK tiver suporte. */
+	public static Optional<ExecutorService> novoExecutorPorTarefa()
+	{
+		if (NOVO_EXECUTOR == null)
+		{
+			return Optional.empty();
+		}
+		try
+		{
+			return Optional.of((ExecutorService) NOVO_EXECUTOR.invoke(null));
+		}
+		catch (IllegalAccessException | InvocationTargetException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	private static Method localizar()
+	{
+		try
+		{
+			Method novoExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			((ExecutorService) novoExecutor.invoke(null)).shutdown();
+			return novoExecutor;
+		}
+		catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+}
@@ -1,11 +1,27 @@
 package ecommerce.controller;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import ecommerce.config.ExecutoresConfig;
 import ecommerce.dto.CompraDTO;
+import ecommerce.dto.PedidoCompraDTO;
+import ecommerce.dto.ResultadoCompraDTO;
+import ecommerce.external.resiliencia.BackendIndisponivelException;
+import ecommerce.external.resiliencia.PagamentoProtegido;
+import ecommerce.rastreamento.ContextoRastreamento;
 import ecommerce.service.CompraService;
 
 @RestController
@@ -13,34 +29,182 @@ import ecommerce.service.CompraService;
 public class CompraController
 {
 
+	/** Cabeçalho com a chave que identifica as repetições de um mesmo pedido. */
+	public static final String CABECALHO_IDEMPOTENCIA = "Idempotency-Key";
+
+	private static final int TAMANHO_MAXIMO_CHAVE = 255;
+
 	private final CompraService compraService;
+	private final RespostasIdempotentes respostasIdempotentes;
+
+	private final Executor executorAssincrono;
+	private final long timeoutAssincronoMs;
+	private final int tamanhoMaximoLote;
 
 	@Autowired
-	public CompraController(CompraService compraService)
+	public CompraController(CompraService compraService, RespostasIdempotentes respostasIdempotentes,
+			@Qualifier(ExecutoresConfig.EXECUTOR_COMPRA_ASSINCRONA) Executor executorAssincrono,
+			@Value("${ecommerce.compra.assincrona.timeout-ms:10000}") long timeoutAssincronoMs,
+			@Value("${ecommerce.compra.lote.tamanho-maximo:1000}") int tamanhoMaximoLote)
 	{
 		this.compraService = compraService;
+		this.respostasIdempotentes = respostasIdempotentes;
+		this.executorAssincrono = executorAssincrono;
+		this.timeoutAssincronoMs = timeoutAssincronoMs;
+		this.tamanhoMaximoLote = tamanhoMaximoLote;
 	}
 
+	/**
+	 * Com o cabeçalho {@value #CABECALHO_IDEMPOTENCIA}, repetições do pedido
+	 * recebem a resposta da primeira execução em vez de refazer a compra (ver
+	 * {@link RespostasIdempotentes}). A mesma chave com outro carrinho resulta em
+	 * 422.
+	 */
 	@PostMapping("/finalizar")
-	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId)
+	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId,
+			@RequestHeader(name = CABECALHO_IDEMPOTENCIA, required = false) String chaveIdempotencia)
+	{
+		if (chaveIdempotencia == null || chaveIdempotencia.isBlank())
+		{
+			return executarCompra(carrinhoId, clienteId);
+		}
+		if (chaveIdempotencia.length() > TAMANHO_MAXIMO_CHAVE)
+		{
+			return ResponseEntity.badRequest().body(new CompraDTO(false, null, "Chave de idempotência muito longa."));
+		}
+		try
+		{
+			return respostasIdempotentes.executar(chaveIdempotencia, carrinhoId, clienteId,
+					() -> executarCompraIdempotente(carrinhoId, clienteId));
+		}
+		catch (IllegalArgumentException e)
+		{
+			return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(new CompraDTO(false, null, e.getMessage()));
+		}
+		catch (BackendIndisponivelException e)
+		{
+			return responderErro(e);
+		}
+	}
+
+	/**
+	 * Como {@link #executarCompra(Long, Long)}, mas o tempo limite de um
+	 * serviço que não é o pagamento sai como exceção: a compra parou antes de
+	 * cobrar, então a chave é liberada para a repetição em vez de guardar o 504.
+	 */
+	private ResponseEntity<CompraDTO> executarCompraIdempotente(Long carrinhoId, Long clienteId)
+	{
+		try
+		{
+			return ResponseEntity.ok(compraService.finalizarCompra(carrinhoId, clienteId));
+		}
+		catch (BackendIndisponivelException e)
+		{
+			if (!PagamentoProtegido.BACKEND.equals(e.getBackend()))
+			{
+				throw e;
+			}
+			return responderErro(e);
+		}
+		catch (Exception e)
+		{
+			return responderErro(e);
+		}
+	}
+
+	private ResponseEntity<CompraDTO> executarCompra(Long carrinhoId, Long clienteId)
 	{
 		try
 		{
 			CompraDTO compraDTO = compraService.finalizarCompra(carrinhoId, clienteId);
 			return ResponseEntity.ok(compraDTO);
 		}
-		catch (IllegalArgumentException e)
+		catch (Exception e)
+		{
+			return responderErro(e);
+		}
+	}
+
+	/**
+	 * Mesma compra de {@link #finalizarCompra(Long, Long, String)}, executada em um
+	 * executor limitado: a thread do servlet é liberada enquanto os serviços
+	 * externos respondem. Fila cheia resulta em 503 e estouro do tempo limite em
+	 * 504; como a compra não é interrompida no meio, ela pode ainda concluir
+	 * depois de um 504.
+	 */
+	@PostMapping("/finalizar/async")
+	public CompletableFuture<ResponseEntity<CompraDTO>> finalizarCompraAssincrona(@RequestParam Long carrinhoId,
+			@RequestParam Long clienteId)
+	{
+		CompletableFuture<CompraDTO> compra;
+		try
 		{
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+			compra = CompletableFuture.supplyAsync(
+					ContextoRastreamento.propagar(() -> compraService.finalizarCompra(carrinhoId, clienteId)),
+					executorAssincrono);
 		}
-		catch (IllegalStateException e)
+		catch (RejectedExecutionException e)
 		{
-			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
+			return CompletableFuture.completedFuture(responderErro(e));
+		}
+		return compra.orTimeout(timeoutAssincronoMs, TimeUnit.MILLISECONDS)
+				.handle((compraDTO, erro) -> erro == null ? ResponseEntity.ok(compraDTO) : responderErro(erro));
+	}
+
+	/**
+	 * Finaliza vários carrinhos em uma requisição. A resposta é 200 com um
+	 * resultado por pedido, na ordem enviada, cada um com o status que
+	 * {@code POST /finalizar} daria; só o lote vazio ou acima do limite é
+	 * recusado por inteiro.
+	 */
+	@PostMapping("/finalizar/lote")
+	public ResponseEntity<?> finalizarCompraEmLote(@RequestBody List<PedidoCompraDTO> pedidos)
+	{
+		if (pedidos == null || pedidos.isEmpty() || pedidos.size() > tamanhoMaximoLote)
+		{
+			return ResponseEntity.badRequest().body(new CompraDTO(false, null,
+					"O lote deve ter entre 1 e " + tamanhoMaximoLote + " pedidos."));
+		}
+		try
+		{
+			List<ResultadoCompraDTO> resultados = compraService.finalizarCompraEmLote(pedidos);
+			return ResponseEntity.ok(resultados);
 		}
 		catch (Exception e)
 		{
-			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-					.body(new CompraDTO(false, null, "Erro ao processar compra."));
+			return responderErro(e);
+		}
+	}
+
+	private static ResponseEntity<CompraDTO> responderErro(Throwable erro)
+	{
+		Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+		if (causa instanceof IllegalArgumentException)
+		{
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, causa.getMessage()));
+		}
+		if (causa instanceof IllegalStateException)
+		{
+			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, causa.getMessage()));
+		}
+		if (causa instanceof BackendIndisponivelException)
+		{
+			HttpStatus status = ((BackendIndisponivelException) causa)
+					.getMotivo() == BackendIndisponivelException.Motivo.TEMPO_LIMITE ? HttpStatus.GATEWAY_TIMEOUT
+							: HttpStatus.SERVICE_UNAVAILABLE;
+			return ResponseEntity.status(status).body(new CompraDTO(false, null, causa.getMessage()));
+		}
+		if (causa instanceof RejectedExecutionException)
+		{
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.body(new CompraDTO(false, null, "Serviço sobrecarregado, tente novamente."));
+		}
+		if (causa instanceof TimeoutException)
+		{
+			return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+					.body(new CompraDTO(false, null, "Tempo limite excedido."));
 		}
+		return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+				.body(new CompraDTO(false, null, "Erro ao processar compra."));
 	}
 }
@@ -0,0 +1,162 @@
+package ecommerce.controller;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ecommerce.dto.CompraDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Respostas de compra por chave de idempotência, para que a repetição de um
+ * pedido pelo cliente não passe de novo pelo pagamento. A primeira requisição
+ * de uma chave executa a compra; as repetições que chegam enquanto ela roda
+ * esperam até {@code espera} e recebem a mesma resposta, ou 409 se a primeira
+ * ainda não terminou, e as que chegam depois recebem a resposta guardada.
+ *
+ * Só respostas definitivas ficam guardadas (2xx e 4xx), e também o 504: o
+ * controlador só responde com 504 o tempo limite do pagamento, que pode ter
+ * autorizado a cobrança, e refazer a compra com a mesma chave arriscaria
+ * cobrar de novo. Os tempos limite anteriores ao pagamento chegam aqui como
+ * exceção. Os demais erros do servidor e as exceções liberam a chave, para
+ * que a repetição tente de novo. A chave vale
+ * por {@code ttl} a partir da primeira requisição; o armazenamento é limitado
+ * e, se uma chave for removida por tamanho, a repetição volta a executar a
+ * compra.
+ */
+@Component
+public class RespostasIdempotentes
+{
+	private static final Duration ESPERA_PADRAO = Duration.ofSeconds(10);
+
+	private final Cache<String, Entrada> entradas;
+	private final Duration espera;
+	private final Counter repeticoes;
+
+	public RespostasIdempotentes(Duration ttl, long tamanhoMaximo)
+	{
+		this(ttl, tamanhoMaximo, ESPERA_PADRAO);
+	}
+
+	public RespostasIdempotentes(Duration ttl, long tamanhoMaximo, Duration espera)
+	{
+		this(ttl, tamanhoMaximo, espera, new SimpleMeterRegistry());
+	}
+
+	@Autowired
+	public RespostasIdempotentes(@Value("${ecommerce.compra.idempotencia.ttl:24h}") Duration ttl,
+			@Value("${ecommerce.compra.idempotencia.tamanho-maximo:100000}") long tamanhoMaximo,
+			@Value("${ecommerce.compra.idempotencia.espera:10s}") Duration espera,
+			MeterRegistry registro)
+	{
+		this.espera = espera;
+		this.entradas = Caffeine.newBuilder()
+				.expireAfterWrite(ttl)
+				.maximumSize(tamanhoMaximo)
+				.build();
+		this.repeticoes = Counter.builder("compra.idempotencia.repeticoes")
+				.description("Requisições respondidas pela resposta de outra com a mesma chave")
+				.register(registro);
+	}
+
+	/**
+	 * Executa {@code compra} uma única vez por chave e cliente. A mesma chave
+	 * com outro carrinho é recusada com {@link IllegalArgumentException}.
+	 */
+	public ResponseEntity<CompraDTO> executar(String chave, Long carrinhoId, Long clienteId,
+			Supplier<ResponseEntity<CompraDTO>> compra)
+	{
+		// A chave é do cliente: clientes diferentes não compartilham respostas
+		String chaveCliente = clienteId + ":" + chave;
+		Entrada nova = new Entrada(carrinhoId);
+		ConcurrentMap<String, Entrada> mapa = entradas.asMap();
+		Entrada existente = mapa.putIfAbsent(chaveCliente, nova);
+		if (existente != null)
+		{
+			if (!Objects.equals(existente.carrinhoId, carrinhoId))
+			{
+				throw new IllegalArgumentException("Chave de idempotência já usada em outro pedido.");
+			}
+			repeticoes.increment();
+			return aguardar(existente);
+		}
+
+		ResponseEntity<CompraDTO> resposta;
+		try
+		{
+			resposta = compra.get();
+		}
+		catch (RuntimeException e)
+		{
+			mapa.remove(chaveCliente, nova);
+			nova.resposta.completeExceptionally(e);
+			throw e;
+		}
+		if (resposta.getStatusCode().is5xxServerError() && resposta.getStatusCode() != HttpStatus.GATEWAY_TIMEOUT)
+		{
+			mapa.remove(chaveCliente, nova);
+		}
+		nova.resposta.complete(resposta);
+		return resposta;
+	}
+
+	private ResponseEntity<CompraDTO> aguardar(Entrada existente)
+	{
+		try
+		{
+			return existente.resposta.get(espera.toNanos(), TimeUnit.NANOSECONDS);
+		}
+		catch (ExecutionException e)
+		{
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new IllegalStateException(e.getCause());
+		}
+		catch (TimeoutException e)
+		{
+			return emAndamento();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return emAndamento();
+		}
+	}
+
+	private static ResponseEntity<CompraDTO> emAndamento()
+	{
+		return ResponseEntity.status(HttpStatus.CONFLICT)
+				.body(new CompraDTO(false, null, "Compra com esta chave de idempotência ainda em andamento."));
+	}
+
+	public long tamanhoEstimado()
+	{
+		return entradas.estimatedSize();
+	}
+
+	private static final class Entrada
+	{
+		private final Long carrinhoId;
+		private final CompletableFuture<ResponseEntity<CompraDTO>> resposta = new CompletableFuture<>();
+
+		Entrada(Long carrinhoId)
+		{
+			this.carrinhoId = carrinhoId;
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package ecommerce.dto;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+/** Os acessores não seguem o padrão get, por isso o JSON é lido dos campos. */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
 public class CompraDTO
 {
 	private Boolean sucesso;
@@ -0,0 +1,22 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+public class CotacaoDTO {
+    private final BigDecimal custoTotal;
+    private final String versaoRegras;
+
+    public CotacaoDTO(BigDecimal custoTotal, String versaoRegras) {
+        this.custoTotal = custoTotal;
+        this.versaoRegras = versaoRegras;
+    }
+
+    public BigDecimal custoTotal() {
+        return custoTotal;
+    }
+
+    /** Versão da tabela de regras de preço que produziu o valor. */
+    public String versaoRegras() {
+        return versaoRegras;
+    }
+}
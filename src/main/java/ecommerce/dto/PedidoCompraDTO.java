@@ -0,0 +1,23 @@
+package ecommerce.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PedidoCompraDTO {
+    private final Long carrinhoId;
+    private final Long clienteId;
+
+    @JsonCreator
+    public PedidoCompraDTO(@JsonProperty("carrinhoId") Long carrinhoId, @JsonProperty("clienteId") Long clienteId) {
+        this.carrinhoId = carrinhoId;
+        this.clienteId = clienteId;
+    }
+
+    public Long carrinhoId() {
+        return carrinhoId;
+    }
+
+    public Long clienteId() {
+        return clienteId;
+    }
+}
@@ -0,0 +1,36 @@
+package ecommerce.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+public class ReservaEstoqueDTO {
+    private final Boolean reservado;
+    private final String token;
+    private final Instant expiraEm;
+    private final List<Long> idsProdutosIndisponiveis;
+
+    public ReservaEstoqueDTO(Boolean reservado, String token, Instant expiraEm, List<Long> idsProdutosIndisponiveis) {
+        this.reservado = reservado;
+        this.token = token;
+        this.expiraEm = expiraEm;
+        this.idsProdutosIndisponiveis = idsProdutosIndisponiveis;
+    }
+
+    public Boolean reservado() {
+        return reservado;
+    }
+
+    /** Identifica a reserva em {@code confirmarReserva} e {@code liberarReserva}; nulo se nada foi reservado. */
+    public String token() {
+        return token;
+    }
+
+    /** Instante a partir do qual o estoque libera a reserva por conta própria. */
+    public Instant expiraEm() {
+        return expiraEm;
+    }
+
+    public List<Long> idsProdutosIndisponiveis() {
+        return idsProdutosIndisponiveis;
+    }
+}
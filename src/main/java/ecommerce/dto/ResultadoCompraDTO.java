@@ -0,0 +1,51 @@
+package ecommerce.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+/**
+ * Resultado de um pedido dentro de um lote de compras. {@code status} segue o
+ * código HTTP que o mesmo pedido receberia em {@code POST /finalizar}.
+ */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class ResultadoCompraDTO {
+    private final Long carrinhoId;
+    private final Long clienteId;
+    private final int status;
+    private final Boolean sucesso;
+    private final Long transacaoPagamentoId;
+    private final String mensagem;
+
+    public ResultadoCompraDTO(Long carrinhoId, Long clienteId, int status, Boolean sucesso,
+            Long transacaoPagamentoId, String mensagem) {
+        this.carrinhoId = carrinhoId;
+        this.clienteId = clienteId;
+        this.status = status;
+        this.sucesso = sucesso;
+        this.transacaoPagamentoId = transacaoPagamentoId;
+        this.mensagem = mensagem;
+    }
+
+    public Long carrinhoId() {
+        return carrinhoId;
+    }
+
+    public Long clienteId() {
+        return clienteId;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public Boolean sucesso() {
+        return sucesso;
+    }
+
+    public Long transacaoPagamentoId() {
+        return transacaoPagamentoId;
+    }
+
+    public String mensagem() {
+        return mensagem;
+    }
+}
@@ -0,0 +1,232 @@
+package ecommerce.entity;
+
+import java.util.List;
+import java.util.Objects;
+
+import ecommerce.service.preco.CalculadoraCustoTotal;
+
+/**
+ * Retrato imutável dos agregados de precificação de um carrinho: subtotal em
+ * 1/10.000 de real, pesos físico e faturável em gramas e unidades frágeis.
+ * Itens cujos valores não cabem no ponto fixo deixam o retrato inexato, e
+ * nesse caso a precificação volta a percorrer a lista.
+ *
+ * Cada item contribui com uma parcela que guarda o produto, sua
+ * {@link Produto#getVersao() versão} e {@link Produto#getRevisao() revisão}
+ * e a quantidade de onde saiu. Um novo
+ * retrato reaproveita as parcelas que ainda conferem com os itens e refaz só
+ * as dos itens que mudaram; a alteração de um produto afeta apenas os
+ * carrinhos que o contêm.
+ */
+public final class AgregadosCarrinho
+{
+	private static final Parcela[] SEM_PARCELAS = new Parcela[0];
+
+	static final AgregadosCarrinho VAZIO = somar(SEM_PARCELAS);
+
+	private final Parcela[] parcelas;
+	private final long subtotal;
+	private final long pesoGramas;
+	private final long pesoFaturavelGramas;
+	private final long unidadesFrageis;
+	private final boolean exato;
+
+	private AgregadosCarrinho(Parcela[] parcelas, long subtotal, long pesoGramas, long pesoFaturavelGramas,
+			long unidadesFrageis, boolean exato)
+	{
+		this.parcelas = parcelas;
+		this.subtotal = subtotal;
+		this.pesoGramas = pesoGramas;
+		this.pesoFaturavelGramas = pesoFaturavelGramas;
+		this.unidadesFrageis = unidadesFrageis;
+		this.exato = exato;
+	}
+
+	/**
+	 * Este retrato, se ainda representa {@code itens}, ou um novo que
+	 * reaproveita as parcelas que conferem.
+	 */
+	AgregadosCarrinho conferir(List<ItemCompra> itens)
+	{
+		int tamanho = itens.size();
+		Parcela[] novas = null;
+		for (int i = 0; i < tamanho; i++)
+		{
+			ItemCompra item = itens.get(i);
+			Parcela parcela = i < parcelas.length ? parcelas[i] : null;
+			if (parcela != null && parcela.confere(item))
+			{
+				if (novas != null)
+				{
+					novas[i] = parcela;
+				}
+				continue;
+			}
+			if (novas == null)
+			{
+				novas = new Parcela[tamanho];
+				System.arraycopy(parcelas, 0, novas, 0, Math.min(i, parcelas.length));
+			}
+			novas[i] = Parcela.de(item);
+		}
+		if (novas == null)
+		{
+			if (tamanho == parcelas.length)
+			{
+				return this;
+			}
+			novas = new Parcela[tamanho];
+			System.arraycopy(parcelas, 0, novas, 0, tamanho);
+		}
+		return somar(novas);
+	}
+
+	private static AgregadosCarrinho somar(Parcela[] parcelas)
+	{
+		long subtotal = 0L;
+		long pesoGramas = 0L;
+		long pesoFaturavelGramas = 0L;
+		long unidadesFrageis = 0L;
+		boolean exato = true;
+		for (Parcela parcela : parcelas)
+		{
+			if (!parcela.exata)
+			{
+				exato = false;
+				continue;
+			}
+			try
+			{
+				subtotal = Math.addExact(subtotal, parcela.valor);
+				pesoGramas = Math.addExact(pesoGramas, parcela.peso);
+				pesoFaturavelGramas = Math.addExact(pesoFaturavelGramas, parcela.pesoFaturavel);
+				unidadesFrageis = Math.addExact(unidadesFrageis, parcela.frageis);
+			}
+			catch (ArithmeticException e)
+			{
+				exato = false;
+			}
+		}
+		return new AgregadosCarrinho(parcelas, subtotal, pesoGramas, pesoFaturavelGramas, unidadesFrageis, exato);
+	}
+
+	/** Se os totais representam exatamente todos os itens. */
+	public boolean isExato()
+	{
+		return exato;
+	}
+
+	/** Subtotal em 1/10.000 de real; válido quando {@link #isExato()}. */
+	public long getSubtotalEscalado()
+	{
+		return subtotal;
+	}
+
+	/** Peso físico total em gramas; válido quando {@link #isExato()}. */
+	public long getPesoGramas()
+	{
+		return pesoGramas;
+	}
+
+	/**
+	 * Soma dos pesos faturáveis (maior entre físico e cúbico de cada produto) em
+	 * gramas; válido quando {@link #isExato()}.
+	 */
+	public long getPesoFaturavelGramas()
+	{
+		return pesoFaturavelGramas;
+	}
+
+	/** Unidades de produtos frágeis; válido quando {@link #isExato()}. */
+	public long getUnidadesFrageis()
+	{
+		return unidadesFrageis;
+	}
+
+	/** Contribuição de um item, com o estado do item e do produto de onde saiu. */
+	private static final class Parcela
+	{
+		private final ItemCompra item;
+		private final Produto produto;
+		private final Long versao;
+		private final long revisao;
+		private final Long quantidade;
+		private final boolean exata;
+		private final long valor;
+		private final long peso;
+		private final long pesoFaturavel;
+		private final long frageis;
+
+		private Parcela(ItemCompra item, Produto produto, Long versao, long revisao, Long quantidade, boolean exata,
+				long valor, long peso, long pesoFaturavel, long frageis)
+		{
+			this.item = item;
+			this.produto = produto;
+			this.versao = versao;
+			this.revisao = revisao;
+			this.quantidade = quantidade;
+			this.exata = exata;
+			this.valor = valor;
+			this.peso = peso;
+			this.pesoFaturavel = pesoFaturavel;
+			this.frageis = frageis;
+		}
+
+		boolean confere(ItemCompra atual)
+		{
+			if (atual != item)
+			{
+				return false;
+			}
+			if (atual == null)
+			{
+				return true;
+			}
+			return atual.getProduto() == produto && Objects.equals(quantidade, atual.getQuantidade())
+					&& (produto == null
+							|| produto.getRevisao() == revisao && Objects.equals(produto.getVersao(), versao));
+		}
+
+		static Parcela de(ItemCompra item)
+		{
+			Produto produto = item == null ? null : item.getProduto();
+			Long quantidade = item == null ? null : item.getQuantidade();
+			if (produto == null)
+			{
+				return new Parcela(item, null, null, 0L, quantidade, false, 0L, 0L, 0L, 0L);
+			}
+			// Versão e revisão são lidas antes dos atributos: uma alteração no meio invalida a parcela
+			Long versao = produto.getVersao();
+			long revisao = produto.getRevisao();
+			if (quantidade == null || produto.getPreco() == null)
+			{
+				return inexata(item, produto, versao, revisao, quantidade);
+			}
+			PerfilEnvio perfil = produto.getPerfilEnvio();
+			if (!perfil.isExato())
+			{
+				return inexata(item, produto, versao, revisao, quantidade);
+			}
+			try
+			{
+				long valor = Math.multiplyExact(
+						CalculadoraCustoTotal.paraEscala(produto.getPreco(), CalculadoraCustoTotal.ESCALA_VALOR),
+						quantidade);
+				long peso = Math.multiplyExact(perfil.getPesoFisicoGramas(), quantidade);
+				long pesoFaturavel = Math.multiplyExact(perfil.getPesoFaturavelGramas(), quantidade);
+				long frageis = perfil.isFragil() ? quantidade : 0L;
+				return new Parcela(item, produto, versao, revisao, quantidade, true, valor, peso, pesoFaturavel,
+						frageis);
+			}
+			catch (ArithmeticException e)
+			{
+				return inexata(item, produto, versao, revisao, quantidade);
+			}
+		}
+
+		private static Parcela inexata(ItemCompra item, Produto produto, Long versao, long revisao, Long quantidade)
+		{
+			return new Parcela(item, produto, versao, revisao, quantidade, false, 0L, 0L, 0L, 0L);
+		}
+	}
+}
@@ -12,6 +12,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.Transient;
 
 @Entity
 public class CarrinhoDeCompras
@@ -31,6 +32,10 @@ public class CarrinhoDeCompras
 
 	private LocalDate data;
 
+	/** Último retrato dos agregados de precificação; trocado inteiro, nunca alterado. */
+	@Transient
+	private volatile AgregadosCarrinho agregados = AgregadosCarrinho.VAZIO;
+
 	public CarrinhoDeCompras()
 	{
 	}
@@ -83,4 +88,37 @@ public class CarrinhoDeCompras
 	{
 		this.data = data;
 	}
+
+	public void adicionarItem(ItemCompra item)
+	{
+		itens.add(item);
+	}
+
+	public boolean removerItem(ItemCompra item)
+	{
+		return itens.remove(item);
+	}
+
+	/**
+	 * Agregados de precificação dos itens atuais, ou {@code null} sem lista de
+	 * itens. O retrato anterior é conferido item a item contra a revisão de
+	 * cada produto e a quantidade; só as parcelas dos itens que mudaram são
+	 * refeitas. Quem chama usa o retrato devolvido inteiro: leituras
+	 * concorrentes nunca veem totais pela metade.
+	 */
+	public AgregadosCarrinho agregados()
+	{
+		List<ItemCompra> lista = itens;
+		if (lista == null)
+		{
+			return null;
+		}
+		AgregadosCarrinho anterior = agregados;
+		AgregadosCarrinho atual = anterior.conferir(lista);
+		if (atual != anterior)
+		{
+			agregados = atual;
+		}
+		return atual;
+	}
 }
@@ -0,0 +1,110 @@
+package ecommerce.entity;
+
+import java.time.Instant;
+
+/**
+ * Cancelamento de pagamento a fazer, gravado na saída (outbox) e executado em
+ * segundo plano. Fica no banco próprio da outbox, e não no da aplicação (ver
+ * {@link ecommerce.repository.CompensacaoPagamentoRepository}). Sai da tabela
+ * quando o cancelamento é confirmado; depois de esgotar as tentativas fica
+ * marcado como {@code esgotada} para análise.
+ */
+public class CompensacaoPagamento
+{
+	public static final int TAMANHO_MAXIMO_ERRO = 500;
+
+	private Long id;
+
+	private Long clienteId;
+
+	private Long transacaoId;
+
+	private int tentativas;
+
+	private Instant criadaEm;
+
+	private Instant proximaTentativa;
+
+	private String ultimoErro;
+
+	private boolean esgotada;
+
+	/** Compensação lida do banco da outbox. */
+	public CompensacaoPagamento(Long id, Long clienteId, Long transacaoId, int tentativas, Instant criadaEm,
+			Instant proximaTentativa, String ultimoErro, boolean esgotada)
+	{
+		this.id = id;
+		this.clienteId = clienteId;
+		this.transacaoId = transacaoId;
+		this.tentativas = tentativas;
+		this.criadaEm = criadaEm;
+		this.proximaTentativa = proximaTentativa;
+		this.ultimoErro = ultimoErro;
+		this.esgotada = esgotada;
+	}
+
+	public CompensacaoPagamento(Long clienteId, Long transacaoId, Instant criadaEm)
+	{
+		this.clienteId = clienteId;
+		this.transacaoId = transacaoId;
+		this.criadaEm = criadaEm;
+		this.proximaTentativa = criadaEm;
+	}
+
+	/** Registra uma tentativa que falhou e agenda a próxima, ou esgota a compensação. */
+	public void registrarFalha(String erro, Instant proximaTentativa, boolean esgotada)
+	{
+		this.tentativas++;
+		this.ultimoErro = erro != null && erro.length() > TAMANHO_MAXIMO_ERRO
+				? erro.substring(0, TAMANHO_MAXIMO_ERRO)
+				: erro;
+		this.proximaTentativa = proximaTentativa;
+		this.esgotada = esgotada;
+	}
+
+	public Long getId()
+	{
+		return id;
+	}
+
+	/** Id gerado pelo banco na primeira gravação. */
+	public void setId(Long id)
+	{
+		this.id = id;
+	}
+
+	public Long getClienteId()
+	{
+		return clienteId;
+	}
+
+	public Long getTransacaoId()
+	{
+		return transacaoId;
+	}
+
+	public int getTentativas()
+	{
+		return tentativas;
+	}
+
+	public Instant getCriadaEm()
+	{
+		return criadaEm;
+	}
+
+	public Instant getProximaTentativa()
+	{
+		return proximaTentativa;
+	}
+
+	public String getUltimoErro()
+	{
+		return ultimoErro;
+	}
+
+	public boolean isEsgotada()
+	{
+		return esgotada;
+	}
+}
@@ -0,0 +1,103 @@
+package ecommerce.entity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import ecommerce.service.preco.CalculadoraCustoTotal;
+
+/**
+ * Atributos de envio de um {@link Produto} já convertidos para primitivos:
+ * peso físico, peso cúbico (volumétrico) e peso faturável em gramas, mais o
+ * indicador de fragilidade. É calculado uma vez por produto e descartado
+ * quando o peso, as dimensões ou a fragilidade mudam.
+ *
+ * O peso cúbico segue o fator 6000 (cm³/6000 = kg), arredondado HALF_UP para
+ * gramas; o peso faturável é o maior entre o físico e o cúbico.
+ */
+public final class PerfilEnvio
+{
+	public static final BigDecimal FATOR_CUBICO = new BigDecimal("6000");
+
+	private final long pesoFisicoGramas;
+	private final long pesoCubicoGramas;
+	private final long pesoFaturavelGramas;
+	private final boolean fragil;
+	private final boolean exato;
+
+	private PerfilEnvio(long pesoFisicoGramas, long pesoCubicoGramas, boolean fragil, boolean exato)
+	{
+		this.pesoFisicoGramas = pesoFisicoGramas;
+		this.pesoCubicoGramas = pesoCubicoGramas;
+		this.pesoFaturavelGramas = Math.max(pesoFisicoGramas, pesoCubicoGramas);
+		this.fragil = fragil;
+		this.exato = exato;
+	}
+
+	static PerfilEnvio de(Produto produto)
+	{
+		boolean exato = produto.getPesoFisico() != null && produto.isFragil() != null;
+		long fisico = 0L;
+		long cubico = 0L;
+		try
+		{
+			if (produto.getPesoFisico() != null)
+			{
+				fisico = CalculadoraCustoTotal.paraEscala(produto.getPesoFisico(), CalculadoraCustoTotal.ESCALA_PESO);
+			}
+			BigDecimal pesoCubico = pesoCubico(produto);
+			cubico = CalculadoraCustoTotal.paraEscala(pesoCubico, CalculadoraCustoTotal.ESCALA_PESO);
+		}
+		catch (ArithmeticException e)
+		{
+			exato = false;
+		}
+		return new PerfilEnvio(fisico, cubico, Boolean.TRUE.equals(produto.isFragil()), exato);
+	}
+
+	/** Peso cúbico em kg com 3 casas decimais; zero se faltar alguma dimensão. */
+	public static BigDecimal pesoCubico(Produto produto)
+	{
+		if (produto.getComprimento() == null || produto.getLargura() == null || produto.getAltura() == null)
+		{
+			return BigDecimal.ZERO;
+		}
+		return produto.getComprimento().multiply(produto.getLargura()).multiply(produto.getAltura())
+				.divide(FATOR_CUBICO, CalculadoraCustoTotal.ESCALA_PESO, RoundingMode.HALF_UP);
+	}
+
+	/** Peso faturável em kg: o maior entre o físico e o cúbico. */
+	public static BigDecimal pesoFaturavel(Produto produto)
+	{
+		return produto.getPesoFisico().max(pesoCubico(produto));
+	}
+
+	public long getPesoFisicoGramas()
+	{
+		return pesoFisicoGramas;
+	}
+
+	public long getPesoCubicoGramas()
+	{
+		return pesoCubicoGramas;
+	}
+
+	public long getPesoFaturavelGramas()
+	{
+		return pesoFaturavelGramas;
+	}
+
+	public boolean isFragil()
+	{
+		return fragil;
+	}
+
+	/**
+	 * Indica se todos os pesos couberam em gramas e se o produto tem peso e
+	 * fragilidade definidos. Caso contrário, a precificação usa os valores
+	 * decimais do produto.
+	 */
+	public boolean isExato()
+	{
+		return exato;
+	}
+}
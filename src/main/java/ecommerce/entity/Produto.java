@@ -1,17 +1,33 @@
 package ecommerce.entity;
 
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
+import javax.persistence.EntityListeners;
 import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.Transient;
+import javax.persistence.Version;
+
+import ecommerce.service.preco.AtualizacaoCatalogoListener;
+import ecommerce.service.preco.InvalidacaoCotacoesListener;
 
 @Entity
+@EntityListeners({ InvalidacaoCotacoesListener.class, AtualizacaoCatalogoListener.class })
 public class Produto
 {
+	/**
+	 * Fonte das revisões: cada alteração recebe um número novo, para que duas
+	 * instâncias do mesmo produto nunca exibam a mesma revisão com atributos
+	 * diferentes. Não é sinal de invalidação; quem guarda algo calculado de um
+	 * produto compara a {@link #getRevisao()} daquele produto.
+	 */
+	private static final AtomicLong SEQUENCIA_REVISOES = new AtomicLong();
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -38,6 +54,16 @@ public class Produto
 	@Enumerated(EnumType.STRING)
 	private TipoProduto tipo;
 
+	/** Versão persistida, incrementada pelo JPA a cada atualização do produto. */
+	@Version
+	private Long versao;
+
+	@Transient
+	private long revisao;
+
+	@Transient
+	private volatile PerfilEnvio perfilEnvio;
+
 	public Produto()
 	{
 	}
@@ -55,6 +81,7 @@ public class Produto
 		this.altura = altura;
 		this.fragil = fragil;
 		this.tipo = tipo;
+		registrarRevisao();
 	}
 
 	// Getters e Setters
@@ -96,6 +123,7 @@ public class Produto
 	public void setPreco(BigDecimal preco)
 	{
 		this.preco = preco;
+		registrarRevisao();
 	}
 
 	public BigDecimal getPesoFisico()
@@ -106,6 +134,7 @@ public class Produto
 	public void setPesoFisico(BigDecimal pesoFisico)
 	{
 		this.pesoFisico = pesoFisico;
+		alterarAtributoDeEnvio();
 	}
 
 	public BigDecimal getComprimento()
@@ -116,6 +145,7 @@ public class Produto
 	public void setComprimento(BigDecimal comprimento)
 	{
 		this.comprimento = comprimento;
+		alterarAtributoDeEnvio();
 	}
 
 	public BigDecimal getLargura()
@@ -126,6 +156,7 @@ public class Produto
 	public void setLargura(BigDecimal largura)
 	{
 		this.largura = largura;
+		alterarAtributoDeEnvio();
 	}
 
 	public BigDecimal getAltura()
@@ -136,6 +167,7 @@ public class Produto
 	public void setAltura(BigDecimal altura)
 	{
 		this.altura = altura;
+		alterarAtributoDeEnvio();
 	}
 
 	public Boolean isFragil()
@@ -146,6 +178,7 @@ public class Produto
 	public void setFragil(Boolean fragil)
 	{
 		this.fragil = fragil;
+		alterarAtributoDeEnvio();
 	}
 
 	public TipoProduto getTipo()
@@ -157,4 +190,53 @@ public class Produto
 	{
 		this.tipo = tipo;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Perfil de envio do produto, calculado na primeira leitura e recalculado
+	 * somente depois de alguma alteração de peso, dimensões ou fragilidade.
+	 */
+	public PerfilEnvio getPerfilEnvio()
+	{
+		PerfilEnvio perfil = perfilEnvio;
+		if (perfil == null)
+		{
+			perfil = PerfilEnvio.de(this);
+			perfilEnvio = perfil;
+		}
+		return perfil;
+	}
+
+	public Long getVersao()
+	{
+		return versao;
+	}
+
+	/**
+	 * Revisão da última alteração de preço, peso, dimensões ou fragilidade feita em memória
+	 * (ou da construção com valores). Como vem de um contador global, duas
+	 * instâncias com o mesmo id e a mesma {@link #getVersao()} só compartilham a
+	 * revisão se nenhuma delas foi alterada fora do JPA.
+	 */
+	public long getRevisao()
+	{
+		return revisao;
+	}
+
+	private void registrarRevisao()
+	{
+		this.revisao = SEQUENCIA_REVISOES.incrementAndGet();
+	}
+
+	/** Um refresh pelo JPA sobrescreve os campos sem passar pelos setters. */
+	@PostLoad
+	void descartarPerfilEnvio()
+	{
+		this.perfilEnvio = null;
+	}
+
+	private void alterarAtributoDeEnvio()
+	{
+		this.perfilEnvio = null;
+		registrarRevisao();
+	}
+}
@@ -0,0 +1,260 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Agrupa chamadas concorrentes a
+ * {@link IEstoqueExternal#verificarDisponibilidade(List, List)} em uma só. A
+ * primeira chamada de uma janela vira líder: espera até {@code janela} ou até
+ * o lote atingir {@code tamanhoMaximo}, faz a chamada combinada e responde a
+ * cada participante com os seus próprios produtos indisponíveis. As demais
+ * operações vão direto ao estoque.
+ *
+ * A verificação não reserva nada, então cada produto é consultado pela maior
+ * quantidade pedida no lote: se ela está disponível, está para todos. Um
+ * participante que pediu menos que o máximo de um produto apontado como
+ * indisponível não pode ser respondido pela chamada combinada e é verificado
+ * sozinho.
+ *
+ * Tamanho dos lotes e espera de cada chamada aparecem em
+ * {@code /actuator/metrics} como {@code estoque.disponibilidade.lote} e
+ * {@code estoque.disponibilidade.espera}.
+ */
+public class EstoqueAgrupado implements IEstoqueExternal
+{
+	/** Resposta que manda o participante verificar a própria chamada. */
+	private static final DisponibilidadeDTO VERIFICAR_SOZINHO = new DisponibilidadeDTO(null, null);
+
+	private final IEstoqueExternal estoque;
+	private final long janelaNanos;
+	private final int tamanhoMaximo;
+
+	private final DistributionSummary tamanhoLotes;
+	private final Timer espera;
+
+	private final Object trava = new Object();
+	private Lote loteAberto;
+
+	public EstoqueAgrupado(IEstoqueExternal estoque, Duration janela, int tamanhoMaximo)
+	{
+		this(estoque, janela, tamanhoMaximo, new SimpleMeterRegistry());
+	}
+
+	public EstoqueAgrupado(IEstoqueExternal estoque, Duration janela, int tamanhoMaximo, MeterRegistry registro)
+	{
+		if (janela.isNegative() || tamanhoMaximo < 1)
+		{
+			throw new IllegalArgumentException("Janela e tamanho máximo do lote devem ser positivos.");
+		}
+		this.estoque = estoque;
+		this.janelaNanos = janela.toNanos();
+		this.tamanhoMaximo = tamanhoMaximo;
+		this.tamanhoLotes = DistributionSummary.builder("estoque.disponibilidade.lote")
+				.description("Chamadas de verificação de disponibilidade atendidas por chamada combinada")
+				.baseUnit("chamadas")
+				.register(registro);
+		this.espera = Timer.builder("estoque.disponibilidade.espera")
+				.description("Espera de cada chamada até a chamada combinada partir")
+				.register(registro);
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		if (janelaNanos == 0 || tamanhoMaximo == 1)
+		{
+			return estoque.verificarDisponibilidade(produtosIds, produtosQuantidades);
+		}
+
+		Pedido pedido = new Pedido(produtosIds, produtosQuantidades);
+		Lote lote;
+		boolean lider;
+		synchronized (trava)
+		{
+			if (loteAberto == null)
+			{
+				loteAberto = new Lote();
+				lider = true;
+			}
+			else
+			{
+				lider = false;
+			}
+			lote = loteAberto;
+			lote.pedidos.add(pedido);
+			if (lote.pedidos.size() >= tamanhoMaximo)
+			{
+				loteAberto = null;
+				lote.fechado.countDown();
+			}
+		}
+
+		if (lider)
+		{
+			aguardarFechamento(lote);
+			executar(lote);
+		}
+		DisponibilidadeDTO resposta;
+		try
+		{
+			resposta = pedido.resposta.join();
+		}
+		catch (CompletionException e)
+		{
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+		return resposta == VERIFICAR_SOZINHO ? estoque.verificarDisponibilidade(produtosIds, produtosQuantidades)
+				: resposta;
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		return estoque.darBaixa(produtosIds, produtosQuantidades);
+	}
+
+	@Override
+	public boolean suportaReservas()
+	{
+		return estoque.suportaReservas();
+	}
+
+	@Override
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration ttl)
+	{
+		return estoque.reservar(produtosIds, produtosQuantidades, ttl);
+	}
+
+	@Override
+	public EstoqueBaixaDTO confirmarReserva(String token)
+	{
+		return estoque.confirmarReserva(token);
+	}
+
+	@Override
+	public void liberarReserva(String token)
+	{
+		estoque.liberarReserva(token);
+	}
+
+	private void aguardarFechamento(Lote lote)
+	{
+		try
+		{
+			lote.fechado.await(janelaNanos, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			// O lote parte antes da hora; os demais participantes não podem ficar sem resposta
+			Thread.currentThread().interrupt();
+		}
+		synchronized (trava)
+		{
+			if (loteAberto == lote)
+			{
+				loteAberto = null;
+			}
+		}
+	}
+
+	private void executar(Lote lote)
+	{
+		long partida = System.nanoTime();
+		List<Pedido> pedidos = lote.pedidos;
+		tamanhoLotes.record(pedidos.size());
+		for (Pedido pedido : pedidos)
+		{
+			espera.record(partida - pedido.chegada, TimeUnit.NANOSECONDS);
+		}
+
+		Map<Long, Long> maiores = new LinkedHashMap<>();
+		for (Pedido pedido : pedidos)
+		{
+			pedido.demanda.forEach((id, quantidade) -> maiores.merge(id, quantidade, Math::max));
+		}
+		DisponibilidadeDTO combinada;
+		try
+		{
+			combinada = estoque.verificarDisponibilidade(new ArrayList<>(maiores.keySet()),
+					new ArrayList<>(maiores.values()));
+		}
+		catch (RuntimeException e)
+		{
+			pedidos.forEach(pedido -> pedido.resposta.completeExceptionally(e));
+			return;
+		}
+
+		for (Pedido pedido : pedidos)
+		{
+			pedido.resposta.complete(separar(combinada, pedido, maiores));
+		}
+	}
+
+	private static DisponibilidadeDTO separar(DisponibilidadeDTO combinada, Pedido pedido, Map<Long, Long> maiores)
+	{
+		if (combinada == null || Boolean.TRUE.equals(combinada.disponivel()))
+		{
+			return combinada;
+		}
+		List<Long> apontados = combinada.idsProdutosIndisponiveis();
+		if (apontados == null || apontados.isEmpty())
+		{
+			// Sem saber quais produtos faltaram, só a chamada individual responde
+			return VERIFICAR_SOZINHO;
+		}
+		Set<Long> indisponiveis = new HashSet<>(apontados);
+		List<Long> proprios = new ArrayList<>();
+		for (Map.Entry<Long, Long> item : pedido.demanda.entrySet())
+		{
+			if (!indisponiveis.contains(item.getKey()))
+			{
+				continue;
+			}
+			if (item.getValue() < maiores.get(item.getKey()))
+			{
+				return VERIFICAR_SOZINHO;
+			}
+			proprios.add(item.getKey());
+		}
+		return new DisponibilidadeDTO(proprios.isEmpty(), proprios);
+	}
+
+	private static final class Lote
+	{
+		private final List<Pedido> pedidos = new ArrayList<>();
+		private final CountDownLatch fechado = new CountDownLatch(1);
+	}
+
+	private static final class Pedido
+	{
+		private final Map<Long, Long> demanda = new LinkedHashMap<>();
+		private final long chegada = System.nanoTime();
+		private final CompletableFuture<DisponibilidadeDTO> resposta = new CompletableFuture<>();
+
+		Pedido(List<Long> produtosIds, List<Long> produtosQuantidades)
+		{
+			for (int i = 0; i < produtosIds.size(); i++)
+			{
+				demanda.merge(produtosIds.get(i), produtosQuantidades.get(i), Long::sum);
+			}
+		}
+	}
+}
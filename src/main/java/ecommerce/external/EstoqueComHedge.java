@@ -0,0 +1,317 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.rastreamento.ContextoRastreamento;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Chamada de reserva (hedge) para
+ * {@link IEstoqueExternal#verificarDisponibilidade(List, List)}: se a primeira
+ * chamada não responde dentro do percentil {@code percentil} das latências
+ * recentes, uma segunda chamada idêntica é feita e vale a primeira resposta
+ * que chegar. Só a verificação, que não altera o estoque, é duplicada; baixa e
+ * reservas vão direto ao estoque.
+ *
+ * Cada verificação acumula {@code orcamentoPercentual}/100 de crédito e cada
+ * chamada de reserva consome um, então as reservas nunca passam desse
+ * percentual das verificações. Enquanto não há {@code amostrasMinimas}
+ * latências registradas, ou sem crédito, a chamada segue direto na thread do
+ * chamador. A chamada perdedora não é interrompida; quem a limita é a
+ * proteção do estoque por baixo.
+ *
+ * Reservas enviadas, vencedoras e negadas por falta de crédito aparecem em
+ * {@code estoque.disponibilidade.hedge} (tag {@code resultado}); o limiar
+ * atual em {@code estoque.disponibilidade.hedge.limiar}.
+ */
+public class EstoqueComHedge implements IEstoqueExternal
+{
+	private static final int TAMANHO_AMOSTRA = 1024;
+	private static final int INTERVALO_RECALCULO = 128;
+	private static final long CREDITO_UNITARIO = 1_000L;
+
+	private final IEstoqueExternal estoque;
+	private final Executor executor;
+	private final int percentil;
+	private final long creditoPorChamada;
+	private final long creditoMaximo;
+	private final int amostrasMinimas;
+
+	private final AtomicLongArray latencias = new AtomicLongArray(TAMANHO_AMOSTRA);
+	private final AtomicLong registradas = new AtomicLong();
+	private final AtomicLong credito = new AtomicLong();
+	private volatile long limiarNanos = -1L;
+
+	private final Counter enviadas;
+	private final Counter vencedoras;
+	private final Counter negadas;
+
+	public EstoqueComHedge(IEstoqueExternal estoque, Executor executor, int percentil, int orcamentoPercentual,
+			int amostrasMinimas)
+	{
+		this(estoque, executor, percentil, orcamentoPercentual, amostrasMinimas, new SimpleMeterRegistry());
+	}
+
+	public EstoqueComHedge(IEstoqueExternal estoque, Executor executor, int percentil, int orcamentoPercentual,
+			int amostrasMinimas, MeterRegistry registro)
+	{
+		if (percentil < 1 || percentil > 99)
+		{
+			throw new IllegalArgumentException("Percentil deve estar entre 1 e 99.");
+		}
+		if (orcamentoPercentual < 1 || orcamentoPercentual > 100)
+		{
+			throw new IllegalArgumentException("Orçamento deve estar entre 1 e 100.");
+		}
+		if (amostrasMinimas < 1 || amostrasMinimas > TAMANHO_AMOSTRA)
+		{
+			throw new IllegalArgumentException("Amostras mínimas devem estar entre 1 e " + TAMANHO_AMOSTRA + ".");
+		}
+		this.estoque = estoque;
+		this.executor = executor;
+		this.percentil = percentil;
+		this.creditoPorChamada = CREDITO_UNITARIO * orcamentoPercentual / 100;
+		// Crédito guardado limitado: uma pausa longa não libera uma rajada de reservas
+		this.creditoMaximo = 10 * CREDITO_UNITARIO;
+		this.amostrasMinimas = amostrasMinimas;
+
+		this.enviadas = contador(registro, "enviada");
+		this.vencedoras = contador(registro, "vencedora");
+		this.negadas = contador(registro, "sem-orcamento");
+		Gauge.builder("estoque.disponibilidade.hedge.limiar", this, e -> Math.max(e.limiarNanos, 0L) / 1e6)
+				.description("Espera pela primeira chamada antes da reserva")
+				.baseUnit("milliseconds")
+				.register(registro);
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		acumularCredito();
+		long limiar = limiarNanos;
+		if (limiar < 0 || credito.get() < CREDITO_UNITARIO)
+		{
+			long inicio = System.nanoTime();
+			DisponibilidadeDTO resposta = estoque.verificarDisponibilidade(produtosIds, produtosQuantidades);
+			registrarLatencia(System.nanoTime() - inicio);
+			return resposta;
+		}
+
+		CompletableFuture<DisponibilidadeDTO> primeira = chamar(produtosIds, produtosQuantidades, true);
+		try
+		{
+			return primeira.get(limiar, TimeUnit.NANOSECONDS);
+		}
+		catch (TimeoutException e)
+		{
+			// Segue abaixo com a chamada de reserva
+		}
+		catch (ExecutionException e)
+		{
+			throw relancar(e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Verificação de disponibilidade interrompida.", e);
+		}
+
+		if (!consumirCredito())
+		{
+			negadas.increment();
+			return aguardar(primeira);
+		}
+		enviadas.increment();
+		CompletableFuture<DisponibilidadeDTO> reserva = chamar(produtosIds, produtosQuantidades, false);
+		return aguardar(primeiraResposta(primeira, reserva));
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		return estoque.darBaixa(produtosIds, produtosQuantidades);
+	}
+
+	@Override
+	public boolean suportaReservas()
+	{
+		return estoque.suportaReservas();
+	}
+
+	@Override
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration ttl)
+	{
+		return estoque.reservar(produtosIds, produtosQuantidades, ttl);
+	}
+
+	@Override
+	public EstoqueBaixaDTO confirmarReserva(String token)
+	{
+		return estoque.confirmarReserva(token);
+	}
+
+	@Override
+	public void liberarReserva(String token)
+	{
+		estoque.liberarReserva(token);
+	}
+
+	/** Limiar atual, ou vazio enquanto não há amostras suficientes. */
+	public Optional<Duration> limiar()
+	{
+		long limiar = limiarNanos;
+		return limiar < 0 ? Optional.empty() : Optional.of(Duration.ofNanos(limiar));
+	}
+
+	private CompletableFuture<DisponibilidadeDTO> chamar(List<Long> produtosIds, List<Long> produtosQuantidades,
+			boolean registrar)
+	{
+		return CompletableFuture.supplyAsync(ContextoRastreamento.propagar(() -> {
+			long inicio = System.nanoTime();
+			DisponibilidadeDTO resposta = estoque.verificarDisponibilidade(produtosIds, produtosQuantidades);
+			// Só a primeira chamada entra na amostra, para não enviesar o percentil
+			if (registrar)
+			{
+				registrarLatencia(System.nanoTime() - inicio);
+			}
+			return resposta;
+		}), executor);
+	}
+
+	/** Primeira resposta bem-sucedida; se as duas falham, a falha da primeira chamada. */
+	private CompletableFuture<DisponibilidadeDTO> primeiraResposta(CompletableFuture<DisponibilidadeDTO> primeira,
+			CompletableFuture<DisponibilidadeDTO> reserva)
+	{
+		CompletableFuture<DisponibilidadeDTO> resultado = new CompletableFuture<>();
+		AtomicBoolean respondida = new AtomicBoolean();
+		AtomicInteger falhas = new AtomicInteger();
+		primeira.whenComplete((resposta, erro) -> {
+			if (erro == null)
+			{
+				if (respondida.compareAndSet(false, true))
+				{
+					resultado.complete(resposta);
+				}
+			}
+			else if (falhas.incrementAndGet() == 2)
+			{
+				resultado.completeExceptionally(erro);
+			}
+		});
+		reserva.whenComplete((resposta, erro) -> {
+			if (erro == null)
+			{
+				// Contada antes de responder, para a métrica já refletir a resposta
+				if (respondida.compareAndSet(false, true))
+				{
+					vencedoras.increment();
+					resultado.complete(resposta);
+				}
+			}
+			else if (falhas.incrementAndGet() == 2)
+			{
+				resultado.completeExceptionally(primeira.handle((r, e) -> e).join());
+			}
+		});
+		return resultado;
+	}
+
+	private void acumularCredito()
+	{
+		credito.getAndUpdate(atual -> Math.min(creditoMaximo, atual + creditoPorChamada));
+	}
+
+	private boolean consumirCredito()
+	{
+		long atual;
+		do
+		{
+			atual = credito.get();
+			if (atual < CREDITO_UNITARIO)
+			{
+				return false;
+			}
+		}
+		while (!credito.compareAndSet(atual, atual - CREDITO_UNITARIO));
+		return true;
+	}
+
+	private void registrarLatencia(long nanos)
+	{
+		long n = registradas.getAndIncrement();
+		latencias.set((int) (n % TAMANHO_AMOSTRA), nanos);
+		long total = n + 1;
+		if (total >= amostrasMinimas && (total == amostrasMinimas || total % INTERVALO_RECALCULO == 0))
+		{
+			recalcularLimiar((int) Math.min(total, TAMANHO_AMOSTRA));
+		}
+	}
+
+	private void recalcularLimiar(int quantidade)
+	{
+		long[] amostra = new long[quantidade];
+		for (int i = 0; i < quantidade; i++)
+		{
+			amostra[i] = latencias.get(i);
+		}
+		Arrays.sort(amostra);
+		int indice = (int) Math.ceil(percentil / 100.0 * quantidade) - 1;
+		limiarNanos = amostra[Math.max(0, indice)];
+	}
+
+	private static DisponibilidadeDTO aguardar(CompletableFuture<DisponibilidadeDTO> chamada)
+	{
+		try
+		{
+			return chamada.join();
+		}
+		catch (CompletionException e)
+		{
+			throw relancar(e.getCause());
+		}
+	}
+
+	private static RuntimeException relancar(Throwable causa)
+	{
+		if (causa instanceof CompletionException && causa.getCause() != null)
+		{
+			causa = causa.getCause();
+		}
+		if (causa instanceof RuntimeException)
+		{
+			return (RuntimeException) causa;
+		}
+		if (causa instanceof Error)
+		{
+			throw (Error) causa;
+		}
+		return new IllegalStateException(causa);
+	}
+
+	private Counter contador(MeterRegistry registro, String resultado)
+	{
+		return Counter.builder("estoque.disponibilidade.hedge")
+				.description("Chamadas de reserva da verificação de disponibilidade")
+				.tag("resultado", resultado)
+				.register(registro);
+	}
+}
@@ -0,0 +1,109 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.rastreamento.Rastreador;
+import ecommerce.rastreamento.Span;
+
+/**
+ * {@link IEstoqueExternal} com um span {@code estoque.<operação>} em cada
+ * chamada. Fica junto ao cliente cru, abaixo da proteção e do hedge: o span
+ * mede só a chamada ao estoque, e a diferença para o span do estágio da compra
+ * é o tempo gasto em fila, agrupamento e proteção.
+ */
+public class EstoqueRastreado implements IEstoqueExternal
+{
+	private final IEstoqueExternal estoque;
+	private final Rastreador rastreador;
+
+	public EstoqueRastreado(IEstoqueExternal estoque, Rastreador rastreador)
+	{
+		this.estoque = estoque;
+		this.rastreador = rastreador;
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		try (Span span = rastreador.iniciar("estoque.darBaixa"))
+		{
+			span.atributo("estoque.itens", produtosIds.size());
+			EstoqueBaixaDTO baixa = chamar(span, () -> estoque.darBaixa(produtosIds, produtosQuantidades));
+			span.atributo("estoque.sucesso", baixa.sucesso());
+			return baixa;
+		}
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		try (Span span = rastreador.iniciar("estoque.verificarDisponibilidade"))
+		{
+			span.atributo("estoque.itens", produtosIds.size());
+			DisponibilidadeDTO disponibilidade = chamar(span,
+					() -> estoque.verificarDisponibilidade(produtosIds, produtosQuantidades));
+			span.atributo("estoque.disponivel", disponibilidade.disponivel());
+			return disponibilidade;
+		}
+	}
+
+	@Override
+	public boolean suportaReservas()
+	{
+		return estoque.suportaReservas();
+	}
+
+	@Override
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration ttl)
+	{
+		try (Span span = rastreador.iniciar("estoque.reservar"))
+		{
+			span.atributo("estoque.itens", produtosIds.size());
+			ReservaEstoqueDTO reserva = chamar(span, () -> estoque.reservar(produtosIds, produtosQuantidades, ttl));
+			span.atributo("estoque.reservado", reserva.reservado());
+			return reserva;
+		}
+	}
+
+	@Override
+	public EstoqueBaixaDTO confirmarReserva(String token)
+	{
+		try (Span span = rastreador.iniciar("estoque.confirmarReserva"))
+		{
+			EstoqueBaixaDTO baixa = chamar(span, () -> estoque.confirmarReserva(token));
+			span.atributo("estoque.sucesso", baixa.sucesso());
+			return baixa;
+		}
+	}
+
+	@Override
+	public void liberarReserva(String token)
+	{
+		try (Span span = rastreador.iniciar("estoque.liberarReserva"))
+		{
+			chamar(span, () -> {
+				estoque.liberarReserva(token);
+				return null;
+			});
+		}
+	}
+
+	/** Executa a chamada marcando o span como falho se ela lançar. */
+	private static <T> T chamar(Span span, Supplier<T> chamada)
+	{
+		try
+		{
+			return chamada.get();
+		}
+		catch (RuntimeException e)
+		{
+			span.erro(e);
+			throw e;
+		}
+	}
+}
@@ -1,9 +1,11 @@
 package ecommerce.external;
 
+import java.time.Duration;
 import java.util.List;
 
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
 
 public interface IEstoqueExternal
 {
@@ -12,4 +14,40 @@ public interface IEstoqueExternal
 
 	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades);
 
+	/**
+	 * Indica se o estoque implementa o protocolo de reserva. Sem ele, a compra
+	 * usa {@link #verificarDisponibilidade(List, List)} seguido de
+	 * {@link #darBaixa(List, List)}. É o que decide o protocolo: quem chama os
+	 * métodos de reserva sem consultar este antes recebe, de um estoque sem
+	 * reservas, uma reserva recusada e uma confirmação sem sucesso, nunca uma
+	 * exceção.
+	 */
+	public default boolean suportaReservas()
+	{
+		return false;
+	}
+
+	/**
+	 * Reserva as quantidades de uma vez, ou nenhuma delas. A reserva vale por
+	 * {@code ttl}; se não for confirmada nem liberada nesse prazo, o estoque a
+	 * libera sozinho. Sem suporte a reservas, nada é reservado.
+	 */
+	public default ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration ttl)
+	{
+		return new ReservaEstoqueDTO(false, null, null, List.of());
+	}
+
+	/**
+	 * Converte a reserva em baixa definitiva. Falha se a reserva expirou ou não
+	 * existe; sem suporte a reservas, nenhuma existe.
+	 */
+	public default EstoqueBaixaDTO confirmarReserva(String token)
+	{
+		return new EstoqueBaixaDTO(false);
+	}
+
+	/** Devolve ao estoque as quantidades reservadas; token desconhecido é ignorado. */
+	public default void liberarReserva(String token)
+	{
+	}
 }
@@ -0,0 +1,62 @@
+package ecommerce.external;
+
+import java.util.function.Supplier;
+
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.rastreamento.Rastreador;
+import ecommerce.rastreamento.Span;
+
+/**
+ * {@link IPagamentoExternal} com um span {@code pagamento.<operação>} em cada
+ * chamada, junto ao cliente cru como em {@link EstoqueRastreado}.
+ */
+public class PagamentoRastreado implements IPagamentoExternal
+{
+	private final IPagamentoExternal pagamento;
+	private final Rastreador rastreador;
+
+	public PagamentoRastreado(IPagamentoExternal pagamento, Rastreador rastreador)
+	{
+		this.pagamento = pagamento;
+		this.rastreador = rastreador;
+	}
+
+	@Override
+	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal)
+	{
+		try (Span span = rastreador.iniciar("pagamento.autorizarPagamento"))
+		{
+			span.atributo("pagamento.cliente", clienteId);
+			PagamentoDTO autorizacao = chamar(span, () -> pagamento.autorizarPagamento(clienteId, custoTotal));
+			span.atributo("pagamento.autorizado", autorizacao.autorizado())
+					.atributo("pagamento.transacao", autorizacao.transacaoId());
+			return autorizacao;
+		}
+	}
+
+	@Override
+	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
+	{
+		try (Span span = rastreador.iniciar("pagamento.cancelarPagamento"))
+		{
+			span.atributo("pagamento.cliente", clienteId).atributo("pagamento.transacao", pagamentoTransacaoId);
+			chamar(span, () -> {
+				pagamento.cancelarPagamento(clienteId, pagamentoTransacaoId);
+				return null;
+			});
+		}
+	}
+
+	private static <T> T chamar(Span span, Supplier<T> chamada)
+	{
+		try
+		{
+			return chamada.get();
+		}
+		catch (RuntimeException e)
+		{
+			span.erro(e);
+			throw e;
+		}
+	}
+}
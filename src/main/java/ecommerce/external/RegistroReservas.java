@@ -0,0 +1,151 @@
+package ecommerce.external;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reservas com prazo de validade para implementações de
+ * {@link IEstoqueExternal}. Cada reserva guarda o conteúdo reservado e, ao
+ * expirar, é entregue a {@code aoExpirar} para que as quantidades voltem ao
+ * estoque. Confirmação, liberação e expiração disputam a mesma entrada do
+ * mapa: só quem a remove age sobre ela, então uma reserva nunca é confirmada
+ * e devolvida ao mesmo tempo.
+ *
+ * A varredura percorre todas as reservas ativas; o custo é proporcional às
+ * reservas em andamento, não ao catálogo.
+ */
+public final class RegistroReservas<T> implements AutoCloseable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(RegistroReservas.class);
+
+	private final Clock relogio;
+	private final Consumer<T> aoExpirar;
+	private final Map<String, Reserva<T>> reservas = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService varredura;
+
+	public RegistroReservas(Clock relogio, Consumer<T> aoExpirar)
+	{
+		this.relogio = relogio;
+		this.aoExpirar = aoExpirar;
+	}
+
+	/** Registra a reserva e devolve o token que a identifica. */
+	public String registrar(T conteudo, Duration ttl)
+	{
+		if (ttl.isNegative() || ttl.isZero())
+		{
+			throw new IllegalArgumentException("Validade da reserva deve ser positiva.");
+		}
+		String token = UUID.randomUUID().toString();
+		reservas.put(token, new Reserva<>(conteudo, relogio.instant().plus(ttl)));
+		return token;
+	}
+
+	public Optional<Instant> expiraEm(String token)
+	{
+		Reserva<T> reserva = reservas.get(token);
+		return reserva == null ? Optional.empty() : Optional.of(reserva.expiraEm);
+	}
+
+	/**
+	 * Remove a reserva para confirmá-la ou liberá-la. Reserva vencida ainda não
+	 * varrida é expirada aqui e não é devolvida.
+	 */
+	public Optional<T> retirar(String token)
+	{
+		Reserva<T> reserva = token == null ? null : reservas.remove(token);
+		if (reserva == null)
+		{
+			return Optional.empty();
+		}
+		if (!relogio.instant().isBefore(reserva.expiraEm))
+		{
+			aoExpirar.accept(reserva.conteudo);
+			return Optional.empty();
+		}
+		return Optional.of(reserva.conteudo);
+	}
+
+	/** Expira todas as reservas vencidas e devolve quantas foram liberadas. */
+	public int liberarExpiradas()
+	{
+		Instant agora = relogio.instant();
+		int liberadas = 0;
+		for (Map.Entry<String, Reserva<T>> entrada : reservas.entrySet())
+		{
+			Reserva<T> reserva = entrada.getValue();
+			if (!agora.isBefore(reserva.expiraEm) && reservas.remove(entrada.getKey(), reserva))
+			{
+				aoExpirar.accept(reserva.conteudo);
+				liberadas++;
+			}
+		}
+		return liberadas;
+	}
+
+	public int ativas()
+	{
+		return reservas.size();
+	}
+
+	/** Inicia a varredura periódica em uma thread daemon própria. */
+	public synchronized void iniciarVarredura(Duration intervalo)
+	{
+		if (varredura != null)
+		{
+			return;
+		}
+		varredura = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+			Thread thread = new Thread(tarefa, "reservas-estoque-varredura");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long periodo = intervalo.toMillis();
+		varredura.scheduleWithFixedDelay(() -> {
+			try
+			{
+				liberarExpiradas();
+			}
+			catch (RuntimeException e)
+			{
+				// Uma exceção aqui cancelaria as próximas execuções
+				LOG.error("Falha ao liberar reservas expiradas", e);
+			}
+		}, periodo, periodo, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (varredura != null)
+		{
+			varredura.shutdownNow();
+			varredura = null;
+		}
+	}
+
+	private static final class Reserva<T>
+	{
+		private final T conteudo;
+		private final Instant expiraEm;
+
+		Reserva(T conteudo, Instant expiraEm)
+		{
+			this.conteudo = conteudo;
+			this.expiraEm = expiraEm;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package ecommerce.external.fake;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Distribuição das latências simuladas, com média {@code media} e limitada a
+ * {@code maxima}:
+ *
+ * <ul>
+ * <li>{@link Tipo#FIXA}: sempre a média;</li>
+ * <li>{@link Tipo#NORMAL}: normal com desvio {@code desvio}, cortada em zero;</li>
+ * <li>{@link Tipo#PARETO}: cauda longa de forma {@code alfa} (maior que 1),
+ * com a escala escolhida para manter a média. Quanto menor o alfa, mais
+ * pesada a cauda: com alfa 1,5 o p99,9 fica em cerca de 33 vezes a média.</li>
+ * </ul>
+ */
+public final class DistribuicaoLatencia
+{
+	public enum Tipo
+	{
+		FIXA, NORMAL, PARETO
+	}
+
+	private final Tipo tipo;
+	private final long mediaNanos;
+	private final long desvioNanos;
+	private final double alfa;
+	private final long maximaNanos;
+
+	private DistribuicaoLatencia(Tipo tipo, Duration media, Duration desvio, double alfa, Duration maxima)
+	{
+		if (media.isNegative() || desvio.isNegative() || maxima.isNegative())
+		{
+			throw new IllegalArgumentException("Latências não podem ser negativas.");
+		}
+		if (tipo == Tipo.PARETO && !(alfa > 1.0))
+		{
+			throw new IllegalArgumentException("Alfa da Pareto deve ser maior que 1 para a média existir.");
+		}
+		this.tipo = tipo;
+		this.mediaNanos = media.toNanos();
+		this.desvioNanos = desvio.toNanos();
+		this.alfa = alfa;
+		this.maximaNanos = maxima.toNanos();
+	}
+
+	public static DistribuicaoLatencia nenhuma()
+	{
+		return fixa(Duration.ZERO);
+	}
+
+	public static DistribuicaoLatencia fixa(Duration media)
+	{
+		return new DistribuicaoLatencia(Tipo.FIXA, media, Duration.ZERO, 0.0, media);
+	}
+
+	public static DistribuicaoLatencia normal(Duration media, Duration desvio, Duration maxima)
+	{
+		return new DistribuicaoLatencia(Tipo.NORMAL, media, desvio, 0.0, maxima);
+	}
+
+	public static DistribuicaoLatencia pareto(Duration media, double alfa, Duration maxima)
+	{
+		return new DistribuicaoLatencia(Tipo.PARETO, media, Duration.ZERO, alfa, maxima);
+	}
+
+	/** Monta a distribuição do tipo dado; parâmetros que o tipo não usa são ignorados. */
+	public static DistribuicaoLatencia de(Tipo tipo, Duration media, Duration desvio, double alfa, Duration maxima)
+	{
+		switch (tipo)
+		{
+			case NORMAL:
+				return normal(media, desvio, maxima);
+			case PARETO:
+				return pareto(media, alfa, maxima);
+			default:
+				return fixa(media);
+		}
+	}
+
+	/** Sorteia uma latência, em nanossegundos. */
+	public long amostrar(Random aleatorio)
+	{
+		double nanos;
+		switch (tipo)
+		{
+			case NORMAL:
+				nanos = mediaNanos + desvioNanos * aleatorio.nextGaussian();
+				break;
+			case PARETO:
+				// Inversa da acumulada: xm / U^(1/alfa), com U em (0, 1]
+				double escala = mediaNanos * (alfa - 1.0) / alfa;
+				nanos = escala / Math.pow(1.0 - aleatorio.nextDouble(), 1.0 / alfa);
+				break;
+			default:
+				return mediaNanos;
+		}
+		return (long) Math.min(Math.max(nanos, 0.0), maximaNanos);
+	}
+
+	public Tipo getTipo()
+	{
+		return tipo;
+	}
+}
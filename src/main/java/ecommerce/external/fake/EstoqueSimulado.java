@@ -1,28 +1,390 @@
 package ecommerce.external.fake;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.OptionalLong;
 
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.entity.Produto;
 import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.RegistroReservas;
+import ecommerce.repository.ProdutoRepository;
 
+/**
+ * Estoque em memória, no próprio processo, para rodar a aplicação de ponta a
+ * ponta e sob carga sem serviços externos. Os saldos ficam em uma
+ * {@link TabelaEstoque}, e cada retirada é um CAS no saldo do produto.
+ *
+ * A baixa de vários produtos é tudo ou nada sem trava global: retira produto a
+ * produto e, se um não tem saldo, devolve o que já retirou. Enquanto isso, as
+ * unidades retiradas ficam indisponíveis para outras compras por um instante;
+ * uma compra concorrente pode ser recusada por elas, mas nenhuma vende o que
+ * não existe. Produto desconhecido conta como indisponível.
+ *
+ * Com {@code reservas} habilitadas, a reserva retira as quantidades na hora
+ * e a confirmação só a encerra; liberação e expiração (via
+ * {@link RegistroReservas}) devolvem as quantidades.
+ *
+ * Na inicialização, o saldo salvo em {@code arquivoSnapshot} é restaurado e os
+ * produtos do {@link ProdutoRepository} que faltarem recebem
+ * {@code quantidadeInicial}; ao encerrar, o saldo é salvo de novo. O snapshot
+ * é consistente por produto, não entre produtos, e as unidades em reservas
+ * abertas não voltam com ele.
+ */
 @Service
 public class EstoqueSimulado implements IEstoqueExternal
 {
+	private static final Logger LOG = LoggerFactory.getLogger(EstoqueSimulado.class);
+
+	private static final int MAGICO_SNAPSHOT = 0x45535431;
+	private static final int VERSAO_SNAPSHOT = 1;
+
+	private final ProdutoRepository produtoRepository;
+	private final long quantidadeInicial;
+	private final int tamanhoPagina;
+	private final boolean reservasHabilitadas;
+	private final Duration varreduraReservas;
+	private final Path arquivoSnapshot;
+
+	private final TabelaEstoque tabela = new TabelaEstoque(1024);
+	private final RegistroReservas<ItensReservados> reservas;
+
+	public EstoqueSimulado(ProdutoRepository produtoRepository, long quantidadeInicial, int tamanhoPagina,
+			boolean reservasHabilitadas, Duration varreduraReservas, Path arquivoSnapshot, Clock relogio)
+	{
+		if (quantidadeInicial < 0)
+		{
+			throw new IllegalArgumentException("Quantidade inicial não pode ser negativa.");
+		}
+		if (tamanhoPagina <= 0)
+		{
+			throw new IllegalArgumentException("Tamanho de página deve ser positivo.");
+		}
+		this.produtoRepository = produtoRepository;
+		this.quantidadeInicial = quantidadeInicial;
+		this.tamanhoPagina = tamanhoPagina;
+		this.reservasHabilitadas = reservasHabilitadas;
+		this.varreduraReservas = varreduraReservas;
+		this.arquivoSnapshot = arquivoSnapshot;
+		this.reservas = new RegistroReservas<>(relogio, this::devolver);
+	}
+
+	@Autowired
+	public EstoqueSimulado(ProdutoRepository produtoRepository,
+			@Value("${ecommerce.estoque.simulado.quantidade-inicial:1000}") long quantidadeInicial,
+			@Value("${ecommerce.estoque.simulado.tamanho-pagina:1000}") int tamanhoPagina,
+			@Value("${ecommerce.estoque.simulado.reservas:false}") boolean reservasHabilitadas,
+			@Value("${ecommerce.estoque.simulado.varredura-reservas:1s}") Duration varreduraReservas,
+			@Value("${ecommerce.estoque.simulado.snapshot:}") String arquivoSnapshot)
+	{
+		this(produtoRepository, quantidadeInicial, tamanhoPagina, reservasHabilitadas, varreduraReservas,
+				arquivoSnapshot.isBlank() ? null : Paths.get(arquivoSnapshot), Clock.systemUTC());
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void iniciar()
+	{
+		if (arquivoSnapshot != null && Files.exists(arquivoSnapshot))
+		{
+			LOG.info("Estoque simulado restaurado de {}: {} produtos", arquivoSnapshot, restaurar(arquivoSnapshot));
+		}
+		LOG.info("Estoque simulado: {} produtos novos com {} unidades", carregar(), quantidadeInicial);
+		if (reservasHabilitadas)
+		{
+			reservas.iniciarVarredura(varreduraReservas);
+		}
+	}
+
+	@PreDestroy
+	public void encerrar()
+	{
+		reservas.close();
+		if (arquivoSnapshot != null)
+		{
+			salvar(arquivoSnapshot);
+		}
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		int[] posicoes = localizar(produtosIds, produtosQuantidades);
+		if (todosDisponiveis(posicoes, produtosQuantidades))
+		{
+			return new DisponibilidadeDTO(true, new ArrayList<>());
+		}
+		return new DisponibilidadeDTO(false, indisponiveis(produtosIds, posicoes, produtosQuantidades));
+	}
 
 	@Override
 	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		return new EstoqueBaixaDTO(retirarTodos(localizar(produtosIds, produtosQuantidades), produtosQuantidades));
 	}
 
 	@Override
-	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+	public boolean suportaReservas()
+	{
+		return reservasHabilitadas;
+	}
+
+	@Override
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration ttl)
+	{
+		if (!reservasHabilitadas)
+		{
+			return IEstoqueExternal.super.reservar(produtosIds, produtosQuantidades, ttl);
+		}
+		int[] posicoes = localizar(produtosIds, produtosQuantidades);
+		if (!retirarTodos(posicoes, produtosQuantidades))
+		{
+			return new ReservaEstoqueDTO(false, null, null, indisponiveis(produtosIds, posicoes, produtosQuantidades));
+		}
+		long[] quantidades = produtosQuantidades.stream().mapToLong(Long::longValue).toArray();
+		String token = reservas.registrar(new ItensReservados(posicoes, quantidades), ttl);
+		return new ReservaEstoqueDTO(true, token, reservas.expiraEm(token).orElse(null), new ArrayList<>());
+	}
+
+	@Override
+	public EstoqueBaixaDTO confirmarReserva(String token)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		if (!reservasHabilitadas)
+		{
+			return IEstoqueExternal.super.confirmarReserva(token);
+		}
+		// As quantidades saíram do saldo na reserva
+		return new EstoqueBaixaDTO(reservas.retirar(token).isPresent());
+	}
+
+	@Override
+	public void liberarReserva(String token)
+	{
+		if (!reservasHabilitadas)
+		{
+			IEstoqueExternal.super.liberarReserva(token);
+			return;
+		}
+		reservas.retirar(token).ifPresent(this::devolver);
+	}
+
+	/** Saldo do produto, ou vazio se ele não está no estoque. */
+	public OptionalLong quantidade(long produtoId)
+	{
+		int posicao = tabela.posicao(produtoId);
+		return posicao == TabelaEstoque.AUSENTE ? OptionalLong.empty() : OptionalLong.of(tabela.quantidade(posicao));
+	}
+
+	/** Define o saldo do produto, incluindo-o se necessário. */
+	public void definir(long produtoId, long quantidade)
+	{
+		if (quantidade < 0)
+		{
+			throw new IllegalArgumentException("Saldo não pode ser negativo.");
+		}
+		tabela.definir(tabela.posicaoOuIncluir(produtoId), quantidade);
+	}
+
+	/**
+	 * Lê o {@link ProdutoRepository} em páginas e inclui com
+	 * {@code quantidadeInicial} os produtos que ainda não estão no estoque.
+	 * Devolve quantos foram incluídos.
+	 */
+	public int carregar()
+	{
+		int incluidos = 0;
+		Page<Produto> pagina = produtoRepository.findAll(PageRequest.of(0, tamanhoPagina, Sort.by("id")));
+		while (true)
+		{
+			for (Produto produto : pagina)
+			{
+				if (produto.getId() != null && tabela.posicao(produto.getId()) == TabelaEstoque.AUSENTE)
+				{
+					definir(produto.getId(), quantidadeInicial);
+					incluidos++;
+				}
+			}
+			if (!pagina.hasNext())
+			{
+				return incluidos;
+			}
+			pagina = produtoRepository.findAll(pagina.nextPageable());
+		}
+	}
+
+	/** Grava o saldo de todos os produtos em {@code arquivo}, trocando-o de uma vez. */
+	public void salvar(Path arquivo)
+	{
+		long[] ids = tabela.ids();
+		Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+		try
+		{
+			if (arquivo.getParent() != null)
+			{
+				Files.createDirectories(arquivo.getParent());
+			}
+			try (DataOutputStream saida = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporario))))
+			{
+				saida.writeInt(MAGICO_SNAPSHOT);
+				saida.writeInt(VERSAO_SNAPSHOT);
+				saida.writeInt(ids.length);
+				for (long id : ids)
+				{
+					saida.writeLong(id);
+					saida.writeLong(tabela.quantidade(tabela.posicao(id)));
+				}
+			}
+			Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Não foi possível salvar o estoque em " + arquivo, e);
+		}
+	}
+
+	/** Define o saldo dos produtos salvos em {@code arquivo}; devolve quantos foram lidos. */
+	public int restaurar(Path arquivo)
+	{
+		try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivo))))
+		{
+			if (entrada.readInt() != MAGICO_SNAPSHOT || entrada.readInt() != VERSAO_SNAPSHOT)
+			{
+				throw new IllegalStateException("Arquivo de estoque inválido: " + arquivo);
+			}
+			int produtos = entrada.readInt();
+			for (int i = 0; i < produtos; i++)
+			{
+				definir(entrada.readLong(), entrada.readLong());
+			}
+			return produtos;
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Não foi possível restaurar o estoque de " + arquivo, e);
+		}
+	}
+
+	private int[] localizar(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		if (produtosIds.size() != produtosQuantidades.size())
+		{
+			throw new IllegalArgumentException("Produtos e quantidades devem ter o mesmo tamanho.");
+		}
+		int[] posicoes = new int[produtosIds.size()];
+		for (int i = 0; i < posicoes.length; i++)
+		{
+			if (produtosQuantidades.get(i) <= 0)
+			{
+				throw new IllegalArgumentException("Quantidade deve ser positiva: produto " + produtosIds.get(i));
+			}
+			posicoes[i] = tabela.posicao(produtosIds.get(i));
+		}
+		return posicoes;
+	}
+
+	/** Retira todas as quantidades ou nenhuma. */
+	private boolean retirarTodos(int[] posicoes, List<Long> produtosQuantidades)
+	{
+		for (int i = 0; i < posicoes.length; i++)
+		{
+			if (posicoes[i] == TabelaEstoque.AUSENTE || !tabela.retirar(posicoes[i], produtosQuantidades.get(i)))
+			{
+				for (int j = i - 1; j >= 0; j--)
+				{
+					tabela.devolver(posicoes[j], produtosQuantidades.get(j));
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean todosDisponiveis(int[] posicoes, List<Long> produtosQuantidades)
+	{
+		for (int i = 0; i < posicoes.length; i++)
+		{
+			if (posicoes[i] == TabelaEstoque.AUSENTE
+					|| tabela.quantidade(posicoes[i]) < demanda(posicoes, produtosQuantidades, i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<Long> indisponiveis(List<Long> produtosIds, int[] posicoes, List<Long> produtosQuantidades)
+	{
+		List<Long> indisponiveis = new ArrayList<>();
+		for (int i = 0; i < posicoes.length; i++)
+		{
+			boolean faltando = posicoes[i] == TabelaEstoque.AUSENTE
+					|| tabela.quantidade(posicoes[i]) < demanda(posicoes, produtosQuantidades, i);
+			if (faltando && !indisponiveis.contains(produtosIds.get(i)))
+			{
+				indisponiveis.add(produtosIds.get(i));
+			}
+		}
+		return indisponiveis;
+	}
+
+	/** Quantidade total pedida do produto na posição {@code i}, somando as repetições. */
+	private static long demanda(int[] posicoes, List<Long> produtosQuantidades, int i)
+	{
+		long total = 0L;
+		for (int j = 0; j < posicoes.length; j++)
+		{
+			if (posicoes[j] == posicoes[i])
+			{
+				total += produtosQuantidades.get(j);
+			}
+		}
+		return total;
+	}
+
+	private void devolver(ItensReservados itens)
+	{
+		for (int i = 0; i < itens.posicoes.length; i++)
+		{
+			tabela.devolver(itens.posicoes[i], itens.quantidades[i]);
+		}
+	}
+
+	private static final class ItensReservados
+	{
+		private final int[] posicoes;
+		private final long[] quantidades;
+
+		ItensReservados(int[] posicoes, long[] quantidades)
+		{
+			this.posicoes = posicoes;
+			this.quantidades = quantidades;
+		}
 	}
 }
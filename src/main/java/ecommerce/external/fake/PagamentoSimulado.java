@@ -1,25 +1,208 @@
 package ecommerce.external.fake;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import ecommerce.dto.PagamentoDTO;
 import ecommerce.external.IPagamentoExternal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
+/**
+ * Provedor de pagamento no próprio processo, para rodar a compra de ponta a
+ * ponta e reproduzir a latência de cauda do provedor real sem sair da
+ * máquina. Cada chamada espera uma latência sorteada de
+ * {@link DistribuicaoLatencia}; depois, a autorização falha com
+ * {@code taxaFalhaPercentual}% de chance (exceção, como um provedor fora do
+ * ar), é recusada com {@code taxaRecusaPercentual}% e, nos demais casos, é
+ * aprovada com um {@code transacaoId} novo. O cancelamento tem a mesma
+ * latência e a mesma taxa de falha.
+ *
+ * Os ids saem de um {@link AtomicLong} que começa no relógio em
+ * milissegundos vezes mil, para não repetir ids de uma execução anterior
+ * enquanto a vazão ficar abaixo de mil transações por milissegundo.
+ *
+ * As últimas {@code transacoesRetidas} transações aprovadas ficam registradas
+ * com cliente e estado. Cancelar duas vezes não tem efeito; cancelar uma
+ * transação desconhecida ou de outro cliente é recusado com
+ * {@link IllegalArgumentException}.
+ */
 @Service
 public class PagamentoSimulado implements IPagamentoExternal
 {
+	public enum Estado
+	{
+		AUTORIZADA, CANCELADA
+	}
+
+	private final DistribuicaoLatencia latencia;
+	private final double taxaRecusa;
+	private final double taxaFalha;
+
+	private final AtomicLong ultimoId;
+	private final Cache<Long, Transacao> transacoes;
+
+	private final Counter aprovadas;
+	private final Counter recusadas;
+	private final Counter falhas;
+	private final Counter cancelamentos;
+
+	public PagamentoSimulado(DistribuicaoLatencia latencia, double taxaRecusaPercentual, double taxaFalhaPercentual,
+			long transacoesRetidas, Clock relogio)
+	{
+		this(latencia, taxaRecusaPercentual, taxaFalhaPercentual, transacoesRetidas, relogio,
+				new SimpleMeterRegistry());
+	}
+
+	public PagamentoSimulado(DistribuicaoLatencia latencia, double taxaRecusaPercentual, double taxaFalhaPercentual,
+			long transacoesRetidas, Clock relogio, MeterRegistry registro)
+	{
+		if (taxaRecusaPercentual < 0 || taxaFalhaPercentual < 0 || taxaRecusaPercentual + taxaFalhaPercentual > 100)
+		{
+			throw new IllegalArgumentException("Taxas de recusa e falha devem estar entre 0 e 100, somadas.");
+		}
+		this.latencia = latencia;
+		this.taxaRecusa = taxaRecusaPercentual / 100.0;
+		this.taxaFalha = taxaFalhaPercentual / 100.0;
+		this.ultimoId = new AtomicLong(relogio.millis() * 1_000L);
+		this.transacoes = Caffeine.newBuilder().maximumSize(transacoesRetidas).build();
+
+		this.aprovadas = contador(registro, "aprovada");
+		this.recusadas = contador(registro, "recusada");
+		this.falhas = contador(registro, "falha");
+		this.cancelamentos = Counter.builder("pagamento.simulado.cancelamentos")
+				.description("Transações canceladas no pagamento simulado")
+				.register(registro);
+	}
+
+	@Autowired
+	public PagamentoSimulado(
+			@Value("${ecommerce.pagamento.simulado.latencia.distribuicao:FIXA}") DistribuicaoLatencia.Tipo tipo,
+			@Value("${ecommerce.pagamento.simulado.latencia.media:0ms}") Duration media,
+			@Value("${ecommerce.pagamento.simulado.latencia.desvio:0ms}") Duration desvio,
+			@Value("${ecommerce.pagamento.simulado.latencia.pareto-alfa:2.5}") double alfa,
+			@Value("${ecommerce.pagamento.simulado.latencia.maxima:10s}") Duration maxima,
+			@Value("${ecommerce.pagamento.simulado.taxa-recusa-percentual:0}") double taxaRecusaPercentual,
+			@Value("${ecommerce.pagamento.simulado.taxa-falha-percentual:0}") double taxaFalhaPercentual,
+			@Value("${ecommerce.pagamento.simulado.transacoes-retidas:1000000}") long transacoesRetidas,
+			MeterRegistry registro)
+	{
+		this(DistribuicaoLatencia.de(tipo, media, desvio, alfa, maxima), taxaRecusaPercentual, taxaFalhaPercentual,
+				transacoesRetidas, Clock.systemUTC(), registro);
+	}
 
 	@Override
 	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		if (clienteId == null || custoTotal == null || custoTotal < 0)
+		{
+			throw new IllegalArgumentException("Cliente e valor não negativo são obrigatórios.");
+		}
+		Random aleatorio = ThreadLocalRandom.current();
+		aguardar(aleatorio);
+		double sorteio = aleatorio.nextDouble();
+		if (sorteio < taxaFalha)
+		{
+			falhas.increment();
+			throw new IllegalStateException("Falha simulada no provedor de pagamento.");
+		}
+		if (sorteio < taxaFalha + taxaRecusa)
+		{
+			recusadas.increment();
+			return new PagamentoDTO(false, null);
+		}
+		long transacaoId = ultimoId.incrementAndGet();
+		transacoes.put(transacaoId, new Transacao(clienteId));
+		aprovadas.increment();
+		return new PagamentoDTO(true, transacaoId);
 	}
 
 	@Override
 	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
 	{
-		// TODO Auto-generated method stub
+		Random aleatorio = ThreadLocalRandom.current();
+		aguardar(aleatorio);
+		if (aleatorio.nextDouble() < taxaFalha)
+		{
+			throw new IllegalStateException("Falha simulada no provedor de pagamento.");
+		}
+		Transacao transacao = pagamentoTransacaoId == null ? null : transacoes.getIfPresent(pagamentoTransacaoId);
+		if (transacao == null || !transacao.clienteId.equals(clienteId))
+		{
+			throw new IllegalArgumentException("Transação " + pagamentoTransacaoId + " desconhecida para o cliente "
+					+ clienteId + ".");
+		}
+		if (transacao.cancelar())
+		{
+			cancelamentos.increment();
+		}
+	}
+
+	/** Estado da transação, se ela ainda está entre as retidas. */
+	public Optional<Estado> estado(long transacaoId)
+	{
+		Transacao transacao = transacoes.getIfPresent(transacaoId);
+		return transacao == null ? Optional.empty() : Optional.of(transacao.estado());
+	}
+
+	private void aguardar(Random aleatorio)
+	{
+		long nanos = latencia.amostrar(aleatorio);
+		long limite = System.nanoTime() + nanos;
+		// parkNanos pode voltar antes do prazo
+		while (nanos > 0)
+		{
+			LockSupport.parkNanos(nanos);
+			if (Thread.interrupted())
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Chamada ao pagamento simulado interrompida.");
+			}
+			nanos = limite - System.nanoTime();
+		}
+	}
+
+	private static Counter contador(MeterRegistry registro, String resultado)
+	{
+		return Counter.builder("pagamento.simulado.autorizacoes")
+				.description("Autorizações do pagamento simulado")
+				.tag("resultado", resultado)
+				.register(registro);
+	}
+
+	private static final class Transacao
+	{
+		private final Long clienteId;
+		private final AtomicBoolean cancelada = new AtomicBoolean();
+
+		Transacao(Long clienteId)
+		{
+			this.clienteId = clienteId;
+		}
+
+		/** Marca como cancelada; falso se já estava. */
+		boolean cancelar()
+		{
+			return cancelada.compareAndSet(false, true);
+		}
 
+		Estado estado()
+		{
+			return cancelada.get() ? Estado.CANCELADA : Estado.AUTORIZADA;
+		}
 	}
 }
@@ -0,0 +1,214 @@
+package ecommerce.external.fake;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Quantidades em estoque por id de produto, sem caixas {@link Long}. Cada
+ * produto recebe uma posição fixa; as quantidades ficam em blocos de
+ * {@link AtomicLongArray} que nunca são copiados, então retiradas e devoluções
+ * por CAS continuam valendo enquanto a tabela cresce. Cada posição ocupa uma
+ * linha de cache (64 bytes) para que produtos vizinhos disputados não se
+ * atrapalhem.
+ *
+ * O índice de id para posição é de endereçamento aberto (sondagem linear),
+ * como {@code IndiceProdutos} do catálogo: inclusões serializadas neste
+ * objeto, leituras sem bloqueio. Ao passar de 50% de carga, um índice maior é
+ * montado e publicado de uma vez.
+ */
+final class TabelaEstoque
+{
+	static final int AUSENTE = -1;
+
+	private static final long VAZIO = Long.MIN_VALUE;
+	private static final int ESPACAMENTO = 8;
+	private static final int BITS_BLOCO = 10;
+	private static final int POSICOES_POR_BLOCO = 1 << BITS_BLOCO;
+	private static final VarHandle CHAVES = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private volatile Indice indice;
+	private volatile AtomicLongArray[] blocos = new AtomicLongArray[0];
+	private int posicoes;
+
+	TabelaEstoque(int capacidadeInicial)
+	{
+		this.indice = new Indice(capacidadeInicial);
+	}
+
+	/** Posição do produto, ou {@link #AUSENTE}. */
+	int posicao(long id)
+	{
+		return indice.obter(id);
+	}
+
+	long quantidade(int posicao)
+	{
+		return bloco(posicao).get(celula(posicao));
+	}
+
+	/** Retira {@code quantidade} se houver o bastante; nunca deixa o saldo negativo. */
+	boolean retirar(int posicao, long quantidade)
+	{
+		AtomicLongArray bloco = bloco(posicao);
+		int celula = celula(posicao);
+		long atual = bloco.get(celula);
+		while (atual >= quantidade)
+		{
+			long visto = bloco.compareAndExchange(celula, atual, atual - quantidade);
+			if (visto == atual)
+			{
+				return true;
+			}
+			atual = visto;
+		}
+		return false;
+	}
+
+	void devolver(int posicao, long quantidade)
+	{
+		bloco(posicao).getAndAdd(celula(posicao), quantidade);
+	}
+
+	void definir(int posicao, long quantidade)
+	{
+		bloco(posicao).set(celula(posicao), quantidade);
+	}
+
+	/** Posição do produto, incluindo-o com saldo zero se ainda não existe. */
+	synchronized int posicaoOuIncluir(long id)
+	{
+		if (id == VAZIO)
+		{
+			throw new IllegalArgumentException("Id de produto inválido: " + id);
+		}
+		Indice atual = indice;
+		int posicao = atual.obter(id);
+		if (posicao != AUSENTE)
+		{
+			return posicao;
+		}
+		posicao = posicoes;
+		if ((posicao >> BITS_BLOCO) == blocos.length)
+		{
+			AtomicLongArray[] maiores = Arrays.copyOf(blocos, blocos.length + 1);
+			maiores[blocos.length] = new AtomicLongArray(POSICOES_POR_BLOCO * ESPACAMENTO);
+			blocos = maiores;
+		}
+		if (atual.cheio())
+		{
+			Indice maior = new Indice(atual.tamanho * 2 + 1);
+			atual.copiarPara(maior);
+			maior.incluir(id, posicao);
+			indice = maior;
+		}
+		else
+		{
+			atual.incluir(id, posicao);
+		}
+		posicoes++;
+		return posicao;
+	}
+
+	/** Ids presentes, na ordem de inclusão. */
+	synchronized long[] ids()
+	{
+		return indice.idsPorPosicao(posicoes);
+	}
+
+	int tamanho()
+	{
+		return indice.tamanho;
+	}
+
+	private AtomicLongArray bloco(int posicao)
+	{
+		return blocos[posicao >> BITS_BLOCO];
+	}
+
+	private static int celula(int posicao)
+	{
+		return (posicao & (POSICOES_POR_BLOCO - 1)) * ESPACAMENTO;
+	}
+
+	private static final class Indice
+	{
+		private final long[] chaves;
+		private final int[] posicoes;
+		private final int mascara;
+		private int tamanho;
+
+		Indice(int capacidadeMinima)
+		{
+			int capacidade = Integer.highestOneBit(Math.max(capacidadeMinima, 8) * 2 - 1) * 2;
+			this.chaves = new long[capacidade];
+			this.posicoes = new int[capacidade];
+			this.mascara = capacidade - 1;
+			Arrays.fill(chaves, VAZIO);
+		}
+
+		int obter(long id)
+		{
+			for (int i = hash(id); ; i = (i + 1) & mascara)
+			{
+				long chave = (long) CHAVES.getAcquire(chaves, i);
+				if (chave == id)
+				{
+					return posicoes[i];
+				}
+				if (chave == VAZIO)
+				{
+					return AUSENTE;
+				}
+			}
+		}
+
+		void incluir(long id, int posicao)
+		{
+			int i = hash(id);
+			while (chaves[i] != VAZIO)
+			{
+				i = (i + 1) & mascara;
+			}
+			posicoes[i] = posicao;
+			CHAVES.setRelease(chaves, i, id);
+			tamanho++;
+		}
+
+		boolean cheio()
+		{
+			return (tamanho + 1) * 2 > chaves.length;
+		}
+
+		void copiarPara(Indice destino)
+		{
+			for (int i = 0; i < chaves.length; i++)
+			{
+				if (chaves[i] != VAZIO)
+				{
+					destino.incluir(chaves[i], posicoes[i]);
+				}
+			}
+		}
+
+		long[] idsPorPosicao(int quantidade)
+		{
+			long[] ids = new long[quantidade];
+			for (int i = 0; i < chaves.length; i++)
+			{
+				if (chaves[i] != VAZIO)
+				{
+					ids[posicoes[i]] = chaves[i];
+				}
+			}
+			return ids;
+		}
+
+		private int hash(long id)
+		{
+			long h = id * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mascara;
+		}
+	}
+}
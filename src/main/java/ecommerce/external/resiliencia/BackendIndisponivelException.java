@@ -0,0 +1,49 @@
+package ecommerce.external.resiliencia;
+
+/**
+ * Chamada a um serviço externo recusada ou abandonada pela
+ * {@link ProtecaoBackend}, sem resposta do serviço.
+ */
+public class BackendIndisponivelException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	public enum Motivo
+	{
+		CIRCUITO_ABERTO("circuito-aberto"),
+		LIMITE_CONCORRENCIA("limite-concorrencia"),
+		TEMPO_LIMITE("tempo-limite");
+
+		private final String tag;
+
+		Motivo(String tag)
+		{
+			this.tag = tag;
+		}
+
+		public String getTag()
+		{
+			return tag;
+		}
+	}
+
+	private final String backend;
+	private final Motivo motivo;
+
+	public BackendIndisponivelException(String backend, Motivo motivo)
+	{
+		super("Serviço de " + backend + " indisponível (" + motivo.getTag() + ").");
+		this.backend = backend;
+		this.motivo = motivo;
+	}
+
+	public String getBackend()
+	{
+		return backend;
+	}
+
+	public Motivo getMotivo()
+	{
+		return motivo;
+	}
+}
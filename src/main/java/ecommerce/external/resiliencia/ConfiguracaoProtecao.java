@@ -0,0 +1,86 @@
+package ecommerce.external.resiliencia;
+
+import java.time.Duration;
+
+/**
+ * Parâmetros de {@link ProtecaoBackend}: quantas chamadas podem estar em
+ * andamento ao mesmo tempo, quanto cada uma pode demorar e quando o
+ * {@link Disjuntor} abre. O disjuntor avalia as últimas {@code janelaChamadas}
+ * chamadas e abre quando, com ao menos {@code minimoChamadas} registradas, a
+ * proporção de falhas chega a {@code taxaFalhaPercentual}. Aberto, recusa
+ * tudo por {@code esperaAberto} e depois deixa passar
+ * {@code sondasSemiAberto} chamadas de teste.
+ */
+public class ConfiguracaoProtecao
+{
+	private final int limiteConcorrencia;
+	private final Duration tempoLimite;
+	private final int janelaChamadas;
+	private final int minimoChamadas;
+	private final int taxaFalhaPercentual;
+	private final Duration esperaAberto;
+	private final int sondasSemiAberto;
+
+	public ConfiguracaoProtecao(int limiteConcorrencia, Duration tempoLimite, int janelaChamadas, int minimoChamadas,
+			int taxaFalhaPercentual, Duration esperaAberto, int sondasSemiAberto)
+	{
+		if (limiteConcorrencia < 1 || janelaChamadas < 1 || sondasSemiAberto < 1)
+		{
+			throw new IllegalArgumentException("Limite de concorrência, janela e sondas devem ser positivos.");
+		}
+		if (minimoChamadas < 1 || minimoChamadas > janelaChamadas)
+		{
+			throw new IllegalArgumentException("Mínimo de chamadas deve estar entre 1 e o tamanho da janela.");
+		}
+		if (taxaFalhaPercentual < 1 || taxaFalhaPercentual > 100)
+		{
+			throw new IllegalArgumentException("Taxa de falha deve estar entre 1 e 100.");
+		}
+		if (tempoLimite.isNegative() || tempoLimite.isZero() || esperaAberto.isNegative())
+		{
+			throw new IllegalArgumentException("Tempo limite deve ser positivo.");
+		}
+		this.limiteConcorrencia = limiteConcorrencia;
+		this.tempoLimite = tempoLimite;
+		this.janelaChamadas = janelaChamadas;
+		this.minimoChamadas = minimoChamadas;
+		this.taxaFalhaPercentual = taxaFalhaPercentual;
+		this.esperaAberto = esperaAberto;
+		this.sondasSemiAberto = sondasSemiAberto;
+	}
+
+	public int getLimiteConcorrencia()
+	{
+		return limiteConcorrencia;
+	}
+
+	public Duration getTempoLimite()
+	{
+		return tempoLimite;
+	}
+
+	public int getJanelaChamadas()
+	{
+		return janelaChamadas;
+	}
+
+	public int getMinimoChamadas()
+	{
+		return minimoChamadas;
+	}
+
+	public int getTaxaFalhaPercentual()
+	{
+		return taxaFalhaPercentual;
+	}
+
+	public Duration getEsperaAberto()
+	{
+		return esperaAberto;
+	}
+
+	public int getSondasSemiAberto()
+	{
+		return sondasSemiAberto;
+	}
+}
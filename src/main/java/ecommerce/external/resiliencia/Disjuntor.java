@@ -0,0 +1,149 @@
+package ecommerce.external.resiliencia;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Disjuntor por contagem: registra o resultado das últimas chamadas em um anel
+ * e abre quando a proporção de falhas passa do limite. Aberto, recusa as
+ * chamadas até o fim da espera; então passa a semiaberto e admite algumas
+ * sondas. Todas bem-sucedidas, fecha; uma falha, abre de novo.
+ *
+ * Cada mudança de estado inicia uma nova geração, e o resultado de uma
+ * chamada admitida em geração anterior é descartado: uma chamada lenta
+ * admitida com o circuito fechado não conta como sonda.
+ */
+public final class Disjuntor
+{
+	/** Valor de {@link #admitir()} quando a chamada é recusada. */
+	public static final long RECUSADA = -1L;
+
+	public enum Estado
+	{
+		FECHADO, SEMIABERTO, ABERTO
+	}
+
+	private final Clock relogio;
+	private final ConfiguracaoProtecao configuracao;
+	private final boolean[] falhas;
+
+	private Estado estado = Estado.FECHADO;
+	private long geracao;
+	private int posicao;
+	private int registradas;
+	private int falhasNaJanela;
+	private Instant abertoAte;
+	private int sondasAdmitidas;
+	private int sondasBemSucedidas;
+
+	public Disjuntor(Clock relogio, ConfiguracaoProtecao configuracao)
+	{
+		this.relogio = relogio;
+		this.configuracao = configuracao;
+		this.falhas = new boolean[configuracao.getJanelaChamadas()];
+	}
+
+	/** Devolve a geração em que a chamada foi admitida ou {@link #RECUSADA}. */
+	public synchronized long admitir()
+	{
+		if (estado == Estado.ABERTO)
+		{
+			if (relogio.instant().isBefore(abertoAte))
+			{
+				return RECUSADA;
+			}
+			mudarPara(Estado.SEMIABERTO);
+		}
+		if (estado == Estado.SEMIABERTO)
+		{
+			if (sondasAdmitidas >= configuracao.getSondasSemiAberto())
+			{
+				return RECUSADA;
+			}
+			sondasAdmitidas++;
+		}
+		return geracao;
+	}
+
+	public synchronized void registrarSucesso(long geracaoAdmissao)
+	{
+		if (geracaoAdmissao != geracao)
+		{
+			return;
+		}
+		if (estado == Estado.SEMIABERTO)
+		{
+			if (++sondasBemSucedidas >= configuracao.getSondasSemiAberto())
+			{
+				mudarPara(Estado.FECHADO);
+			}
+			return;
+		}
+		registrar(false);
+	}
+
+	public synchronized void registrarFalha(long geracaoAdmissao)
+	{
+		if (geracaoAdmissao != geracao)
+		{
+			return;
+		}
+		if (estado == Estado.SEMIABERTO)
+		{
+			mudarPara(Estado.ABERTO);
+			return;
+		}
+		registrar(true);
+		if (registradas >= configuracao.getMinimoChamadas()
+				&& falhasNaJanela * 100 >= configuracao.getTaxaFalhaPercentual() * registradas)
+		{
+			mudarPara(Estado.ABERTO);
+		}
+	}
+
+	/** Estado atual; um circuito aberto com a espera vencida aparece como semiaberto. */
+	public synchronized Estado estado()
+	{
+		if (estado == Estado.ABERTO && !relogio.instant().isBefore(abertoAte))
+		{
+			return Estado.SEMIABERTO;
+		}
+		return estado;
+	}
+
+	private void registrar(boolean falha)
+	{
+		if (registradas == falhas.length)
+		{
+			if (falhas[posicao])
+			{
+				falhasNaJanela--;
+			}
+		}
+		else
+		{
+			registradas++;
+		}
+		falhas[posicao] = falha;
+		if (falha)
+		{
+			falhasNaJanela++;
+		}
+		posicao = (posicao + 1) % falhas.length;
+	}
+
+	private void mudarPara(Estado novo)
+	{
+		estado = novo;
+		geracao++;
+		posicao = 0;
+		registradas = 0;
+		falhasNaJanela = 0;
+		sondasAdmitidas = 0;
+		sondasBemSucedidas = 0;
+		if (novo == Estado.ABERTO)
+		{
+			abertoAte = relogio.instant().plus(configuracao.getEsperaAberto());
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package ecommerce.external.resiliencia;
+
+import java.time.Duration;
+import java.util.List;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+
+/**
+ * {@link IEstoqueExternal} com as chamadas passando por uma
+ * {@link ProtecaoBackend}. A liberação de reserva é compensação e não é
+ * barrada pelo disjuntor. A baixa e a confirmação de reserva tiram estoque e
+ * não têm como ser desfeitas, então não são abandonadas no tempo limite: a
+ * compra só desiste delas com a resposta do serviço em mãos.
+ */
+public class EstoqueProtegido implements IEstoqueExternal
+{
+	private final IEstoqueExternal estoque;
+	private final ProtecaoBackend protecao;
+
+	public EstoqueProtegido(IEstoqueExternal estoque, ProtecaoBackend protecao)
+	{
+		this.estoque = estoque;
+		this.protecao = protecao;
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		return protecao.executarAteOFim(() -> estoque.darBaixa(produtosIds, produtosQuantidades));
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		return protecao.executar(() -> estoque.verificarDisponibilidade(produtosIds, produtosQuantidades));
+	}
+
+	@Override
+	public boolean suportaReservas()
+	{
+		return estoque.suportaReservas();
+	}
+
+	@Override
+	public ReservaEstoqueDTO reservar(List<Long> produtosIds, List<Long> produtosQuantidades, Duration ttl)
+	{
+		return protecao.executar(() -> estoque.reservar(produtosIds, produtosQuantidades, ttl));
+	}
+
+	@Override
+	public EstoqueBaixaDTO confirmarReserva(String token)
+	{
+		return protecao.executarAteOFim(() -> estoque.confirmarReserva(token));
+	}
+
+	@Override
+	public void liberarReserva(String token)
+	{
+		protecao.executarCompensacao(() -> {
+			estoque.liberarReserva(token);
+			return null;
+		});
+	}
+}
@@ -0,0 +1,60 @@
+package ecommerce.external.resiliencia;
+
+import java.util.function.BiConsumer;
+
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.IPagamentoExternal;
+
+/**
+ * {@link IPagamentoExternal} com as chamadas passando por uma
+ * {@link ProtecaoBackend}. O cancelamento é compensação e não é barrado pelo
+ * disjuntor.
+ *
+ * Uma autorização que estoura o tempo limite chega ao chamador como
+ * {@link BackendIndisponivelException}, e a compra a trata como não paga; se
+ * o provedor autorizar depois, a transação vai para
+ * {@code cancelarAutorizacaoTardia} (cliente, transação), para que o cliente
+ * não fique cobrado sem pedido.
+ */
+public class PagamentoProtegido implements IPagamentoExternal
+{
+	/** Nome da {@link ProtecaoBackend} do pagamento, que vai em {@link BackendIndisponivelException#getBackend()}. */
+	public static final String BACKEND = "pagamento";
+
+	private final IPagamentoExternal pagamento;
+	private final ProtecaoBackend protecao;
+	private final BiConsumer<Long, Long> cancelarAutorizacaoTardia;
+
+	public PagamentoProtegido(IPagamentoExternal pagamento, ProtecaoBackend protecao)
+	{
+		this(pagamento, protecao, pagamento::cancelarPagamento);
+	}
+
+	public PagamentoProtegido(IPagamentoExternal pagamento, ProtecaoBackend protecao,
+			BiConsumer<Long, Long> cancelarAutorizacaoTardia)
+	{
+		this.pagamento = pagamento;
+		this.protecao = protecao;
+		this.cancelarAutorizacaoTardia = cancelarAutorizacaoTardia;
+	}
+
+	@Override
+	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal)
+	{
+		return protecao.executar(() -> pagamento.autorizarPagamento(clienteId, custoTotal), autorizacao -> {
+			if (autorizacao != null && Boolean.TRUE.equals(autorizacao.autorizado()))
+			{
+				cancelarAutorizacaoTardia.accept(clienteId, autorizacao.transacaoId());
+			}
+		});
+	}
+
+	@Override
+	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId)
+	{
+		protecao.executarCompensacao(() -> {
+			pagamento.cancelarPagamento(clienteId, pagamentoTransacaoId);
+			return null;
+		});
+	}
+}
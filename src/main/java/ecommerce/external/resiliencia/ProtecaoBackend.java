@@ -0,0 +1,311 @@
+package ecommerce.external.resiliencia;
+
+import java.time.Clock;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ecommerce.external.resiliencia.BackendIndisponivelException.Motivo;
+import ecommerce.rastreamento.ContextoRastreamento;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Isola as chamadas a um serviço externo: no máximo
+ * {@code limiteConcorrencia} em andamento (as excedentes são recusadas na
+ * hora), tempo limite por chamada e {@link Disjuntor}. Exceções do serviço e
+ * estouros de tempo contam como falha; respostas negativas (pagamento não
+ * autorizado, baixa recusada) são respostas e contam como sucesso.
+ *
+ * A chamada roda em uma thread da proteção para que o chamador possa
+ * desistir no tempo limite. A thread abandonada é interrompida, mas a vaga só
+ * volta quando a chamada de fato termina: um serviço que ignora interrupção
+ * continua ocupando a concorrência que consome. Com
+ * {@link #executar(Supplier, Consumer)} a chamada abandonada não é
+ * interrompida: ela segue até o fim e a resposta tardia vai para quem a
+ * desfaz, porque o serviço pode ter efetivado a operação depois do tempo
+ * limite. Escritas sem como desfazer usam {@link #executarAteOFim(Supplier)},
+ * que não abandona a chamada.
+ *
+ * Métricas, com a tag {@code backend}: {@code externo.disjuntor.estado}
+ * (1 no estado atual, tag {@code estado}), {@code externo.rejeicoes} (tag
+ * {@code motivo}) e {@code externo.chamadas.em.andamento}.
+ */
+public final class ProtecaoBackend implements AutoCloseable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ProtecaoBackend.class);
+
+	private final String nome;
+	private final ConfiguracaoProtecao configuracao;
+	private final Disjuntor disjuntor;
+	private final Semaphore vagas;
+	private final ThreadPoolExecutor executor;
+
+	private final Counter recusasCircuito;
+	private final Counter recusasConcorrencia;
+	private final Counter estourosTempo;
+
+	public ProtecaoBackend(String nome, ConfiguracaoProtecao configuracao, Clock relogio, MeterRegistry registro)
+	{
+		this.nome = nome;
+		this.configuracao = configuracao;
+		this.disjuntor = new Disjuntor(relogio, configuracao);
+		this.vagas = new Semaphore(configuracao.getLimiteConcorrencia());
+
+		// Sem fila e sem limite próprio: quem limita as threads é o semáforo
+		AtomicInteger contador = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				tarefa -> {
+					Thread thread = new Thread(tarefa, "externo-" + nome + "-" + contador.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		for (Disjuntor.Estado estado : Disjuntor.Estado.values())
+		{
+			Gauge.builder("externo.disjuntor.estado", disjuntor, d -> d.estado() == estado ? 1 : 0)
+					.description("Estado do disjuntor do serviço externo")
+					.tags("backend", nome, "estado", estado.name().toLowerCase())
+					.register(registro);
+		}
+		Gauge.builder("externo.chamadas.em.andamento", vagas,
+				v -> configuracao.getLimiteConcorrencia() - v.availablePermits())
+				.description("Chamadas ao serviço externo em andamento")
+				.tags("backend", nome)
+				.register(registro);
+		this.recusasCircuito = contadorRejeicoes(registro, Motivo.CIRCUITO_ABERTO);
+		this.recusasConcorrencia = contadorRejeicoes(registro, Motivo.LIMITE_CONCORRENCIA);
+		this.estourosTempo = contadorRejeicoes(registro, Motivo.TEMPO_LIMITE);
+	}
+
+	/**
+	 * Executa a chamada com limite de concorrência, tempo limite e disjuntor.
+	 * Recusas e estouros de tempo resultam em
+	 * {@link BackendIndisponivelException}; exceções do serviço chegam ao
+	 * chamador como foram lançadas.
+	 */
+	public <T> T executar(Supplier<T> chamada)
+	{
+		return executar(chamada, true, null);
+	}
+
+	/**
+	 * Como {@link #executar(Supplier)}, mas a chamada abandonada no tempo
+	 * limite continua e, se ela terminar com resposta, {@code respostaTardia}
+	 * a recebe na thread da proteção. Para operações com efeito no serviço,
+	 * como uma autorização de pagamento, que precisam ser desfeitas mesmo sem
+	 * o chamador ter visto a resposta.
+	 */
+	public <T> T executar(Supplier<T> chamada, Consumer<? super T> respostaTardia)
+	{
+		return executar(chamada, true, respostaTardia);
+	}
+
+	/**
+	 * Executa uma escrita que não pode ser abandonada nem desfeita depois, como
+	 * uma baixa de estoque: limite de concorrência e disjuntor valem, mas a
+	 * chamada roda na thread de quem chamou e o resultado é sempre o do
+	 * serviço. Uma chamada que passa do tempo limite conta como falha no
+	 * disjuntor sem perder a resposta.
+	 */
+	public <T> T executarAteOFim(Supplier<T> chamada)
+	{
+		long geracao = admitir(true);
+		long inicio = System.nanoTime();
+		T valor;
+		try
+		{
+			valor = chamada.get();
+		}
+		catch (RuntimeException | Error e)
+		{
+			disjuntor.registrarFalha(geracao);
+			throw e;
+		}
+		finally
+		{
+			vagas.release();
+		}
+		if (System.nanoTime() - inicio > configuracao.getTempoLimite().toNanos())
+		{
+			disjuntor.registrarFalha(geracao);
+		}
+		else
+		{
+			disjuntor.registrarSucesso(geracao);
+		}
+		return valor;
+	}
+
+	/**
+	 * Executa uma compensação (cancelamento, liberação de reserva) com limite
+	 * de concorrência e tempo limite, mas sem consultar o disjuntor: desfazer
+	 * uma operação não deve ser recusado por causa de falhas anteriores.
+	 */
+	public <T> T executarCompensacao(Supplier<T> chamada)
+	{
+		return executar(chamada, false, null);
+	}
+
+	public Disjuntor.Estado estado()
+	{
+		return disjuntor.estado();
+	}
+
+	public String getNome()
+	{
+		return nome;
+	}
+
+	@Override
+	public void close()
+	{
+		executor.shutdownNow();
+	}
+
+	private <T> T executar(Supplier<T> chamada, boolean comDisjuntor, Consumer<? super T> respostaTardia)
+	{
+		long geracao = admitir(comDisjuntor);
+
+		// A chamada roda em outra thread, ainda dentro do span de quem chamou
+		Supplier<T> chamadaRastreada = ContextoRastreamento.propagar(chamada);
+		CompletableFuture<T> resposta = new CompletableFuture<>();
+		Future<?> tarefa;
+		try
+		{
+			tarefa = executor.submit(() -> {
+				T valor = null;
+				Throwable falha = null;
+				try
+				{
+					valor = chamadaRastreada.get();
+				}
+				catch (Throwable e)
+				{
+					falha = e;
+				}
+				// A vaga volta antes de o chamador ver a resposta
+				vagas.release();
+				if (falha == null)
+				{
+					resposta.complete(valor);
+				}
+				else
+				{
+					resposta.completeExceptionally(falha);
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			vagas.release();
+			throw e;
+		}
+
+		try
+		{
+			T valor = resposta.get(configuracao.getTempoLimite().toNanos(), TimeUnit.NANOSECONDS);
+			if (comDisjuntor)
+			{
+				disjuntor.registrarSucesso(geracao);
+			}
+			return valor;
+		}
+		catch (TimeoutException | CancellationException e)
+		{
+			abandonar(tarefa, resposta, respostaTardia);
+			registrarFalha(comDisjuntor, geracao);
+			estourosTempo.increment();
+			throw new BackendIndisponivelException(nome, Motivo.TEMPO_LIMITE);
+		}
+		catch (ExecutionException e)
+		{
+			registrarFalha(comDisjuntor, geracao);
+			Throwable causa = e.getCause();
+			if (causa instanceof RuntimeException)
+			{
+				throw (RuntimeException) causa;
+			}
+			if (causa instanceof Error)
+			{
+				throw (Error) causa;
+			}
+			throw new IllegalStateException(causa);
+		}
+		catch (InterruptedException e)
+		{
+			// Quem desistiu foi o chamador, mas a geração admitida (talvez uma
+			// sonda do semiaberto) precisa de um desfecho para não ficar presa
+			abandonar(tarefa, resposta, respostaTardia);
+			registrarFalha(comDisjuntor, geracao);
+			Thread.currentThread().interrupt();
+			throw new BackendIndisponivelException(nome, Motivo.TEMPO_LIMITE);
+		}
+	}
+
+	/** Ocupa uma vaga e, com disjuntor, a admissão; devolve a geração admitida. */
+	private long admitir(boolean comDisjuntor)
+	{
+		if (!vagas.tryAcquire())
+		{
+			recusasConcorrencia.increment();
+			throw new BackendIndisponivelException(nome, Motivo.LIMITE_CONCORRENCIA);
+		}
+		long geracao = comDisjuntor ? disjuntor.admitir() : Disjuntor.RECUSADA;
+		if (comDisjuntor && geracao == Disjuntor.RECUSADA)
+		{
+			vagas.release();
+			recusasCircuito.increment();
+			throw new BackendIndisponivelException(nome, Motivo.CIRCUITO_ABERTO);
+		}
+		return geracao;
+	}
+
+	private <T> void abandonar(Future<?> tarefa, CompletableFuture<T> resposta, Consumer<? super T> respostaTardia)
+	{
+		if (respostaTardia == null)
+		{
+			tarefa.cancel(true);
+			return;
+		}
+		resposta.thenAccept(valor -> {
+			try
+			{
+				respostaTardia.accept(valor);
+			}
+			catch (RuntimeException e)
+			{
+				LOG.error("Falha ao tratar a resposta tardia de {}", nome, e);
+			}
+		});
+	}
+
+	private void registrarFalha(boolean comDisjuntor, long geracao)
+	{
+		if (comDisjuntor)
+		{
+			disjuntor.registrarFalha(geracao);
+		}
+	}
+
+	private Counter contadorRejeicoes(MeterRegistry registro, Motivo motivo)
+	{
+		return Counter.builder("externo.rejeicoes")
+				.description("Chamadas ao serviço externo recusadas ou abandonadas")
+				.tags("backend", nome, "motivo", motivo.getTag())
+				.register(registro);
+	}
+}
@@ -0,0 +1,55 @@
+package ecommerce.rastreamento;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Exportador em memória com os últimos {@code capacidade} spans, para testes e
+ * inspeção local sem um coletor externo.
+ */
+public class ColetorSpans implements ExportadorSpans
+{
+	private final int capacidade;
+	private final Deque<Span> spans = new ArrayDeque<>();
+
+	public ColetorSpans(int capacidade)
+	{
+		if (capacidade <= 0)
+		{
+			throw new IllegalArgumentException("A capacidade deve ser positiva.");
+		}
+		this.capacidade = capacidade;
+	}
+
+	@Override
+	public synchronized void exportar(List<Span> exportados)
+	{
+		for (Span span : exportados)
+		{
+			if (spans.size() == capacidade)
+			{
+				spans.removeFirst();
+			}
+			spans.addLast(span);
+		}
+	}
+
+	/** Spans guardados, do mais antigo ao mais recente. */
+	public synchronized List<Span> spans()
+	{
+		return new ArrayList<>(spans);
+	}
+
+	public synchronized List<Span> spans(String traceId)
+	{
+		return spans.stream().filter(s -> s.getTraceId().equals(traceId)).collect(Collectors.toList());
+	}
+
+	public synchronized void limpar()
+	{
+		spans.clear();
+	}
+}
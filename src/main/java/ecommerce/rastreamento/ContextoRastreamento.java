@@ -0,0 +1,88 @@
+package ecommerce.rastreamento;
+
+import java.util.function.Supplier;
+
+/**
+ * Span corrente de cada thread. Quem entrega trabalho a outra thread (executor,
+ * {@code CompletableFuture.supplyAsync}) usa {@link #propagar(Supplier)} para
+ * que os spans criados lá continuem filhos do span de quem entregou.
+ * Um span aberto em outra thread conta para a decisão do rastreamento se o
+ * rastreamento ainda não terminou; depois disso, segue a decisão já tomada.
+ */
+public final class ContextoRastreamento
+{
+	private static final ThreadLocal<Span> ATUAL = new ThreadLocal<>();
+
+	private ContextoRastreamento()
+	{
+	}
+
+	/** Span corrente da thread, ou {@code null} fora de um rastreamento. */
+	public static Span atual()
+	{
+		return ATUAL.get();
+	}
+
+	/**
+	 * A mesma execução, rodando com o span corrente de quem chama este método;
+	 * sem span corrente, a própria execução.
+	 */
+	public static <T> Supplier<T> propagar(Supplier<T> execucao)
+	{
+		Span span = ATUAL.get();
+		if (span == null)
+		{
+			return execucao;
+		}
+		return () -> {
+			Span anterior = ATUAL.get();
+			ATUAL.set(span);
+			try
+			{
+				return execucao.get();
+			}
+			finally
+			{
+				restaurar(anterior);
+			}
+		};
+	}
+
+	public static Runnable propagar(Runnable execucao)
+	{
+		Span span = ATUAL.get();
+		if (span == null)
+		{
+			return execucao;
+		}
+		return () -> {
+			Span anterior = ATUAL.get();
+			ATUAL.set(span);
+			try
+			{
+				execucao.run();
+			}
+			finally
+			{
+				restaurar(anterior);
+			}
+		};
+	}
+
+	static void ativar(Span span)
+	{
+		ATUAL.set(span);
+	}
+
+	static void restaurar(Span anterior)
+	{
+		if (anterior == null)
+		{
+			ATUAL.remove();
+		}
+		else
+		{
+			ATUAL.set(anterior);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package ecommerce.rastreamento;
+
+import java.util.List;
+
+/**
+ * Destino dos spans dos rastreamentos amostrados. Chamado na thread que fechou
+ * o último span, ainda dentro da operação rastreada: implementações que fazem
+ * E/S devem apenas enfileirar.
+ */
+@FunctionalInterface
+public interface ExportadorSpans
+{
+	void exportar(List<Span> spans);
+}
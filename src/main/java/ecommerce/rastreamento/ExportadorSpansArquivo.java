@@ -0,0 +1,162 @@
+package ecommerce.rastreamento;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Acrescenta os spans a um arquivo local, um objeto JSON por linha:
+ * {@code traceId}, {@code spanId}, {@code paiId}, {@code nome},
+ * {@code inicio} (nanossegundos desde a época Unix), {@code duracaoNanos},
+ * {@code atributos} e {@code erro}.
+ *
+ * {@link #exportar(List)} só enfileira; uma thread de fundo grava a fila a
+ * cada {@code intervalo}. Com a fila cheia, os spans são descartados e
+ * contados em {@code rastreamento.spans.descartados}, para que um disco lento
+ * não atrase as compras.
+ */
+public class ExportadorSpansArquivo implements ExportadorSpans, AutoCloseable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ExportadorSpansArquivo.class);
+
+	private final Path arquivo;
+	private final BlockingQueue<Span> fila;
+	private final BufferedWriter escritor;
+	private final ObjectMapper json = new ObjectMapper();
+	private final ScheduledExecutorService gravador;
+	private final Counter descartados;
+
+	public ExportadorSpansArquivo(Path arquivo, int capacidadeFila, Duration intervalo, MeterRegistry registro)
+	{
+		this.arquivo = arquivo;
+		this.fila = new ArrayBlockingQueue<>(capacidadeFila);
+		this.descartados = Counter.builder("rastreamento.spans.descartados")
+				.description("Spans amostrados descartados com a fila do exportador cheia")
+				.register(registro);
+		try
+		{
+			if (arquivo.getParent() != null)
+			{
+				Files.createDirectories(arquivo.getParent());
+			}
+			this.escritor = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Não foi possível abrir o arquivo de spans " + arquivo, e);
+		}
+
+		this.gravador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+			Thread thread = new Thread(tarefa, "rastreamento-exportador");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long periodo = Math.max(1L, intervalo.toNanos());
+		gravador.scheduleWithFixedDelay(this::gravarComLog, periodo, periodo, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void exportar(List<Span> spans)
+	{
+		for (Span span : spans)
+		{
+			if (!fila.offer(span))
+			{
+				descartados.increment();
+			}
+		}
+	}
+
+	/** Grava os spans enfileirados até agora. */
+	public synchronized void gravar()
+	{
+		List<Span> lote = new ArrayList<>();
+		fila.drainTo(lote);
+		if (lote.isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			for (Span span : lote)
+			{
+				escritor.write(linha(span));
+				escritor.newLine();
+			}
+			escritor.flush();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Falha ao gravar spans em " + arquivo, e);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		gravador.shutdownNow();
+		synchronized (this)
+		{
+			try
+			{
+				gravar();
+				escritor.close();
+			}
+			catch (IOException | UncheckedIOException e)
+			{
+				LOG.warn("Falha ao fechar o arquivo de spans {}: {}", arquivo, e.toString());
+			}
+		}
+	}
+
+	private void gravarComLog()
+	{
+		try
+		{
+			gravar();
+		}
+		catch (RuntimeException e)
+		{
+			// Uma exceção aqui cancelaria as próximas execuções
+			LOG.error("Falha ao gravar spans em {}", arquivo, e);
+		}
+	}
+
+	private String linha(Span span) throws JsonProcessingException
+	{
+		Map<String, Object> campos = new LinkedHashMap<>();
+		campos.put("traceId", span.getTraceId());
+		campos.put("spanId", span.getSpanId());
+		campos.put("paiId", span.getPaiId());
+		campos.put("nome", span.getNome());
+		campos.put("inicio", span.getInicioEpochNanos());
+		campos.put("duracaoNanos", span.getDuracaoNanos());
+		campos.put("atributos", span.getAtributos());
+		campos.put("erro", span.getErro());
+		return json.writeValueAsString(campos);
+	}
+}
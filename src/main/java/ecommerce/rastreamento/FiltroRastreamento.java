@@ -0,0 +1,116 @@
+package ecommerce.rastreamento;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Abre o span raiz de cada requisição HTTP, continuando o rastreamento do
+ * cabeçalho {@code traceparent} quando o cliente envia um. A resposta leva o
+ * cabeçalho {@code traceresponse} com o rastreamento, para que uma compra lenta
+ * vista pelo cliente possa ser encontrada entre os spans exportados.
+ *
+ * Nas requisições assíncronas o span fecha quando a resposta é concluída, e
+ * não quando a thread do servlet é liberada, para que sua duração seja a que
+ * o cliente viu.
+ */
+@Component
+public class FiltroRastreamento extends OncePerRequestFilter
+{
+	public static final String TRACEPARENT = "traceparent";
+	public static final String TRACERESPONSE = "traceresponse";
+
+	private final Rastreador rastreador;
+
+	public FiltroRastreamento(Rastreador rastreador)
+	{
+		this.rastreador = rastreador;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest requisicao, HttpServletResponse resposta, FilterChain cadeia)
+			throws ServletException, IOException
+	{
+		Span span = rastreador.iniciar(requisicao.getMethod() + " " + requisicao.getRequestURI(),
+				requisicao.getHeader(TRACEPARENT));
+		String traceparent = span.traceparent();
+		if (traceparent != null)
+		{
+			resposta.setHeader(TRACERESPONSE, traceparent);
+		}
+		boolean assincrona = false;
+		try
+		{
+			cadeia.doFilter(requisicao, resposta);
+			if (requisicao.isAsyncStarted())
+			{
+				requisicao.getAsyncContext().addListener(new FimAssincrono(span, resposta));
+				assincrona = true;
+			}
+		}
+		catch (IOException | ServletException | RuntimeException e)
+		{
+			span.erro(e);
+			throw e;
+		}
+		finally
+		{
+			if (assincrona)
+			{
+				span.desativar();
+			}
+			else
+			{
+				span.atributo("http.status", resposta.getStatus());
+				span.close();
+			}
+		}
+	}
+
+	private static final class FimAssincrono implements AsyncListener
+	{
+		private final Span span;
+		private final HttpServletResponse resposta;
+
+		FimAssincrono(Span span, HttpServletResponse resposta)
+		{
+			this.span = span;
+			this.resposta = resposta;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent evento)
+		{
+			span.atributo("http.status", resposta.getStatus());
+			span.close();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent evento)
+		{
+			span.atributo("http.tempo-limite", true);
+		}
+
+		@Override
+		public void onError(AsyncEvent evento)
+		{
+			if (evento.getThrowable() != null)
+			{
+				span.erro(evento.getThrowable());
+			}
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent evento)
+		{
+		}
+	}
+}
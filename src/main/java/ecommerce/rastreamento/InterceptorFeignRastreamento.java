@@ -0,0 +1,26 @@
+package ecommerce.rastreamento;
+
+import org.springframework.stereotype.Component;
+
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+
+/**
+ * Propaga o rastreamento corrente às chamadas dos clientes Feign pelo
+ * cabeçalho W3C {@code traceparent}, para que o serviço chamado continue o
+ * mesmo rastreamento.
+ */
+@Component
+public class InterceptorFeignRastreamento implements RequestInterceptor
+{
+	@Override
+	public void apply(RequestTemplate requisicao)
+	{
+		Span span = ContextoRastreamento.atual();
+		String traceparent = span == null ? null : span.traceparent();
+		if (traceparent != null)
+		{
+			requisicao.header(FiltroRastreamento.TRACEPARENT, traceparent);
+		}
+	}
+}
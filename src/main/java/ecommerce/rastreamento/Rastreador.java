@@ -0,0 +1,202 @@
+package ecommerce.rastreamento;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Cria os spans e decide quais rastreamentos vão para o
+ * {@link ExportadorSpans}. Duas amostragens se somam:
+ *
+ * <ul>
+ * <li>pela cabeça: na raiz, cada rastreamento é sorteado com probabilidade
+ * {@code taxaAmostragem}; um rastreamento continuado de outro processo segue
+ * a decisão de lá (flag de {@code traceparent});</li>
+ * <li>pela cauda: os spans ficam guardados até o rastreamento terminar, e ele
+ * é exportado se durou ao menos {@code limiarCauda} ou, com
+ * {@code caudaErros}, se algum span falhou.</li>
+ * </ul>
+ *
+ * Sem amostragem pela cauda, um rastreamento fora da amostra custa só a
+ * criação dos spans. Com tudo desligado, {@link #iniciar(String)} devolve
+ * sempre o mesmo span inerte.
+ *
+ * Métricas: {@code rastreamento.tracos} (tag {@code decisao}: cabeca, cauda
+ * ou descartado; só os rastreamentos gravados chegam a uma decisão) e
+ * {@code rastreamento.spans.exportados}.
+ */
+public class Rastreador
+{
+	private static final Logger LOG = LoggerFactory.getLogger(Rastreador.class);
+
+	private final double taxaAmostragem;
+	private final long limiarCaudaNanos;
+	private final boolean caudaErros;
+	private final boolean cauda;
+	private final boolean habilitado;
+	private final ExportadorSpans exportador;
+	private final Counter tracosCabeca;
+	private final Counter tracosCauda;
+	private final Counter tracosDescartados;
+	private final Counter spansExportados;
+
+	/**
+	 * @param limiarCauda duração a partir da qual o rastreamento é exportado
+	 *                    mesmo fora da amostra; zero desliga
+	 */
+	public Rastreador(double taxaAmostragem, Duration limiarCauda, boolean caudaErros, ExportadorSpans exportador,
+			MeterRegistry registro)
+	{
+		if (taxaAmostragem < 0.0 || taxaAmostragem > 1.0)
+		{
+			throw new IllegalArgumentException("A taxa de amostragem deve estar entre 0 e 1.");
+		}
+		if (limiarCauda.isNegative())
+		{
+			throw new IllegalArgumentException("O limiar da cauda não pode ser negativo.");
+		}
+		this.taxaAmostragem = taxaAmostragem;
+		this.limiarCaudaNanos = limiarCauda.toNanos();
+		this.caudaErros = caudaErros;
+		this.cauda = limiarCaudaNanos > 0 || caudaErros;
+		this.habilitado = taxaAmostragem > 0.0 || cauda;
+		this.exportador = exportador;
+		this.tracosCabeca = contadorTracos(registro, "cabeca");
+		this.tracosCauda = contadorTracos(registro, "cauda");
+		this.tracosDescartados = contadorTracos(registro, "descartado");
+		this.spansExportados = Counter.builder("rastreamento.spans.exportados")
+				.description("Spans entregues ao exportador")
+				.register(registro);
+	}
+
+	/** Rastreamento desligado, para os serviços construídos fora do Spring. */
+	public static Rastreador nenhum()
+	{
+		return new Rastreador(0.0, Duration.ZERO, false, spans -> {
+		}, new CompositeMeterRegistry());
+	}
+
+	private static Counter contadorTracos(MeterRegistry registro, String decisao)
+	{
+		return Counter.builder("rastreamento.tracos")
+				.description("Rastreamentos gravados, por decisão de amostragem")
+				.tag("decisao", decisao)
+				.register(registro);
+	}
+
+	/**
+	 * Abre um span filho do span corrente da thread, ou a raiz de um novo
+	 * rastreamento se não há span corrente.
+	 */
+	public Span iniciar(String nome)
+	{
+		if (!habilitado)
+		{
+			return Span.NENHUM;
+		}
+		Span pai = ContextoRastreamento.atual();
+		if (pai != null)
+		{
+			return new Span(pai.traco(), novoId(), pai.spanId(), nome);
+		}
+		boolean amostrado = sortear();
+		Traco traco = new Traco(this, novoId(), novoId(), amostrado, amostrado || cauda);
+		return new Span(traco, novoId(), 0L, nome);
+	}
+
+	/**
+	 * Abre a raiz local de um rastreamento que continua o cabeçalho W3C
+	 * {@code traceparent} recebido; cabeçalho ausente ou inválido inicia um
+	 * rastreamento novo. Um rastreamento amostrado na origem é gravado mesmo
+	 * com a amostragem local desligada.
+	 */
+	public Span iniciar(String nome, String traceparent)
+	{
+		if (traceparent == null || traceparent.length() != 55 || traceparent.startsWith("ff")
+				|| traceparent.charAt(2) != '-' || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-')
+		{
+			return iniciar(nome);
+		}
+		long traceIdAlto;
+		long traceIdBaixo;
+		long paiId;
+		int flags;
+		try
+		{
+			traceIdAlto = Long.parseUnsignedLong(traceparent.substring(3, 19), 16);
+			traceIdBaixo = Long.parseUnsignedLong(traceparent.substring(19, 35), 16);
+			paiId = Long.parseUnsignedLong(traceparent.substring(36, 52), 16);
+			flags = Integer.parseInt(traceparent.substring(53, 55), 16);
+		}
+		catch (NumberFormatException e)
+		{
+			return iniciar(nome);
+		}
+		if ((traceIdAlto == 0L && traceIdBaixo == 0L) || paiId == 0L)
+		{
+			return iniciar(nome);
+		}
+		boolean amostrado = (flags & 1) != 0;
+		if (!amostrado && !habilitado)
+		{
+			return Span.NENHUM;
+		}
+		Traco traco = new Traco(this, traceIdAlto, traceIdBaixo, amostrado, amostrado || cauda);
+		return new Span(traco, novoId(), paiId, nome);
+	}
+
+	/** Decisão do rastreamento que terminou; chamada uma vez por rastreamento gravado. */
+	boolean manter(boolean amostradoNaCabeca, long duracaoNanos, boolean comErro)
+	{
+		if (amostradoNaCabeca)
+		{
+			tracosCabeca.increment();
+			return true;
+		}
+		if ((limiarCaudaNanos > 0 && duracaoNanos >= limiarCaudaNanos) || (caudaErros && comErro))
+		{
+			tracosCauda.increment();
+			return true;
+		}
+		tracosDescartados.increment();
+		return false;
+	}
+
+	void exportar(List<Span> spans)
+	{
+		try
+		{
+			exportador.exportar(spans);
+			spansExportados.increment(spans.size());
+		}
+		catch (RuntimeException e)
+		{
+			// O rastreamento nunca derruba a operação rastreada
+			LOG.warn("Falha ao exportar {} spans: {}", spans.size(), e.toString());
+		}
+	}
+
+	private boolean sortear()
+	{
+		return taxaAmostragem >= 1.0
+				|| (taxaAmostragem > 0.0 && ThreadLocalRandom.current().nextDouble() < taxaAmostragem);
+	}
+
+	private static long novoId()
+	{
+		long id;
+		do
+		{
+			id = ThreadLocalRandom.current().nextLong();
+		}
+		while (id == 0L);
+		return id;
+	}
+}
@@ -0,0 +1,195 @@
+package ecommerce.rastreamento;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Trecho cronometrado de um rastreamento. Criado por
+ * {@link Rastreador#iniciar(String)}, já é o span corrente da thread; ao
+ * fechar, registra a duração e devolve o span anterior. Feito para
+ * try-with-resources, na mesma thread que o criou; atributos e erro devem ser
+ * gravados antes de fechar.
+ *
+ * Atributos e erro só são guardados quando o rastreamento está gravando; fora
+ * da amostra, o span só carrega os identificadores para propagação.
+ */
+public final class Span implements AutoCloseable
+{
+	/** Span de rastreamento desligado: não grava, não propaga e não muda o span corrente. */
+	static final Span NENHUM = new Span();
+
+	private final Traco traco;
+	private final long spanId;
+	private final long paiId;
+	private final String nome;
+	private final long inicioNanos;
+	private final Span anterior;
+	private Map<String, Object> atributos;
+	private String erro;
+	private long duracaoNanos = -1;
+
+	Span(Traco traco, long spanId, long paiId, String nome)
+	{
+		this.traco = traco;
+		this.spanId = spanId;
+		this.paiId = paiId;
+		this.nome = nome;
+		this.inicioNanos = System.nanoTime();
+		this.anterior = ContextoRastreamento.atual();
+		ContextoRastreamento.ativar(this);
+		traco.abrir();
+	}
+
+	private Span()
+	{
+		this.traco = null;
+		this.spanId = 0L;
+		this.paiId = 0L;
+		this.nome = "";
+		this.inicioNanos = 0L;
+		this.anterior = null;
+	}
+
+	Traco traco()
+	{
+		return traco;
+	}
+
+	long spanId()
+	{
+		return spanId;
+	}
+
+	long inicioNanos()
+	{
+		return inicioNanos;
+	}
+
+	long fimNanos()
+	{
+		return inicioNanos + duracaoNanos;
+	}
+
+	/** Se o span vai para o exportador caso o rastreamento seja amostrado. */
+	public boolean isGravando()
+	{
+		return traco != null && traco.gravando();
+	}
+
+	public Span atributo(String chave, Object valor)
+	{
+		if (isGravando())
+		{
+			if (atributos == null)
+			{
+				atributos = new LinkedHashMap<>();
+			}
+			atributos.put(chave, valor);
+		}
+		return this;
+	}
+
+	/** Marca o span como falho; com amostragem por erro, o rastreamento é exportado. */
+	public Span erro(Throwable causa)
+	{
+		if (isGravando())
+		{
+			erro = causa.getClass().getSimpleName() + (causa.getMessage() == null ? "" : ": " + causa.getMessage());
+		}
+		return this;
+	}
+
+	/**
+	 * Cabeçalho W3C {@code traceparent} que continua este rastreamento em outro
+	 * processo, ou {@code null} com o rastreamento desligado.
+	 */
+	public String traceparent()
+	{
+		if (traco == null)
+		{
+			return null;
+		}
+		return "00-" + getTraceId() + "-" + getSpanId() + (traco.amostradoNaCabeca() ? "-01" : "-00");
+	}
+
+	/**
+	 * Deixa de ser o span corrente desta thread sem fechar; quem continua a
+	 * operação em outra thread fecha o span depois.
+	 */
+	void desativar()
+	{
+		if (ContextoRastreamento.atual() == this)
+		{
+			ContextoRastreamento.restaurar(anterior);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		if (traco == null || duracaoNanos >= 0)
+		{
+			return;
+		}
+		duracaoNanos = System.nanoTime() - inicioNanos;
+		desativar();
+		traco.fechar(this);
+	}
+
+	public String getTraceId()
+	{
+		return traco == null ? null : hex(traco.traceIdAlto()) + hex(traco.traceIdBaixo());
+	}
+
+	public String getSpanId()
+	{
+		return traco == null ? null : hex(spanId);
+	}
+
+	/** Span pai, local ou remoto; {@code null} na raiz. */
+	public String getPaiId()
+	{
+		return paiId == 0L ? null : hex(paiId);
+	}
+
+	public String getNome()
+	{
+		return nome;
+	}
+
+	/** Início em nanossegundos desde a época Unix. */
+	public long getInicioEpochNanos()
+	{
+		return traco == null ? 0L : traco.epochNanos(inicioNanos);
+	}
+
+	/** Duração, ou -1 enquanto o span está aberto. */
+	public long getDuracaoNanos()
+	{
+		return duracaoNanos;
+	}
+
+	public Map<String, Object> getAtributos()
+	{
+		return atributos == null ? Collections.emptyMap() : Collections.unmodifiableMap(atributos);
+	}
+
+	/** Exceção que marcou o span como falho, ou {@code null}. */
+	public String getErro()
+	{
+		return erro;
+	}
+
+	static String hex(long valor)
+	{
+		String hex = Long.toHexString(valor);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	@Override
+	public String toString()
+	{
+		return nome + " " + getTraceId() + "/" + getSpanId() + " " + duracaoNanos + "ns";
+	}
+}
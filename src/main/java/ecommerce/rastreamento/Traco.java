@@ -0,0 +1,140 @@
+package ecommerce.rastreamento;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estado local de um rastreamento: os spans fechados ficam guardados até o
+ * último span aberto fechar, quando o {@link Rastreador} decide se o
+ * rastreamento inteiro é exportado. Decidir só no fim permite amostrar pela
+ * cauda: a latência e os erros só são conhecidos depois. Spans que fecham
+ * depois da decisão (um hedge perdedor, por exemplo) seguem a mesma decisão.
+ *
+ * Fora da amostra da cabeça e sem amostragem pela cauda, nada é guardado.
+ */
+final class Traco
+{
+	/** Limite de spans guardados por rastreamento; os excedentes são descartados. */
+	static final int MAXIMO_SPANS = 1_000;
+
+	private enum Decisao
+	{
+		PENDENTE, EXPORTADO, DESCARTADO
+	}
+
+	private final Rastreador rastreador;
+	private final long traceIdAlto;
+	private final long traceIdBaixo;
+	private final boolean amostradoNaCabeca;
+	private final boolean gravando;
+	private final long inicioNanos;
+	private final long inicioEpochNanos;
+
+	// Protegidos por this
+	private int abertos;
+	private List<Span> fechados;
+	private long fimNanos;
+	private boolean comErro;
+	private Decisao decisao = Decisao.PENDENTE;
+
+	Traco(Rastreador rastreador, long traceIdAlto, long traceIdBaixo, boolean amostradoNaCabeca, boolean gravando)
+	{
+		this.rastreador = rastreador;
+		this.traceIdAlto = traceIdAlto;
+		this.traceIdBaixo = traceIdBaixo;
+		this.amostradoNaCabeca = amostradoNaCabeca;
+		this.gravando = gravando;
+		this.inicioNanos = System.nanoTime();
+		if (gravando)
+		{
+			Instant agora = Instant.now();
+			this.inicioEpochNanos = agora.getEpochSecond() * 1_000_000_000L + agora.getNano();
+			this.fechados = new ArrayList<>();
+		}
+		else
+		{
+			this.inicioEpochNanos = 0L;
+		}
+	}
+
+	long traceIdAlto()
+	{
+		return traceIdAlto;
+	}
+
+	long traceIdBaixo()
+	{
+		return traceIdBaixo;
+	}
+
+	boolean amostradoNaCabeca()
+	{
+		return amostradoNaCabeca;
+	}
+
+	boolean gravando()
+	{
+		return gravando;
+	}
+
+	long epochNanos(long nanos)
+	{
+		return inicioEpochNanos + (nanos - inicioNanos);
+	}
+
+	void abrir()
+	{
+		if (gravando)
+		{
+			synchronized (this)
+			{
+				abertos++;
+			}
+		}
+	}
+
+	void fechar(Span span)
+	{
+		if (!gravando)
+		{
+			return;
+		}
+		List<Span> exportar = null;
+		synchronized (this)
+		{
+			abertos--;
+			if (decisao == Decisao.EXPORTADO)
+			{
+				exportar = List.of(span);
+			}
+			else if (decisao == Decisao.PENDENTE)
+			{
+				if (fechados.size() < MAXIMO_SPANS)
+				{
+					fechados.add(span);
+				}
+				fimNanos = Math.max(fimNanos, span.fimNanos());
+				comErro |= span.getErro() != null;
+				if (abertos == 0)
+				{
+					if (rastreador.manter(amostradoNaCabeca, fimNanos - inicioNanos, comErro))
+					{
+						decisao = Decisao.EXPORTADO;
+						exportar = fechados;
+					}
+					else
+					{
+						decisao = Decisao.DESCARTADO;
+					}
+					fechados = null;
+				}
+			}
+		}
+		// Fora do monitor: o exportador pode demorar
+		if (exportar != null)
+		{
+			rastreador.exportar(exportar);
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package ecommerce.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import ecommerce.entity.CarrinhoDeCompras;
@@ -13,4 +18,13 @@ public interface CarrinhoDeComprasRepository extends JpaRepository<CarrinhoDeCom
 {
 
 	Optional<CarrinhoDeCompras> findByIdAndCliente(Long id, Cliente cliente);
+
+	/** Próxima página de ids em ordem crescente, para percorrer todos os carrinhos por chave. */
+	@Query("select c.id from CarrinhoDeCompras c where c.id > :ultimoId order by c.id")
+	List<Long> findIdsAposId(@Param("ultimoId") Long ultimoId, Pageable pagina);
+
+	/** Carrinhos com itens e produtos carregados em uma única consulta. */
+	@Query("select distinct c from CarrinhoDeCompras c left join fetch c.itens i left join fetch i.produto "
+			+ "where c.id in :ids order by c.id")
+	List<CarrinhoDeCompras> findComItensPorIds(@Param("ids") Collection<Long> ids);
 }
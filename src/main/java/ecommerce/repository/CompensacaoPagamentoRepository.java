@@ -0,0 +1,149 @@
+package ecommerce.repository;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import ecommerce.entity.CompensacaoPagamento;
+
+/**
+ * Compensações de pagamento em um banco H2 próprio, em arquivo no
+ * {@code diretorio} configurado, separado do banco da aplicação: só a outbox
+ * precisa sobreviver a reinícios, e o restante dos dados segue com a política
+ * de esquema da aplicação. A tabela é criada na primeira abertura.
+ *
+ * Cada operação é um comando só, confirmado na hora; nenhuma participa da
+ * transação de quem chama.
+ */
+@Repository
+public class CompensacaoPagamentoRepository
+{
+	private static final String COLUNAS =
+			"id, cliente_id, transacao_id, tentativas, criada_em, proxima_tentativa, ultimo_erro, esgotada";
+
+	private final HikariDataSource dataSource;
+	private final JdbcTemplate jdbc;
+
+	public CompensacaoPagamentoRepository(
+			@Value("${ecommerce.pagamento.compensacao.diretorio:${user.home}/.ecommerce/compensacoes}") Path diretorio)
+	{
+		HikariConfig configuracao = new HikariConfig();
+		configuracao.setPoolName("outbox-compensacoes");
+		configuracao.setJdbcUrl("jdbc:h2:file:" + diretorio.toAbsolutePath().resolve("compensacoes"));
+		configuracao.setMaximumPoolSize(2);
+		this.dataSource = new HikariDataSource(configuracao);
+		this.jdbc = new JdbcTemplate(dataSource);
+		try
+		{
+			jdbc.execute("CREATE TABLE IF NOT EXISTS compensacao_pagamento ("
+					+ "id BIGINT AUTO_INCREMENT PRIMARY KEY, cliente_id BIGINT, transacao_id BIGINT, "
+					+ "tentativas INT NOT NULL, criada_em TIMESTAMP WITH TIME ZONE, "
+					+ "proxima_tentativa TIMESTAMP WITH TIME ZONE, "
+					+ "ultimo_erro VARCHAR(" + CompensacaoPagamento.TAMANHO_MAXIMO_ERRO + "), "
+					+ "esgotada BOOLEAN NOT NULL)");
+			jdbc.execute("CREATE INDEX IF NOT EXISTS idx_compensacao_pendente "
+					+ "ON compensacao_pagamento (esgotada, proxima_tentativa)");
+		}
+		catch (RuntimeException e)
+		{
+			dataSource.close();
+			throw e;
+		}
+	}
+
+	/** Insere a compensação nova, preenchendo o id, ou atualiza a existente. */
+	public void gravar(CompensacaoPagamento compensacao)
+	{
+		if (compensacao.getId() != null)
+		{
+			jdbc.update("UPDATE compensacao_pagamento SET tentativas = ?, proxima_tentativa = ?, ultimo_erro = ?, "
+					+ "esgotada = ? WHERE id = ?", compensacao.getTentativas(),
+					momento(compensacao.getProximaTentativa()), compensacao.getUltimoErro(), compensacao.isEsgotada(),
+					compensacao.getId());
+			return;
+		}
+		KeyHolder chave = new GeneratedKeyHolder();
+		jdbc.update(conexao -> {
+			PreparedStatement comando = conexao.prepareStatement("INSERT INTO compensacao_pagamento "
+					+ "(cliente_id, transacao_id, tentativas, criada_em, proxima_tentativa, ultimo_erro, esgotada) "
+					+ "VALUES (?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+			comando.setObject(1, compensacao.getClienteId());
+			comando.setObject(2, compensacao.getTransacaoId());
+			comando.setInt(3, compensacao.getTentativas());
+			comando.setObject(4, momento(compensacao.getCriadaEm()));
+			comando.setObject(5, momento(compensacao.getProximaTentativa()));
+			comando.setString(6, compensacao.getUltimoErro());
+			comando.setBoolean(7, compensacao.isEsgotada());
+			return comando;
+		}, chave);
+		compensacao.setId(chave.getKey().longValue());
+	}
+
+	public void remover(CompensacaoPagamento compensacao)
+	{
+		jdbc.update("DELETE FROM compensacao_pagamento WHERE id = ?", compensacao.getId());
+	}
+
+	/** Até {@code limite} compensações com tentativa vencida, das mais antigas para as mais novas. */
+	public List<CompensacaoPagamento> buscarVencidas(Instant agora, int limite)
+	{
+		return jdbc.query("SELECT " + COLUNAS + " FROM compensacao_pagamento "
+				+ "WHERE esgotada = FALSE AND proxima_tentativa <= ? ORDER BY proxima_tentativa LIMIT ?",
+				CompensacaoPagamentoRepository::ler, momento(agora), limite);
+	}
+
+	public List<CompensacaoPagamento> listar()
+	{
+		return jdbc.query("SELECT " + COLUNAS + " FROM compensacao_pagamento ORDER BY id",
+				CompensacaoPagamentoRepository::ler);
+	}
+
+	public long contar(boolean esgotada)
+	{
+		Long total = jdbc.queryForObject("SELECT COUNT(*) FROM compensacao_pagamento WHERE esgotada = ?", Long.class,
+				esgotada);
+		return total == null ? 0L : total;
+	}
+
+	@PreDestroy
+	public void fechar()
+	{
+		dataSource.close();
+	}
+
+	private static CompensacaoPagamento ler(ResultSet linha, int numero) throws SQLException
+	{
+		return new CompensacaoPagamento(linha.getLong("id"), linha.getLong("cliente_id"),
+				linha.getLong("transacao_id"), linha.getInt("tentativas"),
+				instante(linha, "criada_em"), instante(linha, "proxima_tentativa"),
+				linha.getString("ultimo_erro"), linha.getBoolean("esgotada"));
+	}
+
+	private static OffsetDateTime momento(Instant instante)
+	{
+		return instante == null ? null : instante.atOffset(ZoneOffset.UTC);
+	}
+
+	private static Instant instante(ResultSet linha, String coluna) throws SQLException
+	{
+		OffsetDateTime momento = linha.getObject(coluna, OffsetDateTime.class);
+		return momento == null ? null : momento.toInstant();
+	}
+}
@@ -1,5 +1,7 @@
 package ecommerce.repository;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -8,4 +10,13 @@ import ecommerce.entity.Produto;
 @Repository
 public interface ProdutoRepository extends JpaRepository<Produto, Long>
 {
+	/** Id e versão de todos os produtos, sem carregar as entidades. */
+	Page<VersaoProduto> findAllBy(Pageable pageable);
+
+	interface VersaoProduto
+	{
+		Long getId();
+
+		Long getVersao();
+	}
 }
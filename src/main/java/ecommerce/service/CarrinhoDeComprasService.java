@@ -1,5 +1,10 @@
 package ecommerce.service;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -23,4 +28,19 @@ public class CarrinhoDeComprasService
 		return repository.findByIdAndCliente(carrinhoId, cliente)
 				.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
 	}
+
+	/**
+	 * Carrinhos encontrados, com itens e produtos já carregados, indexados por
+	 * id; ids ausentes ficam fora do mapa. A posse pelo cliente fica a cargo de
+	 * quem chama.
+	 */
+	public Map<Long, CarrinhoDeCompras> buscarPorIds(Collection<Long> carrinhoIds)
+	{
+		if (carrinhoIds.isEmpty())
+		{
+			return Map.of();
+		}
+		return repository.findComItensPorIds(carrinhoIds).stream()
+				.collect(Collectors.toMap(CarrinhoDeCompras::getId, Function.identity()));
+	}
 }
@@ -1,5 +1,10 @@
 package ecommerce.service;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -23,4 +28,15 @@ public class ClienteService
 		return repository.findById(clienteId).orElseThrow(() -> new IllegalArgumentException("Cliente não encontrado"));
 	}
 
+	/** Clientes encontrados, indexados por id, em uma única consulta; ids ausentes ficam fora do mapa. */
+	public Map<Long, Cliente> buscarPorIds(Collection<Long> clienteIds)
+	{
+		if (clienteIds.isEmpty())
+		{
+			return Map.of();
+		}
+		return repository.findAllById(clienteIds).stream()
+				.collect(Collectors.toMap(Cliente::getId, Function.identity()));
+	}
+
 }
@@ -2,98 +2,701 @@ package ecommerce.service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import ecommerce.config.ExecutoresConfig;
 import ecommerce.dto.CompraDTO;
+import ecommerce.dto.CotacaoDTO;
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
 import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.PedidoCompraDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.dto.ResultadoCompraDTO;
+import ecommerce.entity.AgregadosCarrinho;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
 import ecommerce.entity.ItemCompra;
-import ecommerce.entity.Produto;
 import ecommerce.external.IEstoqueExternal;
 import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.resiliencia.BackendIndisponivelException;
+import ecommerce.rastreamento.ContextoRastreamento;
+import ecommerce.rastreamento.Span;
+import ecommerce.service.MetricasCompra.Estagio;
+import ecommerce.service.compensacao.CompensadorPagamento;
+import ecommerce.service.pedidos.PedidoFinalizado;
+import ecommerce.service.pedidos.RegistradorPedidos;
+import ecommerce.service.preco.CacheCotacoes;
+import ecommerce.service.preco.CalculadoraCustoTotal;
+import ecommerce.service.preco.CatalogoOffHeap;
+import ecommerce.service.preco.RegrasPreco;
+import ecommerce.service.preco.TabelaPrecos;
 import javax.transaction.Transactional;
 
 @Service
 public class CompraService
 {
-	private static final BigDecimal LIMITE_DESCONTO_10 = new BigDecimal("500.00");
-	private static final BigDecimal LIMITE_DESCONTO_20 = new BigDecimal("1000.00");
-	private static final BigDecimal DESCONTO_10_POR_VALOR = new BigDecimal("0.10");
-	private static final BigDecimal DESCONTO_20_POR_VALOR = new BigDecimal("0.20");
-	private static final BigDecimal FRETE_TAXA_FRAGIL = new BigDecimal("5.00");
-	private static final BigDecimal FAIXA_A_LIMITE = new BigDecimal("5.00");
-	private static final BigDecimal FAIXA_B_LIMITE = new BigDecimal("10.00");
-	private static final BigDecimal FAIXA_C_LIMITE = new BigDecimal("50.00");
-	private static final BigDecimal FAIXA_B_VALOR_KG = new BigDecimal("2.00");
-	private static final BigDecimal FAIXA_C_VALOR_KG = new BigDecimal("4.00");
-	private static final BigDecimal FAIXA_D_VALOR_KG = new BigDecimal("7.00");
-	
+	private static final Logger LOG = LoggerFactory.getLogger(CompraService.class);
+
+	private static final long TAMANHO_CACHE_PADRAO = 10_000L;
+	private static final Duration TTL_RESERVA_PADRAO = Duration.ofSeconds(30);
+
+	private static final String FORA_DE_ESTOQUE = "Itens fora de estoque.";
+	private static final String PAGAMENTO_RECUSADO = "Pagamento não autorizado.";
+	private static final String FALHA_BAIXA = "Erro ao dar baixa no estoque.";
+
 	private final CarrinhoDeComprasService carrinhoService;
 	private final ClienteService clienteService;
 
 	private final IEstoqueExternal estoqueExternal;
 	private final IPagamentoExternal pagamentoExternal;
+	private final CompensadorPagamento compensadorPagamento;
+	private final RegistradorPedidos registradorPedidos;
+
+	private final RegrasPreco regrasPreco;
+	private final CacheCotacoes cacheCotacoes;
+	/** Atributos de preço fora do heap; {@code null} quando o serviço é construído sem catálogo. */
+	private final CatalogoOffHeap catalogo;
+
+	private final Executor executorEstagios;
+	private final ForkJoinPool poolLote;
+	private final Duration ttlReserva;
+
+	private final MetricasCompra metricas;
 
-	@Autowired
 	public CompraService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
 			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal)
+	{
+		this(carrinhoService, clienteService, estoqueExternal, pagamentoExternal, RegrasPreco.doClasspath(),
+				new CacheCotacoes(TAMANHO_CACHE_PADRAO), ExecutorEstagiosPadrao.INSTANCIA, TTL_RESERVA_PADRAO,
+				CompensadorPagamento.sincrono(pagamentoExternal), RegistradorPedidos.nenhum(),
+				MetricasCompra.nenhuma());
+	}
+
+	public CompraService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
+			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal, RegrasPreco regrasPreco,
+			CacheCotacoes cacheCotacoes, Executor executorEstagios, Duration ttlReserva,
+			CompensadorPagamento compensadorPagamento, RegistradorPedidos registradorPedidos,
+			MetricasCompra metricas)
+	{
+		this(carrinhoService, clienteService, estoqueExternal, pagamentoExternal, regrasPreco, cacheCotacoes, null,
+				executorEstagios, PoolLotePadrao.INSTANCIA, ttlReserva, compensadorPagamento, registradorPedidos,
+				metricas);
+	}
+
+	@Autowired
+	public CompraService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
+			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal, RegrasPreco regrasPreco,
+			CacheCotacoes cacheCotacoes, CatalogoOffHeap catalogo,
+			@Qualifier(ExecutoresConfig.EXECUTOR_ESTAGIOS_COMPRA) Executor executorEstagios,
+			@Qualifier(ExecutoresConfig.POOL_PRECIFICACAO_LOTE) ForkJoinPool poolLote,
+			@Value("${ecommerce.estoque.reserva.ttl:30s}") Duration ttlReserva,
+			CompensadorPagamento compensadorPagamento, RegistradorPedidos registradorPedidos,
+			MetricasCompra metricas)
 	{
 		this.carrinhoService = carrinhoService;
 		this.clienteService = clienteService;
 
 		this.estoqueExternal = estoqueExternal;
 		this.pagamentoExternal = pagamentoExternal;
+		this.compensadorPagamento = compensadorPagamento;
+		this.registradorPedidos = registradorPedidos;
+
+		this.regrasPreco = regrasPreco;
+		this.cacheCotacoes = cacheCotacoes;
+		this.catalogo = catalogo;
+
+		this.executorEstagios = executorEstagios;
+		this.poolLote = poolLote;
+		this.ttlReserva = ttlReserva;
+
+		this.metricas = metricas;
 	}
 
+	/**
+	 * Finaliza a compra como um grafo de estágios:
+	 *
+	 * <pre>
+	 * cliente → carrinho ─┬→ disponibilidade (executor) ─┬→ pagamento → baixa
+	 *                     └→ custo total (esta thread) ───┘   (esta thread)
+	 * </pre>
+	 *
+	 * As consultas ao banco e o cálculo do custo ficam na thread da requisição,
+	 * dona do contexto de persistência; a consulta de estoque roda em paralelo
+	 * no executor de estágios. O pagamento só começa com os dois concluídos, e
+	 * a indisponibilidade de estoque continua tendo precedência sobre erros do
+	 * cálculo. As exceções chegam ao chamador sem o envoltório
+	 * {@link CompletionException}.
+	 *
+	 * Se o estoque suporta reservas, a verificação vira uma reserva com validade
+	 * e a baixa vira a confirmação da reserva (ver
+	 * {@link #finalizarComReserva(Long, Cliente, CarrinhoDeCompras, List, List, Andamento)}).
+	 *
+	 * Cada estágio, a compra inteira e o desfecho são medidos em
+	 * {@link MetricasCompra}, que também abre um span para a compra e um para
+	 * cada estágio; os estágios que rodam no executor levam o span junto.
+	 */
 	@Transactional
 	public CompraDTO finalizarCompra(Long carrinhoId, Long clienteId)
 	{
-		Cliente cliente = clienteService.buscarPorId(clienteId);
-		CarrinhoDeCompras carrinho = carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
+		long inicio = System.nanoTime();
+		Andamento andamento = new Andamento();
+		try (Span span = metricas.iniciarCompra(carrinhoId, clienteId))
+		{
+			try
+			{
+				CompraDTO compra = executarCompra(carrinhoId, clienteId, andamento);
+				metricas.concluir(MetricasCompra.Resultado.SUCESSO, inicio, span);
+				return compra;
+			}
+			catch (RuntimeException e)
+			{
+				metricas.concluir(resultado(e, andamento), inicio, span.erro(e));
+				throw e;
+			}
+		}
+	}
+
+	private CompraDTO executarCompra(Long carrinhoId, Long clienteId, Andamento andamento)
+	{
+		Cliente cliente = metricas.medir(Estagio.CLIENTE, () -> clienteService.buscarPorId(clienteId));
+		CarrinhoDeCompras carrinho = metricas.medir(Estagio.CARRINHO,
+				() -> carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente));
 
 		List<Long> produtosIds = carrinho.getItens().stream().map(i -> i.getProduto().getId())
 				.collect(Collectors.toList());
 		List<Long> produtosQtds = carrinho.getItens().stream().map(i -> i.getQuantidade()).collect(Collectors.toList());
 
-		DisponibilidadeDTO disponibilidade = estoqueExternal.verificarDisponibilidade(produtosIds, produtosQtds);
+		if (estoqueExternal.suportaReservas())
+		{
+			return finalizarComReserva(carrinhoId, cliente, carrinho, produtosIds, produtosQtds, andamento);
+		}
 
-		if (!disponibilidade.disponivel())
+		CompletableFuture<DisponibilidadeDTO> disponibilidade = CompletableFuture.supplyAsync(
+				ContextoRastreamento.propagar(() -> metricas.medir(Estagio.DISPONIBILIDADE,
+						() -> estoqueExternal.verificarDisponibilidade(produtosIds, produtosQtds))),
+				executorEstagios);
+
+		// Futuro já concluído: o cálculo roda aqui, enquanto o estoque responde
+		CompletableFuture<BigDecimal> custoTotal = CompletableFuture.completedFuture(carrinho)
+				.thenApply(c -> metricas.medir(Estagio.CUSTO, () -> calcularCustoTotal(c)));
+
+		CompletableFuture<BigDecimal> prontoParaPagar = disponibilidade
+				.thenApply(CompraService::exigirDisponibilidade)
+				.thenCombine(custoTotal, (d, custo) -> custo);
+
+		// Pagamento e baixa seguem nesta thread, que de todo modo espera o
+		// resultado; no executor de estágios ocupariam suas poucas threads
+		BigDecimal custo = aguardar(prontoParaPagar);
+		metricas.carrinho(carrinho.getItens().size(), custo);
+		PagamentoDTO pagamento = metricas.medir(Estagio.PAGAMENTO, () -> autorizarPagamento(cliente, custo));
+		andamento.pago = true;
+
+		CompraDTO compra = metricas.medir(Estagio.BAIXA,
+				() -> darBaixa(cliente, pagamento, produtosIds, produtosQtds));
+		metricas.medir(Estagio.REGISTRO,
+				() -> registrarPedido(carrinhoId, cliente, pagamento, custo, produtosIds, produtosQtds));
+		return compra;
+	}
+
+	/**
+	 * Mesmo grafo com o protocolo de reserva: a reserva substitui a verificação
+	 * e fecha a janela em que o estoque poderia acabar antes da baixa. Se a
+	 * compra falhar depois da reserva e antes da confirmação, a reserva é
+	 * liberada na hora em vez de esperar a validade.
+	 */
+	private CompraDTO finalizarComReserva(Long carrinhoId, Cliente cliente, CarrinhoDeCompras carrinho,
+			List<Long> produtosIds, List<Long> produtosQtds, Andamento andamento)
+	{
+		CompletableFuture<ReservaEstoqueDTO> reserva = CompletableFuture.supplyAsync(
+				ContextoRastreamento.propagar(() -> metricas.medir(Estagio.RESERVA,
+						() -> estoqueExternal.reservar(produtosIds, produtosQtds, ttlReserva))),
+				executorEstagios);
+
+		CompletableFuture<BigDecimal> custoTotal = CompletableFuture.completedFuture(carrinho)
+				.thenApply(c -> metricas.medir(Estagio.CUSTO, () -> calcularCustoTotal(c)));
+
+		String token = aguardar(reserva.thenApply(CompraService::exigirReserva)).token();
+
+		BigDecimal custo;
+		PagamentoDTO pagamento;
+		try
+		{
+			custo = aguardar(custoTotal);
+			metricas.carrinho(carrinho.getItens().size(), custo);
+			pagamento = metricas.medir(Estagio.PAGAMENTO, () -> autorizarPagamento(cliente, custo));
+		}
+		catch (RuntimeException e)
+		{
+			liberarReserva(token, e);
+			throw e;
+		}
+
+		andamento.pago = true;
+
+		EstoqueBaixaDTO baixaDTO;
+		try
+		{
+			baixaDTO = metricas.medir(Estagio.BAIXA, () -> estoqueExternal.confirmarReserva(token));
+		}
+		catch (RuntimeException e)
+		{
+			liberarReserva(token, e);
+			cancelarPagamento(cliente, pagamento, e);
+			throw e;
+		}
+
+		if (!baixaDTO.sucesso())
+		{
+			IllegalStateException erro = new IllegalStateException(FALHA_BAIXA);
+			liberarReserva(token, erro);
+			compensadorPagamento.cancelar(cliente.getId(), pagamento.transacaoId());
+			throw erro;
+		}
+
+		metricas.medir(Estagio.REGISTRO,
+				() -> registrarPedido(carrinhoId, cliente, pagamento, custo, produtosIds, produtosQtds));
+		return new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
+	}
+
+	/** Desfecho da compra que falhou com {@code erro}, para {@link MetricasCompra}. */
+	private static MetricasCompra.Resultado resultado(RuntimeException erro, Andamento andamento)
+	{
+		// Depois do pagamento, toda falha é da baixa e o pagamento foi compensado
+		if (andamento.pago)
+		{
+			return MetricasCompra.Resultado.FALHA_BAIXA;
+		}
+		if (erro instanceof IllegalStateException && FORA_DE_ESTOQUE.equals(erro.getMessage()))
 		{
-			throw new IllegalStateException("Itens fora de estoque.");
+			return MetricasCompra.Resultado.ESTOQUE_INDISPONIVEL;
 		}
+		if (erro instanceof IllegalStateException && PAGAMENTO_RECUSADO.equals(erro.getMessage()))
+		{
+			return MetricasCompra.Resultado.PAGAMENTO_RECUSADO;
+		}
+		if (erro instanceof BackendIndisponivelException)
+		{
+			return MetricasCompra.Resultado.SERVICO_INDISPONIVEL;
+		}
+		if (erro instanceof IllegalArgumentException)
+		{
+			return MetricasCompra.Resultado.INVALIDA;
+		}
+		return MetricasCompra.Resultado.ERRO;
+	}
+
+	private static ReservaEstoqueDTO exigirReserva(ReservaEstoqueDTO reserva)
+	{
+		if (!reserva.reservado())
+		{
+			throw new IllegalStateException(FORA_DE_ESTOQUE);
+		}
+		return reserva;
+	}
+
+	/** Libera a reserva sem encobrir o erro que interrompeu a compra. */
+	private void liberarReserva(String token, RuntimeException causa)
+	{
+		try
+		{
+			estoqueExternal.liberarReserva(token);
+		}
+		catch (RuntimeException e)
+		{
+			// A reserva ainda expira sozinha
+			causa.addSuppressed(e);
+		}
+	}
 
-		BigDecimal custoTotal = calcularCustoTotal(carrinho);
+	private static DisponibilidadeDTO exigirDisponibilidade(DisponibilidadeDTO disponibilidade)
+	{
+		if (!disponibilidade.disponivel())
+		{
+			throw new IllegalStateException(FORA_DE_ESTOQUE);
+		}
+		return disponibilidade;
+	}
 
+	private PagamentoDTO autorizarPagamento(Cliente cliente, BigDecimal custoTotal)
+	{
 		PagamentoDTO pagamento = pagamentoExternal.autorizarPagamento(cliente.getId(), custoTotal.doubleValue());
 
 		if (!pagamento.autorizado())
 		{
-			throw new IllegalStateException("Pagamento não autorizado.");
+			throw new IllegalStateException(PAGAMENTO_RECUSADO);
 		}
+		return pagamento;
+	}
 
-		EstoqueBaixaDTO baixaDTO = estoqueExternal.darBaixa(produtosIds, produtosQtds);
+	private CompraDTO darBaixa(Cliente cliente, PagamentoDTO pagamento, List<Long> produtosIds,
+			List<Long> produtosQtds)
+	{
+		EstoqueBaixaDTO baixaDTO;
+		try
+		{
+			baixaDTO = estoqueExternal.darBaixa(produtosIds, produtosQtds);
+		}
+		catch (RuntimeException e)
+		{
+			// Estoque recusado pela proteção ou com erro: o pagamento não pode ficar autorizado
+			cancelarPagamento(cliente, pagamento, e);
+			throw e;
+		}
 
 		if (!baixaDTO.sucesso())
 		{
-			pagamentoExternal.cancelarPagamento(cliente.getId(), pagamento.transacaoId());
-			throw new IllegalStateException("Erro ao dar baixa no estoque.");
+			compensadorPagamento.cancelar(cliente.getId(), pagamento.transacaoId());
+			throw new IllegalStateException(FALHA_BAIXA);
+		}
+
+		return new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
+	}
+
+	/** Espera o estágio e relança a causa original de uma falha. */
+	static <T> T aguardar(CompletableFuture<T> estagio)
+	{
+		try
+		{
+			return estagio.join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable causa = e.getCause();
+			if (causa instanceof RuntimeException)
+			{
+				throw (RuntimeException) causa;
+			}
+			if (causa instanceof Error)
+			{
+				throw (Error) causa;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Finaliza vários pedidos (carrinho, cliente) e devolve um resultado por
+	 * pedido, na ordem recebida. A falha de um pedido não interrompe os demais.
+	 *
+	 * Clientes e carrinhos (com itens e produtos) vêm em duas consultas. O
+	 * estoque é verificado com uma chamada pela demanda somada do lote; só os
+	 * pedidos com produtos apontados como indisponíveis são verificados um a um.
+	 * Os pagamentos são autorizados em paralelo no executor de estágios. A baixa
+	 * também é uma única chamada e, se recusada, é refeita por pedido, cancelando
+	 * o pagamento dos que falharem. Supõe-se que uma baixa recusada não baixou
+	 * nada.
+	 */
+	@Transactional
+	public List<ResultadoCompraDTO> finalizarCompraEmLote(List<PedidoCompraDTO> pedidos)
+	{
+		ResultadoCompraDTO[] resultados = new ResultadoCompraDTO[pedidos.size()];
+		List<CompraEmLote> compras = localizarPedidos(pedidos, resultados);
+
+		verificarDisponibilidadeEmLote(compras, resultados);
+
+		for (CompraEmLote compra : compras)
+		{
+			try
+			{
+				compra.custoTotal = calcularCustoTotal(compra.carrinho);
+			}
+			catch (RuntimeException e)
+			{
+				compra.falhar(resultados, e);
+			}
+		}
+		compras.removeIf(compra -> resultados[compra.indice] != null);
+
+		autorizarPagamentosEmLote(compras, resultados);
+		darBaixaEmLote(compras, resultados);
+
+		for (CompraEmLote compra : compras)
+		{
+			registrarPedido(compra.pedido.carrinhoId(), compra.cliente, compra.pagamento, compra.custoTotal,
+					compra.produtosIds, compra.produtosQtds);
+			resultados[compra.indice] = new ResultadoCompraDTO(compra.pedido.carrinhoId(), compra.pedido.clienteId(),
+					200, true, compra.pagamento.transacaoId(), "Compra finalizada com sucesso.");
+		}
+		return Arrays.asList(resultados);
+	}
+
+	private List<CompraEmLote> localizarPedidos(List<PedidoCompraDTO> pedidos, ResultadoCompraDTO[] resultados)
+	{
+		Map<Long, Cliente> clientes = clienteService.buscarPorIds(pedidos.stream().map(PedidoCompraDTO::clienteId)
+				.filter(Objects::nonNull).collect(Collectors.toSet()));
+		Map<Long, CarrinhoDeCompras> carrinhos = carrinhoService.buscarPorIds(pedidos.stream()
+				.map(PedidoCompraDTO::carrinhoId).filter(Objects::nonNull).collect(Collectors.toSet()));
+
+		List<CompraEmLote> compras = new ArrayList<>();
+		Set<Long> carrinhosVistos = new HashSet<>();
+		for (int i = 0; i < pedidos.size(); i++)
+		{
+			PedidoCompraDTO pedido = pedidos.get(i);
+			Cliente cliente = pedido.clienteId() == null ? null : clientes.get(pedido.clienteId());
+			CarrinhoDeCompras carrinho = pedido.carrinhoId() == null ? null : carrinhos.get(pedido.carrinhoId());
+			if (cliente == null)
+			{
+				resultados[i] = falha(pedido, new IllegalArgumentException("Cliente não encontrado"));
+			}
+			else if (carrinho == null || carrinho.getCliente() == null
+					|| !cliente.getId().equals(carrinho.getCliente().getId()))
+			{
+				resultados[i] = falha(pedido, new IllegalArgumentException("Carrinho não encontrado."));
+			}
+			else if (!carrinhosVistos.add(carrinho.getId()))
+			{
+				resultados[i] = falha(pedido, new IllegalArgumentException("Carrinho repetido no lote."));
+			}
+			else
+			{
+				compras.add(new CompraEmLote(i, pedido, cliente, carrinho));
+			}
+		}
+		return compras;
+	}
+
+	private void verificarDisponibilidadeEmLote(List<CompraEmLote> compras, ResultadoCompraDTO[] resultados)
+	{
+		if (compras.isEmpty())
+		{
+			return;
+		}
+		Map<Long, Long> demanda = somarDemanda(compras);
+		DisponibilidadeDTO disponibilidade;
+		try
+		{
+			disponibilidade = estoqueExternal.verificarDisponibilidade(new ArrayList<>(demanda.keySet()),
+					new ArrayList<>(demanda.values()));
+		}
+		catch (RuntimeException e)
+		{
+			compras.forEach(compra -> compra.falhar(resultados, e));
+			compras.clear();
+			return;
+		}
+		if (disponibilidade.disponivel())
+		{
+			return;
+		}
+
+		// Sem a lista de indisponíveis, todos os pedidos são verificados um a um
+		List<Long> apontados = disponibilidade.idsProdutosIndisponiveis();
+		Set<Long> indisponiveis = apontados == null || apontados.isEmpty() ? null : new HashSet<>(apontados);
+		for (CompraEmLote compra : compras)
+		{
+			if (indisponiveis != null && compra.produtosIds.stream().noneMatch(indisponiveis::contains))
+			{
+				continue;
+			}
+			try
+			{
+				exigirDisponibilidade(estoqueExternal.verificarDisponibilidade(compra.produtosIds, compra.produtosQtds));
+			}
+			catch (RuntimeException e)
+			{
+				compra.falhar(resultados, e);
+			}
+		}
+		compras.removeIf(compra -> resultados[compra.indice] != null);
+	}
+
+	private void autorizarPagamentosEmLote(List<CompraEmLote> compras, ResultadoCompraDTO[] resultados)
+	{
+		List<CompletableFuture<PagamentoDTO>> pagamentos = new ArrayList<>();
+		for (CompraEmLote compra : compras)
+		{
+			pagamentos.add(CompletableFuture.supplyAsync(
+					ContextoRastreamento.propagar(() -> autorizarPagamento(compra.cliente, compra.custoTotal)),
+					executorEstagios));
+		}
+		for (int i = 0; i < compras.size(); i++)
+		{
+			try
+			{
+				compras.get(i).pagamento = aguardar(pagamentos.get(i));
+			}
+			catch (RuntimeException e)
+			{
+				compras.get(i).falhar(resultados, e);
+			}
+		}
+		compras.removeIf(compra -> resultados[compra.indice] != null);
+	}
+
+	private void darBaixaEmLote(List<CompraEmLote> compras, ResultadoCompraDTO[] resultados)
+	{
+		if (compras.isEmpty())
+		{
+			return;
+		}
+		Map<Long, Long> demanda = somarDemanda(compras);
+		EstoqueBaixaDTO baixa;
+		try
+		{
+			baixa = estoqueExternal.darBaixa(new ArrayList<>(demanda.keySet()), new ArrayList<>(demanda.values()));
+		}
+		catch (RuntimeException e)
+		{
+			// Sem saber se a baixa aconteceu, não se tenta de novo: os pagamentos são cancelados
+			for (CompraEmLote compra : compras)
+			{
+				cancelarPagamento(compra.cliente, compra.pagamento, e);
+				compra.falhar(resultados, e);
+			}
+			compras.clear();
+			return;
+		}
+		if (baixa.sucesso())
+		{
+			return;
+		}
+
+		for (CompraEmLote compra : compras)
+		{
+			try
+			{
+				darBaixa(compra.cliente, compra.pagamento, compra.produtosIds, compra.produtosQtds);
+			}
+			catch (RuntimeException e)
+			{
+				compra.falhar(resultados, e);
+			}
+		}
+		compras.removeIf(compra -> resultados[compra.indice] != null);
+	}
+
+	/**
+	 * Leva a compra concluída ao registro de pedidos. O pagamento e a baixa já
+	 * aconteceram: uma falha aqui é registrada no log e não muda a resposta.
+	 */
+	private void registrarPedido(Long carrinhoId, Cliente cliente, PagamentoDTO pagamento, BigDecimal custoTotal,
+			List<Long> produtosIds, List<Long> produtosQtds)
+	{
+		try
+		{
+			registradorPedidos.registrar(new PedidoFinalizado(carrinhoId, cliente.getId(), pagamento.transacaoId(),
+					custoTotal, produtosIds, produtosQtds));
+		}
+		catch (RuntimeException e)
+		{
+			LOG.error("Falha ao registrar o pedido da transação {} do cliente {}", pagamento.transacaoId(),
+					cliente.getId(), e);
+		}
+	}
+
+	/** Cancela o pagamento após a falha {@code causa}, anexando a ela uma falha do cancelamento. */
+	private void cancelarPagamento(Cliente cliente, PagamentoDTO pagamento, RuntimeException causa)
+	{
+		try
+		{
+			compensadorPagamento.cancelar(cliente.getId(), pagamento.transacaoId());
+		}
+		catch (RuntimeException e)
+		{
+			causa.addSuppressed(e);
+		}
+	}
+
+	private static Map<Long, Long> somarDemanda(List<CompraEmLote> compras)
+	{
+		Map<Long, Long> demanda = new LinkedHashMap<>();
+		for (CompraEmLote compra : compras)
+		{
+			for (int i = 0; i < compra.produtosIds.size(); i++)
+			{
+				demanda.merge(compra.produtosIds.get(i), compra.produtosQtds.get(i), Long::sum);
+			}
+		}
+		return demanda;
+	}
+
+	/** Mesmo mapeamento de erros de {@code POST /finalizar}. */
+	private static ResultadoCompraDTO falha(PedidoCompraDTO pedido, RuntimeException erro)
+	{
+		if (erro instanceof IllegalArgumentException)
+		{
+			return new ResultadoCompraDTO(pedido.carrinhoId(), pedido.clienteId(), 400, false, null, erro.getMessage());
+		}
+		if (erro instanceof IllegalStateException)
+		{
+			return new ResultadoCompraDTO(pedido.carrinhoId(), pedido.clienteId(), 409, false, null, erro.getMessage());
+		}
+		if (erro instanceof BackendIndisponivelException)
+		{
+			int status = ((BackendIndisponivelException) erro)
+					.getMotivo() == BackendIndisponivelException.Motivo.TEMPO_LIMITE ? 504 : 503;
+			return new ResultadoCompraDTO(pedido.carrinhoId(), pedido.clienteId(), status, false, null,
+					erro.getMessage());
 		}
+		return new ResultadoCompraDTO(pedido.carrinhoId(), pedido.clienteId(), 500, false, null,
+				"Erro ao processar compra.");
+	}
+
+	/** Até onde chegou uma compra de {@link #finalizarCompra(Long, Long)}. */
+	private static final class Andamento
+	{
+		private boolean pago;
+	}
+
+	/** Estado de um pedido válido ao longo das etapas do lote. */
+	private static final class CompraEmLote
+	{
+		private final int indice;
+		private final PedidoCompraDTO pedido;
+		private final Cliente cliente;
+		private final CarrinhoDeCompras carrinho;
+		private final List<Long> produtosIds;
+		private final List<Long> produtosQtds;
+
+		private BigDecimal custoTotal;
+		private PagamentoDTO pagamento;
 
-		CompraDTO compraDTO = new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
+		CompraEmLote(int indice, PedidoCompraDTO pedido, Cliente cliente, CarrinhoDeCompras carrinho)
+		{
+			this.indice = indice;
+			this.pedido = pedido;
+			this.cliente = cliente;
+			this.carrinho = carrinho;
+			this.produtosIds = carrinho.getItens().stream().map(i -> i.getProduto().getId())
+					.collect(Collectors.toList());
+			this.produtosQtds = carrinho.getItens().stream().map(i -> i.getQuantidade())
+					.collect(Collectors.toList());
+		}
 
-		return compraDTO;
-	} 
+		void falhar(ResultadoCompraDTO[] resultados, RuntimeException erro)
+		{
+			resultados[indice] = falha(pedido, erro);
+		}
+	}
 
 	/**
 	 * Versão simplificada do cálculo de custo total.
-	 * Regras:
+	 * Regras (valores vigentes em {@code regras-preco.properties}):
 	 * 1. Subtotal = soma do preço unitário * quantidade de cada item
 	 * 2. Aplicar desconto por valor total:
 	 *    - total >= 1000,00 → 20% desconto
@@ -111,61 +714,136 @@ public class CompraService
 	 */
 	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho)
 	{
+		return cotar(carrinho).custoTotal();
+	}
+
+	/**
+	 * Custo total do carrinho acompanhado da versão das regras de preço usada
+	 * no cálculo. Carrinhos com o mesmo conteúdo reaproveitam a cotação do
+	 * {@link CacheCotacoes}. A cotação sai do {@link CatalogoOffHeap} quando
+	 * todos os produtos estão lá em ponto fixo e na mesma versão das entidades;
+	 * senão, dos agregados do carrinho ou, por fim, do cálculo decimal sobre as
+	 * entidades.
+	 */
+	public CotacaoDTO cotar(CarrinhoDeCompras carrinho)
+	{
+		TabelaPrecos tabela = regrasPreco.atual();
 		if (carrinho == null || carrinho.getItens() == null || carrinho.getItens().isEmpty()) {
-			return BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
+			return cotar(carrinho, tabela);
 		}
-		
-		// 1. Calcular subtotal
-		BigDecimal subtotal = BigDecimal.ZERO;
-		for (ItemCompra item : carrinho.getItens()) {
-			BigDecimal precoUnitario = item.getProduto().getPreco();
-			Long quantidade = item.getQuantidade();
-			subtotal = subtotal.add(precoUnitario.multiply(new BigDecimal(quantidade)));
+		return cacheCotacoes.obter(carrinho, tabela.getVersao(), c -> cotar(c, tabela));
+	}
+
+	CotacaoDTO cotar(CarrinhoDeCompras carrinho, TabelaPrecos tabela)
+	{
+		if (carrinho == null || carrinho.getItens() == null || carrinho.getItens().isEmpty()) {
+			return new CotacaoDTO(BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP), tabela.getVersao());
 		}
 		
-		// 2. Aplicar desconto por valor total
-		BigDecimal desconto = BigDecimal.ZERO;
-		if (subtotal.compareTo(LIMITE_DESCONTO_20) >= 0) {
-			desconto = subtotal.multiply(DESCONTO_20_POR_VALOR);
-		} else if (subtotal.compareTo(LIMITE_DESCONTO_10) >= 0) {
-			desconto = subtotal.multiply(DESCONTO_10_POR_VALOR);
+		OptionalLong doCatalogo = cotarNoCatalogo(carrinho, tabela);
+		if (doCatalogo.isPresent()) {
+			return new CotacaoDTO(BigDecimal.valueOf(doCatalogo.getAsLong(), 2), tabela.getVersao());
 		}
 		
-		BigDecimal subtotalComDesconto = subtotal.subtract(desconto);
-		
-		// 3. Calcular frete por peso físico total
-		BigDecimal pesoTotal = BigDecimal.ZERO;
-		for (ItemCompra item : carrinho.getItens()) {
-			Produto produto = item.getProduto();
-			Long quantidade = item.getQuantidade();
-			BigDecimal pesoFisico = produto.getPesoFisico();
-			pesoTotal = pesoTotal.add(pesoFisico.multiply(new BigDecimal(quantidade)));
+		AgregadosCarrinho agregados = carrinho.agregados();
+		if (agregados.isExato()) {
+			try {
+				long centavos = CalculadoraCustoTotal.totalEmCentavos(tabela, agregados.getSubtotalEscalado(),
+						tabela.pesoParaFrete(agregados.getPesoGramas(), agregados.getPesoFaturavelGramas()),
+						agregados.getUnidadesFrageis());
+				return new CotacaoDTO(BigDecimal.valueOf(centavos, 2), tabela.getVersao());
+			} catch (ArithmeticException e) {
+				// Estouro ao aplicar as regras: segue para o cálculo completo
+			}
 		}
 		
-		BigDecimal frete = BigDecimal.ZERO;
-		if (pesoTotal.compareTo(FAIXA_A_LIMITE) > 0 && pesoTotal.compareTo(FAIXA_B_LIMITE) <= 0) {
-			frete = pesoTotal.multiply(FAIXA_B_VALOR_KG);
-		} else if (pesoTotal.compareTo(FAIXA_B_LIMITE) > 0 && pesoTotal.compareTo(FAIXA_C_LIMITE) <= 0) {
-			frete = pesoTotal.multiply(FAIXA_C_VALOR_KG);
-		} else if (pesoTotal.compareTo(FAIXA_C_LIMITE) > 0) {
-			frete = pesoTotal.multiply(FAIXA_D_VALOR_KG);
+		return new CotacaoDTO(CalculadoraCustoTotal.calcular(tabela, carrinho.getItens()), tabela.getVersao());
+	}
+
+	/** Cotação pelo catálogo, lendo das entidades só id e versão; vazia se não for possível. */
+	private OptionalLong cotarNoCatalogo(CarrinhoDeCompras carrinho, TabelaPrecos tabela)
+	{
+		if (catalogo == null || !catalogo.isCarregado()) {
+			return OptionalLong.empty();
 		}
-		
-		// 4. Adicionar taxa de produtos frágeis
-		BigDecimal taxaFragil = BigDecimal.ZERO;
-		for (ItemCompra item : carrinho.getItens()) {
-			if (item.getProduto().isFragil()) {
-				Long quantidade = item.getQuantidade();
-				taxaFragil = taxaFragil.add(FRETE_TAXA_FRAGIL.multiply(new BigDecimal(quantidade)));
+		List<ItemCompra> itens = carrinho.getItens();
+		long[] produtosIds = new long[itens.size()];
+		long[] versoes = new long[itens.size()];
+		long[] quantidades = new long[itens.size()];
+		for (int i = 0; i < produtosIds.length; i++) {
+			ItemCompra item = itens.get(i);
+			if (item.getProduto() == null || item.getProduto().getId() == null || item.getQuantidade() == null) {
+				return OptionalLong.empty();
 			}
+			produtosIds[i] = item.getProduto().getId();
+			versoes[i] = CatalogoOffHeap.versao(item.getProduto().getVersao());
+			quantidades[i] = item.getQuantidade();
 		}
+		return catalogo.cotar(tabela, produtosIds, versoes, quantidades);
+	}
+	
+	/**
+	 * Precifica vários carrinhos em paralelo e devolve a cotação de cada um,
+	 * indexada pelo id do carrinho, na ordem de entrada. O lote roda no
+	 * {@link ForkJoinPool} compartilhado de precificação em lote, para não
+	 * competir com o pool comum usado pelo restante da aplicação. Todo o
+	 * lote é precificado com a mesma versão das regras de preço e sem passar pelo
+	 * cache de cotações, para não expulsar as entradas do tráfego de checkout.
+	 * O mesmo carrinho repetido é precificado uma vez; carrinhos diferentes
+	 * com o mesmo id são recusados.
+	 */
+	public Map<Long, CotacaoDTO> calcularCustoTotalEmLote(Collection<CarrinhoDeCompras> carrinhos,
+			ConfiguracaoLote configuracao)
+	{
+		// Um carrinho por id: cada um é precificado por uma única tarefa
+		Map<Long, CarrinhoDeCompras> porId = new LinkedHashMap<>();
+		for (CarrinhoDeCompras carrinho : carrinhos) {
+			if (carrinho == null || carrinho.getId() == null) {
+				throw new IllegalArgumentException("Carrinho sem identificador no lote.");
+			}
+			CarrinhoDeCompras anterior = porId.putIfAbsent(carrinho.getId(), carrinho);
+			if (anterior != null && anterior != carrinho) {
+				throw new IllegalArgumentException(
+						"Carrinhos diferentes com o mesmo id " + carrinho.getId() + " no lote.");
+			}
+		}
+		List<CarrinhoDeCompras> lista = new ArrayList<>(porId.values());
 		
-		frete = frete.add(taxaFragil);
-		
-		// 6. Total = subtotalComDesconto + frete
-		BigDecimal total = subtotalComDesconto.add(frete);
+		TabelaPrecos tabela = regrasPreco.atual();
+		CotacaoDTO[] resultados = new CotacaoDTO[lista.size()];
+		if (!lista.isEmpty()) {
+			poolLote.invoke(new TarefaPrecificacaoLote(this, tabela, lista, resultados, 0, lista.size(),
+					configuracao.getTamanhoBloco()));
+		}
 		
-		// 7. Arredondamento final para 2 casas decimais
-		return total.setScale(2, RoundingMode.HALF_UP);
+		Map<Long, CotacaoDTO> custos = new LinkedHashMap<>();
+		for (int i = 0; i < resultados.length; i++) {
+			custos.put(lista.get(i).getId(), resultados[i]);
+		}
+		return custos;
+	}
+
+	public Map<Long, CotacaoDTO> calcularCustoTotalEmLote(Stream<CarrinhoDeCompras> carrinhos,
+			ConfiguracaoLote configuracao)
+	{
+		return calcularCustoTotalEmLote(carrinhos.collect(Collectors.toList()), configuracao);
+	}
+
+	public Map<Long, CotacaoDTO> calcularCustoTotalEmLote(Collection<CarrinhoDeCompras> carrinhos)
+	{
+		return calcularCustoTotalEmLote(carrinhos, ConfiguracaoLote.padrao());
+	}
+
+	/** Executor usado quando o serviço é construído fora do Spring. */
+	private static final class ExecutorEstagiosPadrao
+	{
+		static final ExecutorService INSTANCIA = ExecutoresConfig.criarExecutorEstagios(
+				Runtime.getRuntime().availableProcessors(), 256);
+	}
+
+	/** Pool de precificação em lote usado quando o serviço é construído fora do Spring. */
+	private static final class PoolLotePadrao
+	{
+		static final ForkJoinPool INSTANCIA = ExecutoresConfig.criarPoolPrecificacaoLote(0);
 	}
 }
@@ -0,0 +1,32 @@
+package ecommerce.service;
+
+/**
+ * Parâmetros da precificação em lote: quantos carrinhos cada tarefa do
+ * fork-join processa sem dividir novamente. O número de threads é o do pool
+ * compartilhado de precificação em lote, fixado na sua criação.
+ */
+public class ConfiguracaoLote
+{
+	public static final int TAMANHO_BLOCO_PADRAO = 256;
+
+	private final int tamanhoBloco;
+
+	public ConfiguracaoLote(int tamanhoBloco)
+	{
+		if (tamanhoBloco < 1)
+		{
+			throw new IllegalArgumentException("Tamanho do bloco deve ser positivo.");
+		}
+		this.tamanhoBloco = tamanhoBloco;
+	}
+
+	public static ConfiguracaoLote padrao()
+	{
+		return new ConfiguracaoLote(TAMANHO_BLOCO_PADRAO);
+	}
+
+	public int getTamanhoBloco()
+	{
+		return tamanhoBloco;
+	}
+}
@@ -0,0 +1,204 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import ecommerce.rastreamento.Rastreador;
+import ecommerce.rastreamento.Span;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Métricas de {@link CompraService#finalizarCompra(Long, Long)}:
+ *
+ * <ul>
+ * <li>{@code compra.estagio} (tag {@code estagio}): duração de cada estágio,
+ * inclusive quando ele falha;</li>
+ * <li>{@code compra.finalizacao}: duração da compra inteira;</li>
+ * <li>{@code compra.resultado} (tag {@code resultado}): compras por
+ * desfecho;</li>
+ * <li>{@code compra.carrinho.itens} e {@code compra.valor}: itens do carrinho
+ * e custo total das compras que chegaram ao pagamento.</li>
+ * </ul>
+ *
+ * Com {@code histograma} ligado, timers e resumos publicam buckets de
+ * histograma, dos quais o Prometheus calcula percentis agregáveis entre
+ * instâncias; o custo por medição continua constante.
+ *
+ * Cada medição também abre um span no {@link Rastreador}:
+ * {@code compra.finalizar} para a compra, com o desfecho no atributo
+ * {@code compra.resultado}, e {@code compra.<estagio>} para cada estágio. As
+ * métricas mostram quais estágios ficam lentos; os spans amostrados mostram
+ * em qual compra e por causa de qual chamada externa.
+ */
+@Component
+public class MetricasCompra
+{
+	public enum Estagio
+	{
+		CLIENTE, CARRINHO, DISPONIBILIDADE, RESERVA, CUSTO, PAGAMENTO, BAIXA, REGISTRO;
+
+		String tag()
+		{
+			return name().toLowerCase(Locale.ROOT);
+		}
+
+		String span()
+		{
+			return "compra." + tag();
+		}
+	}
+
+	public enum Resultado
+	{
+		SUCESSO, ESTOQUE_INDISPONIVEL, PAGAMENTO_RECUSADO,
+		/** Baixa recusada ou com erro depois do pagamento, que foi compensado. */
+		FALHA_BAIXA,
+		/** Estoque ou pagamento recusado pela proteção (disjuntor, concorrência ou tempo limite). */
+		SERVICO_INDISPONIVEL,
+		/** Cliente ou carrinho inexistente ou inválido. */
+		INVALIDA, ERRO;
+
+		String tag()
+		{
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private final Map<Estagio, Timer> estagios = new EnumMap<>(Estagio.class);
+	private final Map<Resultado, Counter> resultados = new EnumMap<>(Resultado.class);
+	private final Timer finalizacao;
+	private final DistributionSummary itens;
+	private final DistributionSummary valor;
+	private final Rastreador rastreador;
+
+	public MetricasCompra(MeterRegistry registro)
+	{
+		this(registro, Rastreador.nenhum());
+	}
+
+	public MetricasCompra(MeterRegistry registro, Rastreador rastreador)
+	{
+		this(registro, false, rastreador);
+	}
+
+	@Autowired
+	public MetricasCompra(MeterRegistry registro,
+			@Value("${ecommerce.compra.metricas.histograma:true}") boolean histograma, Rastreador rastreador)
+	{
+		this.rastreador = rastreador;
+		for (Estagio estagio : Estagio.values())
+		{
+			estagios.put(estagio, timer(Timer.builder("compra.estagio")
+					.description("Duração de cada estágio da finalização da compra")
+					.tag("estagio", estagio.tag()), histograma)
+					.register(registro));
+		}
+		for (Resultado resultado : Resultado.values())
+		{
+			resultados.put(resultado, Counter.builder("compra.resultado")
+					.description("Compras finalizadas por desfecho")
+					.tag("resultado", resultado.tag())
+					.register(registro));
+		}
+		this.finalizacao = timer(Timer.builder("compra.finalizacao")
+				.description("Duração da finalização da compra, do cliente à baixa"), histograma)
+				.register(registro);
+		this.itens = DistributionSummary.builder("compra.carrinho.itens")
+				.description("Itens do carrinho das compras que chegaram ao pagamento")
+				.baseUnit("itens")
+				.publishPercentileHistogram(histograma)
+				.minimumExpectedValue(1.0)
+				.maximumExpectedValue(10_000.0)
+				.register(registro);
+		this.valor = DistributionSummary.builder("compra.valor")
+				.description("Custo total das compras que chegaram ao pagamento")
+				.baseUnit("reais")
+				.publishPercentileHistogram(histograma)
+				.minimumExpectedValue(1.0)
+				.maximumExpectedValue(1_000_000.0)
+				.register(registro);
+	}
+
+	/** Métricas descartadas, para o serviço construído fora do Spring. */
+	public static MetricasCompra nenhuma()
+	{
+		// Registro composto sem registros filhos: os medidores não fazem nada
+		return new MetricasCompra(new CompositeMeterRegistry());
+	}
+
+	private static Timer.Builder timer(Timer.Builder builder, boolean histograma)
+	{
+		return builder.publishPercentileHistogram(histograma)
+				.minimumExpectedValue(Duration.ofNanos(100_000))
+				.maximumExpectedValue(Duration.ofSeconds(30));
+	}
+
+	/** Executa o estágio em um span e registra sua duração, mesmo se ele falhar. */
+	public <T> T medir(Estagio estagio, Supplier<T> execucao)
+	{
+		long inicio = System.nanoTime();
+		try (Span span = rastreador.iniciar(estagio.span()))
+		{
+			try
+			{
+				return execucao.get();
+			}
+			catch (RuntimeException e)
+			{
+				span.erro(e);
+				throw e;
+			}
+		}
+		finally
+		{
+			estagios.get(estagio).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public void medir(Estagio estagio, Runnable execucao)
+	{
+		medir(estagio, () -> {
+			execucao.run();
+			return null;
+		});
+	}
+
+	public void carrinho(int quantidadeItens, BigDecimal custoTotal)
+	{
+		itens.record(quantidadeItens);
+		valor.record(custoTotal.doubleValue());
+	}
+
+	/** Span da compra, corrente até ser fechado; os spans dos estágios são seus filhos. */
+	public Span iniciarCompra(Long carrinhoId, Long clienteId)
+	{
+		return rastreador.iniciar("compra.finalizar")
+				.atributo("compra.carrinho", carrinhoId)
+				.atributo("compra.cliente", clienteId);
+	}
+
+	/**
+	 * Registra o desfecho e a duração da compra iniciada em {@code inicioNanos}
+	 * ({@link System#nanoTime()}); o desfecho também vai para o span da compra,
+	 * que deve estar aberto.
+	 */
+	public void concluir(Resultado resultado, long inicioNanos, Span span)
+	{
+		finalizacao.record(System.nanoTime() - inicioNanos, TimeUnit.NANOSECONDS);
+		resultados.get(resultado).increment();
+		span.atributo("compra.resultado", resultado.tag());
+	}
+}
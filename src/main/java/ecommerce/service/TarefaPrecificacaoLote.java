@@ -0,0 +1,55 @@
+package ecommerce.service;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.service.preco.TabelaPrecos;
+
+/**
+ * Divide a lista de carrinhos ao meio até o tamanho do bloco e precifica cada
+ * bloco sequencialmente. Cada tarefa escreve apenas no seu intervalo do vetor
+ * de resultados, então não há disputa entre as threads.
+ */
+class TarefaPrecificacaoLote extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	private final CompraService compraService;
+	private final TabelaPrecos tabela;
+	private final List<CarrinhoDeCompras> carrinhos;
+	private final CotacaoDTO[] resultados;
+	private final int inicio;
+	private final int fim;
+	private final int tamanhoBloco;
+
+	TarefaPrecificacaoLote(CompraService compraService, TabelaPrecos tabela, List<CarrinhoDeCompras> carrinhos,
+			CotacaoDTO[] resultados, int inicio, int fim, int tamanhoBloco)
+	{
+		this.compraService = compraService;
+		this.tabela = tabela;
+		this.carrinhos = carrinhos;
+		this.resultados = resultados;
+		this.inicio = inicio;
+		this.fim = fim;
+		this.tamanhoBloco = tamanhoBloco;
+	}
+
+	@Override
+	protected void compute()
+	{
+		if (fim - inicio <= tamanhoBloco)
+		{
+			for (int i = inicio; i < fim; i++)
+			{
+				resultados[i] = compraService.cotar(carrinhos.get(i), tabela);
+			}
+			return;
+		}
+
+		int meio = (inicio + fim) >>> 1;
+		invokeAll(new TarefaPrecificacaoLote(compraService, tabela, carrinhos, resultados, inicio, meio, tamanhoBloco),
+				new TarefaPrecificacaoLote(compraService, tabela, carrinhos, resultados, meio, fim, tamanhoBloco));
+	}
+}
@@ -0,0 +1,19 @@
+package ecommerce.service.compensacao;
+
+import ecommerce.external.IPagamentoExternal;
+
+/**
+ * Como a compra desfaz um pagamento autorizado quando a baixa no estoque
+ * falha. Uma falha aqui significa que o cancelamento nem foi registrado.
+ */
+@FunctionalInterface
+public interface CompensadorPagamento
+{
+	void cancelar(Long clienteId, Long transacaoId);
+
+	/** Cancela na hora, dentro da requisição. */
+	static CompensadorPagamento sincrono(IPagamentoExternal pagamentoExternal)
+	{
+		return pagamentoExternal::cancelarPagamento;
+	}
+}
@@ -0,0 +1,218 @@
+package ecommerce.service.compensacao;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.CompensacaoPagamento;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.CompensacaoPagamentoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cancelamentos de pagamento pela saída (outbox): a compra só grava o
+ * cancelamento em {@link CompensacaoPagamento}, no banco próprio da outbox e
+ * fora da transação da compra, para sobreviver ao rollback da compra que
+ * falhou, e responde. Uma thread em
+ * segundo plano lê as compensações vencidas em lotes de {@code tamanhoLote} e
+ * chama {@link IPagamentoExternal#cancelarPagamento(Long, Long)}; cada falha
+ * dobra a espera até a próxima tentativa, de {@code esperaInicial} até
+ * {@code esperaMaxima}, e após {@code tentativasMaximas} a compensação fica
+ * marcada como esgotada.
+ *
+ * Se o cancelamento funciona mas a remoção da linha falha, ele é repetido: o
+ * cancelamento do provedor precisa aceitar a mesma transação duas vezes.
+ *
+ * Pendentes e esgotadas aparecem em {@code /actuator/metrics} como
+ * {@code pagamento.compensacoes.pendentes} e
+ * {@code pagamento.compensacoes.esgotadas}. As contagens são lidas do banco
+ * uma vez, na criação, e depois mantidas em memória por esta instância: a
+ * coleta de métricas não consulta o banco.
+ */
+@Component
+public class OutboxCompensacoes implements CompensadorPagamento
+{
+	private static final Logger LOG = LoggerFactory.getLogger(OutboxCompensacoes.class);
+
+	private final CompensacaoPagamentoRepository repository;
+	private final IPagamentoExternal pagamentoExternal;
+	private final Clock relogio;
+
+	private final int tamanhoLote;
+	private final Duration esperaInicial;
+	private final Duration esperaMaxima;
+	private final int tentativasMaximas;
+	private final Duration intervalo;
+
+	private final Counter concluidas;
+	private final Counter falhas;
+	private final AtomicLong pendentes = new AtomicLong();
+	private final AtomicLong esgotadas = new AtomicLong();
+
+	private ScheduledExecutorService processador;
+
+	public OutboxCompensacoes(CompensacaoPagamentoRepository repository, IPagamentoExternal pagamentoExternal,
+			Clock relogio, int tamanhoLote, Duration esperaInicial, Duration esperaMaxima, int tentativasMaximas,
+			Duration intervalo, MeterRegistry registro)
+	{
+		if (tamanhoLote < 1 || tentativasMaximas < 1)
+		{
+			throw new IllegalArgumentException("Tamanho do lote e tentativas devem ser positivos.");
+		}
+		this.repository = repository;
+		this.pagamentoExternal = pagamentoExternal;
+		this.relogio = relogio;
+		this.tamanhoLote = tamanhoLote;
+		this.esperaInicial = esperaInicial;
+		this.esperaMaxima = esperaMaxima;
+		this.tentativasMaximas = tentativasMaximas;
+		this.intervalo = intervalo;
+
+		pendentes.set(repository.contar(false));
+		esgotadas.set(repository.contar(true));
+		Gauge.builder("pagamento.compensacoes.pendentes", pendentes, AtomicLong::get)
+				.description("Cancelamentos de pagamento aguardando execução")
+				.register(registro);
+		Gauge.builder("pagamento.compensacoes.esgotadas", esgotadas, AtomicLong::get)
+				.description("Cancelamentos de pagamento que esgotaram as tentativas")
+				.register(registro);
+		this.concluidas = Counter.builder("pagamento.compensacoes.tentativas").tag("resultado", "sucesso")
+				.register(registro);
+		this.falhas = Counter.builder("pagamento.compensacoes.tentativas").tag("resultado", "falha")
+				.register(registro);
+	}
+
+	@Autowired
+	public OutboxCompensacoes(CompensacaoPagamentoRepository repository, IPagamentoExternal pagamentoExternal,
+			@Value("${ecommerce.pagamento.compensacao.tamanho-lote:100}") int tamanhoLote,
+			@Value("${ecommerce.pagamento.compensacao.espera-inicial:1s}") Duration esperaInicial,
+			@Value("${ecommerce.pagamento.compensacao.espera-maxima:5m}") Duration esperaMaxima,
+			@Value("${ecommerce.pagamento.compensacao.tentativas-maximas:10}") int tentativasMaximas,
+			@Value("${ecommerce.pagamento.compensacao.intervalo:1s}") Duration intervalo,
+			MeterRegistry registro)
+	{
+		this(repository, pagamentoExternal, Clock.systemUTC(), tamanhoLote, esperaInicial, esperaMaxima,
+				tentativasMaximas, intervalo, registro);
+	}
+
+	/** Grava o cancelamento para execução posterior, fora da transação da compra. */
+	@Override
+	public void cancelar(Long clienteId, Long transacaoId)
+	{
+		repository.gravar(new CompensacaoPagamento(clienteId, transacaoId, relogio.instant()));
+		pendentes.incrementAndGet();
+	}
+
+	/**
+	 * Executa as compensações vencidas, lote a lote, até não restar nenhuma.
+	 * Devolve quantas foram concluídas.
+	 */
+	public int processarPendentes()
+	{
+		int concluidasAgora = 0;
+		List<CompensacaoPagamento> lote;
+		do
+		{
+			Instant agora = relogio.instant();
+			lote = repository.buscarVencidas(agora, tamanhoLote);
+			for (CompensacaoPagamento compensacao : lote)
+			{
+				if (executar(compensacao, agora))
+				{
+					concluidasAgora++;
+				}
+			}
+		}
+		while (lote.size() == tamanhoLote);
+		return concluidasAgora;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void iniciar()
+	{
+		if (processador != null)
+		{
+			return;
+		}
+		processador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+			Thread thread = new Thread(tarefa, "compensacoes-pagamento");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long periodo = intervalo.toMillis();
+		processador.scheduleWithFixedDelay(() -> {
+			try
+			{
+				processarPendentes();
+			}
+			catch (RuntimeException e)
+			{
+				// Uma exceção aqui cancelaria as próximas execuções
+				LOG.error("Falha ao processar compensações de pagamento", e);
+			}
+		}, periodo, periodo, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public synchronized void parar()
+	{
+		if (processador != null)
+		{
+			processador.shutdownNow();
+			processador = null;
+		}
+	}
+
+	private boolean executar(CompensacaoPagamento compensacao, Instant agora)
+	{
+		try
+		{
+			pagamentoExternal.cancelarPagamento(compensacao.getClienteId(), compensacao.getTransacaoId());
+		}
+		catch (RuntimeException e)
+		{
+			falhas.increment();
+			int tentativa = compensacao.getTentativas() + 1;
+			boolean esgotada = tentativa >= tentativasMaximas;
+			compensacao.registrarFalha(String.valueOf(e.getMessage()), agora.plus(espera(tentativa)), esgotada);
+			repository.gravar(compensacao);
+			if (esgotada)
+			{
+				pendentes.decrementAndGet();
+				esgotadas.incrementAndGet();
+				LOG.error("Cancelamento da transação {} do cliente {} esgotou {} tentativas", compensacao.getTransacaoId(),
+						compensacao.getClienteId(), tentativa, e);
+			}
+			return false;
+		}
+		repository.remover(compensacao);
+		pendentes.decrementAndGet();
+		concluidas.increment();
+		return true;
+	}
+
+	/** Espera após a n-ésima falha: esperaInicial dobrada a cada falha, limitada a esperaMaxima. */
+	Duration espera(int tentativa)
+	{
+		int expoente = Math.min(tentativa - 1, 30);
+		Duration espera = esperaInicial.multipliedBy(1L << expoente);
+		return espera.compareTo(esperaMaxima) > 0 ? esperaMaxima : espera;
+	}
+}
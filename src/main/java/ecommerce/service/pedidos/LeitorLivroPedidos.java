@@ -0,0 +1,182 @@
+package ecommerce.service.pedidos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * Leitura sequencial do {@link LivroPedidos}, para reprocessamento e
+ * relatórios: percorre os segmentos que existiam ao ser criado, do mais antigo
+ * ao mais novo, e cada um até o primeiro tamanho zero (ainda não escrito) ou
+ * registro com CRC inválido (escrita interrompida por uma queda). Faixas com
+ * tamanho negativo, deixadas por uma escrita que falhou, são puladas. Pode ler
+ * enquanto o livro recebe escritas; o que chegar depois do fim visto fica para
+ * um próximo leitor.
+ */
+public class LeitorLivroPedidos implements Iterator<PedidoFinalizado>, AutoCloseable
+{
+	private final List<Path> segmentos;
+	private final CRC32C crc = new CRC32C();
+
+	private int proximoSegmento;
+	private ByteBuffer segmento;
+	private int posicao;
+	private PedidoFinalizado proximo;
+
+	public LeitorLivroPedidos(Path diretorio)
+	{
+		try
+		{
+			this.segmentos = LivroPedidos.segmentos(diretorio);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Não foi possível listar o livro de pedidos em " + diretorio, e);
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (proximo == null)
+		{
+			proximo = ler();
+		}
+		return proximo != null;
+	}
+
+	@Override
+	public PedidoFinalizado next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		PedidoFinalizado pedido = proximo;
+		proximo = null;
+		return pedido;
+	}
+
+	/** Lê todos os pedidos restantes. */
+	public List<PedidoFinalizado> lerTodos()
+	{
+		List<PedidoFinalizado> pedidos = new ArrayList<>();
+		forEachRemaining(pedidos::add);
+		return pedidos;
+	}
+
+	@Override
+	public void close()
+	{
+		// Os mapeamentos saem com a coleta de lixo
+		segmento = null;
+		proximoSegmento = segmentos.size();
+	}
+
+	private PedidoFinalizado ler()
+	{
+		while (true)
+		{
+			if (segmento == null && !abrirProximo())
+			{
+				return null;
+			}
+			PedidoFinalizado pedido = lerRegistro();
+			if (pedido != null)
+			{
+				return pedido;
+			}
+			segmento = null;
+		}
+	}
+
+	private PedidoFinalizado lerRegistro()
+	{
+		ByteBuffer b = segmento;
+		if (posicao + LivroPedidos.TAMANHO_FIXO_REGISTRO > b.limit())
+		{
+			return null;
+		}
+		int tamanho = (int) LivroPedidos.INTS.getAcquire(b, posicao);
+		while (tamanho < 0 && posicao - tamanho <= b.limit() && -tamanho % 8 == 0)
+		{
+			posicao -= tamanho;
+			if (posicao + LivroPedidos.TAMANHO_FIXO_REGISTRO > b.limit())
+			{
+				return null;
+			}
+			tamanho = (int) LivroPedidos.INTS.getAcquire(b, posicao);
+		}
+		if (tamanho < LivroPedidos.TAMANHO_FIXO_REGISTRO || posicao + tamanho > b.limit()
+				|| (tamanho - LivroPedidos.TAMANHO_FIXO_REGISTRO) % LivroPedidos.TAMANHO_ITEM != 0)
+		{
+			return null;
+		}
+		ByteBuffer dados = b.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		dados.position(posicao + 8).limit(posicao + tamanho);
+		crc.reset();
+		crc.update(dados.duplicate());
+		if ((int) crc.getValue() != b.getInt(posicao + 4))
+		{
+			return null;
+		}
+
+		long carrinhoId = dados.getLong();
+		long clienteId = dados.getLong();
+		long transacaoId = dados.getLong();
+		long totalSemEscala = dados.getLong();
+		int escala = dados.getInt();
+		int itens = dados.getInt();
+		if (itens != (tamanho - LivroPedidos.TAMANHO_FIXO_REGISTRO) / LivroPedidos.TAMANHO_ITEM)
+		{
+			return null;
+		}
+		List<Long> produtosIds = new ArrayList<>(itens);
+		List<Long> quantidades = new ArrayList<>(itens);
+		for (int i = 0; i < itens; i++)
+		{
+			produtosIds.add(dados.getLong());
+			quantidades.add(dados.getLong());
+		}
+		posicao += tamanho;
+		return new PedidoFinalizado(carrinhoId, clienteId, transacaoId,
+				new BigDecimal(BigInteger.valueOf(totalSemEscala), escala), produtosIds, quantidades);
+	}
+
+	private boolean abrirProximo()
+	{
+		while (proximoSegmento < segmentos.size())
+		{
+			Path arquivo = segmentos.get(proximoSegmento++);
+			try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ))
+			{
+				MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+				mapa.order(ByteOrder.LITTLE_ENDIAN);
+				if (mapa.limit() >= LivroPedidos.TAMANHO_CABECALHO && mapa.getInt(0) == LivroPedidos.MAGICO
+						&& mapa.getInt(4) == LivroPedidos.VERSAO)
+				{
+					segmento = mapa;
+					posicao = LivroPedidos.TAMANHO_CABECALHO;
+					return true;
+				}
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException("Não foi possível ler o segmento " + arquivo, e);
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,613 @@
+package ecommerce.service.pedidos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Livro de pedidos só de acréscimo, em segmentos de {@code tamanhoSegmento}
+ * bytes mapeados em memória ({@code pedidos-<número>.seg}). Cada segmento
+ * começa com um cabeçalho de 16 bytes (mágico, versão, número) e segue com
+ * registros alinhados em 8 bytes, em little-endian:
+ *
+ * <pre>
+ *  0  int   tamanho do registro (escrito por último)
+ *  4  int   CRC32C dos bytes 8..tamanho
+ *  8  long  carrinho
+ * 16  long  cliente
+ * 24  long  transação do pagamento
+ * 32  long  total sem escala
+ * 40  int   escala do total
+ * 44  int   quantidade de itens (n)
+ * 48  n × (long produto, long quantidade)
+ * </pre>
+ *
+ * O acréscimo não bloqueia: cada thread reserva sua faixa do segmento com um
+ * {@code getAndAdd}, copia o registro e publica o tamanho com escrita de
+ * liberação; um tamanho zero marca o fim do que já foi escrito. Uma thread que
+ * falha depois de reservar publica o tamanho negativo, e o leitor pula a faixa.
+ * Só a troca de segmento, quando uma reserva não cabe, é serializada.
+ *
+ * A gravação em disco é em grupo: a cada {@code intervaloSincronizacao} uma
+ * thread força ({@code fsync}) os segmentos com escritas novas e conclui, de
+ * uma vez, as esperas de {@link #gravar(PedidoFinalizado)} registradas antes.
+ * Como as threads publicam fora de ordem, uma espera só conclui quando todo o
+ * segmento até o fim do seu registro já estava publicado antes do
+ * {@code fsync}: a leitura para no primeiro tamanho zero, e um registro depois
+ * de uma faixa ainda vazia se perderia numa queda.
+ * {@link #registrar(PedidoFinalizado)} só espera essa gravação com
+ * {@code aguardarGravacao}; sem isso, uma queda perde no máximo o último
+ * intervalo.
+ *
+ * Ao abrir um diretório com segmentos, o livro começa um segmento novo depois
+ * do último; nada já escrito é sobrescrito. A leitura em ordem fica com
+ * {@link LeitorLivroPedidos}.
+ */
+@Component
+public class LivroPedidos implements RegistradorPedidos, AutoCloseable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(LivroPedidos.class);
+
+	static final int MAGICO = 0x31444550;
+	static final int VERSAO = 1;
+	static final int TAMANHO_CABECALHO = 16;
+	static final int TAMANHO_FIXO_REGISTRO = 48;
+	static final int TAMANHO_ITEM = 16;
+	static final String PREFIXO_SEGMENTO = "pedidos-";
+	static final String SUFIXO_SEGMENTO = ".seg";
+
+	static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final Path diretorio;
+	private final int tamanhoSegmento;
+	private final boolean aguardarGravacao;
+
+	private final Queue<Segmento> aposentados = new ConcurrentLinkedQueue<>();
+	private final Queue<Espera> esperas = new ConcurrentLinkedQueue<>();
+	/** Esperas cujo registro ainda não está na parte contígua gravada; só a sincronização usa. */
+	private final List<Espera> aguardando = new ArrayList<>();
+	private final ThreadLocal<Rascunho> rascunhos = ThreadLocal.withInitial(Rascunho::new);
+	private final ScheduledExecutorService sincronizador;
+
+	private final Counter registros;
+	private final Timer sincronizacoes;
+	private final DistributionSummary esperasPorSincronizacao;
+
+	private final Object trocaSegmento = new Object();
+	private volatile Segmento atual;
+
+	public LivroPedidos(Path diretorio, int tamanhoSegmento, Duration intervaloSincronizacao,
+			boolean aguardarGravacao)
+	{
+		this(diretorio, tamanhoSegmento, intervaloSincronizacao, aguardarGravacao, new SimpleMeterRegistry());
+	}
+
+	public LivroPedidos(Path diretorio, int tamanhoSegmento, Duration intervaloSincronizacao,
+			boolean aguardarGravacao, MeterRegistry registro)
+	{
+		if (tamanhoSegmento < TAMANHO_CABECALHO + TAMANHO_FIXO_REGISTRO)
+		{
+			throw new IllegalArgumentException("Segmento pequeno demais para um registro.");
+		}
+		if (intervaloSincronizacao.isNegative() || intervaloSincronizacao.isZero())
+		{
+			throw new IllegalArgumentException("Intervalo de sincronização deve ser positivo.");
+		}
+		this.diretorio = diretorio;
+		// Alinhado em 8 bytes, como os registros
+		this.tamanhoSegmento = tamanhoSegmento & ~7;
+		this.aguardarGravacao = aguardarGravacao;
+
+		this.registros = Counter.builder("pedidos.livro.registros")
+				.description("Pedidos acrescentados ao livro")
+				.register(registro);
+		this.sincronizacoes = Timer.builder("pedidos.livro.sincronizacao")
+				.description("Gravação em disco dos segmentos do livro de pedidos")
+				.register(registro);
+		this.esperasPorSincronizacao = DistributionSummary.builder("pedidos.livro.sincronizacao.esperas")
+				.description("Gravações aguardadas atendidas por uma mesma sincronização")
+				.register(registro);
+
+		try
+		{
+			Files.createDirectories(diretorio);
+			this.atual = abrirSegmento(ultimoNumero(diretorio) + 1);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Não foi possível abrir o livro de pedidos em " + diretorio, e);
+		}
+
+		this.sincronizador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+			Thread thread = new Thread(tarefa, "livro-pedidos");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long periodo = Math.max(1L, intervaloSincronizacao.toNanos());
+		sincronizador.scheduleWithFixedDelay(this::sincronizarComLog, periodo, periodo, TimeUnit.NANOSECONDS);
+	}
+
+	@Autowired
+	public LivroPedidos(
+			@Value("${ecommerce.pedidos.livro.diretorio:${java.io.tmpdir}/ecommerce-pedidos}") String diretorio,
+			@Value("${ecommerce.pedidos.livro.tamanho-segmento:64MB}") DataSize tamanhoSegmento,
+			@Value("${ecommerce.pedidos.livro.intervalo-sincronizacao:2ms}") Duration intervaloSincronizacao,
+			@Value("${ecommerce.pedidos.livro.aguardar-gravacao:false}") boolean aguardarGravacao,
+			MeterRegistry registro)
+	{
+		this(Paths.get(diretorio), Math.toIntExact(tamanhoSegmento.toBytes()), intervaloSincronizacao,
+				aguardarGravacao, registro);
+	}
+
+	/**
+	 * Acrescenta o pedido ao livro; com {@code aguardarGravacao}, também espera
+	 * a sincronização que o grava em disco.
+	 */
+	@Override
+	public void registrar(PedidoFinalizado pedido)
+	{
+		if (aguardarGravacao)
+		{
+			try
+			{
+				gravar(pedido).join();
+			}
+			catch (CompletionException e)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+		}
+		else
+		{
+			acrescentar(pedido, null);
+		}
+	}
+
+	/**
+	 * Acrescenta o pedido; o futuro conclui quando ele, e tudo antes dele no
+	 * segmento, estiver gravado em disco.
+	 */
+	public CompletableFuture<Void> gravar(PedidoFinalizado pedido)
+	{
+		CompletableFuture<Void> gravado = new CompletableFuture<>();
+		acrescentar(pedido, gravado);
+		if (atual == null)
+		{
+			// Fechado entre o acréscimo e a espera: a sincronização final pode já ter passado
+			sincronizar();
+		}
+		return gravado;
+	}
+
+	/** Leitor dos segmentos existentes agora, do mais antigo ao mais novo. */
+	public LeitorLivroPedidos leitor()
+	{
+		return new LeitorLivroPedidos(diretorio);
+	}
+
+	public Path getDiretorio()
+	{
+		return diretorio;
+	}
+
+	/**
+	 * Força em disco o que foi escrito e conclui as esperas cujo registro já
+	 * está na parte contígua gravada. Chamado periodicamente pela thread de
+	 * sincronização.
+	 */
+	public synchronized void sincronizar()
+	{
+		for (Espera espera; (espera = esperas.poll()) != null;)
+		{
+			aguardando.add(espera);
+		}
+
+		long inicio = System.nanoTime();
+		List<Segmento> forcados = new ArrayList<>();
+		try
+		{
+			for (Iterator<Segmento> it = aposentados.iterator(); it.hasNext();)
+			{
+				Segmento segmento = it.next();
+				// Completo antes de forçar: nenhuma escrita fica para depois do fsync
+				boolean completo = segmento.completo();
+				segmento.gravar();
+				forcados.add(segmento);
+				if (completo)
+				{
+					// O mapeamento sai com a coleta de lixo; não há como desfazê-lo antes no Java 11
+					it.remove();
+				}
+			}
+			Segmento segmento = atual;
+			if (segmento != null)
+			{
+				// Escritas concluídas, não reservas: uma reserva ainda sem escrita não tem o que forçar
+				int escrito = segmento.escrito.get();
+				if (!aguardando.isEmpty() || escrito != segmento.escritoSincronizado)
+				{
+					segmento.gravar();
+					segmento.escritoSincronizado = escrito;
+					forcados.add(segmento);
+				}
+			}
+			// Registro acrescentado enquanto o livro fechava: seu segmento já saiu da lista
+			for (Espera espera : aguardando)
+			{
+				if (!espera.gravada() && !forcados.contains(espera.segmento))
+				{
+					espera.segmento.gravar();
+					forcados.add(espera.segmento);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw falhar(new UncheckedIOException("Falha ao gravar o livro de pedidos.", e));
+		}
+		catch (RuntimeException e)
+		{
+			throw falhar(e);
+		}
+		if (!forcados.isEmpty())
+		{
+			sincronizacoes.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		}
+		int concluidas = 0;
+		for (Iterator<Espera> it = aguardando.iterator(); it.hasNext();)
+		{
+			Espera espera = it.next();
+			if (espera.gravada())
+			{
+				it.remove();
+				espera.futuro.complete(null);
+				concluidas++;
+			}
+		}
+		if (concluidas > 0)
+		{
+			esperasPorSincronizacao.record(concluidas);
+		}
+	}
+
+	@Override
+	@PreDestroy
+	public void close()
+	{
+		sincronizador.shutdownNow();
+		Segmento ultimo;
+		synchronized (trocaSegmento)
+		{
+			ultimo = atual;
+			if (ultimo == null)
+			{
+				return;
+			}
+			atual = null;
+			aposentados.add(ultimo);
+		}
+		sincronizar();
+		aposentados.clear();
+	}
+
+	/** Acrescenta o pedido e, com {@code gravado}, registra a espera pela gravação. */
+	private void acrescentar(PedidoFinalizado pedido, CompletableFuture<Void> gravado)
+	{
+		ByteBuffer registro = rascunhos.get().serializar(pedido);
+		int tamanho = registro.limit();
+		if (tamanho > tamanhoSegmento - TAMANHO_CABECALHO)
+		{
+			throw new IllegalArgumentException("Pedido com " + pedido.getProdutosIds().size()
+					+ " itens não cabe em um segmento do livro.");
+		}
+		while (true)
+		{
+			Segmento segmento = atual;
+			if (segmento == null)
+			{
+				throw new IllegalStateException("Livro de pedidos fechado.");
+			}
+			long inicio = segmento.reservado.getAndAdd(tamanho);
+			if (inicio + tamanho <= segmento.capacidade)
+			{
+				segmento.escrever((int) inicio, registro);
+				registros.increment();
+				if (gravado != null)
+				{
+					esperas.add(new Espera(segmento, (int) inicio + tamanho, gravado));
+				}
+				return;
+			}
+			// As reservas são contíguas: só uma começa até a capacidade e passa dela
+			if (inicio <= segmento.capacidade)
+			{
+				segmento.usado = (int) inicio;
+			}
+			trocarSegmento(segmento);
+		}
+	}
+
+	private void trocarSegmento(Segmento cheio)
+	{
+		synchronized (trocaSegmento)
+		{
+			if (atual != cheio)
+			{
+				// Outra thread já trocou, ou o livro foi fechado
+				return;
+			}
+			try
+			{
+				Segmento novo = abrirSegmento(cheio.numero + 1);
+				aposentados.add(cheio);
+				atual = novo;
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException("Não foi possível abrir um novo segmento do livro de pedidos.", e);
+			}
+		}
+	}
+
+	private Segmento abrirSegmento(long numero) throws IOException
+	{
+		Path arquivo = diretorio.resolve(nomeSegmento(numero));
+		try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE))
+		{
+			MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanhoSegmento);
+			mapa.order(ByteOrder.LITTLE_ENDIAN);
+			mapa.putInt(0, MAGICO);
+			mapa.putInt(4, VERSAO);
+			mapa.putLong(8, numero);
+			// O mapeamento continua válido depois de fechar o canal
+			return new Segmento(numero, mapa, tamanhoSegmento);
+		}
+	}
+
+	private RuntimeException falhar(RuntimeException falha)
+	{
+		aguardando.forEach(espera -> espera.futuro.completeExceptionally(falha));
+		aguardando.clear();
+		return falha;
+	}
+
+	private void sincronizarComLog()
+	{
+		try
+		{
+			sincronizar();
+		}
+		catch (RuntimeException e)
+		{
+			// Uma exceção aqui cancelaria as próximas execuções
+			LOG.error("Falha ao gravar o livro de pedidos em {}", diretorio, e);
+		}
+	}
+
+	static String nomeSegmento(long numero)
+	{
+		return String.format("%s%020d%s", PREFIXO_SEGMENTO, numero, SUFIXO_SEGMENTO);
+	}
+
+	/** Segmentos do diretório em ordem de número. */
+	static List<Path> segmentos(Path diretorio) throws IOException
+	{
+		if (!Files.isDirectory(diretorio))
+		{
+			return List.of();
+		}
+		try (Stream<Path> arquivos = Files.list(diretorio))
+		{
+			List<Path> segmentos = new ArrayList<>();
+			arquivos.filter(LivroPedidos::ehSegmento).sorted().forEach(segmentos::add);
+			return segmentos;
+		}
+	}
+
+	private static long ultimoNumero(Path diretorio) throws IOException
+	{
+		List<Path> segmentos = segmentos(diretorio);
+		if (segmentos.isEmpty())
+		{
+			return 0L;
+		}
+		String nome = segmentos.get(segmentos.size() - 1).getFileName().toString();
+		return Long.parseLong(nome.substring(PREFIXO_SEGMENTO.length(), nome.length() - SUFIXO_SEGMENTO.length()));
+	}
+
+	private static boolean ehSegmento(Path arquivo)
+	{
+		String nome = arquivo.getFileName().toString();
+		return nome.startsWith(PREFIXO_SEGMENTO) && nome.endsWith(SUFIXO_SEGMENTO)
+				&& nome.length() == nomeSegmento(0L).length();
+	}
+
+	private static final class Segmento
+	{
+		private final long numero;
+		private final MappedByteBuffer mapa;
+		private final int capacidade;
+
+		private final AtomicLong reservado = new AtomicLong(TAMANHO_CABECALHO);
+		private final AtomicInteger escrito = new AtomicInteger(TAMANHO_CABECALHO);
+		/** Bytes ocupados quando o segmento enche; -1 enquanto ele recebe escritas. */
+		private volatile int usado = -1;
+		/** Bytes escritos na última sincronização; só a sincronização lê e escreve. */
+		private int escritoSincronizado = -1;
+		/** Fim da parte contígua com todos os tamanhos publicados; só a sincronização lê e escreve. */
+		private int publicado = TAMANHO_CABECALHO;
+		/** Fim da parte contígua já forçada em disco. */
+		private volatile int gravado = TAMANHO_CABECALHO;
+
+		Segmento(long numero, MappedByteBuffer mapa, int capacidade)
+		{
+			this.numero = numero;
+			this.mapa = mapa;
+			this.capacidade = capacidade;
+		}
+
+		void escrever(int inicio, ByteBuffer registro)
+		{
+			try
+			{
+				ByteBuffer destino = mapa.duplicate();
+				destino.position(inicio + 4);
+				destino.put(registro.duplicate().position(4));
+			}
+			catch (RuntimeException | Error e)
+			{
+				// Sem o tamanho, a faixa reservada pararia a leitura do segmento aqui
+				INTS.setRelease(mapa, inicio, -registro.limit());
+				escrito.addAndGet(registro.limit());
+				throw e;
+			}
+			// Publica o registro: quem lê o tamanho vê o restante já escrito
+			INTS.setRelease(mapa, inicio, registro.limit());
+			escrito.addAndGet(registro.limit());
+		}
+
+		/**
+		 * Força o segmento em disco e avança {@link #gravado} até onde os
+		 * tamanhos estavam publicados, sem lacunas, antes de forçar.
+		 */
+		void gravar() throws IOException
+		{
+			int limite = usado >= 0 ? usado : capacidade;
+			int fim = publicado;
+			while (fim + 4 <= limite)
+			{
+				int tamanho = (int) INTS.getAcquire(mapa, fim);
+				if (tamanho == 0)
+				{
+					break;
+				}
+				fim += Math.abs(tamanho);
+			}
+			publicado = fim;
+			forcar();
+			gravado = fim;
+		}
+
+		boolean completo()
+		{
+			int u = usado;
+			return u >= 0 && escrito.get() == u;
+		}
+
+		void forcar() throws IOException
+		{
+			try
+			{
+				mapa.force();
+			}
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+		}
+	}
+
+	/** Espera de {@link #gravar(PedidoFinalizado)} pelo registro que termina em {@code fim}. */
+	private static final class Espera
+	{
+		private final Segmento segmento;
+		private final int fim;
+		private final CompletableFuture<Void> futuro;
+
+		Espera(Segmento segmento, int fim, CompletableFuture<Void> futuro)
+		{
+			this.segmento = segmento;
+			this.fim = fim;
+			this.futuro = futuro;
+		}
+
+		boolean gravada()
+		{
+			return segmento.gravado >= fim;
+		}
+	}
+
+	/** Área de montagem do registro, uma por thread, que cresce conforme o maior pedido visto. */
+	private static final class Rascunho
+	{
+		private final CRC32C crc = new CRC32C();
+		private ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_FIXO_REGISTRO + 16 * TAMANHO_ITEM)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		ByteBuffer serializar(PedidoFinalizado pedido)
+		{
+			int itens = pedido.getProdutosIds().size();
+			int tamanho = TAMANHO_FIXO_REGISTRO + itens * TAMANHO_ITEM;
+			if (buffer.capacity() < tamanho)
+			{
+				buffer = ByteBuffer.allocate(Math.max(tamanho, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			BigDecimal total = pedido.getTotal();
+			ByteBuffer b = buffer;
+			b.clear();
+			b.putInt(0);
+			b.putInt(0);
+			b.putLong(pedido.getCarrinhoId());
+			b.putLong(pedido.getClienteId());
+			b.putLong(pedido.getTransacaoId());
+			b.putLong(total.unscaledValue().longValueExact());
+			b.putInt(total.scale());
+			b.putInt(itens);
+			List<Long> ids = pedido.getProdutosIds();
+			List<Long> quantidades = pedido.getProdutosQuantidades();
+			for (int i = 0; i < itens; i++)
+			{
+				b.putLong(ids.get(i));
+				b.putLong(quantidades.get(i));
+			}
+			b.flip();
+
+			crc.reset();
+			crc.update(b.array(), b.arrayOffset() + 8, tamanho - 8);
+			b.putInt(0, tamanho);
+			b.putInt(4, (int) crc.getValue());
+			return b;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package ecommerce.service.pedidos;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compra concluída como fica no {@link LivroPedidos}: carrinho, cliente,
+ * transação do pagamento, custo total e, em listas paralelas, os produtos e
+ * suas quantidades.
+ */
+public final class PedidoFinalizado
+{
+	private final long carrinhoId;
+	private final long clienteId;
+	private final long transacaoId;
+	private final BigDecimal total;
+	private final List<Long> produtosIds;
+	private final List<Long> produtosQuantidades;
+
+	public PedidoFinalizado(long carrinhoId, long clienteId, long transacaoId, BigDecimal total,
+			List<Long> produtosIds, List<Long> produtosQuantidades)
+	{
+		if (produtosIds.size() != produtosQuantidades.size())
+		{
+			throw new IllegalArgumentException("Produtos e quantidades devem ter o mesmo tamanho.");
+		}
+		this.carrinhoId = carrinhoId;
+		this.clienteId = clienteId;
+		this.transacaoId = transacaoId;
+		this.total = Objects.requireNonNull(total);
+		this.produtosIds = List.copyOf(produtosIds);
+		this.produtosQuantidades = List.copyOf(produtosQuantidades);
+	}
+
+	public long getCarrinhoId()
+	{
+		return carrinhoId;
+	}
+
+	public long getClienteId()
+	{
+		return clienteId;
+	}
+
+	public long getTransacaoId()
+	{
+		return transacaoId;
+	}
+
+	public BigDecimal getTotal()
+	{
+		return total;
+	}
+
+	public List<Long> getProdutosIds()
+	{
+		return produtosIds;
+	}
+
+	public List<Long> getProdutosQuantidades()
+	{
+		return produtosQuantidades;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o)
+		{
+			return true;
+		}
+		if (!(o instanceof PedidoFinalizado))
+		{
+			return false;
+		}
+		PedidoFinalizado outro = (PedidoFinalizado) o;
+		return carrinhoId == outro.carrinhoId && clienteId == outro.clienteId && transacaoId == outro.transacaoId
+				&& total.equals(outro.total) && produtosIds.equals(outro.produtosIds)
+				&& produtosQuantidades.equals(outro.produtosQuantidades);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(carrinhoId, clienteId, transacaoId, total, produtosIds, produtosQuantidades);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PedidoFinalizado [carrinhoId=" + carrinhoId + ", clienteId=" + clienteId + ", transacaoId="
+				+ transacaoId + ", total=" + total + ", produtosIds=" + produtosIds + ", produtosQuantidades="
+				+ produtosQuantidades + "]";
+	}
+}
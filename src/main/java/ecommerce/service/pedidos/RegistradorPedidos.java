@@ -0,0 +1,18 @@
+package ecommerce.service.pedidos;
+
+/**
+ * Destino das compras concluídas. É chamado depois da baixa no estoque, com o
+ * pagamento já feito: uma falha aqui não desfaz a compra.
+ */
+@FunctionalInterface
+public interface RegistradorPedidos
+{
+	void registrar(PedidoFinalizado pedido);
+
+	/** Não registra nada. */
+	static RegistradorPedidos nenhum()
+	{
+		return pedido -> {
+		};
+	}
+}
@@ -0,0 +1,66 @@
+package ecommerce.service.preco;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ecommerce.entity.Produto;
+
+/**
+ * Listener JPA de {@link Produto} que reflete inclusões, alterações e remoções
+ * no {@link CatalogoOffHeap}. Os callbacks rodam na descarga para o banco,
+ * antes do commit, por isso a mudança só é aplicada ao catálogo depois que a
+ * transação é confirmada; se ela for desfeita, o catálogo não muda. Fora de
+ * uma transação gerenciada pelo Spring, a mudança é aplicada na hora.
+ *
+ * O catálogo é obtido sob demanda porque depende do {@code ProdutoRepository},
+ * que por sua vez depende da fábrica de EntityManager que cria este listener.
+ */
+@Component
+public class AtualizacaoCatalogoListener
+{
+	private final ObjectProvider<CatalogoOffHeap> catalogo;
+
+	@Autowired
+	public AtualizacaoCatalogoListener(ObjectProvider<CatalogoOffHeap> catalogo)
+	{
+		this.catalogo = catalogo;
+	}
+
+	@PostPersist
+	@PostUpdate
+	public void produtoGravado(Produto produto)
+	{
+		depoisDoCommit(() -> catalogo.getObject().atualizar(produto));
+	}
+
+	@PostRemove
+	public void produtoRemovido(Produto produto)
+	{
+		Long produtoId = produto.getId();
+		depoisDoCommit(() -> catalogo.getObject().remover(produtoId));
+	}
+
+	private static void depoisDoCommit(Runnable mudanca)
+	{
+		if (!TransactionSynchronizationManager.isSynchronizationActive())
+		{
+			mudanca.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+		{
+			@Override
+			public void afterCommit()
+			{
+				mudanca.run();
+			}
+		});
+	}
+}
@@ -0,0 +1,124 @@
+package ecommerce.service.preco;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache limitado de cotações endereçado pelo conteúdo do carrinho
+ * ({@link ChaveCotacao}). A remoção por tamanho usa a política W-TinyLFU do
+ * Caffeine. Um índice reverso produto → chaves permite descartar apenas as
+ * cotações que contêm um produto alterado; como a versão do produto também faz
+ * parte da chave, uma entrada antiga nunca é encontrada por um produto novo, e
+ * a invalidação serve para liberar memória cedo.
+ *
+ * Acertos, faltas e remoções aparecem em {@code /actuator/metrics} sob
+ * {@code cache.gets} e {@code cache.evictions} com a tag {@code cache=cotacoes}.
+ */
+@Component
+public class CacheCotacoes
+{
+	public static final String NOME = "cotacoes";
+
+	private final Cache<ChaveCotacao, CotacaoDTO> cache;
+	private final Map<Long, Set<ChaveCotacao>> chavesPorProduto = new ConcurrentHashMap<>();
+
+	public CacheCotacoes(long tamanhoMaximo)
+	{
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.recordStats()
+				.removalListener((ChaveCotacao chave, CotacaoDTO cotacao, RemovalCause causa) -> desindexar(chave))
+				.build();
+	}
+
+	@Autowired
+	public CacheCotacoes(@Value("${ecommerce.preco.cache.tamanho-maximo:100000}") long tamanhoMaximo,
+			MeterRegistry registro)
+	{
+		this(tamanhoMaximo);
+		CaffeineCacheMetrics.monitor(registro, cache, NOME);
+	}
+
+	/**
+	 * Devolve a cotação cacheada para o conteúdo do carrinho ou calcula, guarda e
+	 * devolve uma nova. Carrinhos com itens não identificáveis não são cacheados.
+	 */
+	public CotacaoDTO obter(CarrinhoDeCompras carrinho, String versaoRegras,
+			Function<CarrinhoDeCompras, CotacaoDTO> calculo)
+	{
+		ChaveCotacao chave = ChaveCotacao.de(carrinho, versaoRegras);
+		if (chave == null)
+		{
+			return calculo.apply(carrinho);
+		}
+		return cache.get(chave, k -> {
+			CotacaoDTO cotacao = calculo.apply(carrinho);
+			indexar(k);
+			return cotacao;
+		});
+	}
+
+	/** Descarta todas as cotações que contêm o produto. */
+	public void invalidarProduto(Long produtoId)
+	{
+		Set<ChaveCotacao> chaves = chavesPorProduto.remove(produtoId);
+		if (chaves != null)
+		{
+			cache.invalidateAll(chaves);
+		}
+	}
+
+	public void invalidarTudo()
+	{
+		cache.invalidateAll();
+	}
+
+	public CacheStats estatisticas()
+	{
+		return cache.stats();
+	}
+
+	public long tamanhoEstimado()
+	{
+		return cache.estimatedSize();
+	}
+
+	private void indexar(ChaveCotacao chave)
+	{
+		for (int i = 0; i < chave.quantidadeProdutos(); i++)
+		{
+			chavesPorProduto.computeIfAbsent(chave.produtoId(i), id -> ConcurrentHashMap.newKeySet()).add(chave);
+		}
+	}
+
+	private void desindexar(ChaveCotacao chave)
+	{
+		if (chave == null)
+		{
+			return;
+		}
+		for (int i = 0; i < chave.quantidadeProdutos(); i++)
+		{
+			chavesPorProduto.computeIfPresent(chave.produtoId(i), (id, chaves) -> {
+				chaves.remove(chave);
+				return chaves.isEmpty() ? null : chaves;
+			});
+		}
+	}
+}
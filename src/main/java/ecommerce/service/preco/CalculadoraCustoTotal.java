@@ -0,0 +1,145 @@
+package ecommerce.service.preco;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.PerfilEnvio;
+import ecommerce.entity.Produto;
+
+/**
+ * Núcleo do cálculo de custo total sobre uma {@link TabelaPrecos}.
+ *
+ * O caminho principal trabalha com inteiros escalados: valores em 1/10.000 de
+ * real e pesos em gramas, lidos do {@link PerfilEnvio} pré-calculado de cada
+ * produto. O total intermediário fica na escala 6 (escala de
+ * valor somada à do percentual), de modo que nenhuma etapa arredonda antes do
+ * HALF_UP final. Quando algum valor não cabe na escala fixa, ou há estouro de
+ * {@code long}, o mesmo cálculo é refeito em {@link BigDecimal}.
+ */
+public final class CalculadoraCustoTotal
+{
+	public static final int ESCALA_VALOR = 4;
+	public static final int ESCALA_PESO = 3;
+	static final int ESCALA_PERCENTUAL = 2;
+	static final int ESCALA_CENTAVOS = 2;
+
+	/** Divisor que leva o total da escala 6 para centavos. */
+	private static final long ESCALA_TOTAL_PARA_CENTAVOS = 10_000L;
+
+	private CalculadoraCustoTotal()
+	{
+	}
+
+	/**
+	 * Custo total dos itens, arredondado para 2 casas decimais (HALF_UP).
+	 * Lista vazia resulta em zero.
+	 */
+	public static BigDecimal calcular(TabelaPrecos tabela, List<ItemCompra> itens)
+	{
+		try
+		{
+			return calcularPontoFixo(tabela, itens);
+		}
+		catch (ArithmeticException e)
+		{
+			// Valor fora da escala fixa ou estouro de long: refaz o cálculo em BigDecimal
+			return calcularBigDecimal(tabela, itens);
+		}
+	}
+
+	/**
+	 * Aplica desconto, frete e taxa de frágeis sobre os agregados já escalados e
+	 * devolve o total em centavos. Lança {@link ArithmeticException} em estouro.
+	 */
+	public static long totalEmCentavos(TabelaPrecos tabela, long subtotal, long pesoGramas, long unidadesFrageis)
+	{
+		// Desconto por valor total (subtotal * (100 - percentual) → escala 6)
+		long total = Math.multiplyExact(subtotal, tabela.fatorSemDesconto(subtotal));
+
+		// Frete pelo peso total da base da tabela (gramas * centavos/kg → escala 5)
+		total = Math.addExact(total, Math.multiplyExact(Math.multiplyExact(pesoGramas, tabela.valorKg(pesoGramas)), 10L));
+
+		// Taxa de produtos frágeis (centavos → escala 6)
+		total = Math.addExact(total,
+				Math.multiplyExact(Math.multiplyExact(unidadesFrageis, tabela.taxaFragil()), 10_000L));
+
+		return arredondarHalfUp(total, ESCALA_TOTAL_PARA_CENTAVOS);
+	}
+
+	static BigDecimal calcularPontoFixo(TabelaPrecos tabela, List<ItemCompra> itens)
+	{
+		boolean faturavel = tabela.getBaseFrete() == TabelaPrecos.BaseFrete.FATURAVEL;
+		long subtotal = 0L;
+		long pesoGramas = 0L;
+		long unidadesFrageis = 0L;
+		for (ItemCompra item : itens)
+		{
+			Produto produto = item.getProduto();
+			PerfilEnvio perfil = produto.getPerfilEnvio();
+			if (!perfil.isExato())
+			{
+				throw new ArithmeticException("Perfil de envio fora do ponto fixo.");
+			}
+			long quantidade = item.getQuantidade();
+			long peso = faturavel ? perfil.getPesoFaturavelGramas() : perfil.getPesoFisicoGramas();
+			subtotal = Math.addExact(subtotal, Math.multiplyExact(paraEscala(produto.getPreco(), ESCALA_VALOR), quantidade));
+			pesoGramas = Math.addExact(pesoGramas, Math.multiplyExact(peso, quantidade));
+			if (perfil.isFragil())
+			{
+				unidadesFrageis = Math.addExact(unidadesFrageis, quantidade);
+			}
+		}
+		return BigDecimal.valueOf(totalEmCentavos(tabela, subtotal, pesoGramas, unidadesFrageis), ESCALA_CENTAVOS);
+	}
+
+	/** Cálculo de referência em {@link BigDecimal}. */
+	static BigDecimal calcularBigDecimal(TabelaPrecos tabela, List<ItemCompra> itens)
+	{
+		boolean faturavel = tabela.getBaseFrete() == TabelaPrecos.BaseFrete.FATURAVEL;
+		BigDecimal subtotal = BigDecimal.ZERO;
+		BigDecimal pesoTotal = BigDecimal.ZERO;
+		BigDecimal unidadesFrageis = BigDecimal.ZERO;
+		for (ItemCompra item : itens)
+		{
+			Produto produto = item.getProduto();
+			BigDecimal quantidade = BigDecimal.valueOf(item.getQuantidade());
+			BigDecimal peso = faturavel ? PerfilEnvio.pesoFaturavel(produto) : produto.getPesoFisico();
+			subtotal = subtotal.add(produto.getPreco().multiply(quantidade));
+			pesoTotal = pesoTotal.add(peso.multiply(quantidade));
+			if (produto.isFragil())
+			{
+				unidadesFrageis = unidadesFrageis.add(quantidade);
+			}
+		}
+
+		BigDecimal subtotalComDesconto = subtotal.subtract(subtotal.multiply(tabela.percentualDesconto(subtotal)));
+		BigDecimal frete = pesoTotal.multiply(tabela.valorKg(pesoTotal))
+				.add(tabela.taxaFragilDecimal().multiply(unidadesFrageis));
+
+		return subtotalComDesconto.add(frete).setScale(ESCALA_CENTAVOS, RoundingMode.HALF_UP);
+	}
+
+	/**
+	 * Converte um valor decimal para inteiro na escala informada. Lança
+	 * {@link ArithmeticException} se houver casas decimais além da escala ou se o
+	 * resultado não couber em um {@code long}.
+	 */
+	public static long paraEscala(BigDecimal valor, int escala)
+	{
+		return valor.movePointRight(escala).longValueExact();
+	}
+
+	/** Divide por {@code divisor} (potência de 10) arredondando HALF_UP. */
+	static long arredondarHalfUp(long valor, long divisor)
+	{
+		long quociente = valor / divisor;
+		long resto = Math.abs(valor % divisor);
+		if (resto * 2 >= divisor)
+		{
+			quociente += Long.signum(valor);
+		}
+		return quociente;
+	}
+}
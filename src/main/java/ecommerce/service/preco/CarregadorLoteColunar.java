@@ -0,0 +1,61 @@
+package ecommerce.service.preco;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+
+/**
+ * Monta um {@link LoteCarrinhosColunar} a partir do banco. Os carrinhos são
+ * percorridos por páginas de ids (paginação por chave) e cada página é
+ * carregada com itens e produtos em uma consulta; ao fim de cada página o
+ * contexto de persistência é limpo, de modo que apenas os vetores primitivos
+ * do lote permanecem em memória.
+ */
+@Service
+public class CarregadorLoteColunar
+{
+	public static final int TAMANHO_PAGINA_PADRAO = 1_000;
+
+	private final CarrinhoDeComprasRepository repository;
+	private final EntityManager entityManager;
+
+	@Autowired
+	public CarregadorLoteColunar(CarrinhoDeComprasRepository repository, EntityManager entityManager)
+	{
+		this.repository = repository;
+		this.entityManager = entityManager;
+	}
+
+	@Transactional
+	public LoteCarrinhosColunar carregarTodos(int tamanhoPagina)
+	{
+		LoteCarrinhosColunar.Construtor construtor = LoteCarrinhosColunar.construtor();
+		long ultimoId = Long.MIN_VALUE;
+		List<Long> ids = repository.findIdsAposId(ultimoId, PageRequest.of(0, tamanhoPagina));
+		while (!ids.isEmpty())
+		{
+			for (CarrinhoDeCompras carrinho : repository.findComItensPorIds(ids))
+			{
+				construtor.adicionar(carrinho);
+			}
+			entityManager.clear();
+			ultimoId = ids.get(ids.size() - 1);
+			ids = repository.findIdsAposId(ultimoId, PageRequest.of(0, tamanhoPagina));
+		}
+		return construtor.construir();
+	}
+
+	@Transactional
+	public LoteCarrinhosColunar carregarTodos()
+	{
+		return carregarTodos(TAMANHO_PAGINA_PADRAO);
+	}
+}
@@ -0,0 +1,548 @@
+package ecommerce.service.preco;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.PerfilEnvio;
+import ecommerce.entity.Produto;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.repository.ProdutoRepository.VersaoProduto;
+
+/**
+ * Cópia somente leitura, fora do heap, dos atributos de {@link Produto} que a
+ * precificação usa. Cada produto ocupa um registro de tamanho fixo em um
+ * {@link ByteBuffer} direto:
+ *
+ * <pre>
+ *  0  long  sequência (seqlock: ímpar durante a escrita)
+ *  8  long  preço em 1/10.000 de real
+ * 16  long  peso físico em gramas
+ * 24  long  peso faturável em gramas
+ * 32  int   indicadores (presente, frágil, exato)
+ * 40  long  versão do produto ({@link #SEM_VERSAO} se não tem)
+ * </pre>
+ *
+ * O registro é encontrado pelo id em um {@link IndiceProdutos}. Leituras não
+ * tocam o contexto de persistência nem bloqueiam: repetem a leitura se o
+ * registro estava sendo escrito. As escritas são serializadas.
+ *
+ * A carga completa ({@link #carregar()}) lê o {@link ProdutoRepository} em
+ * páginas e troca o conteúdo de uma vez; depois disso {@link #atualizar(Produto)}
+ * e {@link #remover(Long)} mantêm os registros em dia, a partir do
+ * {@link AtualizacaoCatalogoListener} depois de cada commit deste nó. O que
+ * muda por outro nó ou direto no banco é trazido por {@link #reconciliar()},
+ * a cada {@code intervaloReconciliacao}, que compara a versão de cada produto
+ * com a do banco; alterações feitas em SQL precisam incrementar a versão.
+ *
+ * Um registro só é usado se tem a mesma versão da entidade que está sendo
+ * precificada. Produtos ausentes, de outra versão ou cujo preço ou peso não
+ * cabem no ponto fixo não são cotados aqui, e quem lê deve recorrer à entidade.
+ */
+@Component
+public class CatalogoOffHeap
+{
+	private static final Logger LOG = LoggerFactory.getLogger(CatalogoOffHeap.class);
+
+	/** Versão gravada para produtos que ainda não têm {@link Produto#getVersao()}. */
+	public static final long SEM_VERSAO = -1L;
+
+	static final int TAMANHO_REGISTRO = 48;
+
+	private static final int DESLOCAMENTO_SEQUENCIA = 0;
+	private static final int DESLOCAMENTO_PRECO = 8;
+	private static final int DESLOCAMENTO_PESO_FISICO = 16;
+	private static final int DESLOCAMENTO_PESO_FATURAVEL = 24;
+	private static final int DESLOCAMENTO_INDICADORES = 32;
+	private static final int DESLOCAMENTO_VERSAO = 40;
+
+	private static final int PRESENTE = 1;
+	private static final int FRAGIL = 1 << 1;
+	private static final int EXATO = 1 << 2;
+
+	/** Estado de um id que não tem registro presente, para a reconciliação. */
+	private static final long NAO_REGISTRADO = Long.MIN_VALUE;
+
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.nativeOrder());
+
+	private final ProdutoRepository produtoRepository;
+	private final int tamanhoPagina;
+	private final Duration intervaloReconciliacao;
+
+	private volatile Regiao regiao;
+	private volatile boolean carregado;
+
+	private ScheduledExecutorService reconciliador;
+
+	/** Catálogo sem reconciliação periódica. */
+	public CatalogoOffHeap(ProdutoRepository produtoRepository, int tamanhoPagina, int capacidadeInicial)
+	{
+		this(produtoRepository, tamanhoPagina, capacidadeInicial, Duration.ZERO);
+	}
+
+	public CatalogoOffHeap(ProdutoRepository produtoRepository, int tamanhoPagina, int capacidadeInicial,
+			Duration intervaloReconciliacao)
+	{
+		if (tamanhoPagina <= 0)
+		{
+			throw new IllegalArgumentException("Tamanho de página deve ser positivo.");
+		}
+		this.produtoRepository = produtoRepository;
+		this.tamanhoPagina = tamanhoPagina;
+		this.intervaloReconciliacao = intervaloReconciliacao;
+		this.regiao = new Regiao(Math.max(capacidadeInicial, 1));
+	}
+
+	@Autowired
+	public CatalogoOffHeap(ProdutoRepository produtoRepository,
+			@Value("${ecommerce.catalogo.off-heap.tamanho-pagina:1000}") int tamanhoPagina,
+			@Value("${ecommerce.catalogo.off-heap.intervalo-reconciliacao:1m}") Duration intervaloReconciliacao)
+	{
+		this(produtoRepository, tamanhoPagina, 1024, intervaloReconciliacao);
+	}
+
+	/** Faz a carga completa e, com intervalo positivo, agenda a reconciliação. */
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void carregarNaInicializacao()
+	{
+		carregar();
+		if (reconciliador != null || intervaloReconciliacao.isZero() || intervaloReconciliacao.isNegative())
+		{
+			return;
+		}
+		reconciliador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+			Thread thread = new Thread(tarefa, "reconciliacao-catalogo");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long periodo = intervaloReconciliacao.toMillis();
+		reconciliador.scheduleWithFixedDelay(() -> {
+			try
+			{
+				reconciliar();
+			}
+			catch (RuntimeException e)
+			{
+				// Uma exceção aqui cancelaria as próximas execuções
+				LOG.error("Falha ao reconciliar o catálogo off-heap", e);
+			}
+		}, periodo, periodo, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public synchronized void parar()
+	{
+		if (reconciliador != null)
+		{
+			reconciliador.shutdownNow();
+			reconciliador = null;
+		}
+	}
+
+	/**
+	 * Lê todo o catálogo do repositório, página a página, em uma região nova e a
+	 * publica de uma só vez. Leitores continuam usando a região anterior até a
+	 * troca. Devolve o número de produtos carregados.
+	 */
+	public synchronized int carregar()
+	{
+		long inicio = System.nanoTime();
+		Regiao nova = new Regiao((int) Math.min(Integer.MAX_VALUE / TAMANHO_REGISTRO,
+				Math.max(produtoRepository.count(), 1L)));
+		Page<Produto> pagina = produtoRepository.findAll(PageRequest.of(0, tamanhoPagina, Sort.by("id")));
+		while (true)
+		{
+			for (Produto produto : pagina)
+			{
+				nova = nova.gravar(produto);
+			}
+			if (!pagina.hasNext())
+			{
+				break;
+			}
+			pagina = produtoRepository.findAll(pagina.nextPageable());
+		}
+		regiao = nova;
+		carregado = true;
+		LOG.info("Catálogo off-heap carregado: {} produtos, {} bytes, {} ms", nova.indice.tamanho(),
+				nova.memoria.capacity(), (System.nanoTime() - inicio) / 1_000_000);
+		return nova.indice.tamanho();
+	}
+
+	/** Grava ou sobrescreve os atributos do produto. */
+	public synchronized void atualizar(Produto produto)
+	{
+		if (produto.getId() == null)
+		{
+			return;
+		}
+		Regiao atual = regiao;
+		Regiao resultado = atual.gravar(produto);
+		if (resultado != atual)
+		{
+			regiao = resultado;
+		}
+	}
+
+	public synchronized void atualizarTodos(List<Produto> produtos)
+	{
+		for (Produto produto : produtos)
+		{
+			atualizar(produto);
+		}
+	}
+
+	/** Marca o produto como ausente; o registro é reaproveitado se o id voltar. */
+	public synchronized void remover(Long produtoId)
+	{
+		if (produtoId == null)
+		{
+			return;
+		}
+		Regiao atual = regiao;
+		int registro = atual.indice.obter(produtoId);
+		if (registro != IndiceProdutos.AUSENTE)
+		{
+			atual.escrever(registro, 0L, 0L, 0L, 0, SEM_VERSAO);
+		}
+	}
+
+	/**
+	 * Confere o catálogo com o banco e corrige os registros divergentes:
+	 * produtos alterados por outro nó ou direto no banco, incluídos depois da
+	 * carga ou removidos. A comparação lê do banco só ids e versões, em páginas;
+	 * só os produtos divergentes são lidos por inteiro. Um registro que mudou
+	 * durante a conferência, por {@link #atualizar(Produto)}, é mantido.
+	 * Devolve o número de registros corrigidos.
+	 */
+	public int reconciliar()
+	{
+		if (!carregado)
+		{
+			return 0;
+		}
+		long inicio = System.nanoTime();
+		Regiao inicial = regiao;
+		long[] ids = inicial.indice.ids();
+		Arrays.sort(ids);
+		long[] versoes = new long[ids.length];
+		for (int i = 0; i < ids.length; i++)
+		{
+			versoes[i] = inicial.estado(ids[i]);
+		}
+		boolean[] vistos = new boolean[ids.length];
+
+		int corrigidos = 0;
+		Page<VersaoProduto> pagina = produtoRepository.findAllBy(PageRequest.of(0, tamanhoPagina, Sort.by("id")));
+		while (true)
+		{
+			Map<Long, Long> esperados = new HashMap<>();
+			for (VersaoProduto produto : pagina)
+			{
+				int posicao = Arrays.binarySearch(ids, produto.getId());
+				long esperado = NAO_REGISTRADO;
+				if (posicao >= 0)
+				{
+					vistos[posicao] = true;
+					esperado = versoes[posicao];
+				}
+				if (esperado != versao(produto.getVersao()))
+				{
+					esperados.put(produto.getId(), esperado);
+				}
+			}
+			if (!esperados.isEmpty())
+			{
+				corrigidos += regravar(produtoRepository.findAllById(esperados.keySet()), esperados);
+			}
+			if (!pagina.hasNext())
+			{
+				break;
+			}
+			pagina = produtoRepository.findAllBy(pagina.nextPageable());
+		}
+
+		// Não vistos: removidos ou deslocados entre páginas; a releitura por id decide
+		Map<Long, Long> naoVistos = new HashMap<>();
+		for (int i = 0; i < ids.length; i++)
+		{
+			if (!vistos[i] && versoes[i] != NAO_REGISTRADO)
+			{
+				naoVistos.put(ids[i], versoes[i]);
+			}
+		}
+		if (!naoVistos.isEmpty())
+		{
+			List<Produto> existentes = produtoRepository.findAllById(naoVistos.keySet());
+			corrigidos += regravar(existentes, naoVistos);
+			for (Produto produto : existentes)
+			{
+				naoVistos.remove(produto.getId());
+			}
+			corrigidos += removerSeInalterados(naoVistos);
+		}
+		if (corrigidos > 0)
+		{
+			LOG.info("Catálogo off-heap reconciliado: {} produtos corrigidos, {} ms", corrigidos,
+					(System.nanoTime() - inicio) / 1_000_000);
+		}
+		return corrigidos;
+	}
+
+	/** Regrava os produtos cujo registro ainda está no estado esperado e difere da versão lida. */
+	private synchronized int regravar(List<Produto> produtos, Map<Long, Long> esperados)
+	{
+		int corrigidos = 0;
+		for (Produto produto : produtos)
+		{
+			long atual = regiao.estado(produto.getId());
+			if (atual == esperados.get(produto.getId()).longValue() && atual != versao(produto.getVersao()))
+			{
+				atualizar(produto);
+				corrigidos++;
+			}
+		}
+		return corrigidos;
+	}
+
+	private synchronized int removerSeInalterados(Map<Long, Long> esperados)
+	{
+		int removidos = 0;
+		for (Map.Entry<Long, Long> esperado : esperados.entrySet())
+		{
+			if (regiao.estado(esperado.getKey()) == esperado.getValue().longValue())
+			{
+				remover(esperado.getKey());
+				removidos++;
+			}
+		}
+		return removidos;
+	}
+
+	/**
+	 * Se a carga completa já terminou. Antes dela, um produto ausente não quer
+	 * dizer nada: quem consulta deve recorrer às entidades.
+	 */
+	public boolean isCarregado()
+	{
+		return carregado;
+	}
+
+	public boolean contem(long produtoId)
+	{
+		Regiao atual = regiao;
+		int registro = atual.indice.obter(produtoId);
+		return registro != IndiceProdutos.AUSENTE && (atual.lerIndicadores(registro) & PRESENTE) != 0;
+	}
+
+	/** Versão como gravada no registro: {@link #SEM_VERSAO} para produtos sem versão. */
+	public static long versao(Long versao)
+	{
+		return versao == null ? SEM_VERSAO : versao;
+	}
+
+	/**
+	 * Custo total em centavos dos itens dados por id, versão e quantidade, com
+	 * as mesmas regras de {@link CalculadoraCustoTotal}. Vazio se algum produto
+	 * não está no catálogo, está em outra versão, é inexato ou o cálculo estoura
+	 * o ponto fixo; nesses casos o chamador deve usar as entidades.
+	 */
+	public OptionalLong cotar(TabelaPrecos tabela, long[] produtoIds, long[] versoes, long[] quantidades)
+	{
+		if (produtoIds.length != quantidades.length || produtoIds.length != versoes.length)
+		{
+			throw new IllegalArgumentException("Ids, versões e quantidades com tamanhos diferentes.");
+		}
+		boolean faturavel = tabela.getBaseFrete() == TabelaPrecos.BaseFrete.FATURAVEL;
+		Regiao atual = regiao;
+		long[] atributos = new long[5];
+		long subtotal = 0L;
+		long peso = 0L;
+		long unidadesFrageis = 0L;
+		try
+		{
+			for (int i = 0; i < produtoIds.length; i++)
+			{
+				int registro = atual.indice.obter(produtoIds[i]);
+				if (registro == IndiceProdutos.AUSENTE)
+				{
+					return OptionalLong.empty();
+				}
+				atual.ler(registro, atributos);
+				int indicadores = (int) atributos[3];
+				if ((indicadores & (PRESENTE | EXATO)) != (PRESENTE | EXATO) || atributos[4] != versoes[i])
+				{
+					return OptionalLong.empty();
+				}
+				long q = quantidades[i];
+				subtotal = Math.addExact(subtotal, Math.multiplyExact(atributos[0], q));
+				peso = Math.addExact(peso, Math.multiplyExact(faturavel ? atributos[2] : atributos[1], q));
+				if ((indicadores & FRAGIL) != 0)
+				{
+					unidadesFrageis = Math.addExact(unidadesFrageis, q);
+				}
+			}
+			return OptionalLong.of(CalculadoraCustoTotal.totalEmCentavos(tabela, subtotal, peso, unidadesFrageis));
+		}
+		catch (ArithmeticException e)
+		{
+			return OptionalLong.empty();
+		}
+	}
+
+	public int quantidadeProdutos()
+	{
+		return regiao.indice.tamanho();
+	}
+
+	public long bytesAlocados()
+	{
+		return regiao.memoria.capacity();
+	}
+
+	/**
+	 * Buffer de registros mais o índice. Cresce por cópia para uma nova região
+	 * quando o buffer ou o índice se esgotam.
+	 */
+	private static final class Regiao
+	{
+		private final ByteBuffer memoria;
+		private final IndiceProdutos indice;
+		private final int capacidade;
+
+		Regiao(int capacidade)
+		{
+			this.capacidade = capacidade;
+			this.memoria = ByteBuffer.allocateDirect(capacidade * TAMANHO_REGISTRO).order(ByteOrder.nativeOrder());
+			this.indice = new IndiceProdutos(capacidade);
+		}
+
+		/** Grava o produto e devolve esta região ou, se não houve espaço, uma maior. */
+		Regiao gravar(Produto produto)
+		{
+			long id = produto.getId();
+			int registro = indice.obter(id);
+			Regiao destino = this;
+			if (registro == IndiceProdutos.AUSENTE)
+			{
+				if (indice.tamanho() == capacidade || indice.cheio())
+				{
+					destino = ampliar();
+				}
+				registro = destino.indice.tamanho();
+				destino.indice.incluir(id, registro);
+			}
+
+			PerfilEnvio perfil = produto.getPerfilEnvio();
+			int indicadores = PRESENTE | (perfil.isFragil() ? FRAGIL : 0);
+			long preco = 0L;
+			if (produto.getPreco() != null && perfil.isExato())
+			{
+				try
+				{
+					preco = CalculadoraCustoTotal.paraEscala(produto.getPreco(), CalculadoraCustoTotal.ESCALA_VALOR);
+					indicadores |= EXATO;
+				}
+				catch (ArithmeticException e)
+				{
+					// Preço fora do ponto fixo: registro fica inexato
+				}
+			}
+			destino.escrever(registro, preco, perfil.getPesoFisicoGramas(), perfil.getPesoFaturavelGramas(),
+					indicadores, versao(produto.getVersao()));
+			return destino;
+		}
+
+		void escrever(int registro, long preco, long pesoFisico, long pesoFaturavel, int indicadores, long versao)
+		{
+			int base = registro * TAMANHO_REGISTRO;
+			long sequencia = (long) LONGS.get(memoria, base + DESLOCAMENTO_SEQUENCIA);
+			LONGS.setVolatile(memoria, base + DESLOCAMENTO_SEQUENCIA, sequencia + 1);
+			memoria.putLong(base + DESLOCAMENTO_PRECO, preco);
+			memoria.putLong(base + DESLOCAMENTO_PESO_FISICO, pesoFisico);
+			memoria.putLong(base + DESLOCAMENTO_PESO_FATURAVEL, pesoFaturavel);
+			memoria.putInt(base + DESLOCAMENTO_INDICADORES, indicadores);
+			memoria.putLong(base + DESLOCAMENTO_VERSAO, versao);
+			LONGS.setRelease(memoria, base + DESLOCAMENTO_SEQUENCIA, sequencia + 2);
+		}
+
+		/** Lê preço, pesos físico e faturável, indicadores e versão, nessa ordem. */
+		void ler(int registro, long[] destino)
+		{
+			int base = registro * TAMANHO_REGISTRO;
+			while (true)
+			{
+				long antes = (long) LONGS.getAcquire(memoria, base + DESLOCAMENTO_SEQUENCIA);
+				if ((antes & 1L) == 0)
+				{
+					destino[0] = memoria.getLong(base + DESLOCAMENTO_PRECO);
+					destino[1] = memoria.getLong(base + DESLOCAMENTO_PESO_FISICO);
+					destino[2] = memoria.getLong(base + DESLOCAMENTO_PESO_FATURAVEL);
+					destino[3] = memoria.getInt(base + DESLOCAMENTO_INDICADORES);
+					destino[4] = memoria.getLong(base + DESLOCAMENTO_VERSAO);
+					VarHandle.acquireFence();
+					if ((long) LONGS.get(memoria, base + DESLOCAMENTO_SEQUENCIA) == antes)
+					{
+						return;
+					}
+				}
+				Thread.onSpinWait();
+			}
+		}
+
+		int lerIndicadores(int registro)
+		{
+			long[] atributos = new long[5];
+			ler(registro, atributos);
+			return (int) atributos[3];
+		}
+
+		/** Versão do registro presente do id, ou {@link #NAO_REGISTRADO}. */
+		long estado(long id)
+		{
+			int registro = indice.obter(id);
+			if (registro == IndiceProdutos.AUSENTE)
+			{
+				return NAO_REGISTRADO;
+			}
+			long[] atributos = new long[5];
+			ler(registro, atributos);
+			return (atributos[3] & PRESENTE) == 0 ? NAO_REGISTRADO : atributos[4];
+		}
+
+		private Regiao ampliar()
+		{
+			Regiao maior = new Regiao(capacidade * 2);
+			ByteBuffer origem = memoria.duplicate();
+			origem.limit(indice.tamanho() * TAMANHO_REGISTRO).position(0);
+			maior.memoria.put(origem);
+			maior.memoria.clear();
+			indice.copiarPara(maior.indice);
+			return maior;
+		}
+	}
+}
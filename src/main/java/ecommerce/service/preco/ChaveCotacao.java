@@ -0,0 +1,86 @@
+package ecommerce.service.preco;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+
+/**
+ * Impressão digital do conteúdo de um carrinho para o cache de cotações: para
+ * cada item, id do produto, quantidade, versão persistida e revisão em memória
+ * do produto, mais a versão das regras de preço. Dois carrinhos com o mesmo
+ * conteúdo compartilham a mesma chave, independentemente do id do carrinho.
+ */
+final class ChaveCotacao
+{
+	private static final int CAMPOS_POR_ITEM = 4;
+	private static final long SEM_VERSAO = -1L;
+
+	private final String versaoRegras;
+	private final long[] impressao;
+	private final int hash;
+
+	private ChaveCotacao(String versaoRegras, long[] impressao)
+	{
+		this.versaoRegras = versaoRegras;
+		this.impressao = impressao;
+		this.hash = 31 * versaoRegras.hashCode() + Arrays.hashCode(impressao);
+	}
+
+	/**
+	 * Chave do carrinho, ou {@code null} se algum item não puder ser identificado
+	 * (produto sem id ou sem quantidade), caso em que a cotação não é cacheada.
+	 */
+	static ChaveCotacao de(CarrinhoDeCompras carrinho, String versaoRegras)
+	{
+		List<ItemCompra> itens = carrinho.getItens();
+		long[] impressao = new long[itens.size() * CAMPOS_POR_ITEM];
+		int posicao = 0;
+		for (ItemCompra item : itens)
+		{
+			Produto produto = item.getProduto();
+			if (produto == null || produto.getId() == null || item.getQuantidade() == null)
+			{
+				return null;
+			}
+			impressao[posicao++] = produto.getId();
+			impressao[posicao++] = item.getQuantidade();
+			impressao[posicao++] = produto.getVersao() == null ? SEM_VERSAO : produto.getVersao();
+			impressao[posicao++] = produto.getRevisao();
+		}
+		return new ChaveCotacao(versaoRegras, impressao);
+	}
+
+	int quantidadeProdutos()
+	{
+		return impressao.length / CAMPOS_POR_ITEM;
+	}
+
+	long produtoId(int indice)
+	{
+		return impressao[indice * CAMPOS_POR_ITEM];
+	}
+
+	@Override
+	public boolean equals(Object outro)
+	{
+		if (this == outro)
+		{
+			return true;
+		}
+		if (!(outro instanceof ChaveCotacao))
+		{
+			return false;
+		}
+		ChaveCotacao chave = (ChaveCotacao) outro;
+		return hash == chave.hash && versaoRegras.equals(chave.versaoRegras) && Arrays.equals(impressao, chave.impressao);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+}
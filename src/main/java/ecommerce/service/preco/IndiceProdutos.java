@@ -0,0 +1,115 @@
+package ecommerce.service.preco;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Mapa de endereçamento aberto (sondagem linear) de id de produto para índice
+ * de registro, sem caixas {@link Long}/{@link Integer}. Aceita apenas
+ * inclusões, feitas por um único escritor; leitores concorrentes não bloqueiam.
+ * O índice é gravado antes da chave, que é publicada com semântica release,
+ * de modo que quem enxerga a chave enxerga também o índice.
+ *
+ * A capacidade é fixa: quem inclui deve consultar {@link #cheio()} e, se
+ * necessário, construir um mapa maior.
+ */
+final class IndiceProdutos
+{
+	static final int AUSENTE = -1;
+
+	private static final long VAZIO = Long.MIN_VALUE;
+	private static final VarHandle CHAVES = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final long[] chaves;
+	private final int[] indices;
+	private final int mascara;
+	private int tamanho;
+
+	IndiceProdutos(int capacidadeMinima)
+	{
+		int capacidade = Integer.highestOneBit(Math.max(capacidadeMinima, 8) * 2 - 1) * 2;
+		this.chaves = new long[capacidade];
+		this.indices = new int[capacidade];
+		this.mascara = capacidade - 1;
+		Arrays.fill(chaves, VAZIO);
+	}
+
+	int obter(long id)
+	{
+		for (int i = posicao(id); ; i = (i + 1) & mascara)
+		{
+			long chave = (long) CHAVES.getAcquire(chaves, i);
+			if (chave == id)
+			{
+				return indices[i];
+			}
+			if (chave == VAZIO)
+			{
+				return AUSENTE;
+			}
+		}
+	}
+
+	/** Inclui o par; o id não pode já estar presente. */
+	void incluir(long id, int indice)
+	{
+		if (id == VAZIO)
+		{
+			throw new IllegalArgumentException("Id de produto inválido: " + id);
+		}
+		int i = posicao(id);
+		while (chaves[i] != VAZIO)
+		{
+			i = (i + 1) & mascara;
+		}
+		indices[i] = indice;
+		CHAVES.setRelease(chaves, i, id);
+		tamanho++;
+	}
+
+	/** Indica se uma nova inclusão passaria da carga máxima de 50%. */
+	boolean cheio()
+	{
+		return (tamanho + 1) * 2 > chaves.length;
+	}
+
+	/** Inclui todos os pares deste mapa em {@code destino}. */
+	void copiarPara(IndiceProdutos destino)
+	{
+		for (int i = 0; i < chaves.length; i++)
+		{
+			if (chaves[i] != VAZIO)
+			{
+				destino.incluir(chaves[i], indices[i]);
+			}
+		}
+	}
+
+	/** Ids incluídos, em qualquer ordem; pode ser chamado por leitores concorrentes. */
+	long[] ids()
+	{
+		long[] ids = new long[chaves.length];
+		int total = 0;
+		for (int i = 0; i < chaves.length; i++)
+		{
+			long chave = (long) CHAVES.getAcquire(chaves, i);
+			if (chave != VAZIO)
+			{
+				ids[total++] = chave;
+			}
+		}
+		return Arrays.copyOf(ids, total);
+	}
+
+	int tamanho()
+	{
+		return tamanho;
+	}
+
+	private int posicao(long id)
+	{
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mascara;
+	}
+}
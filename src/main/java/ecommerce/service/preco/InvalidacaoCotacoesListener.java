@@ -0,0 +1,36 @@
+package ecommerce.service.preco;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.Produto;
+
+/**
+ * Listener JPA de {@link Produto} que descarta do cache as cotações de um
+ * produto atualizado ou removido. O Hibernate obtém a instância pelo contêiner
+ * do Spring, por isso o cache chega por injeção.
+ */
+@Component
+public class InvalidacaoCotacoesListener
+{
+	private final CacheCotacoes cacheCotacoes;
+
+	@Autowired
+	public InvalidacaoCotacoesListener(CacheCotacoes cacheCotacoes)
+	{
+		this.cacheCotacoes = cacheCotacoes;
+	}
+
+	@PostUpdate
+	@PostRemove
+	public void produtoAlterado(Produto produto)
+	{
+		if (produto.getId() != null)
+		{
+			cacheCotacoes.invalidarProduto(produto.getId());
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package ecommerce.service.preco;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.PerfilEnvio;
+import ecommerce.entity.Produto;
+
+/**
+ * Representação colunar (struct-of-arrays) de muitos carrinhos para
+ * reprecificação em massa. Os itens ficam em vetores primitivos paralelos
+ * (índice do produto e quantidade), delimitados por carrinho em
+ * {@code inicioItens}; os atributos de preço ficam uma única vez por produto
+ * (preço em 1/10.000 de real, pesos físico e faturável em gramas e bit de
+ * fragilidade, lidos do {@link PerfilEnvio}). Uma
+ * mudança de catálogo altera apenas a coluna do produto e a próxima passada de
+ * {@link #precificar(TabelaPrecos, long[])} já reflete o novo valor.
+ *
+ * Produtos cujo preço ou peso não cabem no ponto fixo mantêm o valor decimal e
+ * os carrinhos que os contêm são calculados em {@link BigDecimal}.
+ *
+ * A estrutura não é sincronizada: atualizações de produto não devem ocorrer
+ * durante uma precificação.
+ */
+public final class LoteCarrinhosColunar
+{
+	private final long[] carrinhoIds;
+	private final int[] inicioItens;
+	private final int[] produtoIndice;
+	private final long[] quantidade;
+
+	private final long[] precoEscalado;
+	private final long[] pesoGramas;
+	private final long[] pesoFaturavelGramas;
+	private final long[] frageis;
+	private final long[] inexatos;
+	private final BigDecimal[] precoDecimal;
+	private final BigDecimal[] pesoDecimal;
+	private final BigDecimal[] pesoFaturavelDecimal;
+	private final Map<Long, Integer> indicePorProduto;
+
+	private LoteCarrinhosColunar(Construtor construtor)
+	{
+		this.carrinhoIds = Arrays.copyOf(construtor.carrinhoIds, construtor.carrinhos);
+		this.inicioItens = Arrays.copyOf(construtor.inicioItens, construtor.carrinhos + 1);
+		this.produtoIndice = Arrays.copyOf(construtor.produtoIndice, construtor.itens);
+		this.quantidade = Arrays.copyOf(construtor.quantidade, construtor.itens);
+
+		int produtos = construtor.produtos;
+		this.precoEscalado = Arrays.copyOf(construtor.precoEscalado, produtos);
+		this.pesoGramas = Arrays.copyOf(construtor.pesoGramas, produtos);
+		this.pesoFaturavelGramas = Arrays.copyOf(construtor.pesoFaturavelGramas, produtos);
+		this.frageis = Arrays.copyOf(construtor.frageis, palavras(produtos));
+		this.inexatos = Arrays.copyOf(construtor.inexatos, palavras(produtos));
+		this.precoDecimal = Arrays.copyOf(construtor.precoDecimal, produtos);
+		this.pesoDecimal = Arrays.copyOf(construtor.pesoDecimal, produtos);
+		this.pesoFaturavelDecimal = Arrays.copyOf(construtor.pesoFaturavelDecimal, produtos);
+		this.indicePorProduto = new HashMap<>(construtor.indicePorProduto);
+	}
+
+	public static Construtor construtor()
+	{
+		return new Construtor();
+	}
+
+	public int quantidadeCarrinhos()
+	{
+		return carrinhoIds.length;
+	}
+
+	public int quantidadeItens()
+	{
+		return produtoIndice.length;
+	}
+
+	public long carrinhoId(int carrinho)
+	{
+		return carrinhoIds[carrinho];
+	}
+
+	/** Total em centavos de cada carrinho, na ordem de carga, gravado em {@code destino}. */
+	public void precificar(TabelaPrecos tabela, long[] destino)
+	{
+		precificar(tabela, destino, 0, carrinhoIds.length);
+	}
+
+	/**
+	 * Precifica os carrinhos do intervalo {@code [inicio, fim)}. Intervalos
+	 * disjuntos podem ser processados por threads diferentes.
+	 */
+	public void precificar(TabelaPrecos tabela, long[] destino, int inicio, int fim)
+	{
+		boolean faturavel = tabela.getBaseFrete() == TabelaPrecos.BaseFrete.FATURAVEL;
+		long[] pesos = faturavel ? pesoFaturavelGramas : pesoGramas;
+		for (int c = inicio; c < fim; c++)
+		{
+			long subtotal = 0L;
+			long peso = 0L;
+			long unidadesFrageis = 0L;
+			boolean exato = true;
+			try
+			{
+				for (int i = inicioItens[c], limite = inicioItens[c + 1]; i < limite; i++)
+				{
+					int p = produtoIndice[i];
+					long q = quantidade[i];
+					if (bit(inexatos, p))
+					{
+						exato = false;
+						break;
+					}
+					subtotal = Math.addExact(subtotal, Math.multiplyExact(precoEscalado[p], q));
+					peso = Math.addExact(peso, Math.multiplyExact(pesos[p], q));
+					if (bit(frageis, p))
+					{
+						unidadesFrageis = Math.addExact(unidadesFrageis, q);
+					}
+				}
+				if (exato)
+				{
+					destino[c] = CalculadoraCustoTotal.totalEmCentavos(tabela, subtotal, peso, unidadesFrageis);
+					continue;
+				}
+			}
+			catch (ArithmeticException e)
+			{
+				// Estouro no ponto fixo: segue para o cálculo decimal
+			}
+			destino[c] = precificarDecimal(tabela, faturavel ? pesoFaturavelDecimal : pesoDecimal, c);
+		}
+	}
+
+	/**
+	 * Atualiza os atributos de preço de um produto já presente no lote. Devolve
+	 * {@code false} se nenhum carrinho do lote contém o produto.
+	 */
+	public boolean atualizarProduto(Produto produto)
+	{
+		Integer indice = indicePorProduto.get(produto.getId());
+		if (indice == null)
+		{
+			return false;
+		}
+		gravarProduto(indice, produto);
+		return true;
+	}
+
+	private long precificarDecimal(TabelaPrecos tabela, BigDecimal[] pesos, int carrinho)
+	{
+		BigDecimal subtotal = BigDecimal.ZERO;
+		BigDecimal peso = BigDecimal.ZERO;
+		BigDecimal unidadesFrageis = BigDecimal.ZERO;
+		for (int i = inicioItens[carrinho]; i < inicioItens[carrinho + 1]; i++)
+		{
+			int p = produtoIndice[i];
+			BigDecimal q = BigDecimal.valueOf(quantidade[i]);
+			subtotal = subtotal.add(precoDecimal[p].multiply(q));
+			peso = peso.add(pesos[p].multiply(q));
+			if (bit(frageis, p))
+			{
+				unidadesFrageis = unidadesFrageis.add(q);
+			}
+		}
+		BigDecimal total = subtotal.subtract(subtotal.multiply(tabela.percentualDesconto(subtotal)))
+				.add(peso.multiply(tabela.valorKg(peso)))
+				.add(tabela.taxaFragilDecimal().multiply(unidadesFrageis));
+		return total.setScale(CalculadoraCustoTotal.ESCALA_CENTAVOS, RoundingMode.HALF_UP).unscaledValue()
+				.longValueExact();
+	}
+
+	private void gravarProduto(int indice, Produto produto)
+	{
+		gravarProduto(indice, produto, precoEscalado, pesoGramas, pesoFaturavelGramas, frageis, inexatos, precoDecimal,
+				pesoDecimal, pesoFaturavelDecimal);
+	}
+
+	private static void gravarProduto(int indice, Produto produto, long[] precoEscalado, long[] pesoGramas,
+			long[] pesoFaturavelGramas, long[] frageis, long[] inexatos, BigDecimal[] precoDecimal,
+			BigDecimal[] pesoDecimal, BigDecimal[] pesoFaturavelDecimal)
+	{
+		PerfilEnvio perfil = produto.getPerfilEnvio();
+		precoDecimal[indice] = produto.getPreco();
+		pesoDecimal[indice] = produto.getPesoFisico();
+		pesoFaturavelDecimal[indice] = produto.getPesoFisico() == null ? null : PerfilEnvio.pesoFaturavel(produto);
+		pesoGramas[indice] = perfil.getPesoFisicoGramas();
+		pesoFaturavelGramas[indice] = perfil.getPesoFaturavelGramas();
+		marcar(frageis, indice, perfil.isFragil());
+		try
+		{
+			precoEscalado[indice] = CalculadoraCustoTotal.paraEscala(produto.getPreco(), CalculadoraCustoTotal.ESCALA_VALOR);
+			marcar(inexatos, indice, !perfil.isExato());
+		}
+		catch (ArithmeticException e)
+		{
+			marcar(inexatos, indice, true);
+		}
+	}
+
+	private static boolean bit(long[] bits, int indice)
+	{
+		return (bits[indice >>> 6] & (1L << indice)) != 0;
+	}
+
+	private static void marcar(long[] bits, int indice, boolean valor)
+	{
+		if (valor)
+		{
+			bits[indice >>> 6] |= 1L << indice;
+		}
+		else
+		{
+			bits[indice >>> 6] &= ~(1L << indice);
+		}
+	}
+
+	private static int palavras(int bits)
+	{
+		return (bits + 63) >>> 6;
+	}
+
+	/**
+	 * Acumula carrinhos em vetores que crescem por duplicação e produz o lote
+	 * com os vetores no tamanho exato.
+	 */
+	public static final class Construtor
+	{
+		private long[] carrinhoIds = new long[16];
+		private int[] inicioItens = new int[17];
+		private int[] produtoIndice = new int[64];
+		private long[] quantidade = new long[64];
+		private int carrinhos;
+		private int itens;
+
+		private long[] precoEscalado = new long[64];
+		private long[] pesoGramas = new long[64];
+		private long[] pesoFaturavelGramas = new long[64];
+		private long[] frageis = new long[1];
+		private long[] inexatos = new long[1];
+		private BigDecimal[] precoDecimal = new BigDecimal[64];
+		private BigDecimal[] pesoDecimal = new BigDecimal[64];
+		private BigDecimal[] pesoFaturavelDecimal = new BigDecimal[64];
+		private final Map<Long, Integer> indicePorProduto = new HashMap<>();
+		private int produtos;
+
+		private Construtor()
+		{
+		}
+
+		/**
+		 * Acrescenta um carrinho. Produtos repetidos entre carrinhos são
+		 * guardados uma única vez; o primeiro produto visto com cada id define os
+		 * atributos.
+		 */
+		public Construtor adicionar(CarrinhoDeCompras carrinho)
+		{
+			if (carrinho.getId() == null)
+			{
+				throw new IllegalArgumentException("Carrinho sem identificador no lote.");
+			}
+			if (carrinhos == carrinhoIds.length)
+			{
+				carrinhoIds = Arrays.copyOf(carrinhoIds, carrinhos * 2);
+				inicioItens = Arrays.copyOf(inicioItens, carrinhos * 2 + 1);
+			}
+			carrinhoIds[carrinhos] = carrinho.getId();
+			inicioItens[carrinhos] = itens;
+			if (carrinho.getItens() != null)
+			{
+				for (ItemCompra item : carrinho.getItens())
+				{
+					adicionarItem(item);
+				}
+			}
+			carrinhos++;
+			inicioItens[carrinhos] = itens;
+			return this;
+		}
+
+		public LoteCarrinhosColunar construir()
+		{
+			return new LoteCarrinhosColunar(this);
+		}
+
+		private void adicionarItem(ItemCompra item)
+		{
+			Produto produto = item.getProduto();
+			if (produto == null || produto.getId() == null)
+			{
+				throw new IllegalArgumentException("Item sem produto identificado no lote.");
+			}
+			if (itens == produtoIndice.length)
+			{
+				produtoIndice = Arrays.copyOf(produtoIndice, itens * 2);
+				quantidade = Arrays.copyOf(quantidade, itens * 2);
+			}
+			produtoIndice[itens] = indiceDoProduto(produto);
+			quantidade[itens] = item.getQuantidade();
+			itens++;
+		}
+
+		private int indiceDoProduto(Produto produto)
+		{
+			Integer existente = indicePorProduto.get(produto.getId());
+			if (existente != null)
+			{
+				return existente;
+			}
+			if (produtos == precoEscalado.length)
+			{
+				int capacidade = produtos * 2;
+				precoEscalado = Arrays.copyOf(precoEscalado, capacidade);
+				pesoGramas = Arrays.copyOf(pesoGramas, capacidade);
+				pesoFaturavelGramas = Arrays.copyOf(pesoFaturavelGramas, capacidade);
+				precoDecimal = Arrays.copyOf(precoDecimal, capacidade);
+				pesoDecimal = Arrays.copyOf(pesoDecimal, capacidade);
+				pesoFaturavelDecimal = Arrays.copyOf(pesoFaturavelDecimal, capacidade);
+			}
+			if (palavras(produtos + 1) > frageis.length)
+			{
+				frageis = Arrays.copyOf(frageis, frageis.length * 2);
+				inexatos = Arrays.copyOf(inexatos, inexatos.length * 2);
+			}
+			int indice = produtos++;
+			gravarProduto(indice, produto, precoEscalado, pesoGramas, pesoFaturavelGramas, frageis, inexatos, precoDecimal,
+					pesoDecimal, pesoFaturavelDecimal);
+			indicePorProduto.put(produto.getId(), indice);
+			return indice;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package ecommerce.service.preco;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fonte da {@link TabelaPrecos} vigente. A tabela é lida de
+ * {@code ecommerce.preco.regras} (por padrão {@code classpath:regras-preco.properties}),
+ * compilada e publicada por troca atômica de referência: cada cálculo lê a
+ * referência uma única vez e usa a mesma versão do início ao fim.
+ *
+ * Quando a origem é um arquivo, uma thread verifica periodicamente a data de
+ * modificação e recarrega a tabela. Uma tabela inválida é rejeitada e a versão
+ * anterior continua valendo.
+ */
+@Component
+public class RegrasPreco
+{
+	public static final String ORIGEM_PADRAO = "regras-preco.properties";
+
+	private static final Logger LOG = LoggerFactory.getLogger(RegrasPreco.class);
+
+	private final Resource origem;
+	private final long intervaloVerificacaoMs;
+	private final AtomicReference<TabelaPrecos> tabelaAtual = new AtomicReference<>();
+
+	private volatile long ultimaModificacao;
+	private ScheduledExecutorService verificador;
+
+	@Autowired
+	public RegrasPreco(@Value("${ecommerce.preco.regras:classpath:" + ORIGEM_PADRAO + "}") Resource origem,
+			@Value("${ecommerce.preco.regras.intervalo-verificacao-ms:5000}") long intervaloVerificacaoMs)
+	{
+		this.origem = origem;
+		this.intervaloVerificacaoMs = intervaloVerificacaoMs;
+		this.ultimaModificacao = modificacaoDaOrigem();
+		this.tabelaAtual.set(ler());
+	}
+
+	/** Regras padrão do classpath, sem recarga automática. */
+	public static RegrasPreco doClasspath()
+	{
+		return new RegrasPreco(new ClassPathResource(ORIGEM_PADRAO), 0L);
+	}
+
+	public TabelaPrecos atual()
+	{
+		return tabelaAtual.get();
+	}
+
+	/**
+	 * Relê a origem e publica a nova tabela. Lança {@link IllegalStateException}
+	 * se a origem não puder ser lida ou compilada; nesse caso a tabela anterior é
+	 * mantida.
+	 */
+	public TabelaPrecos recarregar()
+	{
+		long modificacao = modificacaoDaOrigem();
+		TabelaPrecos nova = ler();
+		TabelaPrecos anterior = tabelaAtual.getAndSet(nova);
+		ultimaModificacao = modificacao;
+		if (!nova.getVersao().equals(anterior.getVersao()))
+		{
+			LOG.info("Regras de preço atualizadas da versão {} para {}", anterior.getVersao(), nova.getVersao());
+		}
+		return nova;
+	}
+
+	@PostConstruct
+	public void iniciarVerificacao()
+	{
+		if (intervaloVerificacaoMs <= 0 || !origem.isFile())
+		{
+			return;
+		}
+		verificador = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "regras-preco-recarga");
+			thread.setDaemon(true);
+			return thread;
+		});
+		verificador.scheduleWithFixedDelay(this::recarregarSeAlterada, intervaloVerificacaoMs, intervaloVerificacaoMs,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void encerrarVerificacao()
+	{
+		if (verificador != null)
+		{
+			verificador.shutdownNow();
+		}
+	}
+
+	void recarregarSeAlterada()
+	{
+		if (modificacaoDaOrigem() == ultimaModificacao)
+		{
+			return;
+		}
+		try
+		{
+			recarregar();
+		}
+		catch (RuntimeException e)
+		{
+			// Uma exceção que escapasse cancelaria as próximas verificações
+			LOG.error("Tabela de preços inválida em {}; mantendo a versão {}", origem,
+					tabelaAtual.get().getVersao(), e);
+			ultimaModificacao = modificacaoDaOrigem();
+		}
+	}
+
+	private TabelaPrecos ler()
+	{
+		Properties propriedades = new Properties();
+		try (InputStream entrada = origem.getInputStream();
+				Reader leitor = new InputStreamReader(entrada, StandardCharsets.UTF_8))
+		{
+			propriedades.load(leitor);
+			return TabelaPrecos.compilar(propriedades);
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			throw new IllegalStateException("Não foi possível carregar as regras de preço de " + origem, e);
+		}
+	}
+
+	private long modificacaoDaOrigem()
+	{
+		try
+		{
+			return origem.isFile() ? origem.lastModified() : 0L;
+		}
+		catch (IOException e)
+		{
+			return 0L;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package ecommerce.service.preco;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Versão compilada e imutável das regras de precificação. As faixas de
+ * desconto e de frete são guardadas como vetores ordenados de limites já
+ * convertidos para ponto fixo, consultados por busca binária; os valores
+ * originais em {@link BigDecimal} são mantidos para o cálculo de referência.
+ */
+public final class TabelaPrecos
+{
+	private static final long CEM_POR_CENTO = 100L;
+
+	private final String versao;
+	private final BaseFrete baseFrete;
+
+	private final BigDecimal[] limitesDesconto;
+	private final BigDecimal[] percentuaisDesconto;
+	private final BigDecimal[] limitesFrete;
+	private final BigDecimal[] valoresKg;
+	private final BigDecimal taxaFragil;
+
+	/** Limites de desconto na escala de valor e fatores (100 - percentual) na escala 2. */
+	private final long[] limitesDescontoFixo;
+	private final long[] fatoresSemDescontoFixo;
+	/** Limites de frete em gramas e valores por kg em centavos. */
+	private final long[] limitesFreteFixo;
+	private final long[] valoresKgFixo;
+	private final long taxaFragilFixo;
+
+	/** Peso usado para enquadrar e cobrar o frete. */
+	public enum BaseFrete
+	{
+		/** Somente o peso físico. */
+		FISICO,
+		/** Maior entre o peso físico e o cúbico de cada produto. */
+		FATURAVEL
+	}
+
+	public TabelaPrecos(String versao, BigDecimal[] limitesDesconto, BigDecimal[] percentuaisDesconto,
+			BigDecimal[] limitesFrete, BigDecimal[] valoresKg, BigDecimal taxaFragil)
+	{
+		this(versao, limitesDesconto, percentuaisDesconto, limitesFrete, valoresKg, taxaFragil, BaseFrete.FISICO);
+	}
+
+	public TabelaPrecos(String versao, BigDecimal[] limitesDesconto, BigDecimal[] percentuaisDesconto,
+			BigDecimal[] limitesFrete, BigDecimal[] valoresKg, BigDecimal taxaFragil, BaseFrete baseFrete)
+	{
+		if (versao == null || versao.isBlank())
+		{
+			throw new IllegalArgumentException("Tabela de preços sem versão.");
+		}
+		if (limitesDesconto.length != percentuaisDesconto.length)
+		{
+			throw new IllegalArgumentException("Cada limite de desconto precisa de um percentual.");
+		}
+		if (valoresKg.length != limitesFrete.length + 1)
+		{
+			throw new IllegalArgumentException("Frete precisa de um valor por kg a mais que o número de limites.");
+		}
+		exigirCrescente(limitesDesconto, "desconto");
+		exigirCrescente(limitesFrete, "frete");
+
+		this.versao = versao;
+		this.baseFrete = baseFrete;
+		this.limitesDesconto = limitesDesconto.clone();
+		this.percentuaisDesconto = percentuaisDesconto.clone();
+		this.limitesFrete = limitesFrete.clone();
+		this.valoresKg = valoresKg.clone();
+		this.taxaFragil = taxaFragil;
+
+		try
+		{
+			this.limitesDescontoFixo = paraEscala(limitesDesconto, CalculadoraCustoTotal.ESCALA_VALOR);
+			this.fatoresSemDescontoFixo = new long[percentuaisDesconto.length];
+			for (int i = 0; i < percentuaisDesconto.length; i++)
+			{
+				fatoresSemDescontoFixo[i] = CEM_POR_CENTO
+						- CalculadoraCustoTotal.paraEscala(percentuaisDesconto[i], CalculadoraCustoTotal.ESCALA_PERCENTUAL);
+			}
+			this.limitesFreteFixo = paraEscala(limitesFrete, CalculadoraCustoTotal.ESCALA_PESO);
+			this.valoresKgFixo = paraEscala(valoresKg, CalculadoraCustoTotal.ESCALA_CENTAVOS);
+			this.taxaFragilFixo = CalculadoraCustoTotal.paraEscala(taxaFragil, CalculadoraCustoTotal.ESCALA_CENTAVOS);
+		}
+		catch (ArithmeticException e)
+		{
+			throw new IllegalArgumentException("Valor da tabela de preços fora da precisão suportada.", e);
+		}
+	}
+
+	/**
+	 * Compila a tabela a partir das chaves descritas em
+	 * {@code regras-preco.properties}.
+	 */
+	public static TabelaPrecos compilar(Properties propriedades)
+	{
+		return new TabelaPrecos(propriedades.getProperty("versao"),
+				lerLista(propriedades, "desconto.limites"),
+				lerLista(propriedades, "desconto.percentuais"),
+				lerLista(propriedades, "frete.limites"),
+				lerLista(propriedades, "frete.valores-kg"),
+				lerValor(propriedades, "frete.taxa-fragil"),
+				lerBaseFrete(propriedades.getProperty("frete.base")));
+	}
+
+	public String getVersao()
+	{
+		return versao;
+	}
+
+	public BaseFrete getBaseFrete()
+	{
+		return baseFrete;
+	}
+
+	/** Escolhe, entre os pesos agregados em gramas, o que a tabela usa para o frete. */
+	public long pesoParaFrete(long pesoFisicoGramas, long pesoFaturavelGramas)
+	{
+		return baseFrete == BaseFrete.FATURAVEL ? pesoFaturavelGramas : pesoFisicoGramas;
+	}
+
+	/** Fator (100 - percentual de desconto) para um subtotal na escala de valor. */
+	long fatorSemDesconto(long subtotal)
+	{
+		int faixa = maiorLimiteAte(limitesDescontoFixo, subtotal);
+		return faixa < 0 ? CEM_POR_CENTO : fatoresSemDescontoFixo[faixa];
+	}
+
+	/** Valor do frete por kg, em centavos, para um peso total em gramas. */
+	long valorKg(long pesoGramas)
+	{
+		return valoresKgFixo[faixaFrete(limitesFreteFixo, pesoGramas)];
+	}
+
+	long taxaFragil()
+	{
+		return taxaFragilFixo;
+	}
+
+	BigDecimal percentualDesconto(BigDecimal subtotal)
+	{
+		int faixa = -1;
+		for (int baixo = 0, alto = limitesDesconto.length - 1; baixo <= alto;)
+		{
+			int meio = (baixo + alto) >>> 1;
+			if (limitesDesconto[meio].compareTo(subtotal) <= 0)
+			{
+				faixa = meio;
+				baixo = meio + 1;
+			}
+			else
+			{
+				alto = meio - 1;
+			}
+		}
+		return faixa < 0 ? BigDecimal.ZERO : percentuaisDesconto[faixa];
+	}
+
+	BigDecimal valorKg(BigDecimal pesoTotal)
+	{
+		int faixa = limitesFrete.length;
+		for (int baixo = 0, alto = limitesFrete.length - 1; baixo <= alto;)
+		{
+			int meio = (baixo + alto) >>> 1;
+			if (limitesFrete[meio].compareTo(pesoTotal) >= 0)
+			{
+				faixa = meio;
+				alto = meio - 1;
+			}
+			else
+			{
+				baixo = meio + 1;
+			}
+		}
+		return valoresKg[faixa];
+	}
+
+	BigDecimal taxaFragilDecimal()
+	{
+		return taxaFragil;
+	}
+
+	/** Índice do maior limite menor ou igual ao valor, ou -1 se nenhum. */
+	private static int maiorLimiteAte(long[] limites, long valor)
+	{
+		int indice = Arrays.binarySearch(limites, valor);
+		return indice >= 0 ? indice : -indice - 2;
+	}
+
+	/** Primeira faixa cujo teto inclusivo comporta o valor; a última é aberta. */
+	private static int faixaFrete(long[] limites, long valor)
+	{
+		int indice = Arrays.binarySearch(limites, valor);
+		return indice >= 0 ? indice : -indice - 1;
+	}
+
+	private static long[] paraEscala(BigDecimal[] valores, int escala)
+	{
+		long[] convertidos = new long[valores.length];
+		for (int i = 0; i < valores.length; i++)
+		{
+			convertidos[i] = CalculadoraCustoTotal.paraEscala(valores[i], escala);
+		}
+		return convertidos;
+	}
+
+	private static void exigirCrescente(BigDecimal[] limites, String regra)
+	{
+		for (int i = 1; i < limites.length; i++)
+		{
+			if (limites[i - 1].compareTo(limites[i]) >= 0)
+			{
+				throw new IllegalArgumentException("Limites de " + regra + " devem ser estritamente crescentes.");
+			}
+		}
+	}
+
+	private static BaseFrete lerBaseFrete(String valor)
+	{
+		if (valor == null || valor.isBlank())
+		{
+			return BaseFrete.FISICO;
+		}
+		try
+		{
+			return BaseFrete.valueOf(valor.trim());
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("Base de frete desconhecida: " + valor, e);
+		}
+	}
+
+	private static BigDecimal lerValor(Properties propriedades, String chave)
+	{
+		BigDecimal[] valores = lerLista(propriedades, chave);
+		if (valores.length != 1)
+		{
+			throw new IllegalArgumentException("Regra de preço " + chave + " precisa de exatamente um valor.");
+		}
+		return valores[0];
+	}
+
+	private static BigDecimal[] lerLista(Properties propriedades, String chave)
+	{
+		String valor = propriedades.getProperty(chave);
+		if (valor == null)
+		{
+			throw new IllegalArgumentException("Regra de preço ausente: " + chave);
+		}
+		if (valor.isBlank())
+		{
+			return new BigDecimal[0];
+		}
+		String[] partes = valor.split(",");
+		BigDecimal[] numeros = new BigDecimal[partes.length];
+		for (int i = 0; i < partes.length; i++)
+		{
+			numeros[i] = new BigDecimal(partes[i].trim());
+		}
+		return numeros;
+	}
+}
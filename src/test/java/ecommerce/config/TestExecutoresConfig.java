@@ -0,0 +1,71 @@
+package ecommerce.config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TestExecutoresConfig {
+
+    @Test
+    public void testThreadsVirtuaisConformeSuporteDoJdk() {
+        ExecutoresConfig config = new ExecutoresConfig(true);
+        ExecutorService estagios = config.executorEstagiosCompra(2, 2);
+        Executor assincrona = config.executorCompraAssincrona(2, 2);
+        try {
+            assertEquals(!ThreadsVirtuais.suportadas(), estagios instanceof ThreadPoolExecutor);
+            assertEquals(ThreadsVirtuais.suportadas(), assincrona instanceof ExecutorLimitado);
+        } finally {
+            estagios.shutdown();
+            if (assincrona instanceof ExecutorService) {
+                ((ExecutorService) assincrona).shutdown();
+            } else {
+                ((ExecutorLimitado) assincrona).shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testExecutorLimitadoRecusaAcimaDoLimite() throws InterruptedException {
+        ExecutorLimitado executor = new ExecutorLimitado(Executors.newCachedThreadPool(), 1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CountDownLatch concluida = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    liberar.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concluida.countDown();
+            });
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+
+            liberar.countDown();
+            assertTrue(concluida.await(5, TimeUnit.SECONDS));
+            CountDownLatch segunda = new CountDownLatch(1);
+            // A vaga é devolvida logo após a primeira tarefa terminar
+            boolean aceita = false;
+            for (int tentativa = 0; !aceita && tentativa < 100; tentativa++) {
+                try {
+                    executor.execute(segunda::countDown);
+                    aceita = true;
+                } catch (RejectedExecutionException e) {
+                    Thread.sleep(10);
+                }
+            }
+            assertTrue(segunda.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
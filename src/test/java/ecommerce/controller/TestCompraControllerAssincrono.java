@@ -0,0 +1,114 @@
+package ecommerce.controller;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.when;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.external.resiliencia.BackendIndisponivelException;
+import ecommerce.service.CompraService;
+
+public class TestCompraControllerAssincrono {
+
+    private CompraService compraService;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        compraService = Mockito.mock(CompraService.class);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCompraAssincronaSucesso() throws Exception {
+        when(compraService.finalizarCompra(1L, 1L)).thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        executarAssincrono(criarMockMvc(1_000L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.transacaoPagamentoId").value(10));
+    }
+
+    @Test
+    public void testMapeamentoDeErrosMantido() throws Exception {
+        MockMvc mockMvc = criarMockMvc(1_000L);
+
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new IllegalArgumentException("Carrinho não encontrado."));
+        executarAssincrono(mockMvc).andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.mensagem").value("Carrinho não encontrado."));
+
+        Mockito.reset(compraService);
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new IllegalStateException("Itens fora de estoque."));
+        executarAssincrono(mockMvc).andExpect(status().isConflict());
+
+        Mockito.reset(compraService);
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new RuntimeException("falha"));
+        executarAssincrono(mockMvc).andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.mensagem").value("Erro ao processar compra."));
+    }
+
+    @Test
+    public void testServicoExternoIndisponivel() throws Exception {
+        MockMvc mockMvc = criarMockMvc(1_000L);
+
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new BackendIndisponivelException("pagamento",
+                BackendIndisponivelException.Motivo.CIRCUITO_ABERTO));
+        executarAssincrono(mockMvc).andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.mensagem").value("Serviço de pagamento indisponível (circuito-aberto)."));
+
+        Mockito.reset(compraService);
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new BackendIndisponivelException("estoque",
+                BackendIndisponivelException.Motivo.TEMPO_LIMITE));
+        executarAssincrono(mockMvc).andExpect(status().isGatewayTimeout());
+    }
+
+    @Test
+    public void testTempoLimiteExcedido() throws Exception {
+        when(compraService.finalizarCompra(1L, 1L)).thenAnswer(invocacao -> {
+            Thread.sleep(2_000L);
+            return new CompraDTO(true, 10L, "Compra finalizada com sucesso.");
+        });
+
+        executarAssincrono(criarMockMvc(50L)).andExpect(status().isGatewayTimeout());
+    }
+
+    @Test
+    public void testFilaCheiaRespondeIndisponivel() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new CompraController(compraService, new RespostasIdempotentes(Duration.ofMinutes(1), 100), tarefa -> {
+            throw new RejectedExecutionException("fila cheia");
+        }, 1_000L, 1_000)).build();
+
+        executarAssincrono(mockMvc).andExpect(status().isServiceUnavailable());
+    }
+
+    private MockMvc criarMockMvc(long timeoutMs) {
+        return MockMvcBuilders.standaloneSetup(new CompraController(compraService, new RespostasIdempotentes(Duration.ofMinutes(1), 100), executor, timeoutMs, 1_000)).build();
+    }
+
+    private ResultActions executarAssincrono(MockMvc mockMvc) throws Exception {
+        MvcResult resultado = mockMvc.perform(post("/finalizar/async").param("carrinhoId", "1").param("clienteId", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(resultado));
+    }
+}
@@ -0,0 +1,185 @@
+package ecommerce.controller;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.external.resiliencia.BackendIndisponivelException;
+import ecommerce.external.resiliencia.BackendIndisponivelException.Motivo;
+import ecommerce.service.CompraService;
+
+public class TestCompraControllerIdempotente {
+
+    private CompraService compraService;
+    private RespostasIdempotentes respostas;
+    private MockMvc mockMvc;
+    private ExecutorService threads;
+
+    @BeforeEach
+    public void setUp() {
+        compraService = Mockito.mock(CompraService.class);
+        respostas = new RespostasIdempotentes(Duration.ofMinutes(1), 100);
+        mockMvc = MockMvcBuilders.standaloneSetup(new CompraController(compraService, respostas, Runnable::run,
+                1_000L, 1_000)).build();
+        threads = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void testRepeticaoRecebeRespostaGuardada() throws Exception {
+        when(compraService.finalizarCompra(1L, 1L)).thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1")
+                    .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.transacaoPagamentoId").value(10));
+        }
+        verify(compraService, times(1)).finalizarCompra(1L, 1L);
+
+        // Sem chave, cada requisição é uma compra nova
+        mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1"))
+                .andExpect(status().isOk());
+        verify(compraService, times(2)).finalizarCompra(1L, 1L);
+    }
+
+    @Test
+    public void testErroDoServidorNaoFicaGuardado() throws Exception {
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new RuntimeException("falha"))
+                .thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1")
+                .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                .andExpect(status().isInternalServerError());
+        mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1")
+                .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testChaveReutilizadaComOutroCarrinho() throws Exception {
+        when(compraService.finalizarCompra(1L, 1L)).thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1")
+                .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/finalizar").param("carrinhoId", "2").param("clienteId", "1")
+                .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                .andExpect(status().isUnprocessableEntity());
+        verify(compraService, times(0)).finalizarCompra(2L, 1L);
+    }
+
+    @Test
+    public void testRepeticaoEmAndamentoEsperaAPrimeira() throws Exception {
+        CountDownLatch iniciada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        ResponseEntity<CompraDTO> esperada = ResponseEntity.ok(new CompraDTO(true, 10L, "ok"));
+
+        Future<ResponseEntity<CompraDTO>> primeira = threads.submit(() -> respostas.executar("abc", 1L, 1L, () -> {
+            iniciada.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return esperada;
+        }));
+        iniciada.await(5, TimeUnit.SECONDS);
+        Future<ResponseEntity<CompraDTO>> repeticao = threads.submit(() -> respostas.executar("abc", 1L, 1L,
+                () -> ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, "repetida"))));
+        liberar.countDown();
+
+        assertSame(esperada, primeira.get(5, TimeUnit.SECONDS));
+        assertSame(esperada, repeticao.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, respostas.tamanhoEstimado());
+    }
+
+    @Test
+    public void testRepeticaoDesisteDeEsperarComConflito() throws Exception {
+        RespostasIdempotentes respostasCurtas = new RespostasIdempotentes(Duration.ofMinutes(1), 100,
+                Duration.ofMillis(50));
+        CountDownLatch iniciada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        ResponseEntity<CompraDTO> esperada = ResponseEntity.ok(new CompraDTO(true, 10L, "ok"));
+
+        Future<ResponseEntity<CompraDTO>> primeira = threads.submit(() -> respostasCurtas.executar("abc", 1L, 1L, () -> {
+            iniciada.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return esperada;
+        }));
+        try {
+            assertTrue(iniciada.await(5, TimeUnit.SECONDS));
+            ResponseEntity<CompraDTO> repeticao = respostasCurtas.executar("abc", 1L, 1L,
+                    () -> ResponseEntity.ok(new CompraDTO(true, 20L, "repetida")));
+            assertEquals(HttpStatus.CONFLICT, repeticao.getStatusCode());
+        } finally {
+            liberar.countDown();
+        }
+
+        // A primeira segue e sua resposta fica guardada para as próximas repetições
+        assertSame(esperada, primeira.get(5, TimeUnit.SECONDS));
+        assertSame(esperada, respostasCurtas.executar("abc", 1L, 1L,
+                () -> ResponseEntity.ok(new CompraDTO(true, 30L, "repetida"))));
+    }
+
+    @Test
+    public void testTempoLimiteNoPagamentoFicaGuardado() throws Exception {
+        when(compraService.finalizarCompra(1L, 1L))
+                .thenThrow(new BackendIndisponivelException("pagamento", Motivo.TEMPO_LIMITE))
+                .thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1")
+                    .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                    .andExpect(status().isGatewayTimeout());
+        }
+        // A compra pode ter chegado ao pagamento: a repetição não a refaz
+        verify(compraService, times(1)).finalizarCompra(1L, 1L);
+    }
+
+    @Test
+    public void testTempoLimiteAntesDoPagamentoLiberaAChave() throws Exception {
+        when(compraService.finalizarCompra(1L, 1L))
+                .thenThrow(new BackendIndisponivelException("estoque", Motivo.TEMPO_LIMITE))
+                .thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1")
+                .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                .andExpect(status().isGatewayTimeout());
+        // Nada foi cobrado: a repetição refaz a compra
+        mockMvc.perform(post("/finalizar").param("carrinhoId", "1").param("clienteId", "1")
+                .header(CompraController.CABECALHO_IDEMPOTENCIA, "abc"))
+                .andExpect(status().isOk());
+        verify(compraService, times(2)).finalizarCompra(1L, 1L);
+    }
+}
@@ -0,0 +1,121 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyList;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestEstoqueAgrupado {
+
+    private IEstoqueExternal estoque;
+    private SimpleMeterRegistry registro;
+    private ExecutorService threads;
+
+    @BeforeEach
+    public void setUp() {
+        estoque = Mockito.mock(IEstoqueExternal.class);
+        registro = new SimpleMeterRegistry();
+        threads = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void testChamadasConcorrentesViramUmaSo() throws Exception {
+        // Janela longa: o lote só parte ao completar três chamadas
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 3, registro);
+        when(estoque.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+
+        List<Future<DisponibilidadeDTO>> respostas = new ArrayList<>();
+        respostas.add(threads.submit(() -> agrupado.verificarDisponibilidade(List.of(1L, 2L), List.of(1L, 5L))));
+        respostas.add(threads.submit(() -> agrupado.verificarDisponibilidade(List.of(2L), List.of(3L))));
+        respostas.add(threads.submit(() -> agrupado.verificarDisponibilidade(List.of(3L), List.of(1L))));
+
+        for (Future<DisponibilidadeDTO> resposta : respostas) {
+            assertTrue(resposta.get().disponivel());
+        }
+        verify(estoque, times(1)).verificarDisponibilidade(anyList(), anyList());
+        assertEquals(1L, registro.get("estoque.disponibilidade.lote").summary().count());
+        assertEquals(3.0, registro.get("estoque.disponibilidade.lote").summary().totalAmount());
+        assertEquals(3L, registro.get("estoque.disponibilidade.espera").timer().count());
+    }
+
+    @Test
+    public void testIndisponiveisSeparadosPorChamada() throws Exception {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 3, registro);
+        // A ordem da combinada depende da chegada; ela pede a maior quantidade de cada produto
+        Map<Long, Long> combinada = new ConcurrentHashMap<>();
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenAnswer(invocacao -> {
+            List<Long> ids = invocacao.getArgument(0);
+            List<Long> quantidades = invocacao.getArgument(1);
+            if (ids.size() == 1 && ids.get(0) == 2L) {
+                return new DisponibilidadeDTO(true, new ArrayList<>());
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                combinada.put(ids.get(i), quantidades.get(i));
+            }
+            return new DisponibilidadeDTO(false, List.of(2L));
+        });
+
+        Future<DisponibilidadeDTO> maior = threads.submit(
+                () -> agrupado.verificarDisponibilidade(List.of(1L, 2L), List.of(1L, 5L)));
+        Future<DisponibilidadeDTO> menor = threads.submit(
+                () -> agrupado.verificarDisponibilidade(List.of(2L), List.of(3L)));
+        Future<DisponibilidadeDTO> outro = threads.submit(
+                () -> agrupado.verificarDisponibilidade(List.of(3L), List.of(1L)));
+
+        assertFalse(maior.get().disponivel());
+        assertEquals(List.of(2L), maior.get().idsProdutosIndisponiveis());
+        // Pediu menos que o máximo do produto em falta: verificado sozinho
+        assertTrue(menor.get().disponivel());
+        assertTrue(outro.get().disponivel());
+        verify(estoque, times(2)).verificarDisponibilidade(anyList(), anyList());
+        assertEquals(Map.of(1L, 1L, 2L, 5L, 3L, 1L), combinada);
+    }
+
+    @Test
+    public void testJanelaExpiradaDespachaLoteIncompleto() {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofMillis(5), 100, registro);
+        when(estoque.verificarDisponibilidade(List.of(1L), List.of(2L)))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+
+        assertTrue(agrupado.verificarDisponibilidade(List.of(1L, 1L), List.of(1L, 1L)).disponivel());
+    }
+
+    @Test
+    public void testFalhaDoEstoqueChegaAoChamador() {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofMillis(1), 10, registro);
+        RuntimeException falha = new IllegalStateException("estoque fora do ar");
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenThrow(falha);
+
+        RuntimeException erro = assertThrows(RuntimeException.class,
+                () -> agrupado.verificarDisponibilidade(List.of(1L), List.of(1L)));
+
+        assertSame(falha, erro);
+    }
+}
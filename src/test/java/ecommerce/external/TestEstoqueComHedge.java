@@ -0,0 +1,155 @@
+package ecommerce.external;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyList;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestEstoqueComHedge {
+
+    private static final int AMOSTRAS = 10;
+
+    private IEstoqueExternal estoque;
+    private ExecutorService executor;
+    private SimpleMeterRegistry registro;
+    private AtomicInteger chamadas;
+    private ThreadLocal<Integer> ordemEnvio;
+    private Executor executorMarcado;
+
+    @BeforeEach
+    public void setUp() {
+        estoque = Mockito.mock(IEstoqueExternal.class);
+        executor = Executors.newCachedThreadPool();
+        registro = new SimpleMeterRegistry();
+        chamadas = new AtomicInteger();
+        // Marca cada tarefa com a ordem de envio: a primeira enviada é a chamada principal
+        ordemEnvio = new ThreadLocal<>();
+        AtomicInteger enviadas = new AtomicInteger();
+        executorMarcado = tarefa -> {
+            int envio = enviadas.incrementAndGet();
+            executor.execute(() -> {
+                ordemEnvio.set(envio);
+                tarefa.run();
+            });
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReservaVenceChamadaLenta() {
+        EstoqueComHedge hedge = new EstoqueComHedge(estoque, executorMarcado, 90, 10, AMOSTRAS, registro);
+        // Só a chamada principal após o aquecimento é lenta
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenAnswer(invocacao -> {
+            Integer envio = ordemEnvio.get();
+            if (envio != null && envio == 1) {
+                Thread.sleep(5_000L);
+            }
+            return new DisponibilidadeDTO(true, new ArrayList<>());
+        });
+        aquecer(hedge);
+        assertTrue(hedge.limiar().isPresent());
+
+        long inicio = System.nanoTime();
+        assertTrue(hedge.verificarDisponibilidade(List.of(1L), List.of(1L)).disponivel());
+
+        assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1.0, contagem("enviada"));
+        assertEquals(1.0, contagem("vencedora"));
+    }
+
+    @Test
+    public void testReservasLimitadasPeloOrcamento() {
+        EstoqueComHedge hedge = new EstoqueComHedge(estoque, executor, 50, 10, AMOSTRAS, registro);
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenAnswer(invocacao -> {
+            if (chamadas.incrementAndGet() > AMOSTRAS) {
+                Thread.sleep(30L);
+            }
+            return new DisponibilidadeDTO(true, new ArrayList<>());
+        });
+        aquecer(hedge);
+
+        int verificacoes = 20;
+        for (int i = 0; i < verificacoes; i++) {
+            hedge.verificarDisponibilidade(List.of(1L), List.of(1L));
+        }
+
+        // 10% de crédito por verificação: no máximo 3 reservas em 30 verificações
+        assertTrue(contagem("enviada") <= (AMOSTRAS + verificacoes) / 10);
+        assertTrue(contagem("enviada") >= 1);
+    }
+
+    @Test
+    public void testBaixaNuncaDuplicada() {
+        EstoqueComHedge hedge = new EstoqueComHedge(estoque, executor, 50, 100, AMOSTRAS, registro);
+        when(estoque.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(estoque.darBaixa(anyList(), anyList())).thenAnswer(invocacao -> {
+            Thread.sleep(50L);
+            return new EstoqueBaixaDTO(true);
+        });
+        aquecer(hedge);
+
+        assertTrue(hedge.darBaixa(List.of(1L), List.of(1L)).sucesso());
+
+        verify(estoque, times(1)).darBaixa(anyList(), anyList());
+        assertEquals(0.0, contagem("enviada"));
+    }
+
+    @Test
+    public void testDuasFalhasDevolvemAFalhaDaPrimeira() {
+        EstoqueComHedge hedge = new EstoqueComHedge(estoque, executorMarcado, 50, 100, AMOSTRAS, registro);
+        RuntimeException primeira = new IllegalStateException("primeira");
+        when(estoque.verificarDisponibilidade(anyList(), anyList())).thenAnswer(invocacao -> {
+            Integer envio = ordemEnvio.get();
+            if (envio == null) {
+                return new DisponibilidadeDTO(true, new ArrayList<>());
+            }
+            if (envio == 1) {
+                Thread.sleep(200L);
+                throw primeira;
+            }
+            throw new IllegalStateException("reserva");
+        });
+        aquecer(hedge);
+
+        RuntimeException erro = assertThrows(RuntimeException.class,
+                () -> hedge.verificarDisponibilidade(List.of(1L), List.of(1L)));
+
+        assertSame(primeira, erro);
+        assertEquals(1.0, contagem("enviada"));
+    }
+
+    private void aquecer(EstoqueComHedge hedge) {
+        for (int i = 0; i < AMOSTRAS; i++) {
+            hedge.verificarDisponibilidade(List.of(1L), List.of(1L));
+        }
+    }
+
+    private double contagem(String resultado) {
+        return registro.get("estoque.disponibilidade.hedge").tag("resultado", resultado).counter().count();
+    }
+}
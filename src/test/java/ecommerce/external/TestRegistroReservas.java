@@ -0,0 +1,97 @@
+package ecommerce.external;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TestRegistroReservas {
+
+    private RelogioAjustavel relogio;
+    private List<String> expiradas;
+    private RegistroReservas<String> registro;
+
+    @BeforeEach
+    public void setUp() {
+        relogio = new RelogioAjustavel(Instant.parse("2024-01-01T10:00:00Z"));
+        expiradas = new ArrayList<>();
+        registro = new RegistroReservas<>(relogio, expiradas::add);
+    }
+
+    @Test
+    public void testRetirarDentroDaValidade() {
+        String token = registro.registrar("pedido-1", Duration.ofSeconds(30));
+
+        assertEquals(Optional.of(Instant.parse("2024-01-01T10:00:30Z")), registro.expiraEm(token));
+        relogio.avancar(Duration.ofSeconds(29));
+        assertEquals(Optional.of("pedido-1"), registro.retirar(token));
+        assertEquals(Optional.empty(), registro.retirar(token));
+        assertTrue(expiradas.isEmpty());
+    }
+
+    @Test
+    public void testVarreduraLiberaSomenteVencidas() {
+        registro.registrar("curta", Duration.ofSeconds(10));
+        String longa = registro.registrar("longa", Duration.ofSeconds(60));
+
+        relogio.avancar(Duration.ofSeconds(10));
+
+        assertEquals(1, registro.liberarExpiradas());
+        assertEquals(List.of("curta"), expiradas);
+        assertEquals(1, registro.ativas());
+        assertEquals(Optional.of("longa"), registro.retirar(longa));
+    }
+
+    @Test
+    public void testReservaVencidaNaoPodeSerConfirmada() {
+        String token = registro.registrar("pedido-1", Duration.ofSeconds(5));
+
+        relogio.avancar(Duration.ofSeconds(6));
+
+        assertEquals(Optional.empty(), registro.retirar(token));
+        assertEquals(List.of("pedido-1"), expiradas);
+        assertEquals(0, registro.liberarExpiradas());
+    }
+
+    @Test
+    public void testValidadeDeveSerPositiva() {
+        assertThrows(IllegalArgumentException.class, () -> registro.registrar("pedido-1", Duration.ZERO));
+    }
+
+    private static final class RelogioAjustavel extends Clock {
+        private Instant agora;
+
+        RelogioAjustavel(Instant agora) {
+            this.agora = agora;
+        }
+
+        void avancar(Duration duracao) {
+            agora = agora.plus(duracao);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zona) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return agora;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ecommerce.external.fake;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.when;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.ProdutoRepository;
+
+public class TestEstoqueSimulado {
+
+    @TempDir
+    Path diretorio;
+
+    private ProdutoRepository produtoRepository;
+    private RelogioAjustavel relogio;
+    private EstoqueSimulado estoque;
+
+    @BeforeEach
+    public void setUp() {
+        produtoRepository = Mockito.mock(ProdutoRepository.class);
+        relogio = new RelogioAjustavel(Instant.parse("2024-01-01T10:00:00Z"));
+        estoque = new EstoqueSimulado(produtoRepository, 100L, 2, true, Duration.ofSeconds(1), null, relogio);
+    }
+
+    @Test
+    public void testDisponibilidadeSomaProdutosRepetidos() {
+        estoque.definir(1L, 5L);
+        estoque.definir(2L, 10L);
+
+        assertTrue(estoque.verificarDisponibilidade(List.of(1L, 2L), List.of(5L, 10L)).disponivel());
+
+        DisponibilidadeDTO repetido = estoque.verificarDisponibilidade(List.of(1L, 2L, 1L, 3L),
+                List.of(3L, 1L, 3L, 1L));
+        assertFalse(repetido.disponivel());
+        assertEquals(List.of(1L, 3L), repetido.idsProdutosIndisponiveis());
+    }
+
+    @Test
+    public void testBaixaTudoOuNada() {
+        estoque.definir(1L, 5L);
+        estoque.definir(2L, 1L);
+
+        assertFalse(estoque.darBaixa(List.of(1L, 2L), List.of(3L, 2L)).sucesso());
+        assertEquals(OptionalLong.of(5L), estoque.quantidade(1L));
+        assertEquals(OptionalLong.of(1L), estoque.quantidade(2L));
+
+        assertTrue(estoque.darBaixa(List.of(1L, 2L), List.of(3L, 1L)).sucesso());
+        assertEquals(OptionalLong.of(2L), estoque.quantidade(1L));
+        assertEquals(OptionalLong.of(0L), estoque.quantidade(2L));
+
+        assertFalse(estoque.darBaixa(List.of(1L, 99L), List.of(1L, 1L)).sucesso());
+        assertEquals(OptionalLong.of(2L), estoque.quantidade(1L));
+        assertThrows(IllegalArgumentException.class, () -> estoque.darBaixa(List.of(1L), List.of(0L)));
+    }
+
+    @Test
+    public void testBaixasConcorrentesNaoVendemAlemDoSaldo() throws Exception {
+        long saldo = 20_000L;
+        estoque.definir(1L, saldo);
+        estoque.definir(2L, saldo * 2);
+        // Outra compra disputa só o produto 2, em ordem inversa
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<long[]>> vendas = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                boolean inverso = t % 2 == 1;
+                vendas.add(executor.submit(() -> {
+                    largada.await();
+                    long pares = 0;
+                    long avulsos = 0;
+                    for (int i = 0; i < 10_000; i++) {
+                        if (inverso) {
+                            if (estoque.darBaixa(List.of(2L), List.of(1L)).sucesso()) {
+                                avulsos++;
+                            }
+                        } else if (estoque.darBaixa(List.of(1L, 2L), List.of(1L, 1L)).sucesso()) {
+                            pares++;
+                        }
+                    }
+                    return new long[] { pares, avulsos };
+                }));
+            }
+            largada.countDown();
+            long pares = 0;
+            long avulsos = 0;
+            for (Future<long[]> venda : vendas) {
+                long[] resultado = venda.get(30, TimeUnit.SECONDS);
+                pares += resultado[0];
+                avulsos += resultado[1];
+            }
+
+            assertEquals(saldo, pares + estoque.quantidade(1L).getAsLong());
+            assertEquals(saldo * 2, pares + avulsos + estoque.quantidade(2L).getAsLong());
+            assertTrue(estoque.quantidade(1L).getAsLong() >= 0 && estoque.quantidade(2L).getAsLong() >= 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCargaIncluiSoProdutosNovos() {
+        List<Produto> catalogo = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            catalogo.add(new Produto(id, "Produto " + id, null, null, null, null, null, null, false,
+                    TipoProduto.ELETRONICO));
+        }
+        when(produtoRepository.findAll(any(Pageable.class))).thenAnswer(invocacao -> {
+            Pageable pagina = invocacao.getArgument(0);
+            int inicio = (int) pagina.getOffset();
+            int fim = Math.min(inicio + pagina.getPageSize(), catalogo.size());
+            return new PageImpl<>(catalogo.subList(inicio, fim), pagina, catalogo.size());
+        });
+        estoque.definir(3L, 7L);
+
+        assertEquals(4, estoque.carregar());
+
+        assertEquals(OptionalLong.of(100L), estoque.quantidade(5L));
+        assertEquals(OptionalLong.of(7L), estoque.quantidade(3L));
+    }
+
+    @Test
+    public void testSnapshotRestauraSaldos() {
+        for (long id = 1; id <= 3_000; id++) {
+            estoque.definir(id, id * 2);
+        }
+        Path arquivo = diretorio.resolve("estoque.bin");
+
+        estoque.salvar(arquivo);
+        EstoqueSimulado restaurado = new EstoqueSimulado(produtoRepository, 0L, 10, false, Duration.ofSeconds(1),
+                null, relogio);
+
+        assertEquals(3_000, restaurado.restaurar(arquivo));
+        assertEquals(OptionalLong.of(2L), restaurado.quantidade(1L));
+        assertEquals(OptionalLong.of(6_000L), restaurado.quantidade(3_000L));
+        assertEquals(OptionalLong.empty(), restaurado.quantidade(3_001L));
+    }
+
+    @Test
+    public void testReservaRetiraELiberacaoDevolve() {
+        estoque.definir(1L, 5L);
+
+        ReservaEstoqueDTO reserva = estoque.reservar(List.of(1L), List.of(3L), Duration.ofSeconds(30));
+        assertTrue(reserva.reservado());
+        assertEquals(Instant.parse("2024-01-01T10:00:30Z"), reserva.expiraEm());
+        assertEquals(OptionalLong.of(2L), estoque.quantidade(1L));
+
+        ReservaEstoqueDTO recusada = estoque.reservar(List.of(1L), List.of(3L), Duration.ofSeconds(30));
+        assertFalse(recusada.reservado());
+        assertEquals(List.of(1L), recusada.idsProdutosIndisponiveis());
+
+        estoque.liberarReserva(reserva.token());
+        assertEquals(OptionalLong.of(5L), estoque.quantidade(1L));
+        assertFalse(estoque.confirmarReserva(reserva.token()).sucesso());
+    }
+
+    @Test
+    public void testReservaConfirmadaNaoVoltaEExpiradaVolta() {
+        estoque.definir(1L, 5L);
+        String confirmada = estoque.reservar(List.of(1L), List.of(2L), Duration.ofSeconds(30)).token();
+        String expirada = estoque.reservar(List.of(1L), List.of(1L), Duration.ofSeconds(10)).token();
+
+        assertTrue(estoque.confirmarReserva(confirmada).sucesso());
+        relogio.avancar(Duration.ofSeconds(10));
+
+        assertFalse(estoque.confirmarReserva(expirada).sucesso());
+        assertEquals(OptionalLong.of(3L), estoque.quantidade(1L));
+    }
+
+    private static final class RelogioAjustavel extends Clock {
+        private volatile Instant agora;
+
+        RelogioAjustavel(Instant agora) {
+            this.agora = agora;
+        }
+
+        void avancar(Duration duracao) {
+            agora = agora.plus(duracao);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return agora;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ecommerce.external.fake;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.PagamentoDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestPagamentoSimulado {
+
+    private static final Clock RELOGIO = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    public void testIdsUnicosEntreThreads() throws Exception {
+        PagamentoSimulado pagamento = criar(DistribuicaoLatencia.nenhuma(), 0, 0);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tarefas = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tarefas.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        PagamentoDTO resposta = pagamento.autorizarPagamento(1L, 10.0);
+                        assertTrue(resposta.autorizado());
+                        ids.add(resposta.transacaoId());
+                    }
+                }));
+            }
+            for (Future<?> tarefa : tarefas) {
+                tarefa.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(40_000, ids.size());
+        assertTrue(ids.contains(RELOGIO.millis() * 1_000L + 1));
+    }
+
+    @Test
+    public void testTaxasDeRecusaEFalha() {
+        SimpleMeterRegistry registro = new SimpleMeterRegistry();
+        PagamentoSimulado recusa = new PagamentoSimulado(DistribuicaoLatencia.nenhuma(), 100, 0, 100, RELOGIO,
+                registro);
+        PagamentoDTO recusado = recusa.autorizarPagamento(1L, 10.0);
+        assertFalse(recusado.autorizado());
+        assertNull(recusado.transacaoId());
+        assertEquals(1.0, registro.get("pagamento.simulado.autorizacoes").tag("resultado", "recusada").counter()
+                .count());
+
+        PagamentoSimulado falha = criar(DistribuicaoLatencia.nenhuma(), 0, 100);
+        assertThrows(IllegalStateException.class, () -> falha.autorizarPagamento(1L, 10.0));
+        assertThrows(IllegalStateException.class, () -> falha.cancelarPagamento(1L, 1L));
+
+        assertThrows(IllegalArgumentException.class, () -> criar(DistribuicaoLatencia.nenhuma(), 60, 50));
+    }
+
+    @Test
+    public void testCancelamentoRegistradoUmaVez() {
+        SimpleMeterRegistry registro = new SimpleMeterRegistry();
+        PagamentoSimulado pagamento = new PagamentoSimulado(DistribuicaoLatencia.nenhuma(), 0, 0, 100, RELOGIO,
+                registro);
+        long transacaoId = pagamento.autorizarPagamento(1L, 10.0).transacaoId();
+        assertEquals(Optional.of(PagamentoSimulado.Estado.AUTORIZADA), pagamento.estado(transacaoId));
+
+        pagamento.cancelarPagamento(1L, transacaoId);
+        pagamento.cancelarPagamento(1L, transacaoId);
+
+        assertEquals(Optional.of(PagamentoSimulado.Estado.CANCELADA), pagamento.estado(transacaoId));
+        assertEquals(1.0, registro.get("pagamento.simulado.cancelamentos").counter().count());
+        assertThrows(IllegalArgumentException.class, () -> pagamento.cancelarPagamento(2L, transacaoId));
+        assertThrows(IllegalArgumentException.class, () -> pagamento.cancelarPagamento(1L, transacaoId + 1));
+    }
+
+    @Test
+    public void testLatenciaFixaEsperada() {
+        PagamentoSimulado pagamento = criar(DistribuicaoLatencia.fixa(Duration.ofMillis(20)), 0, 0);
+
+        long inicio = System.nanoTime();
+        pagamento.autorizarPagamento(1L, 10.0);
+
+        assertTrue(System.nanoTime() - inicio >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testDistribuicoesMantemAMediaEParetoTemCaudaLonga() {
+        Duration media = Duration.ofMillis(10);
+        Duration teto = Duration.ofSeconds(10);
+        long[] normal = amostras(DistribuicaoLatencia.normal(media, Duration.ofMillis(2), teto));
+        long[] pareto = amostras(DistribuicaoLatencia.pareto(media, 1.5, teto));
+
+        assertEquals(10.0, mediaMs(normal), 0.2);
+        assertEquals(10.0, mediaMs(pareto), 2.0);
+        // p99,9: ~16 ms na normal, ~33x a média na Pareto com alfa 1,5
+        assertTrue(percentilMs(normal, 0.999) < 20.0);
+        assertTrue(percentilMs(pareto, 0.999) > 200.0);
+        assertEquals(10_000_000L, DistribuicaoLatencia.fixa(media).amostrar(new Random(1)));
+        assertThrows(IllegalArgumentException.class, () -> DistribuicaoLatencia.pareto(media, 1.0, teto));
+    }
+
+    private static PagamentoSimulado criar(DistribuicaoLatencia latencia, double recusa, double falha) {
+        return new PagamentoSimulado(latencia, recusa, falha, 1_000_000, RELOGIO);
+    }
+
+    private static long[] amostras(DistribuicaoLatencia distribuicao) {
+        Random aleatorio = new Random(42);
+        long[] amostras = new long[200_000];
+        for (int i = 0; i < amostras.length; i++) {
+            amostras[i] = distribuicao.amostrar(aleatorio);
+        }
+        Arrays.sort(amostras);
+        return amostras;
+    }
+
+    private static double mediaMs(long[] amostras) {
+        return Arrays.stream(amostras).average().orElse(0) / 1e6;
+    }
+
+    private static double percentilMs(long[] ordenadas, double percentil) {
+        return ordenadas[(int) Math.ceil(percentil * ordenadas.length) - 1] / 1e6;
+    }
+}
@@ -0,0 +1,261 @@
+package ecommerce.external.resiliencia;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.fake.FakeEstoqueExternal;
+import ecommerce.fake.FakePagamentoExternal;
+import ecommerce.external.resiliencia.BackendIndisponivelException.Motivo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestProtecaoBackend {
+
+    private RelogioAjustavel relogio;
+    private SimpleMeterRegistry registro;
+    private FakePagamentoExternal pagamento;
+    private FakeEstoqueExternal estoque;
+    private List<ProtecaoBackend> protecoes;
+
+    @BeforeEach
+    public void setUp() {
+        relogio = new RelogioAjustavel(Instant.parse("2024-01-01T10:00:00Z"));
+        registro = new SimpleMeterRegistry();
+        pagamento = new FakePagamentoExternal();
+        estoque = new FakeEstoqueExternal();
+        protecoes = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        protecoes.forEach(ProtecaoBackend::close);
+    }
+
+    @Test
+    public void testServicoLentoEstouraTempoLimite() {
+        PagamentoProtegido protegido = new PagamentoProtegido(pagamento,
+                criarProtecao("pagamento", 4, Duration.ofMillis(50)));
+        pagamento.setLatenciaMs(2_000L);
+
+        long inicio = System.nanoTime();
+        BackendIndisponivelException erro = assertThrows(BackendIndisponivelException.class,
+                () -> protegido.autorizarPagamento(1L, 10.0));
+
+        assertEquals(Motivo.TEMPO_LIMITE, erro.getMotivo());
+        assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1.0, contagemRejeicoes("pagamento", Motivo.TEMPO_LIMITE));
+    }
+
+    @Test
+    public void testAutorizacaoQueChegaDepoisDoTempoLimiteECancelada() throws Exception {
+        CompletableFuture<Long[]> cancelada = new CompletableFuture<>();
+        PagamentoProtegido protegido = new PagamentoProtegido(pagamento,
+                criarProtecao("pagamento", 4, Duration.ofMillis(50)),
+                (clienteId, transacaoId) -> cancelada.complete(new Long[] { clienteId, transacaoId }));
+        pagamento.setTransacaoId(99L);
+        pagamento.setLatenciaMs(300L);
+
+        BackendIndisponivelException erro = assertThrows(BackendIndisponivelException.class,
+                () -> protegido.autorizarPagamento(7L, 10.0));
+        assertEquals(Motivo.TEMPO_LIMITE, erro.getMotivo());
+
+        // A chamada abandonada segue até o provedor responder, e a autorização é desfeita
+        assertArrayEquals(new Long[] { 7L, 99L }, cancelada.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRecusaQueChegaDepoisDoTempoLimiteNaoECancelada() throws Exception {
+        List<Long> canceladas = new CopyOnWriteArrayList<>();
+        PagamentoProtegido protegido = new PagamentoProtegido(pagamento,
+                criarProtecao("pagamento", 4, Duration.ofMillis(50)),
+                (clienteId, transacaoId) -> canceladas.add(transacaoId));
+        pagamento.setAutorizado(false);
+        pagamento.setLatenciaMs(150L);
+
+        assertThrows(BackendIndisponivelException.class, () -> protegido.autorizarPagamento(7L, 10.0));
+        Thread.sleep(400);
+
+        assertTrue(canceladas.isEmpty());
+    }
+
+    @Test
+    public void testBaixaLentaNaoEAbandonada() {
+        EstoqueProtegido protegido = new EstoqueProtegido(estoque, criarProtecao("estoque", 4, Duration.ofMillis(50)));
+        estoque.setLatenciaMs(200L);
+
+        // A baixa pode ter tirado o estoque: a compra espera a resposta em vez de desistir
+        assertTrue(protegido.darBaixa(List.of(1L), List.of(1L)).sucesso());
+        assertEquals(0.0, contagemRejeicoes("estoque", Motivo.TEMPO_LIMITE));
+    }
+
+    @Test
+    public void testBaixasLentasAbremOCircuito() {
+        ProtecaoBackend protecao = criarProtecao("estoque", 4, Duration.ofMillis(20));
+        EstoqueProtegido protegido = new EstoqueProtegido(estoque, protecao);
+        estoque.setLatenciaMs(40L);
+        for (int i = 0; i < 4; i++) {
+            protegido.darBaixa(List.of(1L), List.of(1L));
+        }
+
+        BackendIndisponivelException erro = assertThrows(BackendIndisponivelException.class,
+                () -> protegido.darBaixa(List.of(1L), List.of(1L)));
+        assertEquals(Motivo.CIRCUITO_ABERTO, erro.getMotivo());
+    }
+
+    @Test
+    public void testLimiteDeConcorrenciaRecusaExcedente() throws Exception {
+        ProtecaoBackend protecao = criarProtecao("estoque", 1, Duration.ofSeconds(5));
+        CountDownLatch iniciada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        ExecutorService chamador = Executors.newSingleThreadExecutor();
+        try {
+            chamador.submit(() -> protecao.executar(() -> {
+                iniciada.countDown();
+                try {
+                    liberar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            assertTrue(iniciada.await(5, TimeUnit.SECONDS));
+
+            BackendIndisponivelException erro = assertThrows(BackendIndisponivelException.class,
+                    () -> protecao.executar(() -> "segunda"));
+            assertEquals(Motivo.LIMITE_CONCORRENCIA, erro.getMotivo());
+        } finally {
+            liberar.countDown();
+            chamador.shutdown();
+        }
+        assertTrue(chamador.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals("terceira", protecao.executar(() -> "terceira"));
+    }
+
+    @Test
+    public void testDisjuntorAbreFalhaRapidoESondaAoFimDaEspera() {
+        ProtecaoBackend protecao = criarProtecao("pagamento", 4, Duration.ofSeconds(1));
+        PagamentoProtegido protegido = new PagamentoProtegido(pagamento, protecao);
+        RuntimeException falha = new IllegalStateException("provedor fora do ar");
+        pagamento.setFalha(falha);
+
+        for (int i = 0; i < 4; i++) {
+            assertSame(falha, assertThrows(RuntimeException.class, () -> protegido.autorizarPagamento(1L, 10.0)));
+        }
+        assertEquals(Disjuntor.Estado.ABERTO, protecao.estado());
+        assertEquals(1.0, registro.get("externo.disjuntor.estado").tags("backend", "pagamento", "estado", "aberto")
+                .gauge().value());
+
+        // Aberto: recusa sem chamar o serviço, mesmo que ele já tenha voltado
+        pagamento.setFalha(null);
+        BackendIndisponivelException erro = assertThrows(BackendIndisponivelException.class,
+                () -> protegido.autorizarPagamento(1L, 10.0));
+        assertEquals(Motivo.CIRCUITO_ABERTO, erro.getMotivo());
+        assertEquals(1.0, contagemRejeicoes("pagamento", Motivo.CIRCUITO_ABERTO));
+
+        // Cancelamento é compensação e passa mesmo com o circuito aberto
+        protegido.cancelarPagamento(1L, 7L);
+        assertTrue(pagamento.isCancelamentoChamado());
+
+        relogio.avancar(Duration.ofSeconds(10));
+        assertEquals(Disjuntor.Estado.SEMIABERTO, protecao.estado());
+        protegido.autorizarPagamento(1L, 10.0);
+        protegido.autorizarPagamento(1L, 10.0);
+        assertEquals(Disjuntor.Estado.FECHADO, protecao.estado());
+    }
+
+    @Test
+    public void testFalhaNaSondaReabreOCircuito() {
+        ProtecaoBackend protecao = criarProtecao("estoque", 4, Duration.ofSeconds(1));
+        EstoqueProtegido protegido = new EstoqueProtegido(estoque, protecao);
+        estoque.setFalha(new IllegalStateException("fora do ar"));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> protegido.verificarDisponibilidade(List.of(1L), List.of(1L)));
+        }
+
+        relogio.avancar(Duration.ofSeconds(10));
+        assertThrows(IllegalStateException.class, () -> protegido.verificarDisponibilidade(List.of(1L), List.of(1L)));
+
+        assertEquals(Disjuntor.Estado.ABERTO, protecao.estado());
+    }
+
+    @Test
+    public void testSondaInterrompidaDevolveOResultadoAoDisjuntor() {
+        ProtecaoBackend protecao = criarProtecao("estoque", 4, Duration.ofSeconds(1));
+        EstoqueProtegido protegido = new EstoqueProtegido(estoque, protecao);
+        estoque.setFalha(new IllegalStateException("fora do ar"));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> protegido.verificarDisponibilidade(List.of(1L), List.of(1L)));
+        }
+        relogio.avancar(Duration.ofSeconds(10));
+
+        Thread.currentThread().interrupt();
+        try {
+            BackendIndisponivelException erro = assertThrows(BackendIndisponivelException.class,
+                    () -> protegido.verificarDisponibilidade(List.of(1L), List.of(1L)));
+            assertEquals(Motivo.TEMPO_LIMITE, erro.getMotivo());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        // A sonda interrompida conta como falha: o circuito reabre em vez de ficar sem vaga de sonda
+        assertEquals(Disjuntor.Estado.ABERTO, protecao.estado());
+    }
+
+    private ProtecaoBackend criarProtecao(String nome, int limite, Duration tempoLimite) {
+        // Janela de 4 chamadas, abre com 50% de falhas, 10s aberto, 2 sondas
+        ProtecaoBackend protecao = new ProtecaoBackend(nome,
+                new ConfiguracaoProtecao(limite, tempoLimite, 4, 4, 50, Duration.ofSeconds(10), 2), relogio, registro);
+        protecoes.add(protecao);
+        return protecao;
+    }
+
+    private double contagemRejeicoes(String backend, Motivo motivo) {
+        return registro.get("externo.rejeicoes").tags("backend", backend, "motivo", motivo.getTag()).counter().count();
+    }
+
+    private static final class RelogioAjustavel extends Clock {
+        private volatile Instant agora;
+
+        RelogioAjustavel(Instant agora) {
+            this.agora = agora;
+        }
+
+        void avancar(Duration duracao) {
+            agora = agora.plus(duracao);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return agora;
+        }
+    }
+}
@@ -12,6 +12,8 @@ public class FakeEstoqueExternal implements IEstoqueExternal {
     private boolean disponivel = true;
     private boolean sucessoBaixa = true;
     private List<Long> produtosIndisponiveis = new ArrayList<>();
+    private long latenciaMs = 0;
+    private RuntimeException falha;
     
     public void setDisponivel(boolean disponivel) {
         this.disponivel = disponivel;
@@ -25,13 +27,38 @@ public class FakeEstoqueExternal implements IEstoqueExternal {
         this.produtosIndisponiveis = produtosIndisponiveis;
     }
 
+    /** Atraso aplicado a cada chamada, para simular um serviço lento. */
+    public void setLatenciaMs(long latenciaMs) {
+        this.latenciaMs = latenciaMs;
+    }
+
+    /** Exceção lançada por toda chamada; {@code null} volta ao normal. */
+    public void setFalha(RuntimeException falha) {
+        this.falha = falha;
+    }
+
     @Override
     public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+        simularServico();
         return new DisponibilidadeDTO(disponivel, produtosIndisponiveis);
     }
 
     @Override
     public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+        simularServico();
         return new EstoqueBaixaDTO(sucessoBaixa);
     }
+
+    private void simularServico() {
+        if (latenciaMs > 0) {
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (falha != null) {
+            throw falha;
+        }
+    }
 }
@@ -8,6 +8,8 @@ public class FakePagamentoExternal implements IPagamentoExternal {
     private boolean autorizado = true;
     private Long transacaoId = 12345L;
     private boolean cancelamentoChamado = false;
+    private long latenciaMs = 0;
+    private RuntimeException falha;
     
     public void setAutorizado(boolean autorizado) {
         this.autorizado = autorizado;
@@ -21,13 +23,38 @@ public class FakePagamentoExternal implements IPagamentoExternal {
         return cancelamentoChamado;
     }
 
+    /** Atraso aplicado a cada chamada, para simular um serviço lento. */
+    public void setLatenciaMs(long latenciaMs) {
+        this.latenciaMs = latenciaMs;
+    }
+
+    /** Exceção lançada por toda chamada; {@code null} volta ao normal. */
+    public void setFalha(RuntimeException falha) {
+        this.falha = falha;
+    }
+
     @Override
     public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+        simularServico();
         return new PagamentoDTO(autorizado, transacaoId);
     }
 
     @Override
     public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+        simularServico();
         this.cancelamentoChamado = true;
     }
+
+    private void simularServico() {
+        if (latenciaMs > 0) {
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (falha != null) {
+            throw falha;
+        }
+    }
 }
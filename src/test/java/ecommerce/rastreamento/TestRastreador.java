@@ -0,0 +1,221 @@
+package ecommerce.rastreamento;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestRastreador {
+
+    private static final String TRACEPARENT = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+
+    @TempDir
+    Path diretorio;
+
+    private final SimpleMeterRegistry registro = new SimpleMeterRegistry();
+    private final ColetorSpans coletor = new ColetorSpans(100);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testAmostradoNaCabecaExportaQuandoORastreamentoTermina() {
+        Rastreador rastreador = rastreador(1.0, Duration.ZERO, false);
+
+        try (Span raiz = rastreador.iniciar("raiz")) {
+            assertSame(raiz, ContextoRastreamento.atual());
+            try (Span filho = rastreador.iniciar("filho")) {
+                filho.atributo("itens", 2);
+            }
+            assertSame(raiz, ContextoRastreamento.atual());
+            assertTrue(coletor.spans().isEmpty());
+        }
+
+        assertNull(ContextoRastreamento.atual());
+        List<Span> spans = coletor.spans();
+        assertEquals(2, spans.size());
+        Span filho = spans.get(0);
+        Span raiz = spans.get(1);
+        assertEquals("filho", filho.getNome());
+        assertEquals(raiz.getTraceId(), filho.getTraceId());
+        assertEquals(raiz.getSpanId(), filho.getPaiId());
+        assertNull(raiz.getPaiId());
+        assertEquals(2, filho.getAtributos().get("itens"));
+        assertTrue(raiz.getDuracaoNanos() >= filho.getDuracaoNanos());
+        assertEquals(1.0, tracos("cabeca"));
+    }
+
+    @Test
+    public void testCaudaExportaSoOsRastreamentosLentos() throws Exception {
+        Rastreador rastreador = rastreador(0.0, Duration.ofMillis(50), false);
+
+        try (Span rapido = rastreador.iniciar("rapido")) {
+            assertTrue(rapido.isGravando());
+        }
+        try (Span lento = rastreador.iniciar("lento")) {
+            Thread.sleep(60);
+        }
+
+        assertEquals(List.of("lento"), nomes(coletor.spans()));
+        assertEquals(1.0, tracos("cauda"));
+        assertEquals(1.0, tracos("descartado"));
+    }
+
+    @Test
+    public void testCaudaPorErroExportaORastreamentoInteiro() {
+        Rastreador rastreador = rastreador(0.0, Duration.ZERO, true);
+
+        try (Span raiz = rastreador.iniciar("raiz")) {
+            try (Span filho = rastreador.iniciar("filho")) {
+                filho.erro(new IllegalStateException("Estoque indisponível"));
+            }
+        }
+        try (Span semErro = rastreador.iniciar("sem-erro")) {
+            semErro.atributo("ok", true);
+        }
+
+        assertEquals(List.of("filho", "raiz"), nomes(coletor.spans()));
+        assertEquals("IllegalStateException: Estoque indisponível", coletor.spans().get(0).getErro());
+    }
+
+    @Test
+    public void testSpanPropagadoParaOutraThreadSegueFilho() throws Exception {
+        Rastreador rastreador = rastreador(0.0, Duration.ofMillis(50), false);
+        CountDownLatch iniciado = new CountDownLatch(1);
+        CompletableFuture<Void> tarefa;
+
+        try (Span raiz = rastreador.iniciar("raiz")) {
+            tarefa = CompletableFuture.runAsync(ContextoRastreamento.propagar(() -> {
+                try (Span filho = rastreador.iniciar("em-outra-thread")) {
+                    iniciado.countDown();
+                    Thread.sleep(60);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }), executor);
+            assertTrue(iniciado.await(5, TimeUnit.SECONDS));
+        }
+        // A raiz já fechou, mas o filho ainda está aberto: nada decidido
+        assertTrue(coletor.spans().isEmpty());
+        tarefa.get();
+
+        // Rápida, a raiz sozinha seria descartada; o filho lento leva o rastreamento à cauda
+        List<Span> spans = coletor.spans();
+        assertEquals(List.of("raiz", "em-outra-thread"), nomes(spans));
+        assertEquals(spans.get(0).getSpanId(), spans.get(1).getPaiId());
+        // A thread do executor volta sem span corrente
+        assertNull(executor.submit(ContextoRastreamento::atual).get());
+    }
+
+    @Test
+    public void testContinuaTraceparentRecebido() {
+        Rastreador rastreador = rastreador(0.0, Duration.ZERO, false);
+
+        try (Span raiz = rastreador.iniciar("requisicao", TRACEPARENT)) {
+            assertEquals("0af7651916cd43dd8448eb211c80319c", raiz.getTraceId());
+            assertEquals("b7ad6b7169203331", raiz.getPaiId());
+            assertEquals("00-0af7651916cd43dd8448eb211c80319c-" + raiz.getSpanId() + "-01", raiz.traceparent());
+        }
+        assertEquals(1, coletor.spans().size());
+
+        // Sem a flag de amostragem e com a amostragem local desligada, nada é gravado
+        try (Span raiz = rastreador.iniciar("requisicao", TRACEPARENT.replace("-01", "-00"))) {
+            assertFalse(raiz.isGravando());
+        }
+        assertEquals(1, coletor.spans().size());
+
+        // Com a cauda ligada, o rastreamento não amostrado na origem segue com a flag desligada
+        Rastreador comCauda = rastreador(0.0, Duration.ofSeconds(1), false);
+        try (Span raiz = comCauda.iniciar("requisicao", TRACEPARENT.replace("-01", "-00"))) {
+            assertTrue(raiz.isGravando());
+            assertTrue(raiz.traceparent().endsWith("-00"));
+        }
+        assertEquals(1, coletor.spans().size());
+    }
+
+    @Test
+    public void testTraceparentInvalidoIniciaRastreamentoNovo() {
+        Rastreador rastreador = rastreador(1.0, Duration.ZERO, false);
+
+        for (String invalido : List.of("", "00-abc", TRACEPARENT.replace('a', 'z'),
+                "00-00000000000000000000000000000000-b7ad6b7169203331-01")) {
+            try (Span raiz = rastreador.iniciar("requisicao", invalido)) {
+                assertNotEquals("0af7651916cd43dd8448eb211c80319c", raiz.getTraceId());
+                assertNull(raiz.getPaiId());
+            }
+        }
+    }
+
+    @Test
+    public void testDesligadoNaoMudaOSpanCorrente() {
+        Rastreador rastreador = Rastreador.nenhum();
+
+        try (Span span = rastreador.iniciar("compra")) {
+            span.atributo("ignorado", 1);
+            assertFalse(span.isGravando());
+            assertNull(span.traceparent());
+            assertNull(ContextoRastreamento.atual());
+        }
+    }
+
+    @Test
+    public void testExportadorArquivoGravaUmSpanPorLinha() throws Exception {
+        Path arquivo = diretorio.resolve("spans.jsonl");
+        try (ExportadorSpansArquivo exportador = new ExportadorSpansArquivo(arquivo, 100, Duration.ofHours(1),
+                registro)) {
+            Rastreador rastreador = new Rastreador(1.0, Duration.ZERO, false, exportador, registro);
+            try (Span raiz = rastreador.iniciar("raiz")) {
+                rastreador.iniciar("filho").atributo("itens", 3).close();
+            }
+            exportador.gravar();
+
+            List<String> linhas = Files.readAllLines(arquivo, StandardCharsets.UTF_8);
+            assertEquals(2, linhas.size());
+            ObjectMapper json = new ObjectMapper();
+            JsonNode filho = json.readTree(linhas.get(0));
+            JsonNode raiz = json.readTree(linhas.get(1));
+            assertEquals("filho", filho.get("nome").asText());
+            assertEquals(raiz.get("spanId").asText(), filho.get("paiId").asText());
+            assertEquals(3, filho.get("atributos").get("itens").asInt());
+            assertTrue(raiz.get("paiId").isNull());
+            assertTrue(raiz.get("inicio").asLong() > 0);
+        }
+    }
+
+    private Rastreador rastreador(double taxa, Duration limiarCauda, boolean caudaErros) {
+        return new Rastreador(taxa, limiarCauda, caudaErros, coletor, registro);
+    }
+
+    private double tracos(String decisao) {
+        return registro.get("rastreamento.tracos").tag("decisao", decisao).counter().count();
+    }
+
+    private static List<String> nomes(List<Span> spans) {
+        return spans.stream().map(Span::getNome).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,112 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import ecommerce.entity.AgregadosCarrinho;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+public class TestAgregadosCarrinho {
+
+    private CompraService compraService;
+    private CarrinhoDeCompras carrinho;
+
+    @BeforeEach
+    public void setUp() {
+        compraService = new CompraService(Mockito.mock(CarrinhoDeComprasService.class),
+                Mockito.mock(ClienteService.class), Mockito.mock(IEstoqueExternal.class),
+                Mockito.mock(IPagamentoExternal.class));
+        carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(new ArrayList<>());
+    }
+
+    @Test
+    public void testAdicionarItensAtualizaAgregados() {
+        carrinho.adicionarItem(new ItemCompra(1L, criarProduto(1L, "250.00", "3.0", false), 1L));
+        carrinho.getItens().add(new ItemCompra(2L, criarProduto(2L, "300.00", "4.0", true), 1L));
+
+        assertTrue(carrinho.agregados().isExato());
+        assertEquals(5_500_000L, carrinho.agregados().getSubtotalEscalado());
+        assertEquals(7_000L, carrinho.agregados().getPesoGramas());
+        assertEquals(1L, carrinho.agregados().getUnidadesFrageis());
+        assertEquals(new BigDecimal("514.00"), compraService.calcularCustoTotal(carrinho));
+    }
+
+    @Test
+    public void testAlterarQuantidadeERemoverItem() {
+        ItemCompra item1 = new ItemCompra(1L, criarProduto(1L, "100.00", "1.0", true), 1L);
+        ItemCompra item2 = new ItemCompra(2L, criarProduto(2L, "50.00", "2.0", false), 1L);
+        carrinho.adicionarItem(item1);
+        carrinho.adicionarItem(item2);
+
+        item1.setQuantidade(3L);
+        assertEquals(new BigDecimal("365.00"), compraService.calcularCustoTotal(carrinho));
+
+        Iterator<ItemCompra> iterador = carrinho.getItens().iterator();
+        iterador.next();
+        iterador.remove();
+        assertEquals(1, carrinho.getItens().size());
+        assertEquals(0L, carrinho.agregados().getUnidadesFrageis());
+        assertEquals(new BigDecimal("50.00"), compraService.calcularCustoTotal(carrinho));
+
+        item1.setQuantidade(10L);
+        assertEquals(new BigDecimal("50.00"), compraService.calcularCustoTotal(carrinho));
+    }
+
+    @Test
+    public void testAlteracaoDePrecoReconstroiAgregados() {
+        Produto produto = criarProduto(1L, "100.00", "1.0", false);
+        carrinho.adicionarItem(new ItemCompra(1L, produto, 2L));
+        assertEquals(new BigDecimal("200.00"), compraService.calcularCustoTotal(carrinho));
+
+        produto.setPreco(new BigDecimal("300.00"));
+
+        assertEquals(new BigDecimal("540.00"), compraService.calcularCustoTotal(carrinho));
+    }
+
+    @Test
+    public void testAlteracaoDeOutroProdutoMantemORetrato() {
+        Produto produto = criarProduto(1L, "100.00", "1.0", false);
+        carrinho.adicionarItem(new ItemCompra(1L, produto, 2L));
+        AgregadosCarrinho agregados = carrinho.agregados();
+
+        criarProduto(2L, "10.00", "1.0", false).setPreco(new BigDecimal("20.00"));
+        assertSame(agregados, carrinho.agregados());
+
+        produto.setPreco(new BigDecimal("150.00"));
+        assertNotSame(agregados, carrinho.agregados());
+        assertEquals(3_000_000L, carrinho.agregados().getSubtotalEscalado());
+    }
+
+    @Test
+    public void testItemForaDoPontoFixoNaoTemAgregadoExato() {
+        carrinho.adicionarItem(new ItemCompra(1L, criarProduto(1L, "10.000051", "1.0", false), 1L));
+
+        assertFalse(carrinho.agregados().isExato());
+        assertEquals(new BigDecimal("10.00"), compraService.calcularCustoTotal(carrinho));
+
+        carrinho.getItens().clear();
+        assertTrue(carrinho.agregados().isExato());
+        assertEquals(0L, carrinho.agregados().getSubtotalEscalado());
+    }
+
+    private Produto criarProduto(Long id, String preco, String peso, boolean fragil) {
+        return new Produto(id, "Produto" + id, "Descrição", new BigDecimal(preco), new BigDecimal(peso),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), new BigDecimal("10.0"), fragil, TipoProduto.ELETRONICO);
+    }
+}
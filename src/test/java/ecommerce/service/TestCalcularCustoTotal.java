@@ -284,6 +284,34 @@ public class TestCalcularCustoTotal {
         assertEquals(new BigDecimal("300.00"), resultado);
     }
     
+    @Test
+    public void testPrecoComEscalaAlemDoPontoFixo() {
+        CarrinhoDeCompras carrinho = criarCarrinho(
+            criarProduto(1L, "Produto1", new BigDecimal("10.000051"), new BigDecimal("1.0"), false)
+        );
+        BigDecimal resultado = compraService.calcularCustoTotal(carrinho);
+        assertEquals(new BigDecimal("10.00"), resultado);
+    }
+
+    @Test
+    public void testEstouroDoPontoFixoUsaBigDecimal() {
+        CarrinhoDeCompras carrinho = criarCarrinhoComQuantidade(
+            criarProduto(1L, "Produto1", new BigDecimal("1000000000000.00"), new BigDecimal("1.0"), false),
+            1000L
+        );
+        BigDecimal resultado = compraService.calcularCustoTotal(carrinho);
+        assertEquals(new BigDecimal("800000000007000.00"), resultado);
+    }
+
+    @Test
+    public void testArredondamentoMeioCentavoParaCima() {
+        CarrinhoDeCompras carrinho = criarCarrinho(
+            criarProduto(1L, "Produto1", new BigDecimal("10.005"), new BigDecimal("1.0"), false)
+        );
+        BigDecimal resultado = compraService.calcularCustoTotal(carrinho);
+        assertEquals(new BigDecimal("10.01"), resultado);
+    }
+
     private CarrinhoDeCompras criarCarrinho(Produto produto) {
         return criarCarrinhoComQuantidade(produto, 1L);
     }
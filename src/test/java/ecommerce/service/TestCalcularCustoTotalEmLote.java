@@ -0,0 +1,110 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+public class TestCalcularCustoTotalEmLote {
+
+    private CompraService compraService;
+
+    @BeforeEach
+    public void setUp() {
+        compraService = new CompraService(Mockito.mock(CarrinhoDeComprasService.class),
+                Mockito.mock(ClienteService.class), Mockito.mock(IEstoqueExternal.class),
+                Mockito.mock(IPagamentoExternal.class));
+    }
+
+    @Test
+    public void testLoteIgualAoCalculoIndividual() {
+        List<CarrinhoDeCompras> carrinhos = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            Produto produto = criarProduto(id, new BigDecimal(id).movePointLeft(1),
+                    new BigDecimal(id % 70).movePointLeft(1), id % 3 == 0);
+            carrinhos.add(criarCarrinho(id, new ItemCompra(id, produto, id % 5 + 1)));
+        }
+
+        Map<Long, CotacaoDTO> resultado = compraService.calcularCustoTotalEmLote(carrinhos, new ConfiguracaoLote(16));
+
+        assertEquals(carrinhos.size(), resultado.size());
+        for (CarrinhoDeCompras carrinho : carrinhos) {
+            assertEquals(compraService.calcularCustoTotal(carrinho), resultado.get(carrinho.getId()).custoTotal());
+        }
+    }
+
+    @Test
+    public void testLotePorStreamPreservaOrdem() {
+        CarrinhoDeCompras c1 = criarCarrinho(10L,
+                new ItemCompra(1L, criarProduto(1L, new BigDecimal("100.00"), new BigDecimal("1.0"), false), 1L));
+        CarrinhoDeCompras c2 = criarCarrinho(5L,
+                new ItemCompra(2L, criarProduto(2L, new BigDecimal("600.00"), new BigDecimal("6.0"), true), 1L));
+
+        Map<Long, CotacaoDTO> resultado = compraService.calcularCustoTotalEmLote(Arrays.asList(c1, c2).stream(),
+                new ConfiguracaoLote(1));
+
+        assertEquals(Arrays.asList(10L, 5L), new ArrayList<>(resultado.keySet()));
+        assertEquals(new BigDecimal("100.00"), resultado.get(10L).custoTotal());
+        assertEquals(new BigDecimal("557.00"), resultado.get(5L).custoTotal());
+    }
+
+    @Test
+    public void testCarrinhoRepetidoEPrecificadoUmaVez() {
+        CarrinhoDeCompras carrinho = criarCarrinho(1L,
+                new ItemCompra(1L, criarProduto(1L, new BigDecimal("100.00"), new BigDecimal("1.0"), false), 1L));
+        List<CarrinhoDeCompras> carrinhos = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            carrinhos.add(carrinho);
+        }
+
+        Map<Long, CotacaoDTO> resultado = compraService.calcularCustoTotalEmLote(carrinhos, new ConfiguracaoLote(1));
+
+        assertEquals(1, resultado.size());
+        assertEquals(new BigDecimal("100.00"), resultado.get(1L).custoTotal());
+    }
+
+    @Test
+    public void testCarrinhosDiferentesComOMesmoIdSaoRecusados() {
+        Produto produto = criarProduto(1L, new BigDecimal("100.00"), new BigDecimal("1.0"), false);
+        List<CarrinhoDeCompras> carrinhos = Arrays.asList(criarCarrinho(1L, new ItemCompra(1L, produto, 1L)),
+                criarCarrinho(1L, new ItemCompra(2L, produto, 2L)));
+
+        assertThrows(IllegalArgumentException.class, () -> compraService.calcularCustoTotalEmLote(carrinhos));
+    }
+
+    @Test
+    public void testCarrinhoSemIdNoLote() {
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        assertThrows(IllegalArgumentException.class,
+                () -> compraService.calcularCustoTotalEmLote(Arrays.asList(carrinho)));
+    }
+
+    private CarrinhoDeCompras criarCarrinho(Long id, ItemCompra item) {
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setId(id);
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(item);
+        carrinho.setItens(itens);
+        return carrinho;
+    }
+
+    private Produto criarProduto(Long id, BigDecimal preco, BigDecimal pesoFisico, boolean fragil) {
+        return new Produto(id, "Produto" + id, "Descrição", preco, pesoFisico, new BigDecimal("10.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), fragil, TipoProduto.ELETRONICO);
+    }
+}
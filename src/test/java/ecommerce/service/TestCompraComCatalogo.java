@@ -0,0 +1,125 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.service.compensacao.CompensadorPagamento;
+import ecommerce.service.pedidos.RegistradorPedidos;
+import ecommerce.service.preco.CacheCotacoes;
+import ecommerce.service.preco.CatalogoOffHeap;
+import ecommerce.service.preco.RegrasPreco;
+import ecommerce.service.preco.TabelaPrecos;
+
+public class TestCompraComCatalogo {
+
+    private CarrinhoDeComprasService carrinhoService;
+    private ClienteService clienteService;
+    private IEstoqueExternal estoqueExternal;
+    private IPagamentoExternal pagamentoExternal;
+    private CatalogoOffHeap catalogo;
+    private CompraService compraService;
+
+    @BeforeEach
+    public void setUp() {
+        carrinhoService = Mockito.mock(CarrinhoDeComprasService.class);
+        clienteService = Mockito.mock(ClienteService.class);
+        estoqueExternal = Mockito.mock(IEstoqueExternal.class);
+        pagamentoExternal = Mockito.mock(IPagamentoExternal.class);
+
+        ProdutoRepository produtoRepository = Mockito.mock(ProdutoRepository.class);
+        when(produtoRepository.findAll(any(Pageable.class))).thenReturn(Page.empty());
+        catalogo = new CatalogoOffHeap(produtoRepository, 10, 4);
+
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal,
+                RegrasPreco.doClasspath(), new CacheCotacoes(10L), catalogo, Runnable::run, ForkJoinPool.commonPool(),
+                Duration.ofSeconds(30), CompensadorPagamento.sincrono(pagamentoExternal), RegistradorPedidos.nenhum(),
+                MetricasCompra.nenhuma());
+    }
+
+    @Test
+    public void testCotacaoUsaOCatalogoDepoisDaCarga() {
+        TabelaPrecos tabela = RegrasPreco.doClasspath().atual();
+        CarrinhoDeCompras carrinho = criarCarrinho(criarProduto(1L, new BigDecimal("100.00")));
+
+        // Antes da carga completa, o catálogo não é consultado
+        catalogo.atualizar(criarProduto(1L, new BigDecimal("40.00")));
+        assertEquals(new BigDecimal("200.00"), compraService.cotar(carrinho, tabela).custoTotal());
+
+        // Depois, o preço vem do catálogo e não da entidade
+        catalogo.carregar();
+        catalogo.atualizar(criarProduto(1L, new BigDecimal("40.00")));
+        assertEquals(new BigDecimal("80.00"), compraService.cotar(carrinho, tabela).custoTotal());
+    }
+
+    @Test
+    public void testVersaoDiferenteDaEntidadeUsaAEntidade() {
+        TabelaPrecos tabela = RegrasPreco.doClasspath().atual();
+        Produto produto = criarProduto(1L, new BigDecimal("100.00"));
+        ReflectionTestUtils.setField(produto, "versao", 2L);
+        CarrinhoDeCompras carrinho = criarCarrinho(produto);
+
+        // Alteração confirmada por outro nó que o catálogo ainda não viu
+        Produto anterior = criarProduto(1L, new BigDecimal("40.00"));
+        ReflectionTestUtils.setField(anterior, "versao", 1L);
+        catalogo.carregar();
+        catalogo.atualizar(anterior);
+
+        assertEquals(new BigDecimal("200.00"), compraService.cotar(carrinho, tabela).custoTotal());
+    }
+
+    @Test
+    public void testProdutoForaDoCatalogoChegaAoEstoque() {
+        Produto produto = criarProduto(1L, new BigDecimal("100.00"));
+        Cliente cliente = new Cliente(1L, "Cliente Teste", null, null);
+        when(clienteService.buscarPorId(1L)).thenReturn(cliente);
+        when(carrinhoService.buscarPorCarrinhoIdEClienteId(1L, cliente)).thenReturn(criarCarrinho(produto));
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(1L)));
+        catalogo.carregar();
+
+        // Produto incluído por outro nó depois da carga: quem decide é o estoque
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+        verify(estoqueExternal).verificarDisponibilidade(List.of(1L), List.of(2L));
+        assertEquals(new BigDecimal("200.00"),
+                compraService.cotar(criarCarrinho(produto), RegrasPreco.doClasspath().atual()).custoTotal());
+    }
+
+    private static CarrinhoDeCompras criarCarrinho(Produto produto) {
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(1L, produto, 2L));
+        carrinho.setItens(itens);
+        return carrinho;
+    }
+
+    private static Produto criarProduto(Long id, BigDecimal preco) {
+        return new Produto(id, "Produto" + id, "Descrição", preco, new BigDecimal("1.0"), new BigDecimal("10.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), false, TipoProduto.ELETRONICO);
+    }
+}
@@ -0,0 +1,154 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.ReservaEstoqueDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.fake.FakeEstoqueExternal;
+
+public class TestFinalizarCompraComReserva {
+
+    private static final String TOKEN = "reserva-1";
+
+    private CompraService compraService;
+    private IEstoqueExternal estoqueExternal;
+    private IPagamentoExternal pagamentoExternal;
+
+    @BeforeEach
+    public void setUp() {
+        CarrinhoDeComprasService carrinhoService = Mockito.mock(CarrinhoDeComprasService.class);
+        ClienteService clienteService = Mockito.mock(ClienteService.class);
+        estoqueExternal = Mockito.mock(IEstoqueExternal.class);
+        pagamentoExternal = Mockito.mock(IPagamentoExternal.class);
+
+        Cliente cliente = new Cliente(1L, "Cliente Teste", null, null);
+        when(clienteService.buscarPorId(1L)).thenReturn(cliente);
+        when(carrinhoService.buscarPorCarrinhoIdEClienteId(1L, cliente)).thenReturn(criarCarrinho(cliente));
+        when(estoqueExternal.suportaReservas()).thenReturn(true);
+
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal);
+    }
+
+    @Test
+    public void testCompraConfirmaReservaSemVerificarNemDarBaixa() {
+        reservar(true);
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        when(estoqueExternal.confirmarReserva(TOKEN)).thenReturn(new EstoqueBaixaDTO(true));
+
+        CompraDTO resultado = compraService.finalizarCompra(1L, 1L);
+
+        assertTrue(resultado.sucesso());
+        verify(estoqueExternal).reservar(List.of(1L), List.of(2L), Duration.ofSeconds(30));
+        verify(estoqueExternal).confirmarReserva(TOKEN);
+        verify(estoqueExternal, never()).verificarDisponibilidade(anyList(), anyList());
+        verify(estoqueExternal, never()).darBaixa(anyList(), anyList());
+        verify(estoqueExternal, never()).liberarReserva(anyString());
+    }
+
+    @Test
+    public void testReservaRecusadaEhEstoqueIndisponivel() {
+        reservar(false);
+
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(1L, 1L));
+
+        assertEquals("Itens fora de estoque.", erro.getMessage());
+        verify(pagamentoExternal, never()).autorizarPagamento(anyLong(), anyDouble());
+    }
+
+    @Test
+    public void testPagamentoRecusadoLiberaReserva() {
+        reservar(true);
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(false, null));
+
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(1L, 1L));
+
+        assertEquals("Pagamento não autorizado.", erro.getMessage());
+        verify(estoqueExternal).liberarReserva(TOKEN);
+        verify(estoqueExternal, never()).confirmarReserva(anyString());
+    }
+
+    @Test
+    public void testFalhaAoLiberarNaoEncobreErroOriginal() {
+        reservar(true);
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(false, null));
+        doThrow(new RuntimeException("estoque fora do ar")).when(estoqueExternal).liberarReserva(TOKEN);
+
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(1L, 1L));
+
+        assertEquals("Pagamento não autorizado.", erro.getMessage());
+        assertEquals("estoque fora do ar", erro.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testConfirmacaoFalhaLiberaReservaECancelaPagamento() {
+        reservar(true);
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        when(estoqueExternal.confirmarReserva(TOKEN)).thenReturn(new EstoqueBaixaDTO(false));
+
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(1L, 1L));
+
+        assertEquals("Erro ao dar baixa no estoque.", erro.getMessage());
+        verify(estoqueExternal).liberarReserva(TOKEN);
+        verify(pagamentoExternal).cancelarPagamento(1L, 7L);
+    }
+
+    @Test
+    public void testEstoqueSemReservasRecusaSemExcecao() {
+        IEstoqueExternal semReservas = new FakeEstoqueExternal();
+
+        ReservaEstoqueDTO reserva = semReservas.reservar(List.of(1L), List.of(1L), Duration.ofSeconds(30));
+        assertFalse(semReservas.suportaReservas());
+        assertFalse(reserva.reservado());
+        assertNull(reserva.token());
+        assertFalse(semReservas.confirmarReserva(TOKEN).sucesso());
+        semReservas.liberarReserva(TOKEN);
+    }
+
+    private void reservar(boolean reservado) {
+        when(estoqueExternal.reservar(anyList(), anyList(), any())).thenReturn(new ReservaEstoqueDTO(reservado,
+                reservado ? TOKEN : null, Instant.now().plusSeconds(30), reservado ? List.of() : List.of(1L)));
+    }
+
+    private CarrinhoDeCompras criarCarrinho(Cliente cliente) {
+        Produto produto = new Produto(1L, "Produto1", "Descrição", new BigDecimal("100.00"), new BigDecimal("1.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), new BigDecimal("10.0"), false, TipoProduto.ELETRONICO);
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(1L, produto, 2L));
+        return new CarrinhoDeCompras(1L, cliente, itens, null);
+    }
+}
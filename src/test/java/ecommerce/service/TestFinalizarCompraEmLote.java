@@ -0,0 +1,140 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.PedidoCompraDTO;
+import ecommerce.dto.ResultadoCompraDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+public class TestFinalizarCompraEmLote {
+
+    private CompraService compraService;
+    private IEstoqueExternal estoqueExternal;
+    private IPagamentoExternal pagamentoExternal;
+
+    @BeforeEach
+    public void setUp() {
+        CarrinhoDeComprasService carrinhoService = Mockito.mock(CarrinhoDeComprasService.class);
+        ClienteService clienteService = Mockito.mock(ClienteService.class);
+        estoqueExternal = Mockito.mock(IEstoqueExternal.class);
+        pagamentoExternal = Mockito.mock(IPagamentoExternal.class);
+
+        Cliente cliente1 = new Cliente(1L, "Cliente 1", null, null);
+        Cliente cliente2 = new Cliente(2L, "Cliente 2", null, null);
+        Produto produto1 = criarProduto(1L);
+        Produto produto2 = criarProduto(2L);
+        when(clienteService.buscarPorIds(anyCollection())).thenReturn(Map.of(1L, cliente1, 2L, cliente2));
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(Map.of(
+                10L, criarCarrinho(10L, cliente1, produto1, 1L),
+                20L, criarCarrinho(20L, cliente2, produto1, 2L),
+                30L, criarCarrinho(30L, cliente2, produto2, 1L)));
+
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal);
+        when(pagamentoExternal.autorizarPagamento(eq(1L), anyDouble())).thenReturn(new PagamentoDTO(true, 100L));
+        when(pagamentoExternal.autorizarPagamento(eq(2L), anyDouble())).thenReturn(new PagamentoDTO(true, 200L));
+    }
+
+    @Test
+    public void testLoteDisponivelUsaUmaChamadaDeEstoquePorEtapa() {
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<ResultadoCompraDTO> resultados = compraService.finalizarCompraEmLote(List.of(
+                new PedidoCompraDTO(10L, 1L), new PedidoCompraDTO(20L, 2L), new PedidoCompraDTO(30L, 2L)));
+
+        assertEquals(3, resultados.size());
+        assertTrue(resultados.stream().allMatch(ResultadoCompraDTO::sucesso));
+        assertEquals(100L, resultados.get(0).transacaoPagamentoId());
+        assertEquals(30L, resultados.get(2).carrinhoId());
+        // Demanda somada: produto 1 aparece nos carrinhos 10 e 20
+        verify(estoqueExternal).verificarDisponibilidade(List.of(1L, 2L), List.of(3L, 1L));
+        verify(estoqueExternal).darBaixa(List.of(1L, 2L), List.of(3L, 1L));
+    }
+
+    @Test
+    public void testFalhasIsoladasPorPedido() {
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(2L)));
+        when(estoqueExternal.verificarDisponibilidade(List.of(2L), List.of(1L)))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(2L)));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<ResultadoCompraDTO> resultados = compraService.finalizarCompraEmLote(List.of(
+                new PedidoCompraDTO(10L, 1L),
+                new PedidoCompraDTO(10L, 2L),
+                new PedidoCompraDTO(30L, 2L),
+                new PedidoCompraDTO(99L, 1L),
+                new PedidoCompraDTO(20L, 3L),
+                new PedidoCompraDTO(10L, 1L)));
+
+        assertEquals(200, resultados.get(0).status());
+        assertEquals(400, resultados.get(1).status());
+        assertEquals("Carrinho não encontrado.", resultados.get(1).mensagem());
+        assertEquals(409, resultados.get(2).status());
+        assertEquals("Itens fora de estoque.", resultados.get(2).mensagem());
+        assertEquals(400, resultados.get(3).status());
+        assertEquals("Cliente não encontrado", resultados.get(4).mensagem());
+        assertEquals("Carrinho repetido no lote.", resultados.get(5).mensagem());
+        verify(pagamentoExternal, never()).autorizarPagamento(eq(2L), anyDouble());
+        verify(estoqueExternal).darBaixa(List.of(1L), List.of(1L));
+    }
+
+    @Test
+    public void testBaixaRecusadaRefeitaPorPedidoCancelaSoQuemFalhou() {
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(false));
+        when(estoqueExternal.darBaixa(List.of(1L), List.of(1L))).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<ResultadoCompraDTO> resultados = compraService.finalizarCompraEmLote(List.of(
+                new PedidoCompraDTO(10L, 1L), new PedidoCompraDTO(30L, 2L)));
+
+        assertTrue(resultados.get(0).sucesso());
+        assertFalse(resultados.get(1).sucesso());
+        assertEquals(409, resultados.get(1).status());
+        assertEquals("Erro ao dar baixa no estoque.", resultados.get(1).mensagem());
+        verify(estoqueExternal, times(3)).darBaixa(anyList(), anyList());
+        verify(pagamentoExternal).cancelarPagamento(2L, 200L);
+        verify(pagamentoExternal, never()).cancelarPagamento(eq(1L), anyLong());
+    }
+
+    private Produto criarProduto(Long id) {
+        return new Produto(id, "Produto" + id, "Descrição", new BigDecimal("100.00"), new BigDecimal("1.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), new BigDecimal("10.0"), false, TipoProduto.ELETRONICO);
+    }
+
+    private CarrinhoDeCompras criarCarrinho(Long id, Cliente cliente, Produto produto, Long quantidade) {
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(id, produto, quantidade));
+        return new CarrinhoDeCompras(id, cliente, itens, null);
+    }
+}
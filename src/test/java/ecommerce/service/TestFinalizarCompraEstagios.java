@@ -0,0 +1,174 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyList;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.resiliencia.BackendIndisponivelException;
+import ecommerce.service.pedidos.RegistradorPedidos;
+import ecommerce.service.preco.CacheCotacoes;
+import ecommerce.service.preco.RegrasPreco;
+
+public class TestFinalizarCompraEstagios {
+
+    private CompraService compraService;
+    private IEstoqueExternal estoqueExternal;
+    private IPagamentoExternal pagamentoExternal;
+    private Cliente cliente;
+
+    @BeforeEach
+    public void setUp() {
+        CarrinhoDeComprasService carrinhoService = Mockito.mock(CarrinhoDeComprasService.class);
+        ClienteService clienteService = Mockito.mock(ClienteService.class);
+        estoqueExternal = Mockito.mock(IEstoqueExternal.class);
+        pagamentoExternal = Mockito.mock(IPagamentoExternal.class);
+
+        cliente = new Cliente(1L, "Cliente Teste", null, null);
+        when(clienteService.buscarPorId(1L)).thenReturn(cliente);
+        when(carrinhoService.buscarPorCarrinhoIdEClienteId(1L, cliente)).thenReturn(criarCarrinho());
+
+        compraService = Mockito.spy(new CompraService(carrinhoService, clienteService, estoqueExternal,
+                pagamentoExternal));
+    }
+
+    @Test
+    public void testEstoqueEPrecoSobrepostos() {
+        CountDownLatch precoIniciado = new CountDownLatch(1);
+        AtomicReference<Thread> threadEstoque = new AtomicReference<>();
+        doAnswer(invocacao -> {
+            precoIniciado.countDown();
+            return invocacao.callRealMethod();
+        }).when(compraService).calcularCustoTotal(any(CarrinhoDeCompras.class));
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenAnswer(invocacao -> {
+            threadEstoque.set(Thread.currentThread());
+            // Só responde disponível se o cálculo começar enquanto o estoque ainda não respondeu
+            return new DisponibilidadeDTO(precoIniciado.await(5, TimeUnit.SECONDS), new ArrayList<>());
+        });
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        CompraDTO resultado = compraService.finalizarCompra(1L, 1L);
+
+        assertTrue(resultado.sucesso());
+        assertEquals(7L, resultado.transacaoPagamentoId());
+        assertNotEquals(Thread.currentThread(), threadEstoque.get());
+        verify(pagamentoExternal).autorizarPagamento(1L, 100.0);
+    }
+
+    @Test
+    public void testIndisponibilidadeTemPrecedenciaSobreErroDoCalculo() {
+        doThrow(new ArithmeticException("falha no cálculo")).when(compraService)
+                .calcularCustoTotal(any(CarrinhoDeCompras.class));
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(1L)));
+
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(1L, 1L));
+
+        assertEquals("Itens fora de estoque.", erro.getMessage());
+        verify(pagamentoExternal, never()).autorizarPagamento(anyLong(), anyDouble());
+    }
+
+    @Test
+    public void testFalhaDoEstoqueChegaSemEnvoltorio() {
+        RuntimeException falha = new IllegalArgumentException("estoque fora do ar");
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenThrow(falha);
+
+        RuntimeException erro = assertThrows(RuntimeException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+        assertSame(falha, erro);
+        verify(pagamentoExternal, never()).autorizarPagamento(anyLong(), anyDouble());
+    }
+
+    @Test
+    public void testFalhaNaBaixaCancelaPagamento() {
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(false));
+
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(1L, 1L));
+
+        assertEquals("Erro ao dar baixa no estoque.", erro.getMessage());
+        verify(pagamentoExternal).cancelarPagamento(1L, 7L);
+    }
+
+    @Test
+    public void testFalhaNaBaixaSoRegistraACompensacao() {
+        CarrinhoDeComprasService carrinhoService = Mockito.mock(CarrinhoDeComprasService.class);
+        ClienteService clienteService = Mockito.mock(ClienteService.class);
+        when(clienteService.buscarPorId(1L)).thenReturn(cliente);
+        when(carrinhoService.buscarPorCarrinhoIdEClienteId(1L, cliente)).thenReturn(criarCarrinho());
+        List<Long> registradas = new ArrayList<>();
+        CompraService comOutbox = new CompraService(carrinhoService, clienteService, estoqueExternal,
+                pagamentoExternal, RegrasPreco.doClasspath(), new CacheCotacoes(10L), Runnable::run,
+                Duration.ofSeconds(30), (clienteId, transacaoId) -> registradas.add(transacaoId),
+                RegistradorPedidos.nenhum(), MetricasCompra.nenhuma());
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(false));
+
+        assertThrows(IllegalStateException.class, () -> comOutbox.finalizarCompra(1L, 1L));
+
+        assertEquals(List.of(7L), registradas);
+        verify(pagamentoExternal, never()).cancelarPagamento(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testBaixaRecusadaPelaProtecaoCancelaPagamento() {
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        RuntimeException recusa = new BackendIndisponivelException("estoque",
+                BackendIndisponivelException.Motivo.CIRCUITO_ABERTO);
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenThrow(recusa);
+
+        RuntimeException erro = assertThrows(RuntimeException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+        assertSame(recusa, erro);
+        verify(pagamentoExternal).cancelarPagamento(1L, 7L);
+    }
+
+    private CarrinhoDeCompras criarCarrinho() {
+        Produto produto = new Produto(1L, "Produto1", "Descrição", new BigDecimal("100.00"), new BigDecimal("1.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), new BigDecimal("10.0"), false, TipoProduto.ELETRONICO);
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(1L, produto, 1L));
+        return new CarrinhoDeCompras(1L, cliente, itens, null);
+    }
+}
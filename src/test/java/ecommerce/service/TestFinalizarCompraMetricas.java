@@ -0,0 +1,170 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.when;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.resiliencia.BackendIndisponivelException;
+import ecommerce.rastreamento.ColetorSpans;
+import ecommerce.rastreamento.Rastreador;
+import ecommerce.rastreamento.Span;
+import ecommerce.service.compensacao.CompensadorPagamento;
+import ecommerce.service.pedidos.RegistradorPedidos;
+import ecommerce.service.preco.CacheCotacoes;
+import ecommerce.service.preco.RegrasPreco;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestFinalizarCompraMetricas {
+
+    private SimpleMeterRegistry registro;
+    private ClienteService clienteService;
+    private IEstoqueExternal estoqueExternal;
+    private IPagamentoExternal pagamentoExternal;
+    private CarrinhoDeComprasService carrinhoService;
+    private CompraService compraService;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @BeforeEach
+    public void setUp() {
+        carrinhoService = Mockito.mock(CarrinhoDeComprasService.class);
+        clienteService = Mockito.mock(ClienteService.class);
+        estoqueExternal = Mockito.mock(IEstoqueExternal.class);
+        pagamentoExternal = Mockito.mock(IPagamentoExternal.class);
+
+        Cliente cliente = new Cliente(1L, "Cliente Teste", null, null);
+        when(clienteService.buscarPorId(1L)).thenReturn(cliente);
+        when(carrinhoService.buscarPorCarrinhoIdEClienteId(1L, cliente)).thenReturn(criarCarrinho(cliente));
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        registro = new SimpleMeterRegistry();
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal,
+                RegrasPreco.doClasspath(), new CacheCotacoes(10L), Runnable::run, Duration.ofSeconds(30),
+                CompensadorPagamento.sincrono(pagamentoExternal), RegistradorPedidos.nenhum(),
+                new MetricasCompra(registro));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCompraConcluidaMedeTodosOsEstagios() {
+        compraService.finalizarCompra(1L, 1L);
+
+        for (String estagio : List.of("cliente", "carrinho", "disponibilidade", "custo", "pagamento", "baixa",
+                "registro")) {
+            assertEquals(1L, registro.get("compra.estagio").tag("estagio", estagio).timer().count(), estagio);
+        }
+        assertEquals(0L, registro.get("compra.estagio").tag("estagio", "reserva").timer().count());
+        assertEquals(1L, registro.get("compra.finalizacao").timer().count());
+        assertEquals(1.0, resultado("sucesso"));
+        assertEquals(2.0, registro.get("compra.carrinho.itens").summary().totalAmount());
+        assertEquals(250.0, registro.get("compra.valor").summary().totalAmount());
+    }
+
+    @Test
+    public void testDesfechosDasFalhas() {
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(1L)));
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, new ArrayList<>()));
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(false, null));
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 7L));
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(false));
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+        when(estoqueExternal.darBaixa(anyList(), anyList())).thenThrow(
+                new BackendIndisponivelException("estoque", BackendIndisponivelException.Motivo.CIRCUITO_ABERTO));
+        assertThrows(BackendIndisponivelException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+        when(clienteService.buscarPorId(2L)).thenThrow(new IllegalArgumentException("Cliente não encontrado"));
+        assertThrows(IllegalArgumentException.class, () -> compraService.finalizarCompra(1L, 2L));
+
+        assertEquals(1.0, resultado("estoque_indisponivel"));
+        assertEquals(1.0, resultado("pagamento_recusado"));
+        // Recusada ou com erro, a baixa depois do pagamento é a mesma falha compensada
+        assertEquals(2.0, resultado("falha_baixa"));
+        assertEquals(1.0, resultado("invalida"));
+        assertEquals(0.0, resultado("sucesso"));
+        assertEquals(5L, registro.get("compra.finalizacao").timer().count());
+        assertEquals(2L, registro.get("compra.estagio").tag("estagio", "baixa").timer().count());
+        assertEquals(3L, registro.get("compra.carrinho.itens").summary().count());
+    }
+
+    @Test
+    public void testSpansDaCompraComOEstagioAssincronoComoFilho() {
+        ColetorSpans coletor = new ColetorSpans(100);
+        Rastreador rastreador = new Rastreador(1.0, Duration.ZERO, false, coletor, registro);
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal,
+                RegrasPreco.doClasspath(), new CacheCotacoes(10L), executor, Duration.ofSeconds(30),
+                CompensadorPagamento.sincrono(pagamentoExternal), RegistradorPedidos.nenhum(),
+                new MetricasCompra(new SimpleMeterRegistry(), rastreador));
+
+        compraService.finalizarCompra(1L, 1L);
+
+        Map<String, Span> spans = coletor.spans().stream()
+                .collect(Collectors.toMap(Span::getNome, Function.identity()));
+        Span compra = spans.get("compra.finalizar");
+        assertNull(compra.getPaiId());
+        assertEquals("sucesso", compra.getAtributos().get("compra.resultado"));
+        for (String estagio : List.of("cliente", "carrinho", "disponibilidade", "custo", "pagamento", "baixa",
+                "registro")) {
+            Span span = spans.get("compra." + estagio);
+            assertEquals(compra.getTraceId(), span.getTraceId(), estagio);
+            assertEquals(compra.getSpanId(), span.getPaiId(), estagio);
+        }
+        assertEquals(8, spans.size());
+    }
+
+    private double resultado(String resultado) {
+        return registro.get("compra.resultado").tag("resultado", resultado).counter().count();
+    }
+
+    private CarrinhoDeCompras criarCarrinho(Cliente cliente) {
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(1L, produto(1L, "100.00"), 1L));
+        itens.add(new ItemCompra(2L, produto(2L, "50.00"), 3L));
+        return new CarrinhoDeCompras(1L, cliente, itens, null);
+    }
+
+    private static Produto produto(Long id, String preco) {
+        return new Produto(id, "Produto" + id, "Descrição", new BigDecimal(preco), new BigDecimal("1.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), new BigDecimal("10.0"), false, TipoProduto.ELETRONICO);
+    }
+}
@@ -0,0 +1,163 @@
+package ecommerce.service.compensacao;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ecommerce.entity.CompensacaoPagamento;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.CompensacaoPagamentoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestOutboxCompensacoes {
+
+    private static final Instant AGORA = Instant.parse("2024-01-01T10:00:00Z");
+
+    private CompensacaoPagamentoRepository repository;
+    private IPagamentoExternal pagamento;
+    private SimpleMeterRegistry registro;
+    private OutboxCompensacoes outbox;
+
+    @BeforeEach
+    public void setUp() {
+        repository = Mockito.mock(CompensacaoPagamentoRepository.class);
+        pagamento = Mockito.mock(IPagamentoExternal.class);
+        registro = new SimpleMeterRegistry();
+        // Lote de 2, espera de 1s a 5s, 3 tentativas
+        outbox = new OutboxCompensacoes(repository, pagamento, Clock.fixed(AGORA, ZoneOffset.UTC), 2,
+                Duration.ofSeconds(1), Duration.ofSeconds(5), 3, Duration.ofSeconds(1), registro);
+    }
+
+    @Test
+    public void testCancelarSoGravaACompensacao() {
+        outbox.cancelar(1L, 7L);
+
+        ArgumentCaptor<CompensacaoPagamento> gravada = ArgumentCaptor.forClass(CompensacaoPagamento.class);
+        verify(repository).gravar(gravada.capture());
+        assertEquals(1L, gravada.getValue().getClienteId());
+        assertEquals(7L, gravada.getValue().getTransacaoId());
+        assertEquals(AGORA, gravada.getValue().getProximaTentativa());
+        verify(pagamento, never()).cancelarPagamento(any(), any());
+    }
+
+    @Test
+    public void testCancelamentoConcluidoRemoveACompensacao() {
+        CompensacaoPagamento compensacao = new CompensacaoPagamento(1L, 7L, AGORA);
+        pendentes(List.of(compensacao));
+
+        assertEquals(1, outbox.processarPendentes());
+
+        verify(pagamento).cancelarPagamento(1L, 7L);
+        verify(repository).remover(compensacao);
+        assertEquals(1.0, contagem("sucesso"));
+    }
+
+    @Test
+    public void testLotesCheiosSaoProcessadosAteEsvaziar() {
+        List<CompensacaoPagamento> primeiro = List.of(new CompensacaoPagamento(1L, 1L, AGORA),
+                new CompensacaoPagamento(1L, 2L, AGORA));
+        List<CompensacaoPagamento> segundo = List.of(new CompensacaoPagamento(1L, 3L, AGORA));
+        when(repository.buscarVencidas(any(), anyInt()))
+                .thenReturn(primeiro).thenReturn(segundo);
+
+        assertEquals(3, outbox.processarPendentes());
+
+        verify(pagamento).cancelarPagamento(1L, 3L);
+    }
+
+    @Test
+    public void testFalhaDobraAEsperaAteOLimite() {
+        CompensacaoPagamento compensacao = new CompensacaoPagamento(1L, 7L, AGORA);
+        pendentes(List.of(compensacao));
+        doThrow(new IllegalStateException("provedor fora do ar")).when(pagamento).cancelarPagamento(1L, 7L);
+
+        assertEquals(0, outbox.processarPendentes());
+
+        assertEquals(1, compensacao.getTentativas());
+        assertEquals(AGORA.plusSeconds(1), compensacao.getProximaTentativa());
+        assertEquals("provedor fora do ar", compensacao.getUltimoErro());
+        assertFalse(compensacao.isEsgotada());
+        verify(repository).gravar(compensacao);
+        verify(repository, never()).remover(any());
+        assertEquals(1.0, contagem("falha"));
+
+        assertEquals(Duration.ofSeconds(2), outbox.espera(2));
+        assertEquals(Duration.ofSeconds(4), outbox.espera(3));
+        assertEquals(Duration.ofSeconds(5), outbox.espera(4));
+        assertEquals(Duration.ofSeconds(5), outbox.espera(64));
+    }
+
+    @Test
+    public void testUltimaTentativaEsgotaACompensacao() {
+        CompensacaoPagamento compensacao = new CompensacaoPagamento(1L, 7L, AGORA);
+        pendentes(List.of(compensacao));
+        doThrow(new IllegalStateException("recusado")).when(pagamento).cancelarPagamento(1L, 7L);
+
+        for (int i = 0; i < 3; i++) {
+            outbox.processarPendentes();
+        }
+
+        assertEquals(3, compensacao.getTentativas());
+        assertTrue(compensacao.isEsgotada());
+    }
+
+    @Test
+    public void testMetricasPartemDoRepositorioESeguemEmMemoria() {
+        Mockito.clearInvocations(repository);
+        when(repository.contar(anyBoolean())).thenAnswer(invocacao -> invocacao.getArgument(0) ? 2L : 5L);
+        registro = new SimpleMeterRegistry();
+        outbox = new OutboxCompensacoes(repository, pagamento, Clock.fixed(AGORA, ZoneOffset.UTC), 2,
+                Duration.ofSeconds(1), Duration.ofSeconds(5), 1, Duration.ofSeconds(1), registro);
+        assertEquals(5.0, medida("pendentes"));
+        assertEquals(2.0, medida("esgotadas"));
+
+        outbox.cancelar(1L, 7L);
+        outbox.cancelar(1L, 8L);
+        assertEquals(7.0, medida("pendentes"));
+
+        CompensacaoPagamento concluida = new CompensacaoPagamento(1L, 7L, AGORA);
+        CompensacaoPagamento recusada = new CompensacaoPagamento(1L, 8L, AGORA);
+        when(repository.buscarVencidas(any(), anyInt()))
+                .thenReturn(List.of(concluida, recusada)).thenReturn(List.of());
+        doThrow(new IllegalStateException("recusado")).when(pagamento).cancelarPagamento(1L, 8L);
+        outbox.processarPendentes();
+
+        // Uma tentativa só: a recusada esgota na hora
+        assertEquals(5.0, medida("pendentes"));
+        assertEquals(3.0, medida("esgotadas"));
+        // Lidas na criação; a coleta não consulta o banco
+        verify(repository, times(2)).contar(anyBoolean());
+    }
+
+    private void pendentes(List<CompensacaoPagamento> compensacoes) {
+        when(repository.buscarVencidas(any(), anyInt()))
+                .thenReturn(new ArrayList<>(compensacoes));
+    }
+
+    private double medida(String situacao) {
+        return registro.get("pagamento.compensacoes." + situacao).gauge().value();
+    }
+
+    private double contagem(String resultado) {
+        return registro.get("pagamento.compensacoes.tentativas").tag("resultado", resultado).counter().count();
+    }
+}
@@ -0,0 +1,47 @@
+package ecommerce.service.compensacao;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import ecommerce.CompraApplication;
+import ecommerce.entity.CompensacaoPagamento;
+import ecommerce.repository.CompensacaoPagamentoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class TestOutboxDuravel {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    public void testCompensacaoGravadaSobreviveAoReinicio() {
+        try (ConfigurableApplicationContext contexto = iniciar()) {
+            contexto.getBean(CompensadorPagamento.class).cancelar(1L, 7L);
+        }
+
+        try (ConfigurableApplicationContext contexto = iniciar()) {
+            CompensacaoPagamentoRepository repository = contexto.getBean(CompensacaoPagamentoRepository.class);
+            assertEquals(1L, repository.contar(false));
+            CompensacaoPagamento compensacao = repository.listar().get(0);
+            assertEquals(1L, compensacao.getClienteId());
+            assertEquals(7L, compensacao.getTransacaoId());
+            assertEquals(1.0, contexto.getBean(MeterRegistry.class).get("pagamento.compensacoes.pendentes")
+                    .gauge().value());
+        }
+    }
+
+    private ConfigurableApplicationContext iniciar() {
+        // A aplicação inteira, com a outbox e os arquivos temporários (livro de pedidos, spans) no diretório do teste
+        return new SpringApplicationBuilder(CompraApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--java.io.tmpdir=" + diretorio,
+                        "--ecommerce.pagamento.compensacao.diretorio=" + diretorio.resolve("compensacoes"),
+                        "--ecommerce.pagamento.compensacao.intervalo=1h");
+    }
+}
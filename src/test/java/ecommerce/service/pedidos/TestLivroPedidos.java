@@ -0,0 +1,201 @@
+package ecommerce.service.pedidos;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestLivroPedidos {
+
+    @TempDir
+    Path diretorio;
+
+    private final List<LivroPedidos> livros = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        livros.forEach(LivroPedidos::close);
+    }
+
+    @Test
+    public void testPedidosLidosNaOrdemEscrita() {
+        LivroPedidos livro = abrir(1 << 20);
+        PedidoFinalizado primeiro = pedido(1L, new BigDecimal("123.45"), List.of(10L, 11L), List.of(2L, 1L));
+        PedidoFinalizado segundo = pedido(2L, new BigDecimal("0.10"), List.of(), List.of());
+
+        livro.registrar(primeiro);
+        livro.registrar(segundo);
+
+        try (LeitorLivroPedidos leitor = livro.leitor()) {
+            assertEquals(List.of(primeiro, segundo), leitor.lerTodos());
+        }
+    }
+
+    @Test
+    public void testSegmentoCheioAbreOutro() throws Exception {
+        // Cabeçalho + 3 registros de 64 bytes por segmento
+        LivroPedidos livro = abrir(16 + 3 * 64);
+        List<PedidoFinalizado> escritos = new ArrayList<>();
+        for (long i = 1; i <= 10; i++) {
+            PedidoFinalizado pedido = pedido(i, BigDecimal.valueOf(i), List.of(i), List.of(1L));
+            livro.registrar(pedido);
+            escritos.add(pedido);
+        }
+
+        try (LeitorLivroPedidos leitor = livro.leitor()) {
+            assertEquals(escritos, leitor.lerTodos());
+        }
+        assertEquals(4L, LivroPedidos.segmentos(diretorio).size());
+    }
+
+    @Test
+    public void testAcrescimosConcorrentesNaoSePerdemNemSeMisturam() throws Exception {
+        LivroPedidos livro = abrir(64 * 1024);
+        int threads = 8;
+        int porThread = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+        try {
+            List<Future<?>> tarefas = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long base = t * 1_000_000L;
+                tarefas.add(executor.submit(() -> {
+                    largada.await();
+                    for (long i = 0; i < porThread; i++) {
+                        long id = base + i;
+                        livro.registrar(pedido(id, BigDecimal.valueOf(id, 2), List.of(id, id + 1), List.of(i, 1L)));
+                    }
+                    return null;
+                }));
+            }
+            largada.countDown();
+            for (Future<?> tarefa : tarefas) {
+                tarefa.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<Long> carrinhos = new HashSet<>();
+        try (LeitorLivroPedidos leitor = livro.leitor()) {
+            for (PedidoFinalizado pedido : leitor.lerTodos()) {
+                // Registro íntegro: os campos batem com o carrinho que os gerou
+                long id = pedido.getCarrinhoId();
+                assertEquals(BigDecimal.valueOf(id, 2), pedido.getTotal());
+                assertEquals(List.of(id, id + 1), pedido.getProdutosIds());
+                assertTrue(carrinhos.add(id));
+            }
+        }
+        assertEquals(threads * porThread, carrinhos.size());
+    }
+
+    @Test
+    public void testGravarConcluiAposSincronizacao() throws Exception {
+        SimpleMeterRegistry registro = new SimpleMeterRegistry();
+        LivroPedidos livro = new LivroPedidos(diretorio, 1 << 20, Duration.ofMillis(1), false, registro);
+        livros.add(livro);
+
+        List<CompletableFuture<Void>> gravacoes = new ArrayList<>();
+        for (long i = 1; i <= 50; i++) {
+            gravacoes.add(livro.gravar(pedido(i, BigDecimal.ONE, List.of(1L), List.of(1L))));
+        }
+
+        CompletableFuture.allOf(gravacoes.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(50.0, registro.get("pedidos.livro.registros").counter().count());
+        assertEquals(50.0, registro.get("pedidos.livro.sincronizacao.esperas").summary().totalAmount());
+    }
+
+    @Test
+    public void testReaberturaNaoSobrescreveSegmentos() throws Exception {
+        LivroPedidos livro = abrir(1 << 20);
+        PedidoFinalizado antes = pedido(1L, BigDecimal.ONE, List.of(1L), List.of(1L));
+        livro.registrar(antes);
+        livro.close();
+
+        LivroPedidos reaberto = abrir(1 << 20);
+        PedidoFinalizado depois = pedido(2L, BigDecimal.TEN, List.of(2L), List.of(3L));
+        reaberto.registrar(depois);
+
+        try (LeitorLivroPedidos leitor = reaberto.leitor()) {
+            assertEquals(List.of(antes, depois), leitor.lerTodos());
+        }
+        assertThrows(IllegalStateException.class, () -> livro.registrar(antes));
+    }
+
+    @Test
+    public void testRegistroCorrompidoEncerraOSegmento() throws Exception {
+        LivroPedidos livro = abrir(1 << 20);
+        PedidoFinalizado integro = pedido(1L, BigDecimal.ONE, List.of(1L), List.of(1L));
+        livro.registrar(integro);
+        livro.registrar(pedido(2L, BigDecimal.ONE, List.of(1L), List.of(1L)));
+        livro.close();
+
+        // Um byte trocado no segundo registro: o CRC não confere
+        Path segmento = LivroPedidos.segmentos(diretorio).get(0);
+        byte[] bytes = Files.readAllBytes(segmento);
+        bytes[16 + 64 + 20] ^= 1;
+        Files.write(segmento, bytes);
+
+        try (LeitorLivroPedidos leitor = new LeitorLivroPedidos(diretorio)) {
+            assertEquals(integro, leitor.next());
+            assertFalse(leitor.hasNext());
+        }
+    }
+
+    @Test
+    public void testFaixaDeEscritaQueFalhouEPulada() throws Exception {
+        LivroPedidos livro = abrir(1 << 20);
+        PedidoFinalizado primeiro = pedido(1L, BigDecimal.ONE, List.of(1L), List.of(1L));
+        PedidoFinalizado terceiro = pedido(3L, BigDecimal.ONE, List.of(1L), List.of(1L));
+        livro.registrar(primeiro);
+        livro.registrar(pedido(2L, BigDecimal.ONE, List.of(1L), List.of(1L)));
+        livro.registrar(terceiro);
+        livro.close();
+
+        // O segundo registro como a escrita que falhou o deixa: só o tamanho negativo
+        Path segmento = LivroPedidos.segmentos(diretorio).get(0);
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segmento)).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(16 + 64, -64);
+        for (int i = 16 + 64 + 4; i < 16 + 128; i++) {
+            bytes.put(i, (byte) 0);
+        }
+        Files.write(segmento, bytes.array());
+
+        try (LeitorLivroPedidos leitor = new LeitorLivroPedidos(diretorio)) {
+            assertEquals(List.of(primeiro, terceiro), leitor.lerTodos());
+        }
+    }
+
+    private LivroPedidos abrir(int tamanhoSegmento) {
+        LivroPedidos livro = new LivroPedidos(diretorio, tamanhoSegmento, Duration.ofMillis(5), false);
+        livros.add(livro);
+        return livro;
+    }
+
+    private static PedidoFinalizado pedido(long carrinhoId, BigDecimal total, List<Long> produtosIds,
+            List<Long> quantidades) {
+        return new PedidoFinalizado(carrinhoId, 1L, carrinhoId * 10, total, produtosIds, quantidades);
+    }
+}
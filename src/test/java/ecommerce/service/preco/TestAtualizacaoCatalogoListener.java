@@ -0,0 +1,90 @@
+package ecommerce.service.preco;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.ProdutoRepository;
+
+public class TestAtualizacaoCatalogoListener {
+
+    private TabelaPrecos tabela;
+    private CatalogoOffHeap catalogo;
+    private AtualizacaoCatalogoListener listener;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        tabela = RegrasPreco.doClasspath().atual();
+        catalogo = new CatalogoOffHeap(mock(ProdutoRepository.class), 10, 4);
+        ObjectProvider<CatalogoOffHeap> provedor = mock(ObjectProvider.class);
+        when(provedor.getObject()).thenReturn(catalogo);
+        listener = new AtualizacaoCatalogoListener(provedor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testAlteracaoSoChegaAoCatalogoDepoisDoCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        listener.produtoGravado(criarProduto(1L, new BigDecimal("10.00")));
+
+        assertFalse(catalogo.contem(1L));
+
+        concluir(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(OptionalLong.of(2_000L), cotar(1L));
+    }
+
+    @Test
+    public void testAlteracaoDesfeitaNaoChegaAoCatalogo() {
+        listener.produtoGravado(criarProduto(1L, new BigDecimal("10.00")));
+
+        TransactionSynchronizationManager.initSynchronization();
+        listener.produtoGravado(criarProduto(1L, new BigDecimal("99.00")));
+        listener.produtoRemovido(criarProduto(1L, new BigDecimal("99.00")));
+        concluir(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertTrue(catalogo.contem(1L));
+        assertEquals(OptionalLong.of(2_000L), cotar(1L));
+    }
+
+    private void concluir(int status) {
+        List<TransactionSynchronization> sincronizacoes = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization sincronizacao : sincronizacoes) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                sincronizacao.afterCommit();
+            }
+            sincronizacao.afterCompletion(status);
+        }
+    }
+
+    private OptionalLong cotar(long produtoId) {
+        return catalogo.cotar(tabela, new long[] { produtoId }, new long[] { CatalogoOffHeap.SEM_VERSAO },
+                new long[] { 2L });
+    }
+
+    private static Produto criarProduto(Long id, BigDecimal preco) {
+        return new Produto(id, "Produto" + id, "Descrição", preco, new BigDecimal("1.0"), new BigDecimal("10.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), false, TipoProduto.ELETRONICO);
+    }
+}
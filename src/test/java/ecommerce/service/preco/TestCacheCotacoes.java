@@ -0,0 +1,107 @@
+package ecommerce.service.preco;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+public class TestCacheCotacoes {
+
+    private CacheCotacoes cache;
+    private TabelaPrecos tabela;
+    private AtomicInteger calculos;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new CacheCotacoes(100);
+        tabela = RegrasPreco.doClasspath().atual();
+        calculos = new AtomicInteger();
+    }
+
+    @Test
+    public void testCarrinhosComMesmoConteudoCompartilhamCotacao() {
+        Produto produto = criarProduto(1L, "100.00");
+        CotacaoDTO primeira = cotar(criarCarrinho(1L, produto, 2L));
+        CotacaoDTO segunda = cotar(criarCarrinho(2L, produto, 2L));
+
+        assertSame(primeira, segunda);
+        assertEquals(1, calculos.get());
+        assertEquals(1L, cache.estatisticas().hitCount());
+        assertEquals(1L, cache.estatisticas().missCount());
+    }
+
+    @Test
+    public void testQuantidadeDiferenteGeraNovaCotacao() {
+        Produto produto = criarProduto(1L, "100.00");
+        cotar(criarCarrinho(1L, produto, 2L));
+        CotacaoDTO outra = cotar(criarCarrinho(1L, produto, 3L));
+
+        assertEquals(new BigDecimal("300.00"), outra.custoTotal());
+        assertEquals(2, calculos.get());
+    }
+
+    @Test
+    public void testAlteracaoDePrecoMudaAChave() {
+        Produto produto = criarProduto(1L, "100.00");
+        CarrinhoDeCompras carrinho = criarCarrinho(1L, produto, 1L);
+        cotar(carrinho);
+
+        produto.setPreco(new BigDecimal("200.00"));
+
+        assertEquals(new BigDecimal("200.00"), cotar(carrinho).custoTotal());
+        assertEquals(2, calculos.get());
+    }
+
+    @Test
+    public void testInvalidacaoDescartaSomenteCotacoesDoProduto() {
+        Produto p1 = criarProduto(1L, "100.00");
+        Produto p2 = criarProduto(2L, "50.00");
+        cotar(criarCarrinho(1L, p1, 1L));
+        cotar(criarCarrinho(2L, p2, 1L));
+
+        cache.invalidarProduto(1L);
+        cotar(criarCarrinho(1L, p1, 1L));
+        cotar(criarCarrinho(2L, p2, 1L));
+
+        assertEquals(3, calculos.get());
+    }
+
+    @Test
+    public void testProdutoSemIdNaoECacheado() {
+        Produto produto = criarProduto(null, "100.00");
+        cotar(criarCarrinho(1L, produto, 1L));
+        cotar(criarCarrinho(1L, produto, 1L));
+
+        assertEquals(2, calculos.get());
+        assertEquals(0L, cache.tamanhoEstimado());
+    }
+
+    private CotacaoDTO cotar(CarrinhoDeCompras carrinho) {
+        return cache.obter(carrinho, tabela.getVersao(), c -> {
+            calculos.incrementAndGet();
+            return new CotacaoDTO(CalculadoraCustoTotal.calcular(tabela, c.getItens()), tabela.getVersao());
+        });
+    }
+
+    private CarrinhoDeCompras criarCarrinho(Long id, Produto produto, Long quantidade) {
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(id, produto, quantidade));
+        return new CarrinhoDeCompras(id, null, itens, null);
+    }
+
+    private Produto criarProduto(Long id, String preco) {
+        return new Produto(id, "Produto" + id, "Descrição", new BigDecimal(preco), new BigDecimal("1.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), new BigDecimal("10.0"), false, TipoProduto.ELETRONICO);
+    }
+}
@@ -0,0 +1,206 @@
+package ecommerce.service.preco;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.repository.ProdutoRepository.VersaoProduto;
+
+public class TestCatalogoOffHeap {
+
+    private static final long[] SEM_VERSAO = { CatalogoOffHeap.SEM_VERSAO };
+
+    private TabelaPrecos tabela;
+    private ProdutoRepository produtoRepository;
+
+    @BeforeEach
+    public void setUp() {
+        tabela = RegrasPreco.doClasspath().atual();
+        produtoRepository = mock(ProdutoRepository.class);
+    }
+
+    @Test
+    public void testCargaPaginadaCotaIgualAoCalculoPorEntidade() {
+        List<Produto> catalogo = new ArrayList<>();
+        for (long id = 1; id <= 25; id++) {
+            catalogo.add(criarProduto(id, BigDecimal.valueOf(id * 1_000, 2), BigDecimal.valueOf(id * 700, 3),
+                    id % 3 == 0));
+        }
+        when(produtoRepository.count()).thenReturn((long) catalogo.size());
+        when(produtoRepository.findAll(any(Pageable.class))).thenAnswer(invocacao -> {
+            Pageable pagina = invocacao.getArgument(0);
+            int inicio = (int) pagina.getOffset();
+            int fim = Math.min(inicio + pagina.getPageSize(), catalogo.size());
+            return new PageImpl<>(catalogo.subList(inicio, fim), pagina, catalogo.size());
+        });
+        CatalogoOffHeap catalogoOffHeap = new CatalogoOffHeap(produtoRepository, 10, 1);
+
+        assertEquals(25, catalogoOffHeap.carregar());
+
+        long[] ids = { 3L, 7L, 25L };
+        long[] versoes = { CatalogoOffHeap.SEM_VERSAO, CatalogoOffHeap.SEM_VERSAO, CatalogoOffHeap.SEM_VERSAO };
+        long[] quantidades = { 2L, 1L, 4L };
+        List<ItemCompra> itens = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            itens.add(new ItemCompra((long) i, catalogo.get((int) ids[i] - 1), quantidades[i]));
+        }
+        assertEquals(CalculadoraCustoTotal.calcular(tabela, itens),
+                BigDecimal.valueOf(catalogoOffHeap.cotar(tabela, ids, versoes, quantidades).getAsLong(), 2));
+        assertTrue(catalogoOffHeap.contem(25L));
+        assertFalse(catalogoOffHeap.contem(26L));
+    }
+
+    @Test
+    public void testAtualizacaoIncrementalCresceERemove() {
+        CatalogoOffHeap catalogo = new CatalogoOffHeap(produtoRepository, 10, 2);
+        for (long id = 1; id <= 100; id++) {
+            catalogo.atualizar(criarProduto(id * 31, new BigDecimal("10.00"), new BigDecimal("1.0"), false));
+        }
+        assertEquals(100, catalogo.quantidadeProdutos());
+
+        Produto produto = criarProduto(31L, new BigDecimal("100.00"), new BigDecimal("1.0"), false);
+        catalogo.atualizar(produto);
+        assertEquals(OptionalLong.of(20_000L), catalogo.cotar(tabela, new long[] { 31L }, SEM_VERSAO, new long[] { 2L }));
+
+        produto.setPreco(new BigDecimal("50.00"));
+        catalogo.atualizar(produto);
+        assertEquals(OptionalLong.of(10_000L), catalogo.cotar(tabela, new long[] { 31L }, SEM_VERSAO, new long[] { 2L }));
+
+        catalogo.remover(31L);
+        assertFalse(catalogo.contem(31L));
+        assertEquals(OptionalLong.empty(), catalogo.cotar(tabela, new long[] { 31L }, SEM_VERSAO, new long[] { 2L }));
+        assertTrue(catalogo.contem(62L));
+    }
+
+    @Test
+    public void testProdutoForaDoPontoFixoNaoCota() {
+        CatalogoOffHeap catalogo = new CatalogoOffHeap(produtoRepository, 10, 4);
+        catalogo.atualizar(criarProduto(1L, new BigDecimal("10.000051"), new BigDecimal("1.0"), true));
+
+        assertTrue(catalogo.contem(1L));
+        assertEquals(OptionalLong.empty(), catalogo.cotar(tabela, new long[] { 1L }, SEM_VERSAO, new long[] { 1L }));
+    }
+
+    @Test
+    public void testVersaoDiferenteDaEntidadeNaoCota() {
+        CatalogoOffHeap catalogo = new CatalogoOffHeap(produtoRepository, 10, 4);
+        catalogo.atualizar(comVersao(criarProduto(1L, new BigDecimal("10.00"), new BigDecimal("1.0"), false), 3L));
+
+        assertEquals(OptionalLong.of(2_000L), catalogo.cotar(tabela, new long[] { 1L }, new long[] { 3L },
+                new long[] { 2L }));
+        assertEquals(OptionalLong.empty(), catalogo.cotar(tabela, new long[] { 1L }, new long[] { 4L },
+                new long[] { 2L }));
+    }
+
+    @Test
+    public void testReconciliacaoTrazAlteracoesInclusoesERemocoesDoBanco() {
+        List<Produto> banco = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            banco.add(comVersao(criarProduto(id, new BigDecimal("10.00"), new BigDecimal("1.0"), false), 0L));
+        }
+        simularBanco(banco);
+        CatalogoOffHeap catalogo = new CatalogoOffHeap(produtoRepository, 2, 4);
+        catalogo.carregar();
+
+        // Outro nó altera o 1, remove o 2 e inclui o 4
+        banco.set(0, comVersao(criarProduto(1L, new BigDecimal("30.00"), new BigDecimal("1.0"), false), 1L));
+        banco.remove(1);
+        banco.add(comVersao(criarProduto(4L, new BigDecimal("5.00"), new BigDecimal("1.0"), false), 0L));
+
+        assertEquals(3, catalogo.reconciliar());
+        assertEquals(OptionalLong.of(6_000L), catalogo.cotar(tabela, new long[] { 1L }, new long[] { 1L },
+                new long[] { 2L }));
+        assertFalse(catalogo.contem(2L));
+        assertEquals(OptionalLong.of(1_000L), catalogo.cotar(tabela, new long[] { 4L }, new long[] { 0L },
+                new long[] { 2L }));
+        assertEquals(0, catalogo.reconciliar());
+    }
+
+    @Test
+    public void testReconciliacaoNaoDesfazAtualizacaoMaisNova() {
+        List<Produto> banco = new ArrayList<>();
+        banco.add(comVersao(criarProduto(1L, new BigDecimal("10.00"), new BigDecimal("1.0"), false), 0L));
+        simularBanco(banco);
+        CatalogoOffHeap catalogo = new CatalogoOffHeap(produtoRepository, 10, 4);
+        catalogo.carregar();
+
+        // A conferência lê a versão 1, e o commit da versão 2 chega antes da releitura
+        banco.set(0, comVersao(criarProduto(1L, new BigDecimal("20.00"), new BigDecimal("1.0"), false), 1L));
+        Produto maisNovo = comVersao(criarProduto(1L, new BigDecimal("40.00"), new BigDecimal("1.0"), false), 2L);
+        when(produtoRepository.findAllById(anyCollection())).thenAnswer(invocacao -> {
+            catalogo.atualizar(maisNovo);
+            return buscarPorId(banco, invocacao.getArgument(0));
+        });
+
+        assertEquals(0, catalogo.reconciliar());
+        assertEquals(OptionalLong.of(4_000L), catalogo.cotar(tabela, new long[] { 1L }, new long[] { 2L },
+                new long[] { 1L }));
+    }
+
+    private void simularBanco(List<Produto> banco) {
+        when(produtoRepository.count()).thenAnswer(invocacao -> (long) banco.size());
+        when(produtoRepository.findAll(any(Pageable.class))).thenAnswer(invocacao -> pagina(banco,
+                invocacao.getArgument(0)));
+        when(produtoRepository.findAllBy(any(Pageable.class))).thenAnswer(invocacao -> {
+            List<VersaoProduto> versoes = banco.stream().map(TestCatalogoOffHeap::versaoDe)
+                    .collect(Collectors.toList());
+            return pagina(versoes, invocacao.getArgument(0));
+        });
+        when(produtoRepository.findAllById(anyCollection()))
+                .thenAnswer(invocacao -> buscarPorId(banco, invocacao.getArgument(0)));
+    }
+
+    private static <T> PageImpl<T> pagina(List<T> todos, Pageable pagina) {
+        int inicio = (int) pagina.getOffset();
+        int fim = Math.min(inicio + pagina.getPageSize(), todos.size());
+        return new PageImpl<>(new ArrayList<>(todos.subList(inicio, fim)), pagina, todos.size());
+    }
+
+    private static List<Produto> buscarPorId(List<Produto> banco, Collection<Long> ids) {
+        return banco.stream().filter(p -> ids.contains(p.getId())).collect(Collectors.toList());
+    }
+
+    private static VersaoProduto versaoDe(Produto produto) {
+        return new VersaoProduto() {
+            @Override
+            public Long getId() {
+                return produto.getId();
+            }
+
+            @Override
+            public Long getVersao() {
+                return produto.getVersao();
+            }
+        };
+    }
+
+    private static Produto comVersao(Produto produto, Long versao) {
+        ReflectionTestUtils.setField(produto, "versao", versao);
+        return produto;
+    }
+
+    private Produto criarProduto(Long id, BigDecimal preco, BigDecimal peso, boolean fragil) {
+        return new Produto(id, "Produto" + id, "Descrição", preco, peso, new BigDecimal("10.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), fragil, TipoProduto.ELETRONICO);
+    }
+}
@@ -0,0 +1,105 @@
+package ecommerce.service.preco;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+public class TestLoteCarrinhosColunar {
+
+    private TabelaPrecos tabela;
+
+    @BeforeEach
+    public void setUp() {
+        tabela = RegrasPreco.doClasspath().atual();
+    }
+
+    @Test
+    public void testLoteIgualAoCalculoPorCarrinho() {
+        Random aleatorio = new Random(42);
+        List<Produto> catalogo = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            catalogo.add(criarProduto(id, BigDecimal.valueOf(aleatorio.nextInt(100_000), 2),
+                    BigDecimal.valueOf(aleatorio.nextInt(20_000), 3), aleatorio.nextBoolean()));
+        }
+        List<CarrinhoDeCompras> carrinhos = new ArrayList<>();
+        LoteCarrinhosColunar.Construtor construtor = LoteCarrinhosColunar.construtor();
+        for (long id = 1; id <= 300; id++) {
+            List<ItemCompra> itens = new ArrayList<>();
+            for (int i = 0, n = aleatorio.nextInt(8); i < n; i++) {
+                itens.add(new ItemCompra(null, catalogo.get(aleatorio.nextInt(catalogo.size())),
+                        (long) aleatorio.nextInt(5) + 1));
+            }
+            CarrinhoDeCompras carrinho = new CarrinhoDeCompras(id, null, itens, null);
+            carrinhos.add(carrinho);
+            construtor.adicionar(carrinho);
+        }
+        LoteCarrinhosColunar lote = construtor.construir();
+
+        long[] centavos = new long[lote.quantidadeCarrinhos()];
+        lote.precificar(tabela, centavos);
+
+        for (int c = 0; c < carrinhos.size(); c++) {
+            assertEquals(carrinhos.get(c).getId().longValue(), lote.carrinhoId(c));
+            assertEquals(CalculadoraCustoTotal.calcular(tabela, carrinhos.get(c).getItens()),
+                    BigDecimal.valueOf(centavos[c], 2));
+        }
+    }
+
+    @Test
+    public void testAtualizarProdutoReprecificaCarrinhos() {
+        Produto produto = criarProduto(1L, new BigDecimal("100.00"), new BigDecimal("1.0"), false);
+        LoteCarrinhosColunar lote = LoteCarrinhosColunar.construtor()
+                .adicionar(criarCarrinho(1L, produto, 2L))
+                .adicionar(criarCarrinho(2L, produto, 6L))
+                .construir();
+        long[] centavos = new long[2];
+
+        lote.precificar(tabela, centavos);
+        assertEquals(20_000L, centavos[0]);
+        assertEquals(55_200L, centavos[1]);
+
+        produto.setPreco(new BigDecimal("50.00"));
+        assertTrue(lote.atualizarProduto(produto));
+        lote.precificar(tabela, centavos);
+        assertEquals(10_000L, centavos[0]);
+        assertEquals(31_200L, centavos[1]);
+
+        assertFalse(lote.atualizarProduto(criarProduto(99L, BigDecimal.ONE, BigDecimal.ONE, false)));
+    }
+
+    @Test
+    public void testProdutoForaDoPontoFixoUsaCalculoDecimal() {
+        Produto produto = criarProduto(1L, new BigDecimal("10.000051"), new BigDecimal("1.0"), true);
+        LoteCarrinhosColunar lote = LoteCarrinhosColunar.construtor()
+                .adicionar(criarCarrinho(1L, produto, 1L))
+                .construir();
+        long[] centavos = new long[1];
+
+        lote.precificar(tabela, centavos);
+
+        assertEquals(1_500L, centavos[0]);
+    }
+
+    private CarrinhoDeCompras criarCarrinho(Long id, Produto produto, Long quantidade) {
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(id, produto, quantidade));
+        return new CarrinhoDeCompras(id, null, itens, null);
+    }
+
+    private Produto criarProduto(Long id, BigDecimal preco, BigDecimal peso, boolean fragil) {
+        return new Produto(id, "Produto" + id, "Descrição", preco, peso, new BigDecimal("10.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), fragil, TipoProduto.ELETRONICO);
+    }
+}
@@ -0,0 +1,105 @@
+package ecommerce.service.preco;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.PerfilEnvio;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+public class TestPerfilEnvio {
+
+    private static final String REGRAS = "versao=v1\n"
+            + "desconto.limites=500.00,1000.00\n"
+            + "desconto.percentuais=0.10,0.20\n"
+            + "frete.limites=5.00,10.00,50.00\n"
+            + "frete.valores-kg=0.00,2.00,4.00,7.00\n"
+            + "frete.taxa-fragil=5.00\n";
+
+    @Test
+    public void testPesoCubicoEFaturavel() {
+        Produto produto = criarProduto(new BigDecimal("2.0"), "100.0", "100.0", "60.0");
+
+        PerfilEnvio perfil = produto.getPerfilEnvio();
+
+        assertEquals(2_000L, perfil.getPesoFisicoGramas());
+        assertEquals(100_000L, perfil.getPesoCubicoGramas());
+        assertEquals(100_000L, perfil.getPesoFaturavelGramas());
+        assertTrue(perfil.isExato());
+        assertSame(perfil, produto.getPerfilEnvio());
+    }
+
+    @Test
+    public void testPerfilRecalculadoAposMudancaDeDimensao() {
+        Produto produto = criarProduto(new BigDecimal("2.0"), "50.0", "40.0", "30.0");
+        CarrinhoDeCompras carrinho = criarCarrinho(produto, 2L);
+        PerfilEnvio anterior = produto.getPerfilEnvio();
+
+        assertTrue(carrinho.agregados().isExato());
+        assertEquals(20_000L, carrinho.agregados().getPesoFaturavelGramas());
+
+        produto.setAltura(new BigDecimal("60.0"));
+
+        assertNotSame(anterior, produto.getPerfilEnvio());
+        assertEquals(20_000L, produto.getPerfilEnvio().getPesoFaturavelGramas());
+        assertTrue(carrinho.agregados().isExato());
+        assertEquals(40_000L, carrinho.agregados().getPesoFaturavelGramas());
+        assertEquals(4_000L, carrinho.agregados().getPesoGramas());
+    }
+
+    @Test
+    public void testFretePorPesoFaturavel() throws IOException {
+        TabelaPrecos fisico = tabela(REGRAS);
+        TabelaPrecos faturavel = tabela(REGRAS + "frete.base=FATURAVEL\n");
+        // 50 x 40 x 30 cm = 10 kg cúbicos contra 2 kg físicos
+        Produto produto = criarProduto(new BigDecimal("2.0"), "50.0", "40.0", "30.0");
+        CarrinhoDeCompras carrinho = criarCarrinho(produto, 1L);
+        LoteCarrinhosColunar lote = LoteCarrinhosColunar.construtor().adicionar(carrinho).construir();
+        long[] centavos = new long[1];
+
+        assertEquals(new BigDecimal("100.00"), CalculadoraCustoTotal.calcular(fisico, carrinho.getItens()));
+        assertEquals(new BigDecimal("120.00"), CalculadoraCustoTotal.calcular(faturavel, carrinho.getItens()));
+        assertEquals(new BigDecimal("120.00"), CalculadoraCustoTotal.calcularBigDecimal(faturavel, carrinho.getItens()));
+
+        lote.precificar(faturavel, centavos);
+        assertEquals(12_000L, centavos[0]);
+
+        assertTrue(carrinho.agregados().isExato());
+        assertEquals(10_000L, faturavel.pesoParaFrete(carrinho.agregados().getPesoGramas(), carrinho.agregados().getPesoFaturavelGramas()));
+    }
+
+    @Test
+    public void testBaseDeFreteDesconhecida() {
+        assertThrows(IllegalArgumentException.class, () -> tabela(REGRAS + "frete.base=VOLUME\n"));
+    }
+
+    private TabelaPrecos tabela(String conteudo) throws IOException {
+        Properties propriedades = new Properties();
+        propriedades.load(new StringReader(conteudo));
+        return TabelaPrecos.compilar(propriedades);
+    }
+
+    private CarrinhoDeCompras criarCarrinho(Produto produto, Long quantidade) {
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(1L, produto, quantidade));
+        return new CarrinhoDeCompras(1L, null, itens, null);
+    }
+
+    private Produto criarProduto(BigDecimal peso, String comprimento, String largura, String altura) {
+        return new Produto(1L, "Produto1", "Descrição", new BigDecimal("100.00"), peso, new BigDecimal(comprimento),
+                new BigDecimal(largura), new BigDecimal(altura), false, TipoProduto.ELETRONICO);
+    }
+}
@@ -0,0 +1,103 @@
+package ecommerce.service.preco;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+public class TestRegrasPreco {
+
+    private static final String REGRAS_PADRAO = "versao=v1\n"
+            + "desconto.limites=500.00,1000.00\n"
+            + "desconto.percentuais=0.10,0.20\n"
+            + "frete.limites=5.00,10.00,50.00\n"
+            + "frete.valores-kg=0.00,2.00,4.00,7.00\n"
+            + "frete.taxa-fragil=5.00\n";
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    public void testTabelaDoClasspathReproduzRegrasOriginais() {
+        TabelaPrecos tabela = RegrasPreco.doClasspath().atual();
+
+        assertEquals(new BigDecimal("557.00"), CalculadoraCustoTotal.calcular(tabela,
+                itens(new BigDecimal("600.00"), new BigDecimal("6.0"), true, 1L)));
+        assertEquals(new BigDecimal("450.07"), CalculadoraCustoTotal.calcular(tabela,
+                itens(new BigDecimal("100.00"), new BigDecimal("50.01"), false, 1L)));
+    }
+
+    @Test
+    public void testRecargaTrocaTabelaEVersao() throws IOException {
+        Path arquivo = escrever(REGRAS_PADRAO);
+        RegrasPreco regras = new RegrasPreco(new FileSystemResource(arquivo), 0L);
+        List<ItemCompra> itens = itens(new BigDecimal("500.00"), new BigDecimal("1.0"), false, 1L);
+
+        assertEquals("v1", regras.atual().getVersao());
+        assertEquals(new BigDecimal("450.00"), CalculadoraCustoTotal.calcular(regras.atual(), itens));
+
+        Files.writeString(arquivo, REGRAS_PADRAO.replace("versao=v1", "versao=v2")
+                .replace("desconto.limites=500.00,1000.00", "desconto.limites=600.00,1000.00"));
+        regras.recarregar();
+
+        assertEquals("v2", regras.atual().getVersao());
+        assertEquals(new BigDecimal("500.00"), CalculadoraCustoTotal.calcular(regras.atual(), itens));
+    }
+
+    @Test
+    public void testTabelaInvalidaMantemVersaoAnterior() throws IOException {
+        Path arquivo = escrever(REGRAS_PADRAO);
+        RegrasPreco regras = new RegrasPreco(new FileSystemResource(arquivo), 0L);
+
+        Files.writeString(arquivo, REGRAS_PADRAO.replace("versao=v1", "versao=v2")
+                .replace("frete.limites=5.00,10.00,50.00", "frete.limites=10.00,5.00,50.00"));
+
+        assertThrows(IllegalStateException.class, regras::recarregar);
+        assertEquals("v1", regras.atual().getVersao());
+    }
+
+    @Test
+    public void testTaxaFragilVaziaNaoInterrompeARecarga() throws IOException {
+        Path arquivo = escrever(REGRAS_PADRAO);
+        RegrasPreco regras = new RegrasPreco(new FileSystemResource(arquivo), 0L);
+
+        Files.writeString(arquivo, REGRAS_PADRAO.replace("versao=v1", "versao=v2")
+                .replace("frete.taxa-fragil=5.00", "frete.taxa-fragil="));
+        Files.setLastModifiedTime(arquivo, FileTime.fromMillis(1_000_000L));
+        assertThrows(IllegalStateException.class, regras::recarregar);
+        regras.recarregarSeAlterada();
+        assertEquals("v1", regras.atual().getVersao());
+
+        // A verificação seguinte ainda roda e pega o arquivo corrigido
+        Files.writeString(arquivo, REGRAS_PADRAO.replace("versao=v1", "versao=v3"));
+        Files.setLastModifiedTime(arquivo, FileTime.fromMillis(2_000_000L));
+        regras.recarregarSeAlterada();
+        assertEquals("v3", regras.atual().getVersao());
+    }
+
+    private Path escrever(String conteudo) throws IOException {
+        return Files.write(diretorio.resolve("regras-preco.properties"), conteudo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<ItemCompra> itens(BigDecimal preco, BigDecimal peso, boolean fragil, Long quantidade) {
+        Produto produto = new Produto(1L, "Produto1", "Descrição", preco, peso, new BigDecimal("10.0"),
+                new BigDecimal("10.0"), new BigDecimal("10.0"), fragil, TipoProduto.ELETRONICO);
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(1L, produto, quantidade));
+        return itens;
+    }
+}